@@ -0,0 +1,400 @@
+/**
+ *
+ */
+package iris.benchmarks;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ImageConverter;
+import iris.imageCroppers.GenericImageCropper;
+import iris.imageSegmenterInput.BasicImageSegmenterInput;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.imageSegmenters.ColonyBreathing;
+import iris.imageSegmenters.RisingTideSegmenter;
+import iris.settings.BasicSettings;
+import iris.settings.ColorSettings;
+import iris.tileReaderInputs.BasicTileReaderInput;
+import iris.tileReaderInputs.ColorTileReaderInput;
+import iris.tileReaderInputs.OpacityTileReaderInput;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.tileReaders.BasicTileReader;
+import iris.tileReaders.ColorTileReaderHSB;
+import iris.tileReaders.MorphologyTileReader;
+import iris.tileReaders.OpacityTileReader;
+import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class benchmarks the hot paths of the image analysis, on plates of 96, 384 and 1536 colonies
+ * drawn by SyntheticPlate from a fixed seed, so that every run measures the same work:
+ * <ul>
+ * <li>rotation: Toolbox.calculateImageRotation on the whole picture</li>
+ * <li>crop: GenericImageCropper.cropPlate on the rotated picture</li>
+ * <li>risingTide: RisingTideSegmenter.segmentPicture on the cropped grayscale plate</li>
+ * <li>colonyBreathing: ColonyBreathing.segmentPicture on the rising tide segmentation</li>
+ * <li>basicTiles: BasicTileReader.processTile on every tile</li>
+ * <li>opacityDefinedColony: OpacityTileReader.processDefinedColonyTile on every tile with a colony</li>
+ * <li>colorHSB: ColorTileReaderHSB.processTile on every tile of the colour plate with a colony</li>
+ * <li>morphology: MorphologyTileReader.processDefinedColonyTile on every tile with a colony</li>
+ * </ul>
+ * Each benchmark works on inputs that were prepared once per density, running the stages before it.
+ * The plate of each density has to segment into the grid that was drawn, with a colony found in exactly the tiles
+ * one was drawn in, or no benchmarks are run. The tile readers read all the tiles of the plate one after the other, on the calling thread.
+ * Every benchmark is run a few times to warm up, and then timed for a number of iterations; its results are handed
+ * to a sink so that none of the work can be optimised away. The scores are in milliseconds per plate.
+ * <p>
+ * Usage: java -cp iris.jar iris.benchmarks.IrisBenchmark [--warmup N] [--iterations N] [--densities 96,384,1536] [benchmark names]
+ * <br>
+ * With benchmark names (or parts of them), only the benchmarks whose names contain one of them are run.
+ * Give Iris enough heap space for the plates (-Xmx2g), and keep the machine otherwise idle while it runs.
+ * @author George Kritikos
+ *
+ */
+public class IrisBenchmark {
+
+	/**
+	 * how many times each benchmark is run before it is timed, and how many times it's timed
+	 */
+	public static int warmupIterations = 3;
+	public static int measurementIterations = 10;
+
+	/**
+	 * the seed the plates are drawn from
+	 */
+	public static final long SEED = 42;
+
+
+	/**
+	 * A benchmark, run on the prepared inputs of a plate
+	 */
+	interface Benchmark {
+		public Object run(PlateFixture plate);
+	}
+
+	private static final String[] BENCHMARK_NAMES = {"rotation", "crop", "risingTide", "colonyBreathing",
+		"basicTiles", "opacityDefinedColony", "colorHSB", "morphology"};
+
+	private static final Benchmark[] BENCHMARKS = {
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				return(Toolbox.calculateImageRotation(plate.picture));
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				ImagePlus croppedImage = GenericImageCropper.cropPlate(plate.rotatedPicture);
+				croppedImage.flush();
+				return(croppedImage);
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				return(RisingTideSegmenter.segmentPicture(plate.segmentationInput));
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				return(ColonyBreathing.segmentPicture(plate.risingTideOutput, plate.segmentationInput, 8));
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				Object[] outputs = new Object[plate.tiles.length];
+				for(int tile=0; tile<plate.tiles.length; tile++){
+					outputs[tile] = BasicTileReader.processTile(new BasicTileReaderInput(plate.grayscalePlate, plate.tiles[tile], plate.settings));
+				}
+				return(outputs);
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				Object[] outputs = new Object[plate.tiles.length];
+				for(int tile=0; tile<plate.tiles.length; tile++){
+					BasicTileReaderOutput colony = plate.colonies[tile];
+					if(colony.colonySize>0)
+						outputs[tile] = OpacityTileReader.processDefinedColonyTile(new OpacityTileReaderInput(
+								plate.grayscalePlate, plate.tiles[tile], colony.colonyROI, colony.colonySize, plate.settings));
+				}
+				return(outputs);
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				Object[] outputs = new Object[plate.tiles.length];
+				for(int tile=0; tile<plate.tiles.length; tile++){
+					BasicTileReaderOutput colony = plate.colonies[tile];
+					if(colony.colonySize>0)
+						outputs[tile] = ColorTileReaderHSB.processTile(new ColorTileReaderInput(
+								plate.colourPlate, plate.tiles[tile], plate.colorSettings, plate.tileCenters[tile]));
+				}
+				return(outputs);
+			}
+		},
+		new Benchmark() {
+			public Object run(PlateFixture plate) {
+				Object[] outputs = new Object[plate.tiles.length];
+				for(int tile=0; tile<plate.tiles.length; tile++){
+					BasicTileReaderOutput colony = plate.colonies[tile];
+					if(colony.colonySize>0)
+						outputs[tile] = MorphologyTileReader.processDefinedColonyTile(new OpacityTileReaderInput(
+								plate.grayscalePlate, plate.tiles[tile], colony.colonyROI, colony.colonySize, plate.settings));
+				}
+				return(outputs);
+			}
+		},
+	};
+
+
+	/**
+	 * The results of the benchmarks end up here, so that the work that made them can't be left out by the compiler
+	 */
+	private static volatile Object sink;
+
+
+	/**
+	 * The inputs of the benchmarks for one plate, prepared the same way the profiles prepare them
+	 */
+	static class PlateFixture {
+		final int density;
+		final SyntheticPlate drawnPlate;
+		final ImagePlus picture;
+		final ImagePlus rotatedPicture;
+		final ImagePlus colourPlate;
+		final ImagePlus grayscalePlate;
+		final BasicSettings settings;
+		final ColorSettings colorSettings;
+		final BasicImageSegmenterInput segmentationInput;
+		final BasicImageSegmenterOutput risingTideOutput;
+
+		/**
+		 * The tiles of the plate (after colony breathing) and the colony found in each, in row-major order
+		 */
+		final Roi[] tiles;
+		final BasicTileReaderOutput[] colonies;
+
+		/**
+		 * The centers of the tiles, which the colour tile reader needs; the colonies are drawn in the middle of their tiles
+		 */
+		final Point[] tileCenters;
+
+		PlateFixture(int numberOfRows, int numberOfColumns){
+			density = numberOfRows*numberOfColumns;
+
+			settings = new BasicSettings(IrisFrontend.settings);
+			settings.numberOfRowsOfColonies = numberOfRows;
+			settings.numberOfColumnsOfColonies = numberOfColumns;
+			colorSettings = new ColorSettings(settings);
+
+			drawnPlate = new SyntheticPlate(numberOfRows, numberOfColumns, SEED);
+			picture = drawnPlate.picture;
+			rotatedPicture = Toolbox.rotateImage(picture, Toolbox.calculateImageRotation(picture));
+			colourPlate = GenericImageCropper.cropPlate(rotatedPicture);
+
+			grayscalePlate = colourPlate.duplicate();
+			new ImageConverter(grayscalePlate).convertToGray8();
+
+			//the same grid spacing as the profiles use
+			float nominalWidth = grayscalePlate.getWidth() / numberOfColumns;
+			settings.minimumDistanceBetweenRows = Math.round(nominalWidth*2/3);
+			settings.maximumDistanceBetweenRows = Math.round(nominalWidth*3/2);
+
+			segmentationInput = new BasicImageSegmenterInput(grayscalePlate, settings);
+			risingTideOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+			if(risingTideOutput.errorOccurred)
+				throw new IllegalStateException("the synthetic plate of " + density + " colonies could not be segmented");
+			checkGrid();
+
+			BasicImageSegmenterOutput segmentationOutput = ColonyBreathing.segmentPicture(risingTideOutput, segmentationInput, 8);
+
+			tiles = new Roi[density];
+			colonies = new BasicTileReaderOutput[density];
+			tileCenters = new Point[density];
+			//for all rows
+			for(int i=0; i<numberOfRows; i++){
+				//for all columns
+				for(int j=0; j<numberOfColumns; j++){
+					Roi tile = segmentationOutput.ROImatrix[i][j];
+					tiles[i*numberOfColumns+j] = tile;
+					tileCenters[i*numberOfColumns+j] = new Point(tile.getBounds().width/2, tile.getBounds().height/2);
+					colonies[i*numberOfColumns+j] = BasicTileReader.processTile(new BasicTileReaderInput(grayscalePlate, tile, settings));
+				}
+			}
+			checkColonies();
+		}
+
+
+		/**
+		 * Makes sure the grid found is the one drawn: every tile of the rising tide segmentation is within
+		 * a tenth of the drawn spacing from it, in width and in height. Otherwise the benchmarks would time plates
+		 * that none of the profiles would get through.
+		 */
+		private void checkGrid(){
+			int spacing = drawnPlate.spacing;
+			//for all rows
+			for(int i=0; i<risingTideOutput.ROImatrix.length; i++){
+				//for all columns
+				for(int j=0; j<risingTideOutput.ROImatrix[i].length; j++){
+					Rectangle tile = risingTideOutput.ROImatrix[i][j].getBounds();
+					if(Math.abs(tile.width-spacing)>spacing/10 || Math.abs(tile.height-spacing)>spacing/10)
+						throw new IllegalStateException("the synthetic plate of " + density + " colonies was segmented into a different grid: tile "
+								+ (i+1) + "," + (j+1) + " is " + tile.width + "x" + tile.height + " pixels, the colonies were drawn "
+								+ spacing + " pixels apart");
+				}
+			}
+		}
+
+
+		/**
+		 * Makes sure a colony was found in exactly the tiles a colony was drawn in
+		 */
+		private void checkColonies(){
+			int numberOfColumns = settings.numberOfColumnsOfColonies;
+			int coloniesFound = 0;
+			int misplacedColonies = 0;
+			//for all tiles
+			for(int tile=0; tile<density; tile++){
+				boolean colonyFound = colonies[tile].colonySize>0;
+				if(colonyFound)
+					coloniesFound++;
+				if(colonyFound!=drawnPlate.colonyDrawn[tile/numberOfColumns][tile%numberOfColumns])
+					misplacedColonies++;
+			}
+
+			if(misplacedColonies>0)
+				throw new IllegalStateException("the synthetic plate of " + density + " colonies has " + drawnPlate.numberOfColonies
+						+ " colonies drawn, but " + coloniesFound + " were found (" + misplacedColonies + " tiles differ)");
+		}
+	}
+
+
+	public static void main(String[] args) {
+		int[] densities = {96, 384, 1536};
+		List<String> selectedNames = new ArrayList<String>();
+
+		try{
+			for(int i=0; i<args.length; i++){
+				if(args[i].equalsIgnoreCase("--warmup"))
+					warmupIterations = Integer.parseInt(args[++i]);
+				else if(args[i].equalsIgnoreCase("--iterations"))
+					measurementIterations = Integer.parseInt(args[++i]);
+				else if(args[i].equalsIgnoreCase("--densities")){
+					String[] values = args[++i].split(",");
+					densities = new int[values.length];
+					for(int d=0; d<values.length; d++){
+						densities[d] = Integer.parseInt(values[d].trim());
+					}
+				}
+				else
+					selectedNames.add(args[i]);
+			}
+		}
+		catch(Exception e){
+			System.err.println("Usage: IrisBenchmark [--warmup N] [--iterations N] [--densities 96,384,1536] [benchmark names]");
+			return;
+		}
+		if(measurementIterations<1){
+			System.err.println("--iterations has to be at least 1");
+			return;
+		}
+
+		System.out.println("Iris " + IrisFrontend.IrisVersion + " benchmarks: " + warmupIterations + " warmup and "
+				+ measurementIterations + " measurement iterations, " + IrisFrontend.numberOfTileThreads + " tile threads\n");
+		System.out.println(String.format(Locale.ROOT, "%-22s %8s %6s %12s %10s %12s %12s",
+				"Benchmark", "Density", "Cnt", "Score", "Error", "Min", "Median") + "   (ms/plate)");
+
+		for(int density : densities){
+			int[] rowsAndColumns = getRowsAndColumns(density);
+			if(rowsAndColumns==null){
+				System.err.println("Unknown density " + density + ", use 96, 384 or 1536");
+				continue;
+			}
+
+			PlateFixture plate = new PlateFixture(rowsAndColumns[0], rowsAndColumns[1]);
+
+			for(int b=0; b<BENCHMARKS.length; b++){
+				if(!isSelected(BENCHMARK_NAMES[b], selectedNames))
+					continue;
+
+				long[] times = runBenchmark(BENCHMARKS[b], plate);
+				System.out.println(formatScore(BENCHMARK_NAMES[b], density, times));
+			}
+		}
+	}
+
+
+	/**
+	 * Runs the given benchmark for the warmup iterations and then for the measurement iterations,
+	 * and returns the time of each measurement iteration, in nanoseconds
+	 */
+	private static long[] runBenchmark(Benchmark benchmark, PlateFixture plate){
+		for(int i=0; i<warmupIterations; i++){
+			sink = benchmark.run(plate);
+		}
+
+		long[] times = new long[measurementIterations];
+		for(int i=0; i<measurementIterations; i++){
+			long start = System.nanoTime();
+			sink = benchmark.run(plate);
+			times[i] = System.nanoTime() - start;
+		}
+		return(times);
+	}
+
+
+	/**
+	 * Formats a line of the results: the mean, the standard deviation, the minimum and the median, in milliseconds
+	 */
+	private static String formatScore(String name, int density, long[] times){
+		long[] sorted = Arrays.copyOf(times, times.length);
+		Arrays.sort(sorted);
+
+		double mean = 0;
+		for(long time : times){
+			mean += time;
+		}
+		mean /= times.length;
+
+		double variance = 0;
+		for(long time : times){
+			variance += (time-mean)*(time-mean);
+		}
+		double standardDeviation = times.length>1 ? Math.sqrt(variance/(times.length-1)) : 0;
+
+		return(String.format(Locale.ROOT, "%-22s %8d %6d %12.3f %10s %12.3f %12.3f",
+				name, density, times.length, mean/1e6, String.format(Locale.ROOT, "+- %.3f", standardDeviation/1e6),
+				sorted[0]/1e6, sorted[(sorted.length-1)/2]/1e6));
+	}
+
+
+	/**
+	 * Returns the rows and columns of a plate of the given density, or null if it's not one of the usual ones
+	 */
+	private static int[] getRowsAndColumns(int density){
+		if(density==96)
+			return(new int[]{8, 12});
+		if(density==384)
+			return(new int[]{16, 24});
+		if(density==1536)
+			return(new int[]{32, 48});
+		return(null);
+	}
+
+
+	private static boolean isSelected(String name, List<String> selectedNames){
+		if(selectedNames.isEmpty())
+			return(true);
+		for(String selectedName : selectedNames){
+			if(name.toLowerCase().contains(selectedName.toLowerCase()))
+				return(true);
+		}
+		return(false);
+	}
+
+}
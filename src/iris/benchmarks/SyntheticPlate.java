@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package iris.benchmarks;
+
+import ij.ImagePlus;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RadialGradientPaint;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * This class draws pictures of plates for the benchmarks, so that they don't depend on any pictures being around:
+ * a light plastic border on a dark background, a dark agar and a grid of round colonies of random size and brightness
+ * (1 in 20 of the spots left empty), with some noise over the whole picture.
+ * The same seed always draws the same picture, so benchmark runs on different machines or versions measure the same thing.
+ * The colonies are spaced so that pictures of all densities (96, 384 and 1536) are about the same size,
+ * close to that of the pictures of our camera (4000x2800).
+ * <p>
+ * The plate is laid out the way GenericImageCropper expects it: the agar between the plastic and the grid is a bit
+ * brighter than the agar between the colonies (as it is on real plates, where it catches the light of the plastic),
+ * and the grid starts about 5.5% of the plate in from the plastic. The cropper looks for the edge of the grid
+ * between 3.5% and 6.5% in, so the darkest columns (and rows) of that search are the ones just before the first colonies.
+ * @author George Kritikos
+ *
+ */
+public class SyntheticPlate {
+
+	/**
+	 * the distance between the centers of neighbouring colonies, in pixels
+	 */
+	public final int spacing;
+
+	/**
+	 * whether a colony was drawn on each spot of the grid, and how many were drawn
+	 */
+	public final boolean[][] colonyDrawn;
+	public final int numberOfColonies;
+
+	/**
+	 * the picture of the plate (RGB), slightly rotated
+	 */
+	public final ImagePlus picture;
+
+
+	/**
+	 * Draws the picture of a plate with the given number of rows and columns of colonies
+	 * @param numberOfRows
+	 * @param numberOfColumns
+	 * @param seed
+	 */
+	public SyntheticPlate(int numberOfRows, int numberOfColumns, long seed){
+		spacing = 2240/numberOfRows;
+		int gridWidth = numberOfColumns*spacing;
+		int gridHeight = numberOfRows*spacing;
+
+		//the agar around the grid, so that the grid starts 5.5% of the plate in from the plastic
+		int marginX = (int)Math.round(gridWidth*0.062);
+		int marginY = (int)Math.round(gridHeight*0.062);
+		int gridX = 130 + marginX;
+		int gridY = 130 + marginY;
+		int width = gridWidth + 2*gridX;
+		int height = gridHeight + 2*gridY;
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+		//background, and the plate slightly rotated on it, as it is never exactly straight under the camera
+		graphics.setColor(new Color(10, 10, 10));
+		graphics.fillRect(0, 0, width, height);
+		graphics.rotate(Math.toRadians(0.3), width/2.0, height/2.0);
+		graphics.setColor(new Color(200, 200, 200));
+		graphics.fillRect(100, 100, width-200, height-200);
+		graphics.setColor(new Color(50, 50, 55));
+		graphics.fillRect(130, 130, width-260, height-260);
+		graphics.setColor(new Color(30, 30, 35));
+		graphics.fillRect(gridX, gridY, gridWidth, gridHeight);
+
+		//the colonies
+		Random random = new Random(seed);
+		colonyDrawn = new boolean[numberOfRows][numberOfColumns];
+		int colonies = 0;
+		//for all rows
+		for(int i=0; i<numberOfRows; i++){
+			//for all columns
+			for(int j=0; j<numberOfColumns; j++){
+				if(random.nextInt(20)==0)
+					continue;
+
+				int xCenter = gridX + j*spacing + spacing/2;
+				int yCenter = gridY + i*spacing + spacing/2;
+				int radius = (int)(spacing*0.2) + random.nextInt(Math.max(1, spacing/10));
+				int brightness = 210 + random.nextInt(40);
+
+				//the faint halo the colony casts on the agar around it, fading out at the edge of its tile,
+				//so that the darkest agar is halfway between neighbouring colonies, as on real plates
+				graphics.setPaint(new RadialGradientPaint(xCenter, yCenter, spacing/2f, new float[]{0f, 1f},
+						new Color[]{new Color(60, 60, 62), new Color(30, 30, 35)}));
+				graphics.fillOval(xCenter-spacing/2, yCenter-spacing/2, spacing, spacing);
+
+				graphics.setColor(new Color(brightness, brightness, (int)(brightness*0.9)));
+				graphics.fillOval(xCenter-radius, yCenter-radius, 2*radius, 2*radius);
+				colonyDrawn[i][j] = true;
+				colonies++;
+			}
+		}
+		graphics.dispose();
+		numberOfColonies = colonies;
+
+		//noise on one pixel in 50
+		Random noise = new Random(seed+1);
+		for(int k=0; k<width*height/50; k++){
+			int x = noise.nextInt(width);
+			int y = noise.nextInt(height);
+			int value = Math.max(0, Math.min(255, (image.getRGB(x, y)&0xff) + noise.nextInt(11) - 5));
+			image.setRGB(x, y, new Color(value, value, value).getRGB());
+		}
+
+		picture = new ImagePlus("plate_" + numberOfRows*numberOfColumns + "_" + seed, image);
+	}
+
+}
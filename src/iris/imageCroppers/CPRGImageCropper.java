@@ -9,6 +9,10 @@ import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import iris.ui.IrisFrontend;
+import iris.utils.ProjectionProfile;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -31,29 +35,29 @@ public class CPRGImageCropper {
 	 * @param originalImage
 	 * @return
 	 */
-	public static ImagePlus cropPlate(ImagePlus originalImage){
-		
-		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
-			ImagePlus croppedImage = originalImage.duplicate();
-			croppedImage.setRoi(originalImage.getRoi());
-			return(croppedImage);
-		}
-
-
-		//find plate borders (where the colonies start) and return the Roi that these correspond to
-		//perform this in a duplicate picture, so any operations performed to find the Roi won't
-		//interfere with the original picture
-		ImagePlus duplicate = originalImage.duplicate();
-		Roi rectangle = findCropBorders(duplicate);
-		duplicate.flush();
-
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
+	public static ImagePlus cropPlate(final ImagePlus originalImage){
+		return(StageTimings.time(StageTimings.CROP, new TimedStage<ImagePlus>() {
+			public ImagePlus call() {
+				
+				//if user has cropped the picture, no need to re-crop
+				if(IrisFrontend.singleColonyRun==true){
+					ImagePlus croppedImage = originalImage.duplicate();
+					croppedImage.setRoi(originalImage.getRoi());
+					return(croppedImage);
+				}
+
+
+				//find plate borders (where the colonies start) and return the Roi that these correspond to
+				//perform this in a duplicate picture, so any operations performed to find the Roi won't
+				//interfere with the original picture
+				ImagePlus duplicate = originalImage.duplicate();
+				Roi rectangle = findCropBorders(duplicate);
+				duplicate.flush();
+
+				ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
+				return(croppedImage);
+			}
+		}));
 	}
 
 
@@ -80,8 +84,9 @@ public class CPRGImageCropper {
 		ImageConverter imageConverter = new ImageConverter(originalImage);
 		imageConverter.convertToGray8();
 
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		ProjectionProfile projectionProfile = new ProjectionProfile(originalImage.getProcessor());
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(projectionProfile.columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(projectionProfile.rowSums);
 
 
 		//3. define the search space for the minima
@@ -157,8 +162,9 @@ public class CPRGImageCropper {
 		imageConverter.convertToGray8();
 
 		//2. get sum of rows/columns
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		ProjectionProfile projectionProfile = new ProjectionProfile(originalImage.getProcessor());
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(projectionProfile.columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(projectionProfile.rowSums);
 
 		//3. get only the sums that correspond to the middle of the plate, get their means
 		int width = originalImage.getWidth();
@@ -297,72 +303,9 @@ public class CPRGImageCropper {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
 
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
 
-		int sum = 0;
 
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
 
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
 }
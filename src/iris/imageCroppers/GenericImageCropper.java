@@ -7,6 +7,10 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ImageConverter;
 import iris.ui.IrisFrontend;
+import iris.utils.ProjectionProfile;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -54,29 +58,29 @@ public class GenericImageCropper {
 	 * @param originalImage
 	 * @return
 	 */
-	public static ImagePlus cropPlate(ImagePlus originalImage){
-		
-		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
-			ImagePlus croppedImage = originalImage.duplicate();
-			croppedImage.setRoi(originalImage.getRoi());
-			return(croppedImage);
-		}
-
-
-		//find plate borders (where the colonies start) and return the Roi that these correspond to
-		//perform this in a duplicate picture, so any operations performed to find the Roi won't
-		//interfere with the original picture
-		ImagePlus duplicate = originalImage.duplicate();
-		Roi rectangle = findCropBorders(duplicate);
-		duplicate.flush();
-
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
+	public static ImagePlus cropPlate(final ImagePlus originalImage){
+		return(StageTimings.time(StageTimings.CROP, new TimedStage<ImagePlus>() {
+			public ImagePlus call() {
+				
+				//if user has cropped the picture, no need to re-crop
+				if(IrisFrontend.singleColonyRun==true){
+					ImagePlus croppedImage = originalImage.duplicate();
+					croppedImage.setRoi(originalImage.getRoi());
+					return(croppedImage);
+				}
+
+
+				//find plate borders (where the colonies start) and return the Roi that these correspond to
+				//perform this in a duplicate picture, so any operations performed to find the Roi won't
+				//interfere with the original picture
+				ImagePlus duplicate = originalImage.duplicate();
+				Roi rectangle = findCropBorders(duplicate);
+				duplicate.flush();
+
+				ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
+				return(croppedImage);
+			}
+		}));
 	}
 
 
@@ -98,8 +102,9 @@ public class GenericImageCropper {
 		ImageConverter imageConverter = new ImageConverter(originalImage);
 		imageConverter.convertToGray8();
 
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		ProjectionProfile projectionProfile = new ProjectionProfile(originalImage.getProcessor());
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(projectionProfile.columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(projectionProfile.rowSums);
 
 
 		//3. define the search space for the minima
@@ -164,30 +169,48 @@ public class GenericImageCropper {
 	 * @return
 	 */
 	private static Roi findPlatePlasticBorders(ImagePlus originalImage) {
+		return(findPlatePlasticBorders(originalImage, 1));
+	}
+
+
+	/**
+	 * This method will return the Roi of the image, where the plate's plastic borders were found,
+	 * on a picture that was subsampled by the given factor (e.g. a preview keeping every 8th pixel).
+	 * The search margins are scaled down accordingly. The picture is made grayscale in place.
+	 * @param originalImage
+	 * @param subsampling
+	 * @return
+	 */
+	public static Roi findPlatePlasticBorders(ImagePlus originalImage, int subsampling) {
+
+		int searchAreaColumns = Math.max(1, plateBorderSearchAreaColumns/subsampling);
+		int searchAreaRows = Math.max(1, plateBorderSearchAreaRows/subsampling);
+		int skipBorders = Math.max(1, skip/subsampling);
 		
 		//1. make image grayscale
 		ImageConverter imageConverter = new ImageConverter(originalImage);
 		imageConverter.convertToGray8();
 		
 		//2. get sum of rows/columns
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		ProjectionProfile projectionProfile = new ProjectionProfile(originalImage.getProcessor());
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(projectionProfile.columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(projectionProfile.rowSums);
 		
 		//3. get only the sums that correspond to the middle of the plate, get their means
 		int width = originalImage.getWidth();
 		int height = originalImage.getHeight();
 		
 		//define from where to where to get the sums of brightness (in the sawtooth pattern)
-		int columnsStartArea = width/2 - plateBorderSearchAreaColumns;
-		int columnsEndArea = width/2 + plateBorderSearchAreaColumns;
+		int columnsStartArea = width/2 - searchAreaColumns;
+		int columnsEndArea = width/2 + searchAreaColumns;
 		//get the sublist of those sums
 		ArrayList<Integer> sublistColumns = new ArrayList<Integer>(sumOfColumns.subList(columnsStartArea, columnsEndArea));
 		//get their mean
 		int meanOfCenterColumns = (int)Math.round(getMean(sublistColumns));
 		
 		//define from where to where to get the sums of brightness (in the sawtooth pattern)
-		int rowsStartArea = height/2 - plateBorderSearchAreaRows;
-		int rowsEndArea = height/2 + plateBorderSearchAreaRows;
+		int rowsStartArea = height/2 - searchAreaRows;
+		int rowsEndArea = height/2 + searchAreaRows;
 		//get the sublist of those sums
 		ArrayList<Integer> sublistRows = new ArrayList<Integer>(sumOfRows.subList(rowsStartArea, rowsEndArea));
 		//get their mean
@@ -200,12 +223,12 @@ public class GenericImageCropper {
 		
 		
 		//get the 20th from left and the 20th from the right
-		int indexOfLeftBorder = indicesOfColumnsSumsAboveMean.get(skip);
-		int indexOfRightBorder = indicesOfColumnsSumsAboveMean.get(indicesOfColumnsSumsAboveMean.size()-skip);
+		int indexOfLeftBorder = indicesOfColumnsSumsAboveMean.get(skipBorders);
+		int indexOfRightBorder = indicesOfColumnsSumsAboveMean.get(indicesOfColumnsSumsAboveMean.size()-skipBorders);
 		
 		//get the 20th from the top and the 20th from the bottom
-		int indexOfTopBorder = indicesOfRowsSumsAboveMean.get(skip);
-		int indexOfBottomBorder = indicesOfRowsSumsAboveMean.get(indicesOfRowsSumsAboveMean.size()-skip);
+		int indexOfTopBorder = indicesOfRowsSumsAboveMean.get(skipBorders);
+		int indexOfBottomBorder = indicesOfRowsSumsAboveMean.get(indicesOfRowsSumsAboveMean.size()-skipBorders);
 		
 		
 		
@@ -302,72 +325,9 @@ public class GenericImageCropper {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
 
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
 
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
 }
@@ -7,6 +7,10 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ImageConverter;
 import iris.ui.IrisFrontend;
+import iris.utils.ProjectionProfile;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -55,29 +59,29 @@ public class GenericImageCropper2 {
 	 * @param originalImage
 	 * @return
 	 */
-	public static ImagePlus cropPlate(ImagePlus originalImage){
-
-		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
-			ImagePlus croppedImage = originalImage.duplicate();
-			croppedImage.setRoi(originalImage.getRoi());
-			return(croppedImage);
-		}
-
-		//find plate borders (where the colonies start) and return the Roi that these correspond to
-		//perform this in a duplicate picture, so any operations performed to find the Roi won't
-		//interfere with the original picture
-		ImagePlus duplicate = originalImage.duplicate();
-		Roi rectangle = findCropBorders2(duplicate);
-		duplicate.flush();
-
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		croppedImage.setTitle(originalImage.getTitle());
-		return(croppedImage);
+	public static ImagePlus cropPlate(final ImagePlus originalImage){
+		return(StageTimings.time(StageTimings.CROP, new TimedStage<ImagePlus>() {
+			public ImagePlus call() {
+
+				//if user has cropped the picture, no need to re-crop
+				if(IrisFrontend.singleColonyRun==true){
+					ImagePlus croppedImage = originalImage.duplicate();
+					croppedImage.setRoi(originalImage.getRoi());
+					return(croppedImage);
+				}
+
+				//find plate borders (where the colonies start) and return the Roi that these correspond to
+				//perform this in a duplicate picture, so any operations performed to find the Roi won't
+				//interfere with the original picture
+				ImagePlus duplicate = originalImage.duplicate();
+				Roi rectangle = findCropBorders2(duplicate);
+				duplicate.flush();
+
+				ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
+				croppedImage.setTitle(originalImage.getTitle());
+				return(croppedImage);
+			}
+		}));
 	}
 
 
@@ -99,8 +103,9 @@ public class GenericImageCropper2 {
 		ImageConverter imageConverter = new ImageConverter(originalImage);
 		imageConverter.convertToGray8();
 
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		ProjectionProfile projectionProfile = new ProjectionProfile(originalImage.getProcessor());
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(projectionProfile.columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(projectionProfile.rowSums);
 
 
 		//3. define the search space for the minima
@@ -169,20 +174,16 @@ public class GenericImageCropper2 {
 
 
 		//get a horizontal section of the plate
-		originalImage.setRoi(new Rectangle(0, 1000, originalImageWidth, 1000));
-		originalImage.copy(false);
-		ImagePlus horizontalSection = ImagePlus.getClipboard();
+		ImagePlus horizontalSection = Toolbox.cropImage(originalImage, new Roi(new Rectangle(0, 1000, originalImageWidth, 1000)));
 
 
 		//get a vertical section of the plate
-		originalImage.setRoi(new Rectangle(1000, 0, 1000, originalImageHeight));
-		originalImage.copy(false);
-		ImagePlus verticalSection = ImagePlus.getClipboard();
+		ImagePlus verticalSection = Toolbox.cropImage(originalImage, new Roi(new Rectangle(1000, 0, 1000, originalImageHeight)));
 
 
 		//2. get sum of rows/columns
-		ArrayList<Integer> sumOfColumns = sumOfColumns(horizontalSection);
-		ArrayList<Integer> sumOfRows = sumOfRows(verticalSection);
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(new ProjectionProfile(horizontalSection.getProcessor()).columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(new ProjectionProfile(verticalSection.getProcessor()).rowSums);
 
 		//3. get only the sums that correspond to the middle of the plate, get their means
 		int indexOfLeftPlasticBorder = getIndexOfMaximumElement(sumOfColumns.subList(0, originalImageWidth/2));
@@ -236,20 +237,16 @@ public class GenericImageCropper2 {
 
 
 		//get a horizontal section of the plate
-		originalImage.setRoi(new Rectangle(0, 1000, width, 1000));
-		originalImage.copy(false);
-		ImagePlus horizontalSection = ImagePlus.getClipboard();
+		ImagePlus horizontalSection = Toolbox.cropImage(originalImage, new Roi(new Rectangle(0, 1000, width, 1000)));
 
 
 		//get a vertical section of the plate
-		originalImage.setRoi(new Rectangle(1000, 0, 1000, height));
-		originalImage.copy(false);
-		ImagePlus verticalSection = ImagePlus.getClipboard();
+		ImagePlus verticalSection = Toolbox.cropImage(originalImage, new Roi(new Rectangle(1000, 0, 1000, height)));
 
 
 		//2. get sum of rows/columns
-		ArrayList<Integer> sumOfColumns = sumOfColumns(horizontalSection);
-		ArrayList<Integer> sumOfRows = sumOfRows(verticalSection);
+		ArrayList<Integer> sumOfColumns = ProjectionProfile.toList(new ProjectionProfile(horizontalSection.getProcessor()).columnSums);
+		ArrayList<Integer> sumOfRows = ProjectionProfile.toList(new ProjectionProfile(verticalSection.getProcessor()).rowSums);
 
 		//3. get only the sums that correspond to the middle of the plate, get their means
 		int indexOfLeftBorder = getIndexOfMaximumElement(sumOfColumns.subList(0, width/2));
@@ -350,72 +347,9 @@ public class GenericImageCropper2 {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
 
-		int sum = 0;
 
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
 
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
 
 
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
 }
@@ -6,6 +6,9 @@ package iris.imageCroppers;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.ui.IrisFrontend;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
+import iris.utils.Toolbox;
 
 /**
  *This class provides methods to crop the original picture so as to keep only the colonies.
@@ -31,26 +34,26 @@ public abstract class NaiveImageCropper {
 	 * @param originalPicture
 	 * @return
 	 */
-	public static ImagePlus cropPlate(ImagePlus originalImage){
-		
-		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
-			ImagePlus croppedImage = originalImage.duplicate();
-			croppedImage.setRoi(originalImage.getRoi());
-			return(croppedImage);
-		}
+	public static ImagePlus cropPlate(final ImagePlus originalImage){
+		return(StageTimings.time(StageTimings.CROP, new TimedStage<ImagePlus>() {
+			public ImagePlus call() {
+				
+				//if user has cropped the picture, no need to re-crop
+				if(IrisFrontend.singleColonyRun==true){
+					ImagePlus croppedImage = originalImage.duplicate();
+					croppedImage.setRoi(originalImage.getRoi());
+					return(croppedImage);
+				}
 
-		
-		//crop the plate so that we keep only the colonies
-		//Roi keepOnlyColoniesROI = new Roi(580, 380, 4080, 2730);
-		
-		originalImage.setRoi(keepOnlyColoniesROI);
-		originalImage.copy(false);//copy to the internal clipboard
-		
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		croppedImage.setTitle(originalImage.getTitle());
-		return(croppedImage);
+				
+				//crop the plate so that we keep only the colonies
+				//Roi keepOnlyColoniesROI = new Roi(580, 380, 4080, 2730);
+				
+				ImagePlus croppedImage = Toolbox.cropImage(originalImage, keepOnlyColoniesROI);
+				croppedImage.setTitle(originalImage.getTitle());
+				return(croppedImage);
 
+			}
+		}));
 	}
 }
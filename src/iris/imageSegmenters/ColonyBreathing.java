@@ -9,6 +9,9 @@ import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.ProjectionProfile;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -24,86 +27,102 @@ public class ColonyBreathing {
 
 	/**
 	 * This variable holds the maximum distance a boundary can travel from it's original location
-	 * (calculated by means of another image segmenter). This value is +/-
+	 * (calculated by means of another image segmenter), unless the profile gives another one. This value is +/-
 	 */
-	public static int breathingSpace = 15;
+	public static final int defaultBreathingSpace = 15;
 
 
 	/**
-	 * This function will redefine the borders of every tile
+	 * This function will redefine the borders of every tile, letting them travel the default breathing space
 	 * @param originalSegmentation - the output of an existing segmenter
 	 * @param input - holds the original picture
 	 * @return
 	 */
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
+		return(segmentPicture(originalSegmentation, input, defaultBreathingSpace));
+	}
 
-		//don't re-adjust colony borders if user has made the cropping
-		if(IrisFrontend.singleColonyRun==true){
-			return(originalSegmentation);
-		}
 
-		try{
+	/**
+	 * This function will redefine the borders of every tile
+	 * @param originalSegmentation - the output of an existing segmenter
+	 * @param input - holds the original picture
+	 * @param breathingSpace - the maximum distance a boundary can travel from it's original location (+/-)
+	 * @return
+	 */
+	public static BasicImageSegmenterOutput segmentPicture(final BasicImageSegmenterOutput originalSegmentation, final BasicImageSegmenterInput input, final int breathingSpace){
+		return(StageTimings.time(StageTimings.SEGMENTATION, new TimedStage<BasicImageSegmenterOutput>() {
+			public BasicImageSegmenterOutput call() {
+
+				//don't re-adjust colony borders if user has made the cropping
+				if(IrisFrontend.singleColonyRun==true){
+					return(originalSegmentation);
+				}
+
+				try{
 
-			//create a copy of the output
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = originalSegmentation.copyRoiMatrix();
+					//create a copy of the output
+					BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+					output.ROImatrix = originalSegmentation.copyRoiMatrix();
 
-			//for all rows except the last one
-			for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
-				//for all columns except the last one
-				for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
+					//for all rows except the last one
+					for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
+						//for all columns except the last one
+						for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
 
 
 
-					Roi newRoi = colonyBreathe(output.ROImatrix[i][j], input.imageToSegment);
+							Roi newRoi = colonyBreathe(output.ROImatrix[i][j], input.imageToSegment, breathingSpace);
 
 
 
-					//update bottom one's top (also change it's height)
-					//bottom one is on the next row, so i+1
-					//the new top of the tile just under the current tile is where the old one was 
-					//plus the difference from the new height to the previous height 
-					//e.g. making this tile higher should increase the bottom one's y
-					//conversely, making this tile shorter should bring the bottom one higher
-					int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;				
+							//update bottom one's top (also change it's height)
+							//bottom one is on the next row, so i+1
+							//the new top of the tile just under the current tile is where the old one was 
+							//plus the difference from the new height to the previous height 
+							//e.g. making this tile higher should increase the bottom one's y
+							//conversely, making this tile shorter should bring the bottom one higher
+							int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;				
 
-					int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
-					int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference; //just because we want to keep the bottom's bottom where it was
+							int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
+							int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference; //just because we want to keep the bottom's bottom where it was
 
-					int x = output.ROImatrix[i+1][j].getBounds().x;
-					int y = bottomsNewTop;
-					int width = output.ROImatrix[i+1][j].getBounds().width;
-					int height = bottomsNewHeight;
+							int x = output.ROImatrix[i+1][j].getBounds().x;
+							int y = bottomsNewTop;
+							int width = output.ROImatrix[i+1][j].getBounds().width;
+							int height = bottomsNewHeight;
 
-					output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
+							output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
 
-					//in a similar fashion, update right one's left (also change it's width)
-					//right one is on the next column, so j+1
-					int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;				
+							//in a similar fashion, update right one's left (also change it's width)
+							//right one is on the next column, so j+1
+							int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;				
 
-					int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
-					int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference; //just because we want to keep the bottom's bottom where it was
+							int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
+							int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference; //just because we want to keep the bottom's bottom where it was
 
-					x = rightsNewLeft;
-					y = output.ROImatrix[i][j+1].getBounds().y;
-					width = rightsNewWidth;
-					height = output.ROImatrix[i][j+1].getBounds().height;
+							x = rightsNewLeft;
+							y = output.ROImatrix[i][j+1].getBounds().y;
+							width = rightsNewWidth;
+							height = output.ROImatrix[i][j+1].getBounds().height;
 
-					output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
+							output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
 
 
-					//now update also our current tile
-					output.ROImatrix[i][j] = newRoi;
+							//now update also our current tile
+							output.ROImatrix[i][j] = newRoi;
 
+						}
+					}
+
+					return output;
+				}
+				catch(Exception e){
+					//in case something goes wrong, fall back to the non-breathing segmentation
+					return(originalSegmentation);
 				}
 			}
-
-			return output;
-		}
-		catch(Exception e){
-			//in case something goes wrong, fall back to the non-breathing segmentation
-			return(originalSegmentation);
-		}
+		}));
 	}
 
 
@@ -165,9 +184,10 @@ public class ColonyBreathing {
 	 * right side
 	 * @param originalTileRectangle
 	 * @param bigPicture - the complete grayscaled picture
+	 * @param breathingSpace
 	 * @return
 	 */
-	private static Roi colonyBreathe(Roi originalTileRectangle, ImagePlus bigPicture){
+	private static Roi colonyBreathe(Roi originalTileRectangle, ImagePlus bigPicture, int breathingSpace){
 
 		//first calculate the boundaries within which we will sum up brightnesses
 		int left = originalTileRectangle.getBounds().x;
@@ -177,8 +197,8 @@ public class ColonyBreathing {
 
 
 		//first calculate the bottom boundary, then the right boundary
-		int newBottom = colonyBreatheBotom(left, oldRight, oldBottom, bigPicture) + oldBottom;
-		int newRight = colonyBreatheRight(top, newBottom, oldRight, bigPicture) + oldRight; //use the new bottom
+		int newBottom = colonyBreatheBotom(left, oldRight, oldBottom, bigPicture, breathingSpace) + oldBottom;
+		int newRight = colonyBreatheRight(top, newBottom, oldRight, bigPicture, breathingSpace) + oldRight; //use the new bottom
 
 		int newHeight = newBottom - top;
 		int newWidth = newRight - left;
@@ -198,12 +218,14 @@ public class ColonyBreathing {
 	 * @param right
 	 * @param initialBottom
 	 * @param bigPicture
+	 * @param breathingSpace
 	 * @return the y of the new bottom of the tile
 	 */
-	private static int colonyBreatheBotom(int left, int right, int initialBottom, ImagePlus bigPicture){
+	private static int colonyBreatheBotom(int left, int right, int initialBottom, ImagePlus bigPicture, int breathingSpace){
 		try{
 			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfRows_ = sumOfRows(bigPicture, left, right, initialBottom);
+			Rectangle window = new Rectangle(left, initialBottom-breathingSpace, right-left+1, 2*breathingSpace+1);
+			ArrayList<Integer> sumOfRows_ = ProjectionProfile.toList(new ProjectionProfile(bigPicture.getProcessor(), window).rowSums);
 			//then, find the minimum
 			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfRows_);
 			//that's your new bottom
@@ -222,12 +244,14 @@ public class ColonyBreathing {
 	 * @param right
 	 * @param initialBottom
 	 * @param bigPicture
+	 * @param breathingSpace
 	 * @return the y of the new bottom of the tile
 	 */
-	private static int colonyBreatheRight(int top, int bottom, int initialRight, ImagePlus bigPicture){
+	private static int colonyBreatheRight(int top, int bottom, int initialRight, ImagePlus bigPicture, int breathingSpace){
 		try{
 			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfColumns_ = sumOfColumns(bigPicture, top, bottom, initialRight);
+			Rectangle window = new Rectangle(initialRight-breathingSpace, top, 2*breathingSpace+1, bottom-top+1);
+			ArrayList<Integer> sumOfColumns_ = ProjectionProfile.toList(new ProjectionProfile(bigPicture.getProcessor(), window).columnSums);
 			//then, find the minimum
 			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfColumns_);
 			//that's your new bottom
@@ -241,74 +265,11 @@ public class ColonyBreathing {
 
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage, int left, int right, int initialBottom ){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=initialBottom-breathingSpace; y<=initialBottom+breathingSpace; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=left; x<=right; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage, int top, int bottom, int initialRight){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
 
-		//for all columns
-		for(int x=initialRight-breathingSpace; x<=initialRight+breathingSpace; x++ ){
-			sum = 0;
 
-			//for all rows
-			for(int y=top; y<=bottom; y++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
-			}
 
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
 
-		return(sumOfColumns);
-	}
 
 
 	/**
@@ -9,6 +9,8 @@ import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
 import iris.utils.StdStats;
 
 import java.awt.Rectangle;
@@ -36,75 +38,79 @@ public class ColonyBreathing_variance {
 	 * @param input - holds the original picture
 	 * @return
 	 */
-	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
+	public static BasicImageSegmenterOutput segmentPicture(final BasicImageSegmenterOutput originalSegmentation, final BasicImageSegmenterInput input){
+		return(StageTimings.time(StageTimings.SEGMENTATION, new TimedStage<BasicImageSegmenterOutput>() {
+			public BasicImageSegmenterOutput call() {
 
-		//don't re-adjust colony borders if user has made the cropping
-		if(IrisFrontend.singleColonyRun==true){
-			return(originalSegmentation);
-		}
+				//don't re-adjust colony borders if user has made the cropping
+				if(IrisFrontend.singleColonyRun==true){
+					return(originalSegmentation);
+				}
 
-		try{
+				try{
 
-			//create a copy of the output
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = originalSegmentation.copyRoiMatrix();
+					//create a copy of the output
+					BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+					output.ROImatrix = originalSegmentation.copyRoiMatrix();
 
-			//for all rows except the last one
-			for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
-				//for all columns except the last one
-				for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
+					//for all rows except the last one
+					for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
+						//for all columns except the last one
+						for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
 
 
 
-					Roi newRoi = colonyBreathe(output.ROImatrix[i][j], input.imageToSegment);
+							Roi newRoi = colonyBreathe(output.ROImatrix[i][j], input.imageToSegment);
 
 
 
-					//update bottom one's top (also change it's height)
-					//bottom one is on the next row, so i+1
-					//the new top of the tile just under the current tile is where the old one was 
-					//plus the difference from the new height to the previous height 
-					//e.g. making this tile higher should increase the bottom one's y
-					//conversely, making this tile shorter should bring the bottom one higher
-					int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;				
+							//update bottom one's top (also change it's height)
+							//bottom one is on the next row, so i+1
+							//the new top of the tile just under the current tile is where the old one was 
+							//plus the difference from the new height to the previous height 
+							//e.g. making this tile higher should increase the bottom one's y
+							//conversely, making this tile shorter should bring the bottom one higher
+							int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;				
 
-					int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
-					int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference; //just because we want to keep the bottom's bottom where it was
+							int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
+							int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference; //just because we want to keep the bottom's bottom where it was
 
-					int x = output.ROImatrix[i+1][j].getBounds().x;
-					int y = bottomsNewTop;
-					int width = output.ROImatrix[i+1][j].getBounds().width;
-					int height = bottomsNewHeight;
+							int x = output.ROImatrix[i+1][j].getBounds().x;
+							int y = bottomsNewTop;
+							int width = output.ROImatrix[i+1][j].getBounds().width;
+							int height = bottomsNewHeight;
 
-					output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
+							output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
 
-					//in a similar fashion, update right one's left (also change it's width)
-					//right one is on the next column, so j+1
-					int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;				
+							//in a similar fashion, update right one's left (also change it's width)
+							//right one is on the next column, so j+1
+							int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;				
 
-					int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
-					int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference; //just because we want to keep the bottom's bottom where it was
+							int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
+							int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference; //just because we want to keep the bottom's bottom where it was
 
-					x = rightsNewLeft;
-					y = output.ROImatrix[i][j+1].getBounds().y;
-					width = rightsNewWidth;
-					height = output.ROImatrix[i][j+1].getBounds().height;
+							x = rightsNewLeft;
+							y = output.ROImatrix[i][j+1].getBounds().y;
+							width = rightsNewWidth;
+							height = output.ROImatrix[i][j+1].getBounds().height;
 
-					output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
+							output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
 
 
-					//now update also our current tile
-					output.ROImatrix[i][j] = newRoi;
+							//now update also our current tile
+							output.ROImatrix[i][j] = newRoi;
 
+						}
+					}
+
+					return output;
+				}
+				catch(Exception e){
+					//in case something goes wrong, fall back to the non-breathing segmentation
+					return(originalSegmentation);
 				}
 			}
-
-			return output;
-		}
-		catch(Exception e){
-			//in case something goes wrong, fall back to the non-breathing segmentation
-			return(originalSegmentation);
-		}
+		}));
 	}
 
 
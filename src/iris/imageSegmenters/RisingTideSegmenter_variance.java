@@ -14,6 +14,8 @@ import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
 import iris.ui.IrisFrontend;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
 import iris.utils.StdStats;
 
 import java.util.ArrayList;
@@ -32,121 +34,125 @@ public class RisingTideSegmenter_variance {
 	 * @param input
 	 * @return
 	 */
-	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
-		
-		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
-			
-			//set up an output object
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = new Roi[1][1];
-			
-			//return only one ROI: the entire picture
-			output.ROImatrix[0][0] = new Roi( 
-					/*x*/ 0,
-					/*y*/ 0,
-					/*width*/ input.imageToSegment.getWidth(),
-					/*height*/ input.imageToSegment.getHeight());
-			
-			return(output);
-		}
-		
+	public static BasicImageSegmenterOutput segmentPicture(final BasicImageSegmenterInput input){
+		return(StageTimings.time(StageTimings.SEGMENTATION, new TimedStage<BasicImageSegmenterOutput>() {
+			public BasicImageSegmenterOutput call() {
+				
+				//if user has made the cropping, return one tile equal to the entire (single-colony) picture
+				if(IrisFrontend.singleColonyRun==true){
+					
+					//set up an output object
+					BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+					output.ROImatrix = new Roi[1][1];
+					
+					//return only one ROI: the entire picture
+					output.ROImatrix[0][0] = new Roi( 
+							/*x*/ 0,
+							/*y*/ 0,
+							/*width*/ input.imageToSegment.getWidth(),
+							/*height*/ input.imageToSegment.getHeight());
+					
+					return(output);
+				}
+				
 
-		//get input values
-		ImagePlus croppedImage = input.imageToSegment;
-		BasicSettings settings = input.settings;
+				//get input values
+				ImagePlus croppedImage = input.imageToSegment;
+				BasicSettings settings = input.settings;
 
-		//set up an output object
-		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+				//set up an output object
+				BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
 
-		//1. copy original picture
-		//since this pipeline needs a black and white version of the picture
-		//we copy the original picture here, so that we don't tamper with the original cropped picture
-		ImagePlus BW_croppedImage = croppedImage.duplicate();
+				//1. copy original picture
+				//since this pipeline needs a black and white version of the picture
+				//we copy the original picture here, so that we don't tamper with the original cropped picture
+				ImagePlus BW_croppedImage = croppedImage.duplicate();
 
 
-		//2. turn the image Black/White using the Otsu method
-		//save the threshold in settings for future use --this is never actually used
-		////input.settings.threshold = turnImageBW_Otsu(BW_croppedImage);
+				//2. turn the image Black/White using the Otsu method
+				//save the threshold in settings for future use --this is never actually used
+				////input.settings.threshold = turnImageBW_Otsu(BW_croppedImage);
 
 
-		//3. the next step includes calculating the sum of the row/column brightness
-		ArrayList<Integer> varOfColumns = varianceOfColumns(BW_croppedImage);
-		ArrayList<Integer> varOfRows = varianceOfRows(BW_croppedImage);
+				//3. the next step includes calculating the sum of the row/column brightness
+				ArrayList<Integer> varOfColumns = varianceOfColumns(BW_croppedImage);
+				ArrayList<Integer> varOfRows = varianceOfRows(BW_croppedImage);
 
-		BW_croppedImage.flush();//flush the BW picture, we took the measurements we needed from it
+				BW_croppedImage.flush();//flush the BW picture, we took the measurements we needed from it
 
 
-		//4. in this step, we apply the rising tide algorithm 
-		//first to the sum of rows, then to the sum of columns
-		ArrayList<Integer> minimaBagRows = risingTide(varOfRows, settings, true);
-		ArrayList<Integer> minimaBagColumns = risingTide(varOfColumns, settings, false);
+				//4. in this step, we apply the rising tide algorithm 
+				//first to the sum of rows, then to the sum of columns
+				ArrayList<Integer> minimaBagRows = risingTide(varOfRows, settings, true);
+				ArrayList<Integer> minimaBagColumns = risingTide(varOfColumns, settings, false);
 
 
-		//5. check how many minima did rising tide return
-		if(minimaBagRows.size()!=settings.numberOfRowsOfColonies+1){
-			output.errorOccurred = true;
-			output.notEnoughRowsFound = true;
-			//continue with executing the algorithm, maybe the result can still be rescued
-		}
-		if(minimaBagColumns.size()!=settings.numberOfColumnsOfColonies+1){
-			output.errorOccurred = true;
-			output.notEnoughColumnsFound = true;
-			//continue with executing the algorithm, maybe the result can still be rescued
-		}
+				//5. check how many minima did rising tide return
+				if(minimaBagRows.size()!=settings.numberOfRowsOfColonies+1){
+					output.errorOccurred = true;
+					output.notEnoughRowsFound = true;
+					//continue with executing the algorithm, maybe the result can still be rescued
+				}
+				if(minimaBagColumns.size()!=settings.numberOfColumnsOfColonies+1){
+					output.errorOccurred = true;
+					output.notEnoughColumnsFound = true;
+					//continue with executing the algorithm, maybe the result can still be rescued
+				}
 
-		//		if(output.errorOccurred){
-		//			return(output);
-		//		}
+				//		if(output.errorOccurred){
+				//			return(output);
+				//		}
 
 
-		//6. sort the rows and columns found
-		try {
-			Collections.sort(minimaBagRows);
-			Collections.sort(minimaBagColumns);			
-		} catch (Exception e) {
-			return(output); //return here just in case the rows and columns returned are actually null
-		}
+				//6. sort the rows and columns found
+				try {
+					Collections.sort(minimaBagRows);
+					Collections.sort(minimaBagColumns);			
+				} catch (Exception e) {
+					return(output); //return here just in case the rows and columns returned are actually null
+				}
 
 
 
 
-		//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
-		//there will be no iris file written in the end, just an entry in the log message. 
-		//We just need to output any Rois (see step 8), so that a grid file can be written for debugging purposes.
-		if(!checkTileSpacing(minimaBagRows, settings, input)){
-			output.errorOccurred = true;
-			output.incorrectRowSpacing = true;
-			//return(output);
-		}
-		if(!checkTileSpacing(minimaBagColumns, settings, input)){
-			output.errorOccurred = true;
-			output.incorrectColumnSpacing = true;
-			//return(output);
-		}
+				//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
+				//there will be no iris file written in the end, just an entry in the log message. 
+				//We just need to output any Rois (see step 8), so that a grid file can be written for debugging purposes.
+				if(!checkTileSpacing(minimaBagRows, settings, input)){
+					output.errorOccurred = true;
+					output.incorrectRowSpacing = true;
+					//return(output);
+				}
+				if(!checkTileSpacing(minimaBagColumns, settings, input)){
+					output.errorOccurred = true;
+					output.incorrectColumnSpacing = true;
+					//return(output);
+				}
 
 
 
-		//8. return the ROIs found
-		output.ROImatrix = new Roi[minimaBagRows.size()-1][minimaBagColumns.size()-1];
+				//8. return the ROIs found
+				output.ROImatrix = new Roi[minimaBagRows.size()-1][minimaBagColumns.size()-1];
 
-		//for all rows
-		for(int i=0;i<minimaBagRows.size()-1;i++){			
-			int heightOfThisRow = minimaBagRows.get(i+1) - minimaBagRows.get(i); //Ydiff -- rows go with i
+				//for all rows
+				for(int i=0;i<minimaBagRows.size()-1;i++){			
+					int heightOfThisRow = minimaBagRows.get(i+1) - minimaBagRows.get(i); //Ydiff -- rows go with i
 
-			//for all columns
-			for (int j = 0; j < minimaBagColumns.size()-1; j++) {
-				int widthOfThisColumn = minimaBagColumns.get(j+1) - minimaBagColumns.get(j); //Xdiff -- columns go with j
-
-				output.ROImatrix[i][j] = new Roi( 
-						/*x*/ minimaBagColumns.get(j),
-						/*y*/ minimaBagRows.get(i),
-						/*width*/ widthOfThisColumn,
-						/*height*/ heightOfThisRow);
-			}
-		}
+					//for all columns
+					for (int j = 0; j < minimaBagColumns.size()-1; j++) {
+						int widthOfThisColumn = minimaBagColumns.get(j+1) - minimaBagColumns.get(j); //Xdiff -- columns go with j
 
-		return(output);
+						output.ROImatrix[i][j] = new Roi( 
+								/*x*/ minimaBagColumns.get(j),
+								/*y*/ minimaBagRows.get(i),
+								/*width*/ widthOfThisColumn,
+								/*height*/ heightOfThisRow);
+					}
+				}
+
+				return(output);
+			}
+		}));
 	}
 
 
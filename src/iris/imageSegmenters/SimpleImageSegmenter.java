@@ -10,6 +10,8 @@ import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
 import iris.ui.IrisFrontend;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
 
 
 /**
@@ -33,75 +35,79 @@ public class SimpleImageSegmenter {
 	 * @param input
 	 * @return
 	 */
-	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
+	public static BasicImageSegmenterOutput segmentPicture(final BasicImageSegmenterInput input){
+		return(StageTimings.time(StageTimings.SEGMENTATION, new TimedStage<BasicImageSegmenterOutput>() {
+			public BasicImageSegmenterOutput call() {
 
-		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+				//if user has made the cropping, return one tile equal to the entire (single-colony) picture
+				if(IrisFrontend.singleColonyRun==true){
 
-			//set up an output object
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = new Roi[1][1];
+					//set up an output object
+					BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+					output.ROImatrix = new Roi[1][1];
 
-			//return only one ROI: the entire picture
-			output.ROImatrix[0][0] = new Roi( 
-					/*x*/ 0,
-					/*y*/ 0,
-					/*width*/ input.imageToSegment.getWidth(),
-					/*height*/ input.imageToSegment.getHeight());
+					//return only one ROI: the entire picture
+					output.ROImatrix[0][0] = new Roi( 
+							/*x*/ 0,
+							/*y*/ 0,
+							/*width*/ input.imageToSegment.getWidth(),
+							/*height*/ input.imageToSegment.getHeight());
 
-			return(output);
-		}
+					return(output);
+				}
 
-		//get input values
-		ImagePlus croppedImage = input.imageToSegment;
-		BasicSettings settings = input.settings;
+				//get input values
+				ImagePlus croppedImage = input.imageToSegment;
+				BasicSettings settings = input.settings;
 
-		//set up an output object
-		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+				//set up an output object
+				BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
 
-		//Toolbox.savePicture(croppedImage, "dummy1234.jpg");
+				//Toolbox.savePicture(croppedImage, "dummy1234.jpg");
 
-		//1. copy original picture
-		//since this pipeline needs a black and white version of the picture
-		//we copy the original picture here, so that we don't tamper with the original cropped picture
-		ImagePlus BW_croppedImage = croppedImage.duplicate();
-		int imageHeight = BW_croppedImage.getHeight();
+				//1. copy original picture
+				//since this pipeline needs a black and white version of the picture
+				//we copy the original picture here, so that we don't tamper with the original cropped picture
+				ImagePlus BW_croppedImage = croppedImage.duplicate();
+				int imageHeight = BW_croppedImage.getHeight();
 
 
-		//2. calculate the nominal distance between rows and columns
-		int nominalDistance = (int) Math.round( Math.floor( (imageHeight-2*offset)/settings.numberOfRowsOfColonies ) );
+				//2. calculate the nominal distance between rows and columns
+				int nominalDistance = (int) Math.round( Math.floor( (imageHeight-2*offset)/settings.numberOfRowsOfColonies ) );
 
 
 
 
-		//5. check how many minima did rising tide return
-		//no need here
+				//5. check how many minima did rising tide return
+				//no need here
 
-		//6. sort the rows and columns found
-		//no need here
+				//6. sort the rows and columns found
+				//no need here
 
-		//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
-		//no need here
+				//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
+				//no need here
 
 
-		//8. return the ROIs found
-		output.ROImatrix = new Roi[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+				//8. return the ROIs found
+				output.ROImatrix = new Roi[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){			
+				//for all rows
+				for(int i=0;i<settings.numberOfRowsOfColonies;i++){			
 
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+					//for all columns
+					for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 
-				output.ROImatrix[i][j] = new Roi( 
-						/*x*/ offset + j*nominalDistance,
-						/*y*/ offset + i*nominalDistance,
-						/*width*/ nominalDistance,
-						/*height*/ nominalDistance);
-			}
-		}
+						output.ROImatrix[i][j] = new Roi( 
+								/*x*/ offset + j*nominalDistance,
+								/*y*/ offset + i*nominalDistance,
+								/*width*/ nominalDistance,
+								/*height*/ nominalDistance);
+					}
+				}
 
-		return(output);
+				return(output);
+			}
+		}));
 	}
 
 	/**
@@ -112,78 +118,82 @@ public class SimpleImageSegmenter {
 	 * @param input
 	 * @return
 	 */
-	public static BasicImageSegmenterOutput segmentPicture_width(BasicImageSegmenterInput input){
+	public static BasicImageSegmenterOutput segmentPicture_width(final BasicImageSegmenterInput input){
+		return(StageTimings.time(StageTimings.SEGMENTATION, new TimedStage<BasicImageSegmenterOutput>() {
+			public BasicImageSegmenterOutput call() {
 
 
 
-		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+				//if user has made the cropping, return one tile equal to the entire (single-colony) picture
+				if(IrisFrontend.singleColonyRun==true){
 
-			//set up an output object
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = new Roi[1][1];
+					//set up an output object
+					BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+					output.ROImatrix = new Roi[1][1];
 
-			//return only one ROI: the entire picture
-			output.ROImatrix[0][0] = new Roi( 
-					/*x*/ 0,
-					/*y*/ 0,
-					/*width*/ input.imageToSegment.getWidth(),
-					/*height*/ input.imageToSegment.getHeight());
+					//return only one ROI: the entire picture
+					output.ROImatrix[0][0] = new Roi( 
+							/*x*/ 0,
+							/*y*/ 0,
+							/*width*/ input.imageToSegment.getWidth(),
+							/*height*/ input.imageToSegment.getHeight());
 
-			return(output);
-		}
+					return(output);
+				}
 
 
-		//get input values
-		ImagePlus croppedImage = input.imageToSegment;
-		BasicSettings settings = input.settings;
+				//get input values
+				ImagePlus croppedImage = input.imageToSegment;
+				BasicSettings settings = input.settings;
 
-		//set up an output object
-		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+				//set up an output object
+				BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
 
-		//Toolbox.savePicture(croppedImage, "dummy1234.jpg");
+				//Toolbox.savePicture(croppedImage, "dummy1234.jpg");
 
-		//1. copy original picture
-		//since this pipeline needs a black and white version of the picture
-		//we copy the original picture here, so that we don't tamper with the original cropped picture
-		ImagePlus BW_croppedImage = croppedImage.duplicate();
-		int imageWidth = BW_croppedImage.getWidth();
+				//1. copy original picture
+				//since this pipeline needs a black and white version of the picture
+				//we copy the original picture here, so that we don't tamper with the original cropped picture
+				ImagePlus BW_croppedImage = croppedImage.duplicate();
+				int imageWidth = BW_croppedImage.getWidth();
 
 
-		//2. calculate the nominal distance between rows and columns
-		int nominalDistance = (int) Math.round( Math.floor( (imageWidth-2*offset)/settings.numberOfColumnsOfColonies ) );
+				//2. calculate the nominal distance between rows and columns
+				int nominalDistance = (int) Math.round( Math.floor( (imageWidth-2*offset)/settings.numberOfColumnsOfColonies ) );
 
 
 
 
-		//5. check how many minima did rising tide return
-		//no need here
+				//5. check how many minima did rising tide return
+				//no need here
 
-		//6. sort the rows and columns found
-		//no need here
+				//6. sort the rows and columns found
+				//no need here
 
-		//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
-		//no need here
+				//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
+				//no need here
 
 
-		//8. return the ROIs found
-		output.ROImatrix = new Roi[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+				//8. return the ROIs found
+				output.ROImatrix = new Roi[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){			
+				//for all rows
+				for(int i=0;i<settings.numberOfRowsOfColonies;i++){			
 
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+					//for all columns
+					for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 
-				output.ROImatrix[i][j] = new Roi( 
-						/*x*/ offset + j*nominalDistance,
-						/*y*/ offset + i*nominalDistance,
-						/*width*/ nominalDistance,
-						/*height*/ nominalDistance);
-			}
-		}
+						output.ROImatrix[i][j] = new Roi( 
+								/*x*/ offset + j*nominalDistance,
+								/*y*/ offset + i*nominalDistance,
+								/*width*/ nominalDistance,
+								/*height*/ nominalDistance);
+					}
+				}
 
-		return(output);
+				return(output);
+			}
+		}));
 	}
 
 
@@ -195,58 +205,62 @@ public class SimpleImageSegmenter {
 	 * @param input
 	 * @return
 	 */
-	public static BasicImageSegmenterOutput segmentPicture_colonyDistance(BasicImageSegmenterInput input, int nominalColonyDistance){
+	public static BasicImageSegmenterOutput segmentPicture_colonyDistance(final BasicImageSegmenterInput input, final int nominalColonyDistance){
+		return(StageTimings.time(StageTimings.SEGMENTATION, new TimedStage<BasicImageSegmenterOutput>() {
+			public BasicImageSegmenterOutput call() {
 
-		//get input values
-		ImagePlus croppedImage = input.imageToSegment;
-		BasicSettings settings = input.settings;
+				//get input values
+				ImagePlus croppedImage = input.imageToSegment;
+				BasicSettings settings = input.settings;
 
-		//set up an output object
-		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+				//set up an output object
+				BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
 
-		//Toolbox.savePicture(croppedImage, "dummy1234.jpg");
+				//Toolbox.savePicture(croppedImage, "dummy1234.jpg");
 
-		//1. copy original picture
-		//since this pipeline needs a black and white version of the picture
-		//we copy the original picture here, so that we don't tamper with the original cropped picture
-		ImagePlus BW_croppedImage = croppedImage.duplicate();
-		int imageWidth = BW_croppedImage.getWidth();
+				//1. copy original picture
+				//since this pipeline needs a black and white version of the picture
+				//we copy the original picture here, so that we don't tamper with the original cropped picture
+				ImagePlus BW_croppedImage = croppedImage.duplicate();
+				int imageWidth = BW_croppedImage.getWidth();
 
 
-		//2. calculate the nominal distance between rows and columns
-		int nominalDistance = nominalColonyDistance;
+				//2. calculate the nominal distance between rows and columns
+				int nominalDistance = nominalColonyDistance;
 
 
 
 
-		//5. check how many minima did rising tide return
-		//no need here
+				//5. check how many minima did rising tide return
+				//no need here
 
-		//6. sort the rows and columns found
-		//no need here
+				//6. sort the rows and columns found
+				//no need here
 
-		//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
-		//no need here
+				//7. check whether the rows and columns are too closely spaced, continue in case of incorrectly spaced columns
+				//no need here
 
 
-		//8. return the ROIs found
-		output.ROImatrix = new Roi[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+				//8. return the ROIs found
+				output.ROImatrix = new Roi[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){			
+				//for all rows
+				for(int i=0;i<settings.numberOfRowsOfColonies;i++){			
 
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+					//for all columns
+					for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 
-				output.ROImatrix[i][j] = new Roi( 
-						/*x*/ offset + j*nominalDistance,
-						/*y*/ offset + i*nominalDistance,
-						/*width*/ nominalDistance,
-						/*height*/ nominalDistance);
-			}
-		}
+						output.ROImatrix[i][j] = new Roi( 
+								/*x*/ offset + j*nominalDistance,
+								/*y*/ offset + i*nominalDistance,
+								/*width*/ nominalDistance,
+								/*height*/ nominalDistance);
+					}
+				}
 
-		return(output);
+				return(output);
+			}
+		}));
 	}
 
 
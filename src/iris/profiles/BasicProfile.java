@@ -3,15 +3,9 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.Roi;
-import ij.measure.Calibration;
 import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
 import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
@@ -24,13 +18,15 @@ import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.BasicTileReader;
 import iris.tileReaders.OpacityTileReader;
+import iris.tileReaders.PlateTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -71,15 +67,15 @@ public class BasicProfile extends Profile {
 		//IrisFrontend.writeToLog("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -94,7 +90,7 @@ public class BasicProfile extends Profile {
 
 
 		//2. rotate the whole image
-		double imageAngle = calculateImageRotation(originalImage);
+		double imageAngle = Toolbox.calculateImageRotation(originalImage);
 
 		//create a copy of the original image and rotate it, then clear the original picture
 		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
@@ -107,7 +103,7 @@ public class BasicProfile extends Profile {
 
 
 		//3. crop the plate to keep only the colonies
-		ImagePlus croppedImage = GenericImageCropper.cropPlate(rotatedImage);
+		final ImagePlus croppedImage = GenericImageCropper.cropPlate(rotatedImage);
 		//flush the original picture, we won't be needing it anymore
 		rotatedImage.flush();
 
@@ -120,7 +116,8 @@ public class BasicProfile extends Profile {
 		//
 
 		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus croppedImageColor = croppedImage.duplicate();
+		//keep the colour picture to draw the grid on, if there's going to be a grid image
+		final ImagePlus croppedImageColor = GridImageWriter.savesAllPlates() ? croppedImage.duplicate() : null;
 		ImageConverter imageConverter = new ImageConverter(croppedImage);
 		imageConverter.convertToGray8();
 
@@ -136,6 +133,7 @@ public class BasicProfile extends Profile {
 
 		//let colonies breathe
 		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
 
 		//check if something went wrong
 		if(segmentationOutput.errorOccurred){
@@ -159,22 +157,25 @@ public class BasicProfile extends Profile {
 
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImageColor, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-
-			croppedImageColor.flush();
-			paintedImage.flush();
+			final ImagePlus failedImage = GridImageWriter.getPlateToPaint(croppedImageColor, croppedImage, true);
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(failedImage, finalSegmentationOutput); //calculate grid image
+					failedImage.flush();
+					return(paintedImage);
+				}
+			});
 
 			return;
 		}
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 
@@ -187,21 +188,28 @@ public class BasicProfile extends Profile {
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] readerOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				readerOutputs[i][j] = BasicTileReader.processTile(
-						new BasicTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+		final BasicTileReaderOutput [][] readerOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+
+		//if asked for, find the colonies of the whole plate in one go, instead of tile by tile
+		final BasicTileReaderOutput [][] plateReaderOutputs = IrisFrontend.plateLabelling && !IrisFrontend.singleColonyRun ?
+				PlateTileReader.processPlate(croppedImage, segmentationOutput.ROImatrix) : null;
+
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
+				if(plateReaderOutputs!=null){
+					readerOutputs[i][j] = plateReaderOutputs[i][j];
+				}
+				else{
+					readerOutputs[i][j] = BasicTileReader.processTile(
+							new BasicTileReaderInput(croppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));
+				}
 
 				if(readerOutputs[i][j].colonySize>0){
 
 					opacityReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], 
+							new OpacityTileReaderInput(croppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 									readerOutputs[i][j].colonyROI, readerOutputs[i][j].colonySize, settings));
 				}
 				else
@@ -210,7 +218,7 @@ public class BasicProfile extends Profile {
 				}
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -223,10 +231,15 @@ public class BasicProfile extends Profile {
 			System.err.println("\ttoo many empty rows/columns");
 
 			//calculate and save grid image
-			
-			croppedImageColor = ColonyBreathing.paintSegmentedImage(croppedImageColor, segmentationOutput);
-			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
+			final ImagePlus failedImage = GridImageWriter.getPlateToPaint(croppedImageColor, croppedImage, true);
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(failedImage, finalSegmentationOutput);
+					failedImage.flush();
+					Toolbox.drawColonyBounds(paintedImage, finalSegmentationOutput, readerOutputs);
+					return(paintedImage);
+				}
+			});
 
 			return;
 		}
@@ -235,26 +248,27 @@ public class BasicProfile extends Profile {
 		//7. output the results
 
 		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"size\t" +
-				"circularity\t" +
-				"opacity\n");
+		output.setColumns("row",
+				"column",
+				"size",
+				"circularity",
+				"opacity");
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(opacityReaderOutputs[i][j].opacity) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(readerOutputs[i][j].colonySize)
+						.addDecimal(readerOutputs[i][j].circularity)
+						.addInteger(opacityReaderOutputs[i][j].opacity)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -264,15 +278,13 @@ public class BasicProfile extends Profile {
 
 
 
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			///ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
-
-			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
-		}
+		//7.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+				Toolbox.drawColonyBounds(croppedImageColor, finalSegmentationOutput, readerOutputs);
+				return(croppedImageColor);
+			}
+		});
 
 	}
 
@@ -324,273 +336,5 @@ public class BasicProfile extends Profile {
 		return(false);
 	}
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
-
-
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
 
 }
@@ -4,18 +4,12 @@
 package iris.profiles;
 
 import fiji.threshold.Auto_Local_Threshold;
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
-import ij.measure.Calibration;
 import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
-import ij.process.ColorProcessor;
-import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper;
 import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
@@ -31,13 +25,16 @@ import iris.tileReaderOutputs.ColorTileReaderOutput;
 import iris.tileReaders.BasicTileReader_Bsu;
 import iris.tileReaders.ColorTileReaderHSB;
 import iris.ui.IrisFrontend;
+import iris.utils.ChannelCache;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.awt.Point;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -80,15 +77,15 @@ public class BsubtilisSporulationProfile extends Profile{
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -189,29 +186,13 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//4. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
 		//This is how you do it the HSB way
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
+		final ImagePlus colourCroppedImage = croppedImage.duplicate();
 		colourCroppedImage.setRoi(croppedImage.getRoi());
-		ImageProcessor ip =  croppedImage.getProcessor();
-
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the tile
-		//				ip.snapshot(); // override ColorProcessor bug in 1.32c
-		int width = croppedImage.getWidth();
-		int height = croppedImage.getHeight();
-		int numPixels = width*height;
-
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
-
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
-
-		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
+		//only the brightness channel of the plate is needed
+		ChannelCache channels = new ChannelCache(croppedImage);
+		ByteProcessor bpBri = new ByteProcessor(channels.getWidth(), channels.getHeight(), channels.getBrightness());
 		croppedImage = new ImagePlus("", bpBri);
-		ImagePlus grayscaleCroppedImage  = croppedImage.duplicate();
+		final ImagePlus grayscaleCroppedImage  = croppedImage.duplicate();
 
 		croppedImage.flush();
 
@@ -230,9 +211,9 @@ public class BsubtilisSporulationProfile extends Profile{
 			//do nothing more
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, userProfileSettings.segmentationSettings.ColonyBreathingSpace);
 		}
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
 
 
 		//check if something went wrong
@@ -257,13 +238,13 @@ public class BsubtilisSporulationProfile extends Profile{
 
 
 			//save the grid before exiting
-			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
-
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
-
-			croppedImageSegmented.flush();
-			grayscaleCroppedImage.flush();
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
+					grayscaleCroppedImage.flush();
+					return(croppedImageSegmented);
+				}
+			});
 
 			return;
 		}
@@ -275,11 +256,11 @@ public class BsubtilisSporulationProfile extends Profile{
 		//
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 
@@ -304,23 +285,22 @@ public class BsubtilisSporulationProfile extends Profile{
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputsCenters = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];	
+		final BasicTileReaderOutput [][] basicTileReaderOutputsCenters = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];	
 
 
 
 		//6.0 do a pre-run to get the centers of the colonies
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 				basicTileReaderOutputsCenters[i][j] = BasicTileReader_Bsu.getColonyCenter(
-						new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(grayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));
 
 			}
-		}
+		});
 
 		//get the medians of all the rows and columns, ignore zeroes
 		//for all rows
@@ -351,8 +331,8 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//save the pre-calculated colony centers in a matrix of input to basic tile reader
 		//all the tile readers will get it from there
-		BasicTileReaderInput [][] centeredTileReaderInput = new BasicTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderInput [][] centeredColorTileReaderInput = new ColorTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderInput [][] centeredTileReaderInput = new BasicTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderInput [][] centeredColorTileReaderInput = new ColorTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 				centeredTileReaderInput[i][j] = new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings,
@@ -370,18 +350,19 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//6.1 now actually analyze all the tiles
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final float finalMinimumValidColonyCircularity = minimumValidColonyCircularity;
+		final int finalMinimumValidColonySize = minimumValidColonySize;
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 
 				//first get the colony size (so that the user doesn't have to run 2 profiles for this)
 				basicTileReaderOutputs[i][j] = BasicTileReader_Bsu.processTile(centeredTileReaderInput[i][j]);
 
 				
 				//colony QC
-				if(basicTileReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						basicTileReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(basicTileReaderOutputs[i][j].colonySize<finalMinimumValidColonySize ||
+						basicTileReaderOutputs[i][j].circularity<finalMinimumValidColonyCircularity){
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 				}
 				
@@ -398,7 +379,7 @@ public class BsubtilisSporulationProfile extends Profile{
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -411,13 +392,14 @@ public class BsubtilisSporulationProfile extends Profile{
 			System.err.println("\ttoo many empty rows/columns");
 
 			//calculate and save grid image
-			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
-
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			drawCenterRoiBounds(colourCroppedImage, segmentationOutput, colourTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					Toolbox.drawColonyBounds(colourCroppedImage, finalSegmentationOutput, basicTileReaderOutputs);
+					drawCenterRoiBounds(colourCroppedImage, finalSegmentationOutput, colourTileReaderOutputs);
+					return(colourCroppedImage);
+				}
+			});
 
-			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
 
 			return;
@@ -429,15 +411,15 @@ public class BsubtilisSporulationProfile extends Profile{
 		//7. output the results
 
 		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"colony size round\t" +
-				"circularity\t" +
-				"sporulation score\t"+
-				"sporulation score round\t"+
-				"center sporulation score\t"+
-				"center opacity score\n");
+		output.setColumns("row",
+				"column",
+				"colony size",
+				"colony size round",
+				"circularity",
+				"sporulation score",
+				"sporulation score round",
+				"center sporulation score",
+				"center opacity score");
 
 
 		//for all rows
@@ -452,20 +434,21 @@ public class BsubtilisSporulationProfile extends Profile{
 				}
 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonyRoundSize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].relativeColorIntensity) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].relativeColorIntensityForRoundSize) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].centerAreaColor) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].centerAreaOpacity) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(basicTileReaderOutputs[i][j].colonySize)
+						.addInteger(basicTileReaderOutputs[i][j].colonyRoundSize)
+						.addDecimal(basicTileReaderOutputs[i][j].circularity)
+						.addDecimal(colourTileReaderOutputs[i][j].relativeColorIntensity)
+						.addDecimal(colourTileReaderOutputs[i][j].relativeColorIntensityForRoundSize)
+						.addDecimal(colourTileReaderOutputs[i][j].centerAreaColor)
+						.addDecimal(colourTileReaderOutputs[i][j].centerAreaOpacity)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -475,24 +458,17 @@ public class BsubtilisSporulationProfile extends Profile{
 
 
 
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			//ImagePlus croppedImageSegmented = croppedImage.duplicate();
-
-			//RisingTideSegmenter.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			drawCenterRoiBounds(colourCroppedImage, segmentationOutput, colourTileReaderOutputs);
-			drawColonyRoundBounds(colourCroppedImage, segmentationOutput, colourTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+		//7.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+				Toolbox.drawColonyBounds(colourCroppedImage, finalSegmentationOutput, basicTileReaderOutputs);
+				drawCenterRoiBounds(colourCroppedImage, finalSegmentationOutput, colourTileReaderOutputs);
+				drawColonyRoundBounds(colourCroppedImage, finalSegmentationOutput, colourTileReaderOutputs);
+				return(colourCroppedImage);
+			}
+		});
 
-			grayscaleCroppedImage.flush();
-		}
-		else
-		{
-			grayscaleCroppedImage.flush();
-		}
+		grayscaleCroppedImage.flush();
 
 	}
 
@@ -563,9 +539,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -661,9 +635,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -695,225 +667,6 @@ public class BsubtilisSporulationProfile extends Profile{
 
 
 
-
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using a fancy local thresholding algorithm, as described here:
@@ -930,31 +683,6 @@ public class BsubtilisSporulationProfile extends Profile{
 	}
 
 
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-
 	/**
 	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
 	 * If so, it will return true. If everything is ok, it will return false.
@@ -1004,28 +732,6 @@ public class BsubtilisSporulationProfile extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
@@ -3,16 +3,11 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
-import ij.measure.Calibration;
 import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
 import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper2;
 import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
@@ -31,12 +26,13 @@ import iris.tileReaders.CPRGColorTileReader;
 import iris.tileReaders.CPRGColorTileReaderHSV;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -88,15 +84,15 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -209,10 +205,12 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 		//
 
 		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
+		final ImagePlus colourCroppedImage = croppedImage.duplicate();
 		colourCroppedImage.setRoi(croppedImage.getRoi());
-		ImagePlus colourCroppedImage_duplicate = colourCroppedImage.duplicate();
-		colourCroppedImage_duplicate.setRoi(colourCroppedImage.getRoi());
+		//keep another copy to draw the grid on, if there's going to be a grid image
+		final ImagePlus colourCroppedImage_duplicate = GridImageWriter.savesAllPlates() ? colourCroppedImage.duplicate() : null;
+		if(colourCroppedImage_duplicate!=null)
+			colourCroppedImage_duplicate.setRoi(colourCroppedImage.getRoi());
 		ImageConverter imageConverter = new ImageConverter(croppedImage);
 		imageConverter.convertToGray8();
 
@@ -242,8 +240,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			//do nothing more
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, userProfileSettings.segmentationSettings.ColonyBreathingSpace);
 		}
 
 		//check if something went wrong
@@ -267,20 +264,23 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			}			
 
 
-			//save the grid before exiting
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage_duplicate, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(colourCroppedImage_duplicate, filename + ".grid.jpg");
+			//save the grid before exiting (the colour picture isn't needed anymore, so it's saved as it is)
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					return(colourCroppedImage);
+				}
+			});
 
 			return;
 		}
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 
@@ -305,34 +305,37 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		CPRGTileReaderOutput [][] cprgTileReaderOutputs = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		CPRGTileReaderOutput [][] cprgTileReaderOutputsHSV = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final CPRGTileReaderOutput [][] cprgTileReaderOutputs = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final CPRGTileReaderOutput [][] cprgTileReaderOutputsHSV = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
 
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final ImagePlus finalCroppedImage = croppedImage;
+		final float finalMinimumValidColonyCircularity = minimumValidColonyCircularity;
+		final int finalMinimumValidColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 				opacityReaderOutputs[i][j] = OpacityTileReader.processTile(
-						new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new OpacityTileReaderInput(finalCroppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));
 
 				//each generated tile image is cleaned up inside the tile reader
 				
 				//colony QC
-				if(opacityReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						opacityReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(opacityReaderOutputs[i][j].colonySize<finalMinimumValidColonySize ||
+						opacityReaderOutputs[i][j].circularity<finalMinimumValidColonyCircularity){
 					opacityReaderOutputs[i][j] = new OpacityTileReaderOutput();
 				}
 
 				//only run the CPRG color analysis if there is a colony in the tile
 				if(opacityReaderOutputs[i][j].colonySize>0){
 					cprgTileReaderOutputs[i][j] = CPRGColorTileReader.processTile(
-							new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], colorSettings));
+							new ColorTileReaderInput(colourCroppedImage, finalSegmentationOutput.ROImatrix[i][j], colorSettings));
 
 					cprgTileReaderOutputsHSV[i][j] = CPRGColorTileReaderHSV.processTile(
-							new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], colorSettings));
+							new ColorTileReaderInput(colourCroppedImage, finalSegmentationOutput.ROImatrix[i][j], colorSettings));
 				}
 				else{
 					cprgTileReaderOutputs[i][j] = new CPRGTileReaderOutput();
@@ -345,7 +348,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				}
 
 			}
-		}
+		});
 
 
 
@@ -375,34 +378,35 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 		//7.1 output the colony measurements as a text file
 		//7.1 output the colony measurements as a text file
-		output.append("row\t"+
-				"column\t"+
-				"size\t"+
-				"opacity\t"+
-				"circularity\t"+
-				"avg. dye intensity in colony\t"+
-				"avg. dye intensity in tile\t"+
-				"hsv avg. dye intensity in colony\t"+
-				"hsv avg. dye intensity in tile\n");
+		output.setColumns("row",
+				"column",
+				"size",
+				"opacity",
+				"circularity",
+				"avg. dye intensity in colony",
+				"avg. dye intensity in tile",
+				"hsv avg. dye intensity in colony",
+				"hsv avg. dye intensity in tile");
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(opacityReaderOutputs[i][j].colonySize) + "\t"
-						+ Integer.toString(opacityReaderOutputs[i][j].opacity) + "\t"
-						+ String.format("%.3f", opacityReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(cprgTileReaderOutputs[i][j].colorSumInColony) + "\t"
-						+ Integer.toString(cprgTileReaderOutputs[i][j].colorSumInTile)  + "\t"
-						+ Integer.toString(cprgTileReaderOutputsHSV[i][j].colorSumInColony) + "\t"
-						+ Integer.toString(cprgTileReaderOutputsHSV[i][j].colorSumInTile)  + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(opacityReaderOutputs[i][j].colonySize)
+						.addInteger(opacityReaderOutputs[i][j].opacity)
+						.addDecimal(opacityReaderOutputs[i][j].circularity)
+						.addInteger(cprgTileReaderOutputs[i][j].colorSumInColony)
+						.addInteger(cprgTileReaderOutputs[i][j].colorSumInTile)
+						.addInteger(cprgTileReaderOutputsHSV[i][j].colorSumInColony)
+						.addInteger(cprgTileReaderOutputsHSV[i][j].colorSumInTile)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -412,14 +416,15 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 
 
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			colourCroppedImage_duplicate = ColonyBreathing.paintSegmentedImage(colourCroppedImage_duplicate, segmentationOutput);
-			Toolbox.drawColonyBounds(colourCroppedImage_duplicate, segmentationOutput, opacityReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage_duplicate, filename + ".grid.jpg");
-		}
+		//7.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage_duplicate, finalSegmentationOutput);
+				colourCroppedImage_duplicate.flush();
+				Toolbox.drawColonyBounds(paintedImage, finalSegmentationOutput, opacityReaderOutputs);
+				return(paintedImage);
+			}
+		});
 
 	}
 
@@ -503,271 +508,6 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 	}
 
 
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
-
 
 
 }
@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
@@ -17,14 +16,18 @@ import iris.imageSegmenters.RisingTideSegmenter;
 import iris.settings.BasicSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.OpacityTileReaderInput;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.OpacityTileReader;
+import iris.tileReaders.PlateTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -65,15 +68,15 @@ public class ColonyOpacityProfile extends Profile {
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -181,8 +184,10 @@ public class ColonyOpacityProfile extends Profile {
 		//
 
 		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
-		colourCroppedImage.setRoi(croppedImage.getRoi());
+		//keep the colour picture to draw the grid on, if there's going to be a grid image
+		final ImagePlus colourCroppedImage = GridImageWriter.savesAllPlates() ? croppedImage.duplicate() : null;
+		if(colourCroppedImage!=null)
+			colourCroppedImage.setRoi(croppedImage.getRoi());
 
 		ImageConverter imageConverter = new ImageConverter(croppedImage);
 		imageConverter.convertToGray8();
@@ -202,14 +207,15 @@ public class ColonyOpacityProfile extends Profile {
 
 
 		//let the tile boundaries "breathe"
+		int breathingSpace = ColonyBreathing.defaultBreathingSpace;
 		if(userProfileSettings==null){//default behavior
-			ColonyBreathing.breathingSpace = 8;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			breathingSpace = 8;
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, breathingSpace);
 
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, breathingSpace);
 		}
 
 		
@@ -236,23 +242,28 @@ public class ColonyOpacityProfile extends Profile {
 
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			final ImagePlus grayscaleImage = croppedImage;
+			final BasicImageSegmenterOutput failedSegmentationOutput = segmentationOutput;
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					return(ColonyBreathing.paintSegmentedImage(grayscaleImage, failedSegmentationOutput)); //calculate grid image
+				}
+			});
 
 			return;
 		}
 
 		//6. colony breathing
-		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, breathingSpace);
 
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 
@@ -276,26 +287,39 @@ public class ColonyOpacityProfile extends Profile {
 		//7. analyze each tile
 
 		//create an array of measurement outputs
-		OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				readerOutputs[i][j] = OpacityTileReader.processTile(
-						new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+		final OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+
+		final ImagePlus finalCroppedImage = croppedImage;
+		final float finalMinimumValidColonyCircularity = minimumValidColonyCircularity;
+		final int finalMinimumValidColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
+
+		//if asked for, find the colonies of the whole plate in one go, instead of tile by tile
+		final BasicTileReaderOutput [][] plateReaderOutputs = IrisFrontend.plateLabelling && !IrisFrontend.singleColonyRun ?
+				PlateTileReader.processPlate(croppedImage, segmentationOutput.ROImatrix) : null;
+
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
+				if(plateReaderOutputs!=null){
+					readerOutputs[i][j] = getPlateTileOpacity(finalCroppedImage, finalSegmentationOutput.ROImatrix[i][j], plateReaderOutputs[i][j]);
+				}
+				else{
+					readerOutputs[i][j] = OpacityTileReader.processTile(
+							new OpacityTileReaderInput(finalCroppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));
+				}
 
 				//each generated tile image is cleaned up inside the tile reader
 				
 				//colony QC
-				if(readerOutputs[i][j].colonySize<minimumValidColonySize ||
-						readerOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(readerOutputs[i][j].colonySize<finalMinimumValidColonySize ||
+						readerOutputs[i][j].circularity<finalMinimumValidColonyCircularity){
 					readerOutputs[i][j] = new OpacityTileReaderOutput();
 				}
 
 				
 			}
-		}
+		});
 
 
 
@@ -309,8 +333,13 @@ public class ColonyOpacityProfile extends Profile {
 			System.err.println("\ttoo many empty rows/columns");
 
 			//calculate and save grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			final ImagePlus failedImage = GridImageWriter.getPlateToPaint(colourCroppedImage, croppedImage, true);
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					Toolbox.drawColonyBounds(failedImage, finalSegmentationOutput, readerOutputs);
+					return(failedImage);
+				}
+			});
 
 			return;
 		}
@@ -321,21 +350,22 @@ public class ColonyOpacityProfile extends Profile {
 		//8. output the results
 
 		//8.1 output the colony measurements as a text file
-		output.append("row\tcolumn\tsize\tcircularity\topacity\n");
+		output.setColumns("row", "column", "size", "circularity", "opacity");
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].opacity) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(readerOutputs[i][j].colonySize)
+						.addDecimal(readerOutputs[i][j].circularity)
+						.addInteger(readerOutputs[i][j].opacity)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -345,15 +375,40 @@ public class ColonyOpacityProfile extends Profile {
 
 
 
-		//8.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+		//8.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, finalSegmentationOutput);
+				colourCroppedImage.flush();
+				Toolbox.drawColonyBounds(paintedImage, finalSegmentationOutput, readerOutputs);
+				return(paintedImage);
+			}
+		});
+
+	}
+
+
+	/**
+	 * Measures the opacity of the colony the plate-wide labelling found in the given tile,
+	 * and returns it together with the size and circularity of the colony
+	 * @param croppedImage
+	 * @param tileRoi
+	 * @param plateReaderOutput
+	 * @return
+	 */
+	private OpacityTileReaderOutput getPlateTileOpacity(ImagePlus croppedImage, Roi tileRoi, BasicTileReaderOutput plateReaderOutput){
+		if(plateReaderOutput.colonySize==0){
+			OpacityTileReaderOutput output = new OpacityTileReaderOutput();
+			output.emptyTile = plateReaderOutput.emptyTile;
+			output.emptyResulsTable = plateReaderOutput.emptyResulsTable;
+			return(output);
 		}
 
+		OpacityTileReaderOutput output = OpacityTileReader.processDefinedColonyTile(
+				new OpacityTileReaderInput(croppedImage, tileRoi, plateReaderOutput.colonyROI, plateReaderOutput.colonySize, settings));
+		output.circularity = plateReaderOutput.circularity;
+		output.colonyCenter = plateReaderOutput.colonyCenter;
+		return(output);
 	}
 
 
@@ -438,28 +493,6 @@ public class ColonyOpacityProfile extends Profile {
 
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
@@ -5,6 +5,7 @@ package iris.profiles;
 
 import ij.IJ;
 import ij.ImagePlus;
+import iris.utils.ImagePrefetcher;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -39,7 +40,7 @@ public class ColonyOpacityProfileInverted extends Profile {
 		//just invert picture, save it as temp, and then feed it to the normal opacity profile
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
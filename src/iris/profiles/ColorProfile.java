@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.process.ImageConverter;
 import iris.imageCroppers.NaiveImageCropper;
@@ -18,11 +17,13 @@ import iris.tileReaderOutputs.ColorTileReaderOutput;
 import iris.tileReaders.BasicTileReader;
 import iris.tileReaders.ColorTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * @author George Kritikos
@@ -62,15 +63,15 @@ public class ColorProfile extends Profile{
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -84,7 +85,7 @@ public class ColorProfile extends Profile{
 		//
 
 		//2. crop the plate to keep only the colonies
-		ImagePlus croppedImage = NaiveImageCropper.cropPlate(originalImage);
+		final ImagePlus croppedImage = NaiveImageCropper.cropPlate(originalImage);
 
 		//flush the original picture, we won't be needing it anymore
 		originalImage.flush();
@@ -98,7 +99,7 @@ public class ColorProfile extends Profile{
 		//
 
 		//3. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
+		final ImagePlus colourCroppedImage = croppedImage.duplicate();
 		ImageConverter imageConverter = new ImageConverter(croppedImage);
 		imageConverter.convertToGray8();
 
@@ -110,7 +111,7 @@ public class ColorProfile extends Profile{
 
 		//4. segment the cropped picture
 		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		final BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
 
 		//check if something went wrong
 		if(segmentationOutput.errorOccurred){
@@ -134,19 +135,22 @@ public class ColorProfile extends Profile{
 
 
 			//save the grid before exiting
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					return(croppedImage);
+				}
+			});
 
 			return;
 		}
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 
@@ -159,13 +163,12 @@ public class ColorProfile extends Profile{
 		//5. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 
 				//first get the colony size (so that the user doesn't have to run 2 profiles for this)
 				basicTileReaderOutputs[i][j] = BasicTileReader.processTile(
@@ -185,7 +188,7 @@ public class ColorProfile extends Profile{
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -198,8 +201,12 @@ public class ColorProfile extends Profile{
 			System.err.println("\ttoo many empty rows/columns");
 
 			//calculate and save grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
+					return(colourCroppedImage);
+				}
+			});
 
 			return;
 		}
@@ -210,14 +217,14 @@ public class ColorProfile extends Profile{
 		//6. output the results
 
 		//6.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"circularity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"biofilm area ratio\n");
+		output.setColumns("row",
+				"column",
+				"colony size",
+				"circularity",
+				"colony color intensity",
+				"biofilm area size",
+				"biofilm color intensity",
+				"biofilm area ratio");
 		
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
@@ -231,19 +238,20 @@ public class ColorProfile extends Profile{
 				}
 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", biofilmAreaRatio) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(basicTileReaderOutputs[i][j].colonySize)
+						.addDecimal(basicTileReaderOutputs[i][j].circularity)
+						.addInteger(colourTileReaderOutputs[i][j].colorIntensitySum)
+						.addInteger(colourTileReaderOutputs[i][j].biofilmArea)
+						.addInteger(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea)
+						.addDecimal(biofilmAreaRatio)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -253,13 +261,13 @@ public class ColorProfile extends Profile{
 
 
 
-		//6.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-		}
+		//6.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+				Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
+				return(colourCroppedImage);
+			}
+		});
 
 	}
 	
@@ -313,28 +321,6 @@ public class ColorProfile extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
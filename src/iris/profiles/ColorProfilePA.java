@@ -4,16 +4,10 @@
 package iris.profiles;
 
 import fiji.threshold.Auto_Local_Threshold;
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
-import ij.measure.Calibration;
 import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper;
 import iris.imageCroppers.GenericImageCropper2;
 import iris.imageCroppers.NaiveImageCropper;
@@ -33,12 +27,13 @@ import iris.tileReaders.ColorTileReaderHSB;
 import iris.tileReaders.LaplacianFilterTileReader;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * @author George Kritikos
@@ -80,15 +75,15 @@ public class ColorProfilePA extends Profile{
 		//IrisFrontend.writeToLog("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -200,15 +195,17 @@ public class ColorProfilePA extends Profile{
 
 
 			//save the grid before exiting
-			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
-			croppedImageSegmented.setRoi(grayscaleCroppedImage.getRoi());
-
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
+			final ImagePlus failedGrayscaleCroppedImage = grayscaleCroppedImage;
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus croppedImageSegmented = failedGrayscaleCroppedImage.duplicate();
+					croppedImageSegmented.setRoi(failedGrayscaleCroppedImage.getRoi());
+					failedGrayscaleCroppedImage.flush();
+					return(croppedImageSegmented);
+				}
+			});
 
 			rotatedImage.flush();//12.01.2014: moved from above 
-			croppedImageSegmented.flush();
-			grayscaleCroppedImage.flush();
 
 			return;
 		}
@@ -228,11 +225,11 @@ public class ColorProfilePA extends Profile{
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 
@@ -250,26 +247,29 @@ public class ColorProfilePA extends Profile{
 		//settings.useHoughCircles = true;
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+
+		final ImagePlus finalBW_local_thresholded_picture = BW_local_thresholded_picture;
+		final ImagePlus finalColourCroppedImage = colourCroppedImage;
+		final ImagePlus finalGrayscaleCroppedImage = grayscaleCroppedImage;
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 
 				//first get the colony size using one method
 
 				basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-						new BasicTileReaderInput(BW_local_thresholded_picture, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(finalBW_local_thresholded_picture, finalSegmentationOutput.ROImatrix[i][j], settings));
 
 
 
 				//try once more using the other
 				if(basicTileReaderOutputs[i][j].colonySize==0){
 					basicTileReaderOutputs[i][j] = LaplacianFilterTileReader.processTile(
-							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new BasicTileReaderInput(finalGrayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));
 
 				}
 
@@ -277,13 +277,13 @@ public class ColorProfilePA extends Profile{
 				if(basicTileReaderOutputs[i][j].colonySize>0){
 					//colour
 					colourTileReaderOutputs[i][j] = ColorTileReaderHSB.processDefinedColonyTile(
-							new ColorTileReaderInput3(colourCroppedImage, segmentationOutput.ROImatrix[i][j], 
+							new ColorTileReaderInput3(finalColourCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 									basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, 
 									basicTileReaderOutputs[i][j].colonyCenter,settings));
 
 					//opacity -- to check if colony darkness correlates with colour information
 					opacityTileReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-							new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+							new OpacityTileReaderInput(finalGrayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 									basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 
 				}
@@ -302,7 +302,7 @@ public class ColorProfilePA extends Profile{
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 		
 		
 
@@ -404,13 +404,13 @@ public class ColorProfilePA extends Profile{
 			System.err.println("\ttoo many empty rows/columns");
 
 			//calculate and save grid image
-			ImagePlus croppedImageSegmented = colourCroppedImage.duplicate();
-			croppedImageSegmented.setRoi(colourCroppedImage.getRoi());
-
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					Toolbox.drawColonyBounds(finalColourCroppedImage, finalSegmentationOutput, basicTileReaderOutputs);
+					return(finalColourCroppedImage);
+				}
+			});
 
-			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
 
 			return;
@@ -422,17 +422,17 @@ public class ColorProfilePA extends Profile{
 		//7. output the results
 
 		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"circularity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"biofilm area ratio\t" +
-				"size normalized color intensity\t" +
-				"mean sample color intensity\t" +
-				"opacity\n");
+		output.setColumns("row",
+				"column",
+				"colony size",
+				"circularity",
+				"colony color intensity",
+				"biofilm area size",
+				"biofilm color intensity",
+				"biofilm area ratio",
+				"size normalized color intensity",
+				"mean sample color intensity",
+				"opacity");
 
 
 		//for all rows
@@ -447,22 +447,23 @@ public class ColorProfilePA extends Profile{
 				}
 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", biofilmAreaRatio) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].relativeColorIntensity) + "\t" 
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].meanSampleColor) + "\t" 
-						+ Integer.toString(opacityTileReaderOutputs[i][j].opacity) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(basicTileReaderOutputs[i][j].colonySize)
+						.addDecimal(basicTileReaderOutputs[i][j].circularity)
+						.addInteger(colourTileReaderOutputs[i][j].colorIntensitySum)
+						.addInteger(colourTileReaderOutputs[i][j].biofilmArea)
+						.addInteger(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea)
+						.addDecimal(biofilmAreaRatio)
+						.addDecimal(colourTileReaderOutputs[i][j].relativeColorIntensity)
+						.addDecimal(colourTileReaderOutputs[i][j].meanSampleColor)
+						.addInteger(opacityTileReaderOutputs[i][j].opacity)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -472,32 +473,7 @@ public class ColorProfilePA extends Profile{
 
 
 
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			//ImagePlus croppedImageSegmented = croppedImage.duplicate();
-
-			//RisingTideSegmenter.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			//ColonyBreathing.paintSegmentedImage(grayscaleCroppedImage, segmentationOutput); ///
-
-			//Toolbox.savePicture(grayscaleCroppedImage, filename + ".grid.jpg");
-
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			//now paint also the tile bounds 
-			//the original picture will be untouched
-			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-
-			grayscaleCroppedImage.flush();
-		}
-		else
-		{
-			grayscaleCroppedImage.flush();
-		}
-
-
-		//7.3 save any colony picture files, if in debug mode
+		//7.2 save any colony picture files, if in debug mode
 		//make it a 2-pass thing
 		if(IrisFrontend.debug){
 
@@ -558,225 +534,28 @@ public class ColorProfilePA extends Profile{
 			}
 		}
 
-		colourCroppedImage.flush();
-
-	}
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
+		//7.3 save the grid image, if requested
+		//this is done last, as the grid is drawn on the colour picture in the background
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+				Toolbox.drawColonyBounds(finalColourCroppedImage, finalSegmentationOutput, basicTileReaderOutputs);
+				//now paint also the tile bounds 
+				//the original picture will be untouched
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(finalColourCroppedImage, finalSegmentationOutput);
+				finalColourCroppedImage.flush();
+				return(paintedImage);
 			}
+		});
 
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
+		grayscaleCroppedImage.flush();
 
-		return(sumOfRows);
 	}
 
 
 
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
 
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
 
 
 	/**
@@ -795,31 +574,6 @@ public class ColorProfilePA extends Profile{
 	}
 
 
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-
 	/**
 	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
 	 * If so, it will return true. If everything is ok, it will return false.
@@ -869,28 +623,6 @@ public class ColorProfilePA extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
@@ -23,12 +22,14 @@ import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.MorphologyTileReaderOutput;
 import iris.tileReaders.MorphologyTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -76,15 +77,15 @@ public class MorphologyProfileCandida96 extends Profile {
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImagePrefetcher.openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -183,8 +184,10 @@ public class MorphologyProfileCandida96 extends Profile {
 
 
 
-		ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
-		colorCroppedImage.setRoi(croppedImage.getRoi());
+		//keep the colour picture to draw the grid on, if there's going to be a grid image
+		final ImagePlus colorCroppedImage = GridImageWriter.savesAllPlates() ? croppedImage.duplicate() : null; //it's already rotated
+		if(colorCroppedImage!=null)
+			colorCroppedImage.setRoi(croppedImage.getRoi());
 		rotatedImage.flush();
 
 
@@ -223,14 +226,12 @@ public class MorphologyProfileCandida96 extends Profile {
 
 		if(userProfileSettings==null){//default behavior
 			//let the tile boundaries "breathe"
-			ColonyBreathing.breathingSpace = 100;//20;
 			segmentationInput = new BasicImageSegmenterInput(croppedImage.duplicate(), settings);
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, 100);//20;
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
 			segmentationInput = new BasicImageSegmenterInput(croppedImage.duplicate(), settings);
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, userProfileSettings.segmentationSettings.ColonyBreathingSpace);
 		}
 
 
@@ -255,20 +256,26 @@ public class MorphologyProfileCandida96 extends Profile {
 
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-			croppedImage.flush();
+			final ImagePlus failedCroppedImage = croppedImage;
+			final BasicImageSegmenterOutput failedSegmentationOutput = segmentationOutput;
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(failedCroppedImage, failedSegmentationOutput); //calculate grid image
+					failedCroppedImage.flush();
+					return(paintedImage);
+				}
+			});
 			BWimageToSegment.flush();
 			return;
 		}
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 		//
@@ -289,27 +296,30 @@ public class MorphologyProfileCandida96 extends Profile {
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+
+		final ImagePlus finalCroppedImage = croppedImage;
+		final float finalMinimumValidColonyCircularity = minimumValidColonyCircularity;
+		final int finalMinimumValidColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 				try{
 					readerOutputs[i][j] = MorphologyTileReader.processTileWrinkly(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new OpacityTileReaderInput(finalCroppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));
 				}catch(Exception e){
 					System.err.print("\tError getting morphology at tile "+ Integer.toString(i+1) +" "+ Integer.toString(j+1) + "\n");
 					readerOutputs[i][j] = new MorphologyTileReaderOutput();
 				}
 				//each generated tile image is cleaned up inside the tile reader
 				
-				if(readerOutputs[i][j].colonySize<minimumValidColonySize ||
-						readerOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(readerOutputs[i][j].colonySize<finalMinimumValidColonySize ||
+						readerOutputs[i][j].circularity<finalMinimumValidColonyCircularity){
 					readerOutputs[i][j] = new MorphologyTileReaderOutput();
 				}
 			}
-		}
+		});
 
 
 
@@ -342,40 +352,41 @@ public class MorphologyProfileCandida96 extends Profile {
 
 		//7.1 output the colony measurements as a text file
 		//output.append("row\tcolumn\tcolony size\tcolony circularity\tcolony morphology score\tcolony normalized morphology score\t\n");
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"colony circularity\t" +
-				"colony opacity\t" +
-				"morphology score fixed circles\t" +
-				"morphology score whole colony\t" +
-				"normalized morphology score\t" +
-				"in agar size\t" +
-				"in agar circularity\t" +
-				"in agar opacity\t" + 
-				"whole tile opacity\n");
+		output.setColumns("row",
+				"column",
+				"colony size",
+				"colony circularity",
+				"colony opacity",
+				"morphology score fixed circles",
+				"morphology score whole colony",
+				"normalized morphology score",
+				"in agar size",
+				"in agar circularity",
+				"in agar opacity",
+				"whole tile opacity");
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].colonyOpacity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].morphologyScoreFixedNumberOfCircles) + "\t"
-						+ Integer.toString(readerOutputs[i][j].morphologyScoreWholeColony) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].normalizedMorphologyScore) + "\t"
-						+ Integer.toString(readerOutputs[i][j].inAgarSize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].inAgarCircularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].inAgarOpacity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].wholeTileOpacity) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(readerOutputs[i][j].colonySize)
+						.addDecimal(readerOutputs[i][j].circularity)
+						.addInteger(readerOutputs[i][j].colonyOpacity)
+						.addInteger(readerOutputs[i][j].morphologyScoreFixedNumberOfCircles)
+						.addInteger(readerOutputs[i][j].morphologyScoreWholeColony)
+						.addDecimal(readerOutputs[i][j].normalizedMorphologyScore)
+						.addInteger(readerOutputs[i][j].inAgarSize)
+						.addDecimal(readerOutputs[i][j].inAgarCircularity)
+						.addInteger(readerOutputs[i][j].inAgarOpacity)
+						.addInteger(readerOutputs[i][j].wholeTileOpacity)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -384,19 +395,20 @@ public class MorphologyProfileCandida96 extends Profile {
 		}
 
 
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-
-			//draw the colony bounds, and the in-agar growth bounds
-			Toolbox.drawColonyBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-			drawInAgarGrowthBounds(colorCroppedImage, segmentationOutput, readerOutputs);
+		//7.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
 
-			//calculate grid image
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
+				//draw the colony bounds, and the in-agar growth bounds
+				Toolbox.drawColonyBounds(colorCroppedImage, finalSegmentationOutput, readerOutputs);
+				drawInAgarGrowthBounds(colorCroppedImage, finalSegmentationOutput, readerOutputs);
 
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-		}
+				//calculate grid image
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, finalSegmentationOutput);
+				colorCroppedImage.flush();
+				return(paintedImage);
+			}
+		});
 
 	}
 
@@ -472,9 +484,7 @@ public class MorphologyProfileCandida96 extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -553,28 +563,6 @@ public class MorphologyProfileCandida96 extends Profile {
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
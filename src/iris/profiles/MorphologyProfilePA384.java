@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
@@ -33,13 +32,15 @@ import iris.tileReaders.MorphologyTileReader;
 import iris.tileReaders.MorphologyTileReaderStm;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.awt.Point;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -84,17 +85,17 @@ public class MorphologyProfilePA384 extends Profile {
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
 		ImagePlus originalImage;
 		try {
-			originalImage  = IJ.openImage(filename);
+			originalImage  = ImagePrefetcher.openImage(filename);
 		} catch (Exception e) {
 			originalImage = null;
 		}		
@@ -213,7 +214,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 
 
-		ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
+		final ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
 		colorCroppedImage.setRoi(croppedImage.getRoi());
 		//flush the rotated picture, we won't be needing it anymore
 		rotatedImage.flush();
@@ -235,10 +236,10 @@ public class MorphologyProfilePA384 extends Profile {
 		Toolbox.turnImageBW_Otsu_auto(BWimageToSegment);
 
 
-		ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colorCroppedImage);
+		final ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colorCroppedImage);
 
 		//get a copy of the picture thresholded using a local algorithm
-		ImagePlus BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
+		final ImagePlus BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
 
 
 		//
@@ -258,9 +259,8 @@ public class MorphologyProfilePA384 extends Profile {
 			//do nothing more
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationInput = new BasicImageSegmenterInput(croppedImage.duplicate(), settings);
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput, userProfileSettings.segmentationSettings.ColonyBreathingSpace);
 		}
 
 		if(segmentationOutput.errorOccurred){
@@ -284,20 +284,26 @@ public class MorphologyProfilePA384 extends Profile {
 
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-			croppedImage.flush();
+			final ImagePlus failedCroppedImage = croppedImage;
+			final BasicImageSegmenterOutput failedSegmentationOutput = segmentationOutput;
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(failedCroppedImage, failedSegmentationOutput); //calculate grid image
+					failedCroppedImage.flush();
+					return(paintedImage);
+				}
+			});
 			BWimageToSegment.flush();
 			return;
 		}
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 		//
@@ -318,49 +324,51 @@ public class MorphologyProfilePA384 extends Profile {
 
 
 		//precalculate the colony centers
-		ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
+		final ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
 
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput[][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput[][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		MorphologyTileReaderOutput [][] morphologyReaderOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		MorphologyTileReaderOutput [][] morphologyReaderOutputs_wholeTile = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput[][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput[][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final MorphologyTileReaderOutput [][] morphologyReaderOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final MorphologyTileReaderOutput [][] morphologyReaderOutputs_wholeTile = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
 
 		//colonies are smaller here, so we need to start with tiny circles
 		MorphologyTileReader.initialRadius = 15;
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final float finalMinimumValidColonyCircularity = minimumValidColonyCircularity;
+		final int finalMinimumValidColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput finalSegmentationOutput = segmentationOutput;
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 				try{
 					//try 3 colony definition algorithms and pick the one who found the largest colony
 
 
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 					try{basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-							new BasicTileReaderInput(BW_local_thresholded_picture, segmentationOutput.ROImatrix[i][j], settings));} catch(Exception e){}; 
+							new BasicTileReaderInput(BW_local_thresholded_picture, finalSegmentationOutput.ROImatrix[i][j], settings));} catch(Exception e){}; 
 
 							BasicTileReaderOutput laplacianReaderOutput = new BasicTileReaderOutput();
 							try{laplacianReaderOutput = LaplacianFilterTileReader.processTile(
-									new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));} catch(Exception e){};
+									new BasicTileReaderInput(grayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], settings));} catch(Exception e){};
 
 									BasicTileReaderOutput stmMorphologyReaderOutput = new BasicTileReaderOutput();
 									try{stmMorphologyReaderOutput = MorphologyTileReaderStm.processTileOverAgarOnly(colonyCenteredInput[i][j]);} catch(Exception e){};
 
-									if(basicTileReaderOutputs[i][j].colonySize<laplacianReaderOutput.colonySize && laplacianReaderOutput.circularity>minimumValidColonyCircularity){
+									if(basicTileReaderOutputs[i][j].colonySize<laplacianReaderOutput.colonySize && laplacianReaderOutput.circularity>finalMinimumValidColonyCircularity){
 										basicTileReaderOutputs[i][j] = laplacianReaderOutput;
 									}
-									if(basicTileReaderOutputs[i][j].colonySize<stmMorphologyReaderOutput.colonySize && stmMorphologyReaderOutput.circularity>minimumValidColonyCircularity){
+									if(basicTileReaderOutputs[i][j].colonySize<stmMorphologyReaderOutput.colonySize && stmMorphologyReaderOutput.circularity>finalMinimumValidColonyCircularity){
 										basicTileReaderOutputs[i][j] = stmMorphologyReaderOutput;
 									}
 
 									//if colony smaller than user-defined minimum
-									if(basicTileReaderOutputs[i][j].colonySize<minimumValidColonySize){
+									if(basicTileReaderOutputs[i][j].colonySize<finalMinimumValidColonySize){
 										basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 									}
 
@@ -378,7 +386,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 										try{
 											morphologyReaderOutputs[i][j] = MorphologyTileReader.processDefinedColonyTile(
-													new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+													new OpacityTileReaderInput(grayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 															basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 										}catch(Exception e){ 
 											morphologyReaderOutputs[i][j] = new MorphologyTileReaderOutput(); 
@@ -388,14 +396,14 @@ public class MorphologyProfilePA384 extends Profile {
 
 										try{
 											colorReaderOutputs[i][j] = ColorTileReaderHSB.processDefinedColonyTile(
-													new ColorTileReaderInput3(colorCroppedImage, segmentationOutput.ROImatrix[i][j], 
+													new ColorTileReaderInput3(colorCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 															basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, basicTileReaderOutputs[i][j].colonyCenter, settings));
 										}catch(Exception e){ colorReaderOutputs[i][j] = new ColorTileReaderOutput(); }
 
 										//opacity -- to check if colony darkness correlates with colour information -- true means opacities can get negative
 										try{
 											opacityTileReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-													new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+													new OpacityTileReaderInput(grayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 															basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings), true);
 										}catch(Exception e){ opacityTileReaderOutputs[i][j] = new OpacityTileReaderOutput(); }
 
@@ -418,7 +426,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 				try{
 					//in any case (e.g. even if no colony was found there), opacityTileReaderOutputs should contain the tile opacity
-					OpacityTileReaderOutput opacityWholeTileOutput = OpacityTileReader.getWholeTileOpacity(new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+					OpacityTileReaderOutput opacityWholeTileOutput = OpacityTileReader.getWholeTileOpacity(new OpacityTileReaderInput(grayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 							basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 					opacityTileReaderOutputs[i][j].wholeTileOpacity = opacityWholeTileOutput.wholeTileOpacity;
 					opacityTileReaderOutputs[i][j].wholeTileSize = opacityWholeTileOutput.wholeTileSize;
@@ -428,7 +436,7 @@ public class MorphologyProfilePA384 extends Profile {
 				}
 
 				try{
-				morphologyReaderOutputs_wholeTile[i][j] = MorphologyTileReader.getWholeTileMorphology(new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+				morphologyReaderOutputs_wholeTile[i][j] = MorphologyTileReader.getWholeTileMorphology(new OpacityTileReaderInput(grayscaleCroppedImage, finalSegmentationOutput.ROImatrix[i][j], 
 						basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 				} catch(Exception e){
 					morphologyReaderOutputs_wholeTile[i][j] = new MorphologyTileReaderOutput();
@@ -437,7 +445,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -469,27 +477,27 @@ public class MorphologyProfilePA384 extends Profile {
 
 		//7.1 output the colony measurements as a text file
 		//output.append("row\tcolumn\tcolony size\tcolony circularity\tcolony morphology score\tcolony normalized morphology score\t\n");
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"colony circularity\t" +
-				"colony opacity\t" +
-				"morphology score fixed circles\t" +
-				"morphology score whole colony\t" +
-				"normalized morphology score\t" +
-				//				"in agar size\t" +
-				//				"in agar circularity\t" +
-				//				"in agar opacity\t" + 
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"size normalized color intensity\t" +
-				"brightness corrected size normalized color intensity\t" +
-				"average pixel saturation\t" +
-				"whole tile opacity\t" +
-				"whole tile size\t" + 
-				"whole tile morphology fixed circles\t" +
-				"whole tile morphology\n");
+		output.setColumns("row",
+				"column",
+				"colony size",
+				"colony circularity",
+				"colony opacity",
+				"morphology score fixed circles",
+				"morphology score whole colony",
+				"normalized morphology score",
+				//				"in agar size",
+				//				"in agar circularity",
+				//				"in agar opacity",
+				"colony color intensity",
+				"biofilm area size",
+				"biofilm color intensity",
+				"size normalized color intensity",
+				"brightness corrected size normalized color intensity",
+				"average pixel saturation",
+				"whole tile opacity",
+				"whole tile size",
+				"whole tile morphology fixed circles",
+				"whole tile morphology");
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
@@ -501,32 +509,33 @@ public class MorphologyProfilePA384 extends Profile {
 				if(basicTileReaderOutputs[i][j].colonySize>0)
 					brightnessCorrectedSizeNormalizedColorIntensity = colorReaderOutputs[i][j].relativeColorIntensity * 0.5 + opacityTileReaderOutputs[i][j].opacity /basicTileReaderOutputs[i][j].colonySize; 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(opacityTileReaderOutputs[i][j].opacity) + "\t"
-						+ Integer.toString(morphologyReaderOutputs[i][j].morphologyScoreFixedNumberOfCircles) + "\t"
-						+ Integer.toString(morphologyReaderOutputs[i][j].morphologyScoreWholeColony) + "\t"
-						+ String.format("%.3f", morphologyReaderOutputs[i][j].normalizedMorphologyScore) + "\t"
-						//						+ Integer.toString(morphologyReaderOutputs[i][j].inAgarSize) + "\t"
-						//						+ String.format("%.3f", morphologyReaderOutputs[i][j].inAgarCircularity) + "\t"
-						//						+ Integer.toString(morphologyReaderOutputs[i][j].inAgarOpacity) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", colorReaderOutputs[i][j].relativeColorIntensity) + "\t"
-						+ String.format("%.3f", brightnessCorrectedSizeNormalizedColorIntensity) + "\t"
-						+ String.format("%.3f", colorReaderOutputs[i][j].averagePixelSaturation) + "\t"
-						+ Integer.toString(opacityTileReaderOutputs[i][j].wholeTileOpacity) + "\t"
-						+ Integer.toString(opacityTileReaderOutputs[i][j].wholeTileSize) + "\t"
-						+ Integer.toString(morphologyReaderOutputs_wholeTile[i][j].morphologyScoreFixedNumberOfCircles) + "\t"
-						+ Integer.toString(morphologyReaderOutputs_wholeTile[i][j].morphologyScoreWholeColony) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(basicTileReaderOutputs[i][j].colonySize)
+						.addDecimal(basicTileReaderOutputs[i][j].circularity)
+						.addInteger(opacityTileReaderOutputs[i][j].opacity)
+						.addInteger(morphologyReaderOutputs[i][j].morphologyScoreFixedNumberOfCircles)
+						.addInteger(morphologyReaderOutputs[i][j].morphologyScoreWholeColony)
+						.addDecimal(morphologyReaderOutputs[i][j].normalizedMorphologyScore)
+						//.addInteger(morphologyReaderOutputs[i][j].inAgarSize)
+						//.addDecimal(morphologyReaderOutputs[i][j].inAgarCircularity)
+						//.addInteger(morphologyReaderOutputs[i][j].inAgarOpacity)
+						.addInteger(colorReaderOutputs[i][j].colorIntensitySum)
+						.addInteger(colorReaderOutputs[i][j].biofilmArea)
+						.addInteger(colorReaderOutputs[i][j].colorIntensitySumInBiofilmArea)
+						.addDecimal(colorReaderOutputs[i][j].relativeColorIntensity)
+						.addDecimal(brightnessCorrectedSizeNormalizedColorIntensity)
+						.addDecimal(colorReaderOutputs[i][j].averagePixelSaturation)
+						.addInteger(opacityTileReaderOutputs[i][j].wholeTileOpacity)
+						.addInteger(opacityTileReaderOutputs[i][j].wholeTileSize)
+						.addInteger(morphologyReaderOutputs_wholeTile[i][j].morphologyScoreFixedNumberOfCircles)
+						.addInteger(morphologyReaderOutputs_wholeTile[i][j].morphologyScoreWholeColony)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -549,18 +558,19 @@ public class MorphologyProfilePA384 extends Profile {
 		//			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
 		//		}
 		//		
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-
-			//draw the colony bounds, and the in-agar growth bounds
-			Toolbox.drawColonyBounds(colorCroppedImage, segmentationOutput, basicTileReaderOutputs);
+		//7.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
 
-			//calculate grid image
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
+				//draw the colony bounds, and the in-agar growth bounds
+				Toolbox.drawColonyBounds(colorCroppedImage, finalSegmentationOutput, basicTileReaderOutputs);
 
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-		}
+				//calculate grid image
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, finalSegmentationOutput);
+				colorCroppedImage.flush();
+				return(paintedImage);
+			}
+		});
 
 	}
 
@@ -636,9 +646,7 @@ public class MorphologyProfilePA384 extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -721,28 +729,6 @@ public class MorphologyProfilePA384 extends Profile {
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
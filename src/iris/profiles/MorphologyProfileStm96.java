@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ByteProcessor;
@@ -23,12 +22,14 @@ import iris.tileReaderOutputs.MorphologyTileReaderOutput;
 import iris.tileReaders.ColorTileReaderHSB;
 import iris.tileReaders.MorphologyTileReaderStm;
 import iris.ui.IrisFrontend;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.ParallelTileReader;
+import iris.utils.ResultsWriter;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -73,17 +74,17 @@ public class MorphologyProfileStm96 extends Profile {
 		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+		ResultsWriter output = new ResultsWriter(filename + ".iris");
+		output.appendComment("Iris output");
+		output.appendComment("Profile: " + profileName);
+		output.appendComment("Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild);
+		output.appendComment(filename);
 
 
 		//1. open the image file, and check if it was opened correctly
 		ImagePlus originalImage;
 		try {
-			originalImage  = IJ.openImage(filename);
+			originalImage  = ImagePrefetcher.openImage(filename);
 		} catch (Exception e) {
 			originalImage = null;
 		}		
@@ -140,7 +141,7 @@ public class MorphologyProfileStm96 extends Profile {
 		ImagePlus croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
 
 
-		ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
+		final ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
 		//flush the rotated picture, we won't be needing it anymore
 		rotatedImage.flush();
 
@@ -177,7 +178,7 @@ public class MorphologyProfileStm96 extends Profile {
 
 		segmentationInput.settings.maximumDistanceBetweenRows = 500;
 		segmentationInput.settings.minimumDistanceBetweenRows = 200;
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		final BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
 		//BasicImageSegmenterOutput segmentationOutput = SimpleImageSegmenter.segmentPicture_width(segmentationInput);
 
 		//let the tile boundaries "breathe"
@@ -210,20 +211,25 @@ public class MorphologyProfileStm96 extends Profile {
 
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-			croppedImage.flush();
+			final ImagePlus failedCroppedImage = croppedImage;
+			GridImageWriter.saveGridImage(filename + ".grid.jpg", true, new GridImageWriter.GridPainter() {
+				public ImagePlus paintGrid() {
+					ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(failedCroppedImage, segmentationOutput); //calculate grid image
+					failedCroppedImage.flush();
+					return(paintedImage);
+				}
+			});
 			BWimageToSegment.flush();
 			return;
 		}
 
 		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
 		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("top left of the grid found at (" + x + " , " + y + ")");
 
 		x = segmentationOutput.getBottomRightRoi().getBounds().x;
 		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		output.appendComment("bottom right of the grid found at (" + x + " , " + y + ")");
 
 
 		//
@@ -232,18 +238,17 @@ public class MorphologyProfileStm96 extends Profile {
 		//
 
 		//precalculate the colony centers
-		ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
+		final ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
 
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		//for all tiles, in parallel
+		ParallelTileReader.readAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new ParallelTileReader.TileTask() {
+			public void readTile(int i, int j) {
 				try{
 					readerOutputs[i][j] = MorphologyTileReaderStm.processTileOverAgarOnly(colonyCenteredInput[i][j]);
 					//new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
@@ -263,7 +268,7 @@ public class MorphologyProfileStm96 extends Profile {
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 
@@ -296,48 +301,49 @@ public class MorphologyProfileStm96 extends Profile {
 
 		//7.1 output the colony measurements as a text file
 		//output.append("row\tcolumn\tcolony size\tcolony circularity\tcolony morphology score\tcolony normalized morphology score\t\n");
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"colony circularity\t" +
-				"colony opacity\t" +
-				"morphology score fixed circles\t" +
-				"morphology score whole colony\t" +
-				"normalized morphology score\t" +
-				"in agar size\t" +
-				"in agar circularity\t" +
-				"in agar opacity\t" + 
-				"whole tile opacity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"size normalized color intensity\n");
+		output.setColumns("row",
+				"column",
+				"colony size",
+				"colony circularity",
+				"colony opacity",
+				"morphology score fixed circles",
+				"morphology score whole colony",
+				"normalized morphology score",
+				"in agar size",
+				"in agar circularity",
+				"in agar opacity",
+				"whole tile opacity",
+				"colony color intensity",
+				"biofilm area size",
+				"biofilm color intensity",
+				"size normalized color intensity");
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].colonyOpacity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].morphologyScoreFixedNumberOfCircles) + "\t"
-						+ Integer.toString(readerOutputs[i][j].morphologyScoreWholeColony) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].normalizedMorphologyScore) + "\t"
-						+ Integer.toString(readerOutputs[i][j].inAgarSize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].inAgarCircularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].inAgarOpacity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].wholeTileOpacity) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", colorReaderOutputs[i][j].relativeColorIntensity) + "\n");
+				output.addInteger(i+1).addInteger(j+1)
+						.addInteger(readerOutputs[i][j].colonySize)
+						.addDecimal(readerOutputs[i][j].circularity)
+						.addInteger(readerOutputs[i][j].colonyOpacity)
+						.addInteger(readerOutputs[i][j].morphologyScoreFixedNumberOfCircles)
+						.addInteger(readerOutputs[i][j].morphologyScoreWholeColony)
+						.addDecimal(readerOutputs[i][j].normalizedMorphologyScore)
+						.addInteger(readerOutputs[i][j].inAgarSize)
+						.addDecimal(readerOutputs[i][j].inAgarCircularity)
+						.addInteger(readerOutputs[i][j].inAgarOpacity)
+						.addInteger(readerOutputs[i][j].wholeTileOpacity)
+						.addInteger(colorReaderOutputs[i][j].colorIntensitySum)
+						.addInteger(colorReaderOutputs[i][j].biofilmArea)
+						.addInteger(colorReaderOutputs[i][j].colorIntensitySumInBiofilmArea)
+						.addDecimal(colorReaderOutputs[i][j].relativeColorIntensity)
+						.endRow();
 			}
 		}
 
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
+		if(!output.publish()){
 			System.err.println("Could not write output file " + outputFilename);
 		}
 		else{
@@ -360,19 +366,20 @@ public class MorphologyProfileStm96 extends Profile {
 		//			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
 		//		}
 		//		
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-
-			//draw the colony bounds, and the in-agar growth bounds
-			Toolbox.drawColonyBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-			drawInAgarGrowthBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-
-			//calculate grid image
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
-
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-		}
+		//7.2 save the grid image, if requested
+		GridImageWriter.saveGridImage(filename + ".grid.jpg", false, new GridImageWriter.GridPainter() {
+			public ImagePlus paintGrid() {
+
+				//draw the colony bounds, and the in-agar growth bounds
+				Toolbox.drawColonyBounds(colorCroppedImage, segmentationOutput, readerOutputs);
+				drawInAgarGrowthBounds(colorCroppedImage, segmentationOutput, readerOutputs);
+
+				//calculate grid image
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
+				colorCroppedImage.flush();
+				return(paintedImage);
+			}
+		});
 
 	}
 
@@ -448,9 +455,7 @@ public class MorphologyProfileStm96 extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -529,28 +534,6 @@ public class MorphologyProfileStm96 extends Profile {
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
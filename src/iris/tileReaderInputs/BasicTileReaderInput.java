@@ -7,6 +7,7 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.BasicSettings;
 import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -41,12 +42,7 @@ public class BasicTileReaderInput extends TileReaderInput {
 			}
 		}
 		else{		
-			synchronized(settings_){
-				croppedImage.setRoi(roi);
-				croppedImage.copy(false);
-
-				this.tileImage = ImagePlus.getClipboard();
-			}
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		}
 		this.settings = settings_;
 	}
@@ -81,12 +77,7 @@ public class BasicTileReaderInput extends TileReaderInput {
 	 */
 	public BasicTileReaderInput(ImagePlus croppedImage, Roi roi,
 			BasicSettings settings_, Point colonyCenter_) {
-		synchronized(settings_){
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
-		}
+		this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		this.settings = settings_;
 
 		colonyCenter = new Point(colonyCenter_);
@@ -7,6 +7,7 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.ColorSettings;
 import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -35,10 +36,7 @@ public class ColorTileReaderInput extends TileReaderInput {
 			this.tileImage.setRoi(croppedImage.getRoi());
 		}
 		else{
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		}
 		this.settings = settings_;
 	}
@@ -68,10 +66,7 @@ public class ColorTileReaderInput extends TileReaderInput {
 			this.tileImage.setRoi(croppedImage.getRoi());
 		}
 		else{
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		}
 		this.settings = settings_;
 
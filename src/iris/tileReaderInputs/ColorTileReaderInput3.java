@@ -7,6 +7,7 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.ColorSettings;
 import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -45,9 +46,7 @@ public class ColorTileReaderInput3 extends TileReaderInput {
 		}	
 		else{
 			//normally, copy the tileRoi section of the cropped image into the tile image
-			croppedImage.setRoi(tileRoi);
-			croppedImage.copy(false);
-			this.tileImage = ImagePlus.getClipboard();
+			this.tileImage = Toolbox.cropImage(croppedImage, tileRoi);
 			this.colonyRoi = colonyRoi_;
 		}
 		
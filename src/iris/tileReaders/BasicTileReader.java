@@ -5,13 +5,13 @@ package iris.tileReaders;
 
 import ij.ImagePlus;
 import ij.gui.Roi;
-import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.ui.IrisFrontend;
+import iris.utils.EmptyTileClassifier;
+import iris.utils.ParticleLabeller;
 import iris.utils.Toolbox;
 
 /**
@@ -31,6 +31,15 @@ public class BasicTileReader {
 		//0. create the output object
 		BasicTileReaderOutput output = new BasicTileReaderOutput();
 
+		//if the tile is clearly empty from its histogram alone, don't threshold it at all (only if asked for)
+		if(!IrisFrontend.singleColonyRun && EmptyTileClassifier.isTileEmpty(input.tileImage)){
+			output.emptyTile = true;
+			output.colonySize = 0;//return a colony size of zero
+
+			input.cleanup(); //clear the tile image here, since we don't need it anymore
+			return(output);
+		}
+
 
 		//1. apply a threshold at the tile, using the Otsu algorithm
 		ImagePlus originalTileImage = input.tileImage.duplicate();
@@ -42,18 +51,11 @@ public class BasicTileReader {
 
 		//create the results table, where the results of the particle analysis will be shown
 		ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
 
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
+		//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+		ParticleLabeller particleLabeller = new ParticleLabeller(false, 5, Integer.MAX_VALUE);
 		
-		ParticleAnalyzer.setRoiManager(roiManager);
-
-		particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
-
-		Roi[] rois = roiManager.getRoisAsArray();
+		Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, input.tileImage);
 
 
 		//3.1 check if the returned results table is empty
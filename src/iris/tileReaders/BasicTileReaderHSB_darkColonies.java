@@ -12,8 +12,6 @@ import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.Binary;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ImageProcessor;
@@ -21,6 +19,8 @@ import ij.process.ImageStatistics;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.ParticleLabeller;
+import iris.utils.ProjectionProfile;
 import iris.utils.StdStats;
 import iris.utils.Toolbox;
 
@@ -83,19 +83,12 @@ public class BasicTileReaderHSB_darkColonies {
 
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = new RoiManager(true);
 
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			//old//ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER,
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
-					//new, showing results //ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_OUTLINES +ParticleAnalyzer.SHOW_RESULTS /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
-					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-					resultsTable, 5, Integer.MAX_VALUE);
+			//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+			//old//ParticleLabeller particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
+			ParticleLabeller particleLabeller = new ParticleLabeller(false, 5, Integer.MAX_VALUE);
 
-			ParticleAnalyzer.setRoiManager(roiManager);
-			particleAnalyzer.analyze(tileCopy); //it gets the image processor internally
-
-			Roi[] rois = roiManager.getRoisAsArray();
+			Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, tileCopy);
 
 			//3.1 check if the returned results table is empty
 			if(resultsTable.getCounter()==0){
@@ -173,7 +166,7 @@ public class BasicTileReaderHSB_darkColonies {
 	 */
 	private static boolean isTileEmpty_simple(ImagePlus tile){
 		//sum up the pixel values (brightness) on the x axis
-		double[] sumOfBrightnessXaxis = sumOfRows(tile);
+		double[] sumOfBrightnessXaxis = ProjectionProfile.toDoubles(new ProjectionProfile(tile.getProcessor()).rowSums);
 		double variance = StdStats.varp(sumOfBrightnessXaxis);
 
 		//System.out.println(variance);
@@ -184,38 +177,6 @@ public class BasicTileReaderHSB_darkColonies {
 		return(false);
 	}
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static double[] sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
-	}
 
 
 
@@ -4,19 +4,18 @@
 package iris.tileReaders;
 
 import ij.ImagePlus;
-import ij.measure.Measurements;
+import ij.gui.Roi;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
-import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.CPRGTileReaderOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.ChannelCache;
+import iris.utils.ParticleLabeller;
+import iris.utils.Toolbox;
 
-import java.util.ArrayList;
 
 /**
  * This class provides with methods that output the color of a colony.
@@ -88,14 +87,10 @@ public class CPRGColorTileReaderHSV {
 		//create the results table, where the results of the particle analysis will be shown
 		ResultsTable resultsTable = new ResultsTable();
 
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-				Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
+		//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+		ParticleLabeller particleLabeller = new ParticleLabeller(false, 5, Integer.MAX_VALUE);
 
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
-
-		particleAnalyzer.analyze(grayTile); //it gets the image processor internally
+		Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, grayTile); //it gets the image processor internally
 		grayTile.flush();//we don't need it anymore
 
 		//2.2 pick the largest particle, the check if there is something in the tile has already been performed
@@ -110,7 +105,7 @@ public class CPRGColorTileReaderHSV {
 
 
 		//4. remove the background to measure color only from the colony
-		output.colonyROI = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+		output.colonyROI = rois[biggestParticleIndex];
 		//first check that there is actually a selection there..
 		if(output.colonyROI.getBounds().width<=0||output.colonyROI.getBounds().height<=0){
 			output.colorSumInTile=0;
@@ -208,63 +203,18 @@ public class CPRGColorTileReaderHSV {
 //		converter.convertToHSB();
 
 
-		ColorProcessor processor = (ColorProcessor) tile.getProcessor();
+		//we're only interested in Hue, in 0-1 space, as java.awt.Color.RGBtoHSB gives it
+		//(HSV is a synonym to HSB that sounds a bit better)
+		float[] hues = new ChannelCache(tile).getExactHue();
+		int sizeInPixels = hues.length;
+
 
-		//get the 8-bit (1 byte) channels, each value in that array corresponds to one pixel
-		byte[] red_byte = processor.getChannel(1);
-		byte[] green_byte = processor.getChannel(2);
-		byte[] blue_byte = processor.getChannel(3);
-		
-	
-		int sizeInPixels = blue_byte.length;
-		
-		//convert them into int arrays to have more headroom to perform math operations
-		int[] red_int = convertByteArrayToIntArray(red_byte);
-		int[] green_int = convertByteArrayToIntArray(green_byte);
-		int[] blue_int = convertByteArrayToIntArray(blue_byte);
-		
-		/**
-		 * This variable will now hold all the HSV values 
-		 * (HSV is a synonym to HSB that sounds a bit better)
-		 */
-		ArrayList<float[]> HSVimage = new ArrayList<float[]>();
-		
-		//for each pixel in the image
-		for (int i = 0; i < sizeInPixels; i++) {
-			//get it's hsb values
-			float[] hsbvals = new float[3];
-			java.awt.Color.RGBtoHSB(red_int[i], green_int[i], blue_int[i], hsbvals);
-			
-			//transform the Hue into 0-360 space (from 0-1)
-			hsbvals[0] = hsbvals[0]*360;
-			
-			//add it to our list of HSB pixels
-			HSVimage.add(hsbvals);
-		}
-		
-		
-//		//we're only interested in Hue (which is the first hsb value)
-//		//but we want to get it in 0-360 space, now it's 0-1
-//		for (int i = 0; i < HSVimage.size(); i++) {
-//			//get this HSV, transform it to 360 and put it back into place
-//			float[] thisHSV = HSVimage.get(i);
-//			thisHSV[0] = thisHSV[0]*360;
-//			
-//			HSVimage.set(i, thisHSV);
-//		}
-		
-		
 		//calculate our measure of how positive a pixel is
 		int[] relative_colour_intensity = new int[sizeInPixels];
-		
-		float[] angles = new float[HSVimage.size()];
-		
-		for (int i = 0; i < HSVimage.size(); i++) {
-			angles[i] = HSVimage.get(i)[0];
-		}
 
 		for (int i = 0; i < relative_colour_intensity.length; i++) {
-			float angle = HSVimage.get(i)[0];
+			//transform the Hue into 0-360 space (from 0-1)
+			float angle = hues[i]*360;
 			relative_colour_intensity[i] = Math.round( (2*360+(-290-angle)) % 360);
 			
 			//check if this value is more than the maximum we can get.
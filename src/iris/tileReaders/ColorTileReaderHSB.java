@@ -7,10 +7,7 @@ import fiji.threshold.Auto_Local_Threshold;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
-import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
@@ -21,6 +18,9 @@ import iris.tileReaderInputs.ColorTileReaderInput2;
 import iris.tileReaderInputs.ColorTileReaderInput3;
 import iris.tileReaderOutputs.ColorTileReaderOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.ChannelCache;
+import iris.utils.ParticleLabeller;
+import iris.utils.RoiRuns;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -55,30 +55,16 @@ public class ColorTileReaderHSB {
 		//all it does is it thresholds the tile and passes both the original and the thresholded tiles
 		//down to processThresholdedTile
 
-		//1. get a grayscale image as a copy
-		ImagePlus grayTile = input.tileImage.duplicate();
+		//1. get a grayscale image: the brightness channel of the tile
+		//duplicating crops the tile to its ROI, otherwise there's no need for a copy
+		ImagePlus tileCopy = input.tileImage.getRoi()==null ? input.tileImage : input.tileImage.duplicate();
+		ChannelCache tileChannels = new ChannelCache(tileCopy);
 
-		ImageProcessor ip =  grayTile.getProcessor();
-
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the tile
-		//		ip.snapshot(); // override ColorProcessor bug in 1.32c
-		int width = grayTile.getWidth();
-		int height = grayTile.getHeight();
-		int numPixels = width*height;
-
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
-
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
-
-		//creates a new image using the bSource (brightness)
-		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
-		grayTile = new ImagePlus("", bpBri);
+		//creates a new image using the brightness
+		ByteProcessor bpBri = new ByteProcessor(tileChannels.getWidth(), tileChannels.getHeight(), tileChannels.getBrightness());
+		ImagePlus grayTile = new ImagePlus("", bpBri);
+		if(tileCopy!=input.tileImage)
+			tileCopy.flush();
 
 		//
 		//--------------------------------------------------
@@ -131,19 +117,15 @@ public class ColorTileReaderHSB {
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
 
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-					Measurements.CENTER_OF_MASS+Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
+			//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+			ParticleLabeller particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
 
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
-			particleAnalyzer.analyze(BW_tile); //it gets the image processor internally
+			Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, BW_tile); //it gets the image processor internally
 
 			//2.2 pick the largest particle, the check if there is something in the tile has already been performed
 			int biggestParticleIndex = getBiggestParticleAreaIndex(resultsTable);
 
-			output.colonyROI = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+			output.colonyROI = rois[biggestParticleIndex];
 
 
 			int colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, biggestParticleIndex);
@@ -200,7 +182,9 @@ public class ColorTileReaderHSB {
 		//
 
 		//4. separate the color channels, calculate relative color intensity of red
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(input.tileImage, 2, 1, (float)1, (float)2); ///
+		ChannelCache tileChannels = new ChannelCache(input.tileImage);
+		byte[] pixelBiofilmScores = new byte[tileChannels.getWidth()*tileChannels.getHeight()];
+		calculateRelativeColorIntensityUsingSaturationAndBrightness(tileChannels, 2, 1, (float)1, (float)2, pixelBiofilmScores); ///
 		//byte[] relativeColorIntensity_includingBrightness = calculateRelativeColorIntensity(input.tileImage, 2, 1);
 
 		//but because colonies get darker with accumulation of congo red..		
@@ -254,7 +238,7 @@ public class ColorTileReaderHSB {
 		else{
 			output.colonyCenter = new Point(input.colonyCenter);
 		}
-		output.centerAreaColor = getAverageCenterAreaColor(colorTile, output.colonyCenter, diameter);
+		output.centerAreaColor = getAverageCenterAreaColor(colorTile, output.colonyCenter, diameter, pixelBiofilmScores);
 
 		//also get the center area opacity -- this may also be a good proxy to get how much mutants sporulate				
 		output.centerAreaOpacity = getAverageCenterAreaOpacity(grayscaleTileCopy, output.colonyCenter, diameter);
@@ -305,11 +289,12 @@ public class ColorTileReaderHSB {
 	 */
 	private static double getAverageCenterAreaOpacity(ImagePlus grayscaleTile, Point colonyCenter, int diameter) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+		//the copy is only needed to crop the tile to its ROI, the pixels themselves are not changed
+		ImagePlus grayscaleTileCopy = grayscaleTile.getRoi()==null ? grayscaleTile : grayscaleTile.duplicate();
 
 		//1. find the background level, which is the threshold set by Otsu
 		//EDIT: don't correct for background level here, this is mainly to account for lighting spatial effects and can be corrected for later
-		int background_level = 0;//Toolbox.getThresholdOtsu(grayscaleTileCopy);
+		//int background_level = Toolbox.getThresholdOtsu(grayscaleTileCopy);
 
 
 		//3. get the colony center of mass, this will be the center of the circle
@@ -319,41 +304,16 @@ public class ColorTileReaderHSB {
 				colonyCenter.y -diameter/2, 
 				diameter, diameter);
 
-		//4. set the center Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(centerRoi);
-		try {
-			grayscaleTileCopy.getProcessor().fillOutside(centerRoi);
-		} catch (Exception e) {
-			return(0);
-		}
-
-		//4. get the pixel values of the image
+		//4. sum up the pixels inside the center Roi, the ones outside it would have been painted black anyway
 		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
 		byte[] imageBytes = (byte[]) processor.getPixels();
+		RoiRuns centerRuns = new RoiRuns(centerRoi, processor.getWidth(), processor.getHeight());
 
 		int size = imageBytes.length;
+		long sumOfBrightness = centerRuns.getSum(imageBytes);
 
-		int sumOfBrightness = 0;
-		//		int sumOfPixelsOverZero = 0;
-
-		for(int i=0;i<size;i++){
-			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
-			int pixelValue = imageBytes[i]&0xFF;
-
-			//subtract the threshold and put the pixels in the sum
-			//every pixel inside the colony should normally be above the threshold
-			//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
-			//Also all the pixels outside the Roi would have a negative value after subtraction 
-			//(they are already zero) because of the mask process
-
-			//			if(pixelValue>0){
-			//				sumOfPixelsOverZero++;
-			//			}
-
-			sumOfBrightness += Math.max(0, pixelValue-background_level);
-		}
-
-		grayscaleTileCopy.flush();
+		if(grayscaleTileCopy!=grayscaleTile)
+			grayscaleTileCopy.flush();
 
 		return ((double)sumOfBrightness/(double)size);
 	}
@@ -430,8 +390,13 @@ public class ColorTileReaderHSB {
 		int biofilmColorSum = 0;
 
 
+		//all the channels measured below come from the same (filled and dilated) tile, so they're converted only once
+		ChannelCache tileChannels = new ChannelCache(tileImageCopy);
+
 		//get pixel color values again, this time by means of integer values
-		Float[] pixelBiofilmScores_float = calculateRelativeColorIntensityUsingSaturationAndBrightness_float(tileImageCopy, input.colonyRoi, 2, 1, (float)1, (float)2);
+		RoiRuns colonyRuns = new RoiRuns(input.colonyRoi, tileChannels.getWidth(), tileChannels.getHeight());
+		float[] pixelBiofilmScores_float = new float[colonyRuns.getPixelCount()];
+		calculateRelativeColorIntensityUsingSaturationAndBrightness_float(tileChannels, colonyRuns, 2, 1, (float)1, (float)2, pixelBiofilmScores_float);
 
 		//		for(int i=0;i<pixelBiofilmScores_float.length;i++){
 		//
@@ -451,7 +416,9 @@ public class ColorTileReaderHSB {
 		//		}
 
 
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(tileImageCopy, 2, 1, (float)1, (float)2); ///
+		//this buffer is used again for the center area colour below
+		byte[] pixelBiofilmScores = new byte[tileChannels.getWidth()*tileChannels.getHeight()];
+		calculateRelativeColorIntensityUsingSaturationAndBrightness(tileChannels, 2, 1, (float)1, (float)2, pixelBiofilmScores); ///
 
 		for(int i=0;i<pixelBiofilmScores.length;i++){
 
@@ -534,7 +501,7 @@ public class ColorTileReaderHSB {
 		if(output.colonyCenter!=null){
 			output.centerAreaOpacity = getAverageCenterAreaOpacity(grayscaleTileCopy, output.colonyCenter, diameter);
 			//also get the center area color
-			output.centerAreaColor = getAverageCenterAreaColor(tileImageCopy, output.colonyCenter, diameter);
+			output.centerAreaColor = getAverageCenterAreaColor(tileImageCopy, output.colonyCenter, diameter, pixelBiofilmScores);
 		} else {
 			output.centerAreaOpacity = 0;
 			output.centerAreaColor = 0;
@@ -543,7 +510,7 @@ public class ColorTileReaderHSB {
 
 
 		//just returns the average pixel saturation over all pixels in the colony bounds
-		output.averagePixelSaturation = getAveragePixelSaturation(tileImageCopy, output.colonyROI);
+		output.averagePixelSaturation = getAveragePixelSaturation(tileChannels, output.colonyROI);
 
 
 
@@ -559,7 +526,7 @@ public class ColorTileReaderHSB {
 	 * @param i
 	 * @return
 	 */
-	private static double getAverageCenterAreaColor(ImagePlus colorTile, Point colonyCenter, int diameter) {
+	private static double getAverageCenterAreaColor(ImagePlus colorTile, Point colonyCenter, int diameter, byte[] scoresBuffer) {
 
 		ImagePlus colorTileCopy = colorTile.duplicate();
 
@@ -580,10 +547,11 @@ public class ColorTileReaderHSB {
 		}
 
 
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(colorTileCopy, 2, 1, (float)1, (float)2); ///
-
-
-		int size = pixelBiofilmScores.length;
+		ChannelCache centerChannels = new ChannelCache(colorTileCopy);
+		byte[] pixelBiofilmScores = scoresBuffer;
+		if(pixelBiofilmScores.length<centerChannels.getWidth()*centerChannels.getHeight())
+			pixelBiofilmScores = new byte[centerChannels.getWidth()*centerChannels.getHeight()];
+		int size = calculateRelativeColorIntensityUsingSaturationAndBrightness(centerChannels, 2, 1, (float)1, (float)2, pixelBiofilmScores); ///
 
 		int sumOfColor = 0;
 		//		int sumOfNonZeroColorPixels = 0;
@@ -662,69 +630,52 @@ public class ColorTileReaderHSB {
 	 * Default value of the red gain is 2, default value of the blue/green gain is 1.
 	 * This version also takes into account the colony's brightness, since we know now that the more colonies
 	 * accumulate congo red, the darker they become.
+	 * <p>
+	 * Every pixel is calculated in one go, with the gains applied on the way, and the result is written into the given
+	 * scores array (which has to hold at least width*height values). Each step is limited to 0...255, just like the
+	 * byte array helpers (multiply, add, subtract) would do it one array after the other.
 	 * @param channels
-	 * @return
+	 * @param scores
+	 * @return the number of pixels written into scores
 	 */
-	private static byte[] calculateRelativeColorIntensityUsingSaturationAndBrightness(ImagePlus tile, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
-		ColorProcessor processor = (ColorProcessor) tile.getProcessor();
-
-		byte[] red = processor.getChannel(1);
-		byte[] green = processor.getChannel(2);
-		byte[] blue = processor.getChannel(3);
-
-
-		byte[] redWithGain = multiply(red_gain,red);
-		byte[] green_and_blue = multiply(blue_green_gain, add(green, blue));
-		byte[] relative_colour_intensity = subtract(redWithGain, green_and_blue);
-
-
-		//end of color calculations
-		//------
-		//start calculating brightness contribution
-
-		ImageProcessor ip =  tile.getProcessor();
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the tile
-		int width = tile.getWidth();
-		int height = tile.getHeight();
-		int numPixels = width*height;
-
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
-
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
-
-		byte[] saturationMinusBrightness = subtract(sSource, bSource);
-
-		byte[] relative_colour_intensity_with_gain = multiply(color_gain, relative_colour_intensity);
-		byte[] colonySaturationBrightness_with_gain = multiply(brightness_gain, saturationMinusBrightness);
-
-		byte[] total_biofilm_score = add(relative_colour_intensity_with_gain, colonySaturationBrightness_with_gain);
-
-
+	private static int calculateRelativeColorIntensityUsingSaturationAndBrightness(ChannelCache channels, float red_gain, float blue_green_gain, float color_gain, float brightness_gain, byte[] scores) {
+		byte[] red = channels.getRed();
+		byte[] green = channels.getGreen();
+		byte[] blue = channels.getBlue();
+		byte[] saturation = channels.getSaturation();
+		byte[] brightness = channels.getBrightness();
+
+		int numPixels = red.length;
+		for(int i=0;i<numPixels;i++){
+
+			//colour: red with its gain, minus green and blue with theirs
+			int redWithGain = multiply(red_gain, red[i]&0xFF);
+			int green_and_blue = multiply(blue_green_gain, Math.min((green[i]&0xFF)+(blue[i]&0xFF), 255));
+			int relative_colour_intensity = Math.max(redWithGain-green_and_blue, 0);
+
+			//brightness contribution
+			int saturationMinusBrightness = Math.max((saturation[i]&0xFF)-(brightness[i]&0xFF), 0);
+
+			int total_biofilm_score = multiply(color_gain, relative_colour_intensity) + multiply(brightness_gain, saturationMinusBrightness);
+			scores[i] = (byte)Math.min(total_biofilm_score, 255);
+		}
 
-		return total_biofilm_score;
+		return(numPixels);
 	}
 
 
-
-
 	/**
 	 * This just returns a no-frills 0-255 representation of the colony pixels in an array
 	 * @param tile
 	 * @param colonyRoi
 	 * @return
 	 */
-	private static float getAveragePixelSaturation(ImagePlus tile, Roi colonyRoi){
-		Float[] allRoiPixelsSaturation = Toolbox.getRoiPixels(tile, colonyRoi, 'S');
+	private static float getAveragePixelSaturation(ChannelCache channels, Roi colonyRoi){
+		float[] allRoiPixelsSaturation = Toolbox.getRoiPixels(channels, colonyRoi, 'S');
 
 		float saturationSum = 0;
 		for (int i = 0; i < allRoiPixelsSaturation.length; i++) {
-			saturationSum += allRoiPixelsSaturation[i].floatValue();
+			saturationSum += allRoiPixelsSaturation[i];
 		}
 
 		float averagePixelSaturation0to255 = saturationSum/allRoiPixelsSaturation.length;
@@ -738,44 +689,61 @@ public class ColorTileReaderHSB {
 	 * Default value of the red gain is 2, default value of the blue/green gain is 1.
 	 * This version also takes into account the colony's brightness, since we know now that the more colonies
 	 * accumulate congo red, the darker they become.
-	 * This version uses integer-converted byte values, that are easier to work with, and also don't have the issue that we need to limit our values to 255
+	 * This version uses float values, that don't have the issue that we need to limit our values to 255.
+	 * <p>
+	 * Every pixel of the colony is calculated in one go, straight from the channels, and the result is written into the given
+	 * scores array (which has to hold at least colonyRuns.getPixelCount() values), in the order of the colony's pixels.
 	 * @param channels
-	 * @return
+	 * @param colonyRuns
+	 * @param scores
+	 * @return the number of pixels written into scores
 	 */
-	private static Float[] calculateRelativeColorIntensityUsingSaturationAndBrightness_float(ImagePlus tile, Roi colonyRoi, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
-
-		//Float[] roiPixels_brightness = Toolbox.getRoiPixels(tile, colonyRoi, 'l');
-		Float[] roiPixels_red = Toolbox.getRoiPixels(tile, colonyRoi, 'r');
-		Float[] roiPixels_green = Toolbox.getRoiPixels(tile, colonyRoi, 'g');
-		Float[] roiPixels_blue = Toolbox.getRoiPixels(tile, colonyRoi, 'b');
-
-		Float[] redWithGain = multiply(red_gain, roiPixels_red);
-		Float[] green_and_blue = multiply(blue_green_gain, add(roiPixels_green, roiPixels_blue));
-		Float[] relative_colour_intensity = subtract(redWithGain, green_and_blue);
-
-
-		//end of color calculations
-		//------
-		//start calculating brightness contribution
-
-
-		Float[] roiPixels_saturation = Toolbox.getRoiPixels(tile, colonyRoi, 'S');
-		Float[] roiPixels_brightness = Toolbox.getRoiPixels(tile, colonyRoi, 'B');
-
-		Float[] roiPixels_darkness = negate_skippingZeros(roiPixels_brightness);
+	private static int calculateRelativeColorIntensityUsingSaturationAndBrightness_float(ChannelCache channels, RoiRuns colonyRuns, float red_gain, float blue_green_gain, float color_gain, float brightness_gain, float[] scores) {
+		byte[] red = channels.getRed();
+		byte[] green = channels.getGreen();
+		byte[] blue = channels.getBlue();
+		float[] saturation = channels.getExactSaturation();
+		byte[] brightness = channels.getBrightness();
+		int width = channels.getWidth();
+
+		int index = 0;
+		//for all runs of pixels in the colony
+		for(int run=0; run<colonyRuns.getRunCount(); run++){
+			int y = colonyRuns.getRow(run);
+			int end = colonyRuns.getStart(run) + colonyRuns.getLength(run);
+			for(int x=colonyRuns.getStart(run); x<end; x++, index++){
+
+				//pixels outside the picture are black
+				float pixelRed = 0, pixelGreen = 0, pixelBlue = 0, pixelSaturation = 0, pixelBrightness = 0;
+				if(colonyRuns.isInside(x, y)){
+					int i = y*width + x;
+					pixelRed = red[i]&0xFF;
+					pixelGreen = green[i]&0xFF;
+					pixelBlue = blue[i]&0xFF;
+					pixelSaturation = saturation[i]*(float)255;
+					pixelBrightness = brightness[i]&0xFF;
+				}
 
-		Float[] saturationAndDarkness = add(roiPixels_saturation, roiPixels_darkness);
+				//colour: red with its gain, minus green and blue with theirs
+				float relative_colour_intensity = Math.max(pixelRed*red_gain - (pixelGreen+pixelBlue)*blue_green_gain, 0);
 
-		//		Float[] saturationMinusBrightness = subtract(roiPixels_saturation, roiPixels_brightness);
-		//				
-		Float[] relative_colour_intensity_with_gain = multiply(color_gain, relative_colour_intensity);
-		Float[] colonySaturationBrightness_with_gain = multiply(brightness_gain, saturationAndDarkness);//saturationMinusBrightness);
+				//brightness contribution: saturation and darkness
+				float darkness = Math.max(Math.min(255-pixelBrightness, 255), 0);
+				float saturationAndDarkness = pixelSaturation + darkness;
 
-		Float[] total_biofilm_score = add(relative_colour_intensity_with_gain, colonySaturationBrightness_with_gain);
+				scores[index] = relative_colour_intensity*color_gain + saturationAndDarkness*brightness_gain;
+			}
+		}
 
+		return(index);
+	}
 
 
-		return total_biofilm_score;
+	/**
+	 * Multiplies a 0...255 value by the given factor, limiting the result to 0...255 the way multiply(float, byte[]) does
+	 */
+	private static int multiply(float factor, int value){
+		return(((int)Math.min(value*factor, 255))&0xFF);
 	}
 
 
@@ -1022,29 +990,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function will return the negative of the given array: 255-array[i].
-	 * At the same time, it will skip zeros, meaning that the pixels outside of the colony will
-	 * remain 0. This is because afterwards we will add those values together with the color intensity values.
-	 * @param array
-	 * @return
-	 */
-	private static Float[] negate_skippingZeros(Float[] array){
-		Float[] result = new Float[array.length];
-
-		for(int i=0;i<array.length;i++){
-
-			if(array[i]==(int)0)
-				result[i]=(float)0; //keep it zero
-
-			result[i] =  Math.min(255-array[i], 255);
-			result[i] = Math.max(result[i], 0); //make sure the result is positive
-		}
-		return(result);
-	}
-
-
-
 	/**
 	 * This helper function multiplies a int array by a constant factor
 	 * @param factor
@@ -1062,24 +1007,6 @@ public class ColorTileReaderHSB {
 		return(result);
 	}
 
-	/**
-	 * This helper function multiplies a int array by a constant factor
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] multiply(float factor, Float[] array){
-		Float[] result = new Float[array.length];
-
-		for(int i=0;i<array.length;i++){
-
-			result[i] =  (Float)(array[i]*factor);
-
-		}
-		return(result);
-	}
-
-
 	/**
 	 * This helper function adds 2 int arrays
 	 * @param factor
@@ -1101,27 +1028,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function adds 2 int arrays
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] add(Float[] array1, Float[] array2){
-
-		//if the 2 arrays are not of equal length, this will crash..
-
-		Float[] result = new Float[array1.length];
-		for(int i=0;i<array1.length;i++){
-
-			//just add the values
-			result[i] = array1[i] + array2[i];
-		}
-
-		return(result);
-	}
-
-
 	/**
 	 * This helper function subtracts 2 int arrays, taking into account that
 	 * negative values are given the minimum value (0)
@@ -1145,30 +1051,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function subtracts 2 int arrays, taking into account that
-	 * negative values are given the minimum value (0)
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] subtract(Float[] array1, Float[] array2){
-
-		//if the 2 arrays are not of equal length, this will crash..
-
-		Float[] result = new Float[array1.length];
-		for(int i=0;i<array1.length;i++){
-
-			//subtract the values, but avoid underflow
-			result[i] = (Math.max( array1[i] - array2[i] , 0));
-
-		}
-
-		return(result);
-	}
-
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using a fancy local thresholding algorithm, as described here:
@@ -8,7 +8,6 @@ import ij.gui.OvalRoi;
 import ij.gui.Roi;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.RankFilters;
-import ij.plugin.frame.RoiManager;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import imagescience.feature.Laplacian;
@@ -143,9 +142,9 @@ public class LaplacianFilterTileReader {
 
 			//analyze the particles in the image, this includes filling in holes (which we expect using the above pipeline)
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = Toolbox.particleAnalysis_fillHoles(tileImageLaplacianZeroCrossed, resultsTable);
+			Roi[] rois = Toolbox.particleAnalysis_fillHoles(tileImageLaplacianZeroCrossed, resultsTable);
 
-			if(roiManager==null){ //no particles found
+			if(rois==null){ //no particles found
 				output.emptyResulsTable = true; // this is highly abnormal
 				output.colonySize = 0;//return a colony size of zero
 
@@ -160,7 +159,7 @@ public class LaplacianFilterTileReader {
 			output.colonySize = Toolbox.getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
 			output.circularity = Toolbox.getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
 			output.colonyCenter = Toolbox.getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = roiManager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = rois[indexOfBiggestParticle];
 
 			//input.cleanup(); //clear the tile image here, since we don't need it anymore
 			//laplacianDifference.flush();
@@ -6,16 +6,16 @@ package iris.tileReaders;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
-import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.MorphologyTileReaderOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.IntegralImage;
+import iris.utils.ParticleLabeller;
+import iris.utils.ProjectionProfile;
 import iris.utils.StdStats;
 import iris.utils.Toolbox;
 
@@ -108,17 +108,12 @@ public class MorphologyTileReader {
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
 
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
+			//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
 			//this version includes flood filling for holes; this is necessary given the weird morphology of candida colonies
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-					resultsTable, 5, Integer.MAX_VALUE);
+			ParticleLabeller particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
 
 
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
-			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
+			Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, input.tileImage); //it gets the image processor internally
 			//
 			//--------------------------------------------------
 			//
@@ -139,7 +134,7 @@ public class MorphologyTileReader {
 			//Change for fuzzy colonies: first check out the variance of it's sum of brightnesses
 
 			//sum up the pixel values (brightness) on the x axis
-			double[] sumOfBrightnessXaxis = sumOfRows(input.tileImage);
+			double[] sumOfBrightnessXaxis = ProjectionProfile.toDoubles(new ProjectionProfile(input.tileImage.getProcessor()).rowSums);
 			double variance = StdStats.varp(sumOfBrightnessXaxis);
 
 			//		System.out.println(variance);
@@ -174,7 +169,7 @@ public class MorphologyTileReader {
 			//3.4 get the morphology score of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = rois[indexOfBiggestParticle];
 			grayscaleTileCopy.setRoi(colonyRoi);
 			//ImagePlus blah = Toolbox.cropImage(copyOfTileImage, colonyRoi);
 
@@ -277,17 +272,12 @@ public class MorphologyTileReader {
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
 
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
+			//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
 			//this version includes flood filling for holes; this is necessary given the weird morphology of candida colonies
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-					resultsTable, 5, Integer.MAX_VALUE);
-
+			ParticleLabeller particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
 
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 
-			particleAnalyzer.analyze(grayscaleTileCopy); //it gets the image processor internally
+			Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, grayscaleTileCopy); //it gets the image processor internally
 			//
 			//--------------------------------------------------
 			//
@@ -308,7 +298,7 @@ public class MorphologyTileReader {
 			//Change for fuzzy colonies: first check out the variance of it's sum of brightnesses
 
 			//sum up the pixel values (brightness) on the x axis
-			double[] sumOfBrightnessXaxis = sumOfRows(grayscaleTileCopy);
+			double[] sumOfBrightnessXaxis = ProjectionProfile.toDoubles(new ProjectionProfile(grayscaleTileCopy.getProcessor()).rowSums);
 			double variance = StdStats.varp(sumOfBrightnessXaxis);
 
 			//		System.out.println(variance);
@@ -343,7 +333,7 @@ public class MorphologyTileReader {
 			//3.4 get the morphology score of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = rois[indexOfBiggestParticle];
 			grayscaleTileCopy.setRoi(colonyRoi);
 			//ImagePlus blah = Toolbox.cropImage(copyOfTileImage, colonyRoi);
 
@@ -477,12 +467,8 @@ public class MorphologyTileReader {
 
 		//4A. perform particle analysis on the thresholded tile
 		ResultsTable resultsTable = new ResultsTable();
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
-		particleAnalyzer.analyze(grayscaleTileCopy);
+		ParticleLabeller particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
+		Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, grayscaleTileCopy);
 
 
 		//5A. return the area of the biggest particle
@@ -491,7 +477,7 @@ public class MorphologyTileReader {
 		int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 		output.inAgarSize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 		output.inAgarCircularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-		output.inAgarROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+		output.inAgarROI = rois[indexOfBiggestParticle];
 		output.inAgarOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.inAgarROI, inAgarBrightnessThreshold);
 
 
@@ -520,12 +506,8 @@ public class MorphologyTileReader {
 
 		//4B. perform particle analysis on the thresholded tile
 		resultsTable = new ResultsTable();
-		particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
-		manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
-		particleAnalyzer.analyze(grayscaleTileCopy);
+		particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
+		rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, grayscaleTileCopy);
 
 
 		//5B. return the area of the biggest particle
@@ -534,7 +516,7 @@ public class MorphologyTileReader {
 		indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 		output.colonySize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 		output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-		output.colonyROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+		output.colonyROI = rois[indexOfBiggestParticle];
 		output.colonyOpacity = getBiggestParticleOpacity(input.tileImage, output.colonyROI, colonyBrightnessThreshold);
 
 
@@ -648,6 +630,11 @@ public class MorphologyTileReader {
 
 		ArrayList<Integer> elevationCounts = new ArrayList<Integer>();
 
+		//the circles go through the same neighbourhoods many times over, so their sums come from summed-area tables
+		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();
+		IntegralImage brightnessSums = new IntegralImage(grayscale_image_ip);
+		IntegralImage brightPixelCounts = IntegralImage.countNonZero(grayscale_image_ip);
+
 
 		//for every circle
 		while(number_of_circles<maximumNumberOfCircles){
@@ -672,7 +659,7 @@ public class MorphologyTileReader {
 					//return(sumElevationCounts(elevationCounts, 1));
 					return(elevationCounts);
 				}
-				meanPixelValues.add(getBrightnessAverage9pixels(grayscale_image, point));
+				meanPixelValues.add(getBrightnessAverage9pixels(brightnessSums, brightPixelCounts, point));
 			}
 
 			elevationCounts.add(new Integer(countBrightnessChanges(meanPixelValues, minimumBrightnessStep, 2)));
@@ -744,40 +731,18 @@ public class MorphologyTileReader {
 
 
 	/**
-	 * This function will return the average brightness of +/- 1 pixels around the requested point
-	 * @param grayscale_image
-	 * @param colonyRoi
+	 * This function will return the average brightness of +/- 1 pixels around the requested point.
+	 * Pixels that are zero (or out of bounds) are not counted.
+	 * @param brightnessSums:	the summed-area table of the grayscale picture
+	 * @param brightPixelCounts:	the summed-area table of its non-zero pixels
 	 * @param pixelToGet
 	 * @return
 	 */
-	private static int getBrightnessAverage9pixels(ImagePlus grayscale_image, Point pixelToGet){
-
-		//count the number of pixels actually retrieved and added to the sum		
-		int pixelsAdded = 0;
-		int sumOfPixelIntensity = 0;
-
-		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();  
-
-		for (int x = -1; x <= 1; x++) {
-			for (int y = -1; y <= 1; y++) {
-				int pixelIntensity = 0;
-				try{
-					pixelIntensity = grayscale_image_ip.getPixel(pixelToGet.x + x, pixelToGet.y + y);					
-				}
-				catch(Exception e){
-					continue;
-				}
-
-				if(pixelIntensity==0){
-					continue;//because getPixel() gives a zero if the requested pixel coordinates are out of bounds
-				}
-
-				//all went all right, we add up the pixel intensity and increase the pixelsAdded counter
-				pixelsAdded++;
-				sumOfPixelIntensity += pixelIntensity;				
-			}
-		}
+	private static int getBrightnessAverage9pixels(IntegralImage brightnessSums, IntegralImage brightPixelCounts, Point pixelToGet){
 
+		//count the number of pixels actually retrieved and added to the sum
+		long pixelsAdded = brightPixelCounts.getSum(pixelToGet.x-1, pixelToGet.y-1, 3, 3);
+		long sumOfPixelIntensity = brightnessSums.getSum(pixelToGet.x-1, pixelToGet.y-1, 3, 3);
 
 		return (int) (Math.round( (double)sumOfPixelIntensity / (double)pixelsAdded ));
 	}
@@ -1168,38 +1133,6 @@ public class MorphologyTileReader {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static double[] sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
-	}
 
 
 
@@ -9,23 +9,21 @@ import ij.gui.Roi;
 import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
-import ij.process.ByteProcessor;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.ui.IrisFrontend;
+import iris.utils.EmptyTileClassifier;
+import iris.utils.ParticleLabeller;
+import iris.utils.RoiHistogram;
+import iris.utils.RoiRuns;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.awt.Rectangle;
 
 /**
  * @author George Kritikos
@@ -46,6 +44,17 @@ public class OpacityTileReader {
 		//0. create the output object
 		OpacityTileReaderOutput output = new OpacityTileReaderOutput();
 
+		//if the tile is clearly empty from its histogram alone, don't threshold it at all (only if asked for)
+		if(!IrisFrontend.settings.userDefinedRoi && !IrisFrontend.singleColonyRun && EmptyTileClassifier.isTileEmpty(input.tileImage)){
+			output.emptyTile = true;
+			output.colonySize = 0;//return a colony size of zero
+			output.circularity = 0;
+			output.opacity = 0;
+
+			input.cleanup(); //clear the tile image here, since we don't need it anymore
+			return(output);
+		}
+
 		//get a copy of this tile, before it gets thresholded
 		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
 		grayscaleTileCopy.setRoi(input.tileImage.getRoi());
@@ -71,16 +80,11 @@ public class OpacityTileReader {
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
 
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-					resultsTable, 5, Integer.MAX_VALUE);
+			//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+			ParticleLabeller particleLabeller = new ParticleLabeller(false, 5, Integer.MAX_VALUE);
 
 
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
-			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
+			Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, input.tileImage); //it gets the image processor internally
 			//
 			//--------------------------------------------------
 			//
@@ -120,7 +124,7 @@ public class OpacityTileReader {
 			//3.4 get the opacity of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = rois[indexOfBiggestParticle];
 
 			output.colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
 			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
@@ -131,8 +135,9 @@ public class OpacityTileReader {
 				output.colonyCenter = new Point(input.colonyCenter);
 			}
 
-			output.opacity = getBiggestParticleOpacity(grayscaleTileCopy, colonyRoi);
-			output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTileCopy, colonyRoi);
+			RoiHistogram tileHistogram = new RoiHistogram(grayscaleTileCopy.getProcessor());
+			output.opacity = getBiggestParticleOpacity(tileHistogram, grayscaleTileCopy, colonyRoi);
+			output.max10percentOpacity = getLargestTenPercentOpacityMedian(tileHistogram, grayscaleTileCopy, colonyRoi);
 			output.centerAreaOpacity = getCenterAreaOpacity(grayscaleTileCopy, output.colonyCenter, diameter);
 			output.colonyROI = colonyRoi;
 		} 
@@ -141,8 +146,9 @@ public class OpacityTileReader {
 			colonyRoi = (OvalRoi) input.tileImage.getRoi();
 			output.colonySize = (int) Toolbox.getRoiArea(input.tileImage);
 			output.circularity = 1; ///HACK: 1 means user-set ROI for now, need to change it to a proper circularity measurement
-			output.opacity = totalColonyBrightnessMinusBackground(grayscaleTileCopy, colonyRoi);
-			output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTileCopy, colonyRoi);
+			RoiHistogram tileHistogram = new RoiHistogram(grayscaleTileCopy.getProcessor());
+			output.opacity = totalColonyBrightnessMinusBackground(tileHistogram, grayscaleTileCopy, colonyRoi);
+			output.max10percentOpacity = getLargestTenPercentOpacityMedian(tileHistogram, grayscaleTileCopy, colonyRoi);
 			output.colonyCenter = new Point(colonyRoi.getBounds().width/2, colonyRoi.getBounds().height/2);
 			output.centerAreaOpacity = getCenterAreaOpacity(grayscaleTileCopy, output.colonyCenter, diameter);
 			output.colonyROI = colonyRoi;
@@ -261,10 +267,13 @@ public class OpacityTileReader {
 		//			output.opacity = getBiggestParticleOpacity(grayscaleTileCopy, input.colonyRoi);
 		//		}
 
-		output.opacity = totalColonyBrightnessMinusBackground(grayscaleTileCopy, input.colonyRoi);
+		//the histogram of the whole tile, shared by the measurements below
+		RoiHistogram tileHistogram = new RoiHistogram(grayscaleTileCopy.getProcessor());
+
+		output.opacity = totalColonyBrightnessMinusBackground(tileHistogram, grayscaleTileCopy, input.colonyRoi);
 
 
-		output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTileCopy, input.colonyRoi);
+		output.max10percentOpacity = getLargestTenPercentOpacityMedian(tileHistogram, grayscaleTileCopy, input.colonyRoi);
 
 
 		output.colonyROI = input.colonyRoi;
@@ -285,35 +294,23 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param grayscaleTileCopy
-	 * @param colonyRoi
+	 * Sums the brightness of the colony pixels, minus the background level.
+	 * The background level is the median of the pixels around the colony.
+	 * Black and white pixels (0 and 255) are left out of both.
+	 * @param tileHistogram:	the histogram of the whole tile
+	 * @param tileImage
+	 * @param colonyROI
 	 * @return
 	 */
 	private static int totalColonyBrightnessMinusBackground(
-			ImagePlus tileImage, Roi colonyROI) {
-
-		FloatProcessor backgroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyROI);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-
-		backgroundPixels.fill(backgroundPixels.getMask());
-		//		(new ImagePlus("keep-background mask",backgroundPixels)).show();
-
-		FloatProcessor foregroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-		foregroundPixels.setRoi(colonyROI);
-		foregroundPixels.setValue(0);
-		foregroundPixels.setBackgroundValue(0);
-
-		foregroundPixels.fillOutside(colonyROI);
-		//		(new ImagePlus("keep-foreground mask",foregroundPixels)).show();
-
+			RoiHistogram tileHistogram, ImagePlus tileImage, Roi colonyROI) {
 
+		ImageProcessor tileProcessor = tileImage.getProcessor();
+		RoiHistogram colonyHistogram = new RoiHistogram(tileProcessor, new RoiRuns(colonyROI, tileProcessor.getWidth(), tileProcessor.getHeight()));
 
+		int backgroundMedian = getBackgroundMedian(tileHistogram.minus(colonyHistogram));
 
-		int backgroundMedian = getBackgroundMedian(backgroundPixels);
-
-		int sumColonyBrightness = sumPixelOverBackgroundBrightness(foregroundPixels, backgroundMedian);
+		int sumColonyBrightness = sumPixelOverBackgroundBrightness(colonyHistogram, backgroundMedian);
 
 
 		return(sumColonyBrightness);
@@ -321,76 +318,32 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param ip
+	 * Sums the given pixels minus the background level, leaving out black and white (0 and 255) pixels
+	 * @param histogram
+	 * @param backgroundMedian
 	 * @return
 	 */
-	private static int sumPixelOverBackgroundBrightness(FloatProcessor ip, int backgroundMedian) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
-
-		int sum = 0;
-		for(Float thisPixel : nonZeroPixels){
-			sum += Math.round(thisPixel)-backgroundMedian;
-		}
+	private static int sumPixelOverBackgroundBrightness(RoiHistogram histogram, int backgroundMedian) {
 
+		RoiHistogram nonZeroPixels = histogram.without(0).without(255);
 
-		return(sum);
+		return((int)(nonZeroPixels.getSum() - (long)backgroundMedian*nonZeroPixels.getCount()));
 	}
 
 
 
 	/**
-	 * @param ip
+	 * Returns the median of the given pixels, leaving out black and white (0 and 255) pixels
+	 * @param histogram
 	 * @return
 	 */
-	private static int getBackgroundMedian(FloatProcessor ip) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
-
+	private static int getBackgroundMedian(RoiHistogram histogram) {
 
-		return(Math.round(getMedian(nonZeroPixels.toArray(new Float[nonZeroPixels.size()]))));
-	}
+		RoiHistogram nonZeroPixels = histogram.without(0).without(255);
+		if(nonZeroPixels.getCount()==0)
+			throw new IllegalStateException("there are no background pixels to get the median of");
 
-	/**
-	 * just gets the median, nothing to see here
-	 * @param inputArray
-	 * @return
-	 */
-	private static float getMedian(Float[] inputArray){
-		Arrays.sort(inputArray);
-		double median;
-		if (inputArray.length % 2 == 0)
-			median = ((double)inputArray[inputArray.length/2] + (double)inputArray[inputArray.length/2 - 1])/2;
-		else
-			median = (double) inputArray[inputArray.length/2];
-
-		return((float)median);
+		return(Math.round((float)nonZeroPixels.getMedian()));
 	}
 
 
@@ -416,17 +369,20 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param grayscaleTileCopy
-	 * @param colonyRoi
-	 * @param i
+	 * Sums the brightness of the pixels in a circle around the colony center, minus the Otsu threshold of the tile
+	 * @param grayscaleTile
+	 * @param colonyCenter
+	 * @param diameter
 	 * @return
 	 */
 	private static int getCenterAreaOpacity(ImagePlus grayscaleTile, Point colonyCenter, int diameter) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+		//like a copy of the tile would be, the tile is cropped to its ROI
+		ImagePlus grayscaleTileCopy = grayscaleTile.getRoi()==null ? grayscaleTile : grayscaleTile.duplicate();
+		ImageProcessor processor = grayscaleTileCopy.getProcessor();
 
 		//1. find the background level, which is the threshold set by Otsu
-		int background_level = getThresholdOtsu(grayscaleTileCopy);
+		int background_level = getThresholdOtsu(new RoiHistogram(processor));
 
 
 		//3. get the colony center of mass, this will be the center of the circle
@@ -436,159 +392,85 @@ public class OpacityTileReader {
 				colonyCenter.y -diameter/2, 
 				diameter, diameter);
 
-		//4. set the center Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(centerRoi);
-		try {
-			grayscaleTileCopy.getProcessor().fillOutside(centerRoi);
-		} catch (Exception e) {
-			return(0);
-		}
-
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
+		//4. sum up the pixels inside the center Roi, over the background
+		//every pixel inside the colony should normally be above the threshold
+		//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
+		RoiHistogram centerHistogram = new RoiHistogram(processor, new RoiRuns(centerRoi, processor.getWidth(), processor.getHeight()));
+		int sumOfBrightness = (int) centerHistogram.getSumOverBackground(background_level);
 
-		int sumOfBrightness = 0;
-
-		for(int i=0;i<size;i++){
-			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
-			int pixelValue = imageBytes[i]&0xFF;
-
-			//subtract the threshold and put the pixels in the sum
-			//every pixel inside the colony should normally be above the threshold
-			//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
-			//Also all the pixels outside the Roi would have a negative value after subtraction 
-			//(they are already zero) because of the mask process
-
-			sumOfBrightness += Math.max(0, pixelValue-background_level);
-		}
-
-		grayscaleTileCopy.flush();
+		if(grayscaleTileCopy!=grayscaleTile)
+			grayscaleTileCopy.flush();
 
 		return (sumOfBrightness);
 	}
 
 
 	/**
-	 * This method finds the Otsu threshold of the picture.
-	 * Then, it sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
-	 * The background level is determined using the Otsu algorithm and subtracted from each pixel before the sum is calculated.
-	 * @param grayscaleTileCopy
+	 * This method gets the median brightness of the whole tile (leaving out black and white pixels) as the background level.
+	 * Then, it returns the mean brightness over that background of the brightest 10% of the tile pixels, once everything
+	 * but the colony is painted black.
+	 * @param tileHistogram:	the histogram of the whole tile
+	 * @param grayscaleTile
+	 * @param colonyRoi
 	 * @return
 	 */
-	private static double getLargestTenPercentOpacityMedian(ImagePlus grayscaleTile, Roi colonyRoi) {
-
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+	private static double getLargestTenPercentOpacityMedian(RoiHistogram tileHistogram, ImagePlus grayscaleTile, Roi colonyRoi) {
 
 		//1. find the background level
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(tileHistogram);
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
 			return(0);
 		}
 
-		//3. set the Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(colonyRoi);
-		try {
-			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
-		} catch (Exception e) {
+		//3. get the pixels in the Roi, the ones outside it would be painted black
+		RoiHistogram colonyHistogram = getFilledCopyHistogram(grayscaleTile, colonyRoi);
+		if(colonyHistogram==null){
 			return(0);
 		}
+		int size = colonyHistogram.getCount();
 
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		//sort the bytes according to opacity
-		Arrays.sort(imageBytes);
-		ArrayList<Integer> pixelIntValues = new ArrayList<Integer>();
-
-		for(int i=0;i<size;i++){
-			int pixelValue = imageBytes[i]&0xFF;
-			pixelIntValues.add(pixelValue);
-		}
-
-		Collections.sort(pixelIntValues, Collections.reverseOrder());
-		//get the mean of the top 10%
-		int sumOfBrightness = 0;
+		//4. get the mean of the top 10%
 		int size_subset = (int)Math.ceil((double)size/(double)10);
-		for(int i=0;i<size_subset;i++){
-			sumOfBrightness += Math.max(0, pixelIntValues.get(i)-background_level);
-		}
-		//int top10percentMean = (int) Math.round((double)sumOfBrightness/(double)size_subset);
+		long sumOfBrightness = colonyHistogram.getSumOfBrightestOverBackground(size_subset, background_level);
 		double top10percentMean = (double)sumOfBrightness/(double)size_subset;
 
-		grayscaleTileCopy.flush();
 		return(top10percentMean);
 	}
 
 
 
 	/**
-	 * This method finds the Otsu threshold of the picture.
-	 * Then, it sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
-	 * The background level is determined using the Otsu algorithm and subtracted from each pixel before the sum is calculated.
-	 * @param grayscaleTileCopy
+	 * This method sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
+	 * The background level is the median of the pixels around the colony, and it's subtracted from each pixel before the sum is calculated.
+	 * @param tileHistogram:	the histogram of the whole tile
+	 * @param grayscaleTile
+	 * @param colonyRoi
 	 * @return
 	 * @deprecated, see sumPixelOverBackgroundBrightness
 	 */
-	private static int getBiggestParticleOpacity(ImagePlus grayscaleTile, Roi colonyRoi) {
-
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+	private static int getBiggestParticleOpacity(RoiHistogram tileHistogram, ImagePlus grayscaleTile, Roi colonyRoi) {
 
 		//1. find the background level, which is the median of the pixels not in the ROI
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-
-		backgroundPixels.fill(backgroundPixels.getMask());
-		int background_level = getBackgroundMedian(backgroundPixels);
+		ImageProcessor tileProcessor = grayscaleTile.getProcessor();
+		RoiHistogram colonyInTileHistogram = new RoiHistogram(tileProcessor, new RoiRuns(colonyRoi, tileProcessor.getWidth(), tileProcessor.getHeight()));
+		int background_level = getBackgroundMedian(tileHistogram.minus(colonyInTileHistogram));
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
 			return(0);
 		}
 
-		//3. set the Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(colonyRoi);
-		try {
-			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
-		} catch (Exception e) {
+		//3. sum up the pixels in the Roi, over the background
+		//every pixel inside the colony should normally be above the threshold
+		//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
+		//Also all the pixels outside the Roi would be black, so they add nothing
+		RoiHistogram colonyHistogram = getFilledCopyHistogram(grayscaleTile, colonyRoi);
+		if(colonyHistogram==null){
 			return(0);
 		}
-
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		int sumOfBrightness = 0;
-
-		for(int i=0;i<size;i++){
-			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
-			int pixelValue = imageBytes[i]&0xFF;
-
-			//subtract the threshold and put the pixels in the sum
-			//every pixel inside the colony should normally be above the threshold
-			//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
-			//Also all the pixels outside the Roi would have a negative value after subtraction 
-			//(they are already zero) because of the mask process
-
-			sumOfBrightness += Math.max(0, pixelValue-background_level);
-		}
-
-		grayscaleTileCopy.flush();
+		int sumOfBrightness = (int) colonyHistogram.getSumOverBackground(background_level);
 
 		return (sumOfBrightness);
 	}
@@ -599,85 +481,77 @@ public class OpacityTileReader {
 	/**
 	 * @deprecated, see sumPixelOverBackgroundBrightness
 	 * 
-	 * This method finds the Otsu threshold of the picture.
+	 * This method gets the median brightness of the whole tile (leaving out black and white pixels) as the background level.
 	 * Then, it sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
-	 * The background level is determined using the Otsu algorithm and subtracted from each pixel before the sum is calculated.
-	 * @param grayscaleTileCopy
+	 * The background level is subtracted from each pixel before the sum is calculated.
+	 * @param grayscaleTile
+	 * @param colonyRoi
 	 * @return
 	 */
 	private static int getBiggestParticleOpacity_darkColonies(ImagePlus grayscaleTile, Roi colonyRoi) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
-
 		//1. find the background level
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(new RoiHistogram(grayscaleTile.getProcessor()));
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
 			return(0);
 		}
 
-		//3. set the Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(colonyRoi);
-		try {
-			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
-		} catch (Exception e) {
+		//3. sum up the pixel values, after subtracting the background level.
+		//if a pixel value is zero, then it's either a really dark spot in the colony --improbable--
+		//or its outside the colony --much more probable--, so we don't count it.
+		//if a colony is darker than the background, it will get a negative value here
+		RoiHistogram colonyHistogram = getFilledCopyHistogram(grayscaleTile, colonyRoi);
+		if(colonyHistogram==null){
 			return(0);
 		}
+		RoiHistogram colonyPixels = colonyHistogram.without(0);
+		int sumOfBrightness = (int)(colonyPixels.getSum() - (long)background_level*colonyPixels.getCount());
 
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		int sumOfBrightness = 0;
-
-		for(int i=0;i<size;i++){
-			int pixelValue = imageBytes[i]&0xFF;		
-
-			//if a pixel value is zero, then it's either a really dark spot in the colony --improbable--
-			//or its outside the colony (see fillOutside above) --much more probable--
+		return (sumOfBrightness);
+	}
 
-			if(pixelValue==0){
-				continue; //we don't want to count the background pixels
-			}
 
-			//sum up the pixel values, after subtracting the (Otsu defined background level).
-			//if a colony is darker than the background, it will get a negative value here
+	/**
+	 * Returns the histogram a copy of the tile would have once painted black outside the given colony Roi.
+	 * Like the copy, the tile is cropped to its own ROI first (if it has one), the colony Roi is then taken as is.
+	 * Returns null if the colony Roi is the whole (cropped) tile: there is nothing outside it to paint,
+	 * which ImageJ's fillOutside fails at, so there is no measurement to make.
+	 * @param grayscaleTile
+	 * @param colonyRoi
+	 * @return
+	 */
+	private static RoiHistogram getFilledCopyHistogram(ImagePlus grayscaleTile, Roi colonyRoi){
+		ImagePlus grayscaleTileCopy = grayscaleTile.getRoi()==null ? grayscaleTile : grayscaleTile.duplicate();
+		ImageProcessor processor = grayscaleTileCopy.getProcessor();
+		int width = processor.getWidth();
+		int height = processor.getHeight();
 
-			sumOfBrightness += pixelValue-background_level;
-		}
+		RoiHistogram colonyHistogram = new RoiHistogram(processor, new RoiRuns(colonyRoi, width, height));
 
-		grayscaleTileCopy.flush();
+		if(grayscaleTileCopy!=grayscaleTile)
+			grayscaleTileCopy.flush();
 
+		int outsidePixels = width*height - colonyHistogram.getCount();
+		if(outsidePixels==0 && colonyRoi.getBounds().equals(new Rectangle(0, 0, width, height)))
+			return(null);
 
-		return (sumOfBrightness);
+		return(colonyHistogram.with(0, outsidePixels));
 	}
 
 
 
-
 	/**
-	 * This method will return the threshold found by the Otsu method and do nothing else
-	 * @param grayscale_image
+	 * This method will return the threshold found by the Otsu method on the given histogram and do nothing else
+	 * @param histogram
 	 * @return
 	 */
-	private static int getThresholdOtsu(ImagePlus grayscale_image){
-
-		//get all the objects required: calibration, imageProcessor and histogram
-		Calibration calibration = new Calibration(grayscale_image);		
-		ImageProcessor imageProcessor = grayscale_image.getProcessor();
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
+	private static int getThresholdOtsu(RoiHistogram histogram){
 
 		//use that histogram to find a threshold
 		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
+		int threshold = at.getThreshold(Method.Otsu, histogram.getCounts());
 
 		return(threshold);
 	}
@@ -8,8 +8,6 @@ import ij.gui.Roi;
 import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
@@ -17,6 +15,7 @@ import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
+import iris.utils.ParticleLabeller;
 import iris.utils.Toolbox;
 
 /**
@@ -59,16 +58,11 @@ public class OpacityTileReaderForHazyColonies {
 		//create the results table, where the results of the particle analysis will be shown
 		ResultsTable resultsTable = new ResultsTable();
 
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
+		//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+		ParticleLabeller particleLabeller = new ParticleLabeller(false, 5, Integer.MAX_VALUE);
 
 
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
-
-		particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
+		Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, input.tileImage); //it gets the image processor internally
 		//
 		//--------------------------------------------------
 		//
@@ -111,7 +105,7 @@ public class OpacityTileReaderForHazyColonies {
 		//3.4 get the opacity of the colony
 		//for this, we need the Roi (region of interest) that corresponds to the colony
 		//so as to exclude the brightness of any contaminations
-		Roi colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+		Roi colonyRoi = rois[indexOfBiggestParticle];
 		
 		output.opacity = getBiggestParticleOpacicity(grayscaleTileCopy, colonyRoi);
 		output.colonyROI = colonyRoi;
@@ -0,0 +1,190 @@
+/**
+ *
+ */
+package iris.tileReaders;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.AutoThresholder;
+import ij.process.AutoThresholder.Method;
+import ij.process.ImageProcessor;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.utils.ComponentLabeller;
+import iris.utils.ComponentLabeller.Component;
+import iris.utils.ParallelTileReader;
+import iris.utils.ParticleLabeller;
+import iris.utils.ParticleLabeller.Particle;
+import iris.utils.RoiHistogram;
+import iris.utils.StageTimings;
+import iris.utils.StageTimings.TimedStage;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * This tile reader reads all the tiles of a plate at once: instead of thresholding and labelling every tile on its own,
+ * the whole cropped plate is thresholded once (Otsu) and its colonies are labelled in a single pass (see ComponentLabeller).
+ * Each colony is then given to the tile of the ROI matrix its centroid falls into, and the biggest colony of each tile
+ * is measured the same way BasicTileReader measures it: its outline is traced to get its perimeter and circularity,
+ * its size is its area plus its perimeter, and tiles whose biggest particle has a circularity under 0.20 are empty.
+ * <p>
+ * The results are not expected to be identical to the ones of the tile-by-tile readers, since the threshold
+ * is the one of the whole plate, and colonies that grow over the tile bounds are not cut off.
+ * The ROIs and the centers returned are in the coordinates of the tiles, as if they came from BasicTileReader.
+ * @author George Kritikos
+ *
+ */
+public class PlateTileReader {
+
+	/**
+	 * Particles smaller than this (in pixels) are left out, the same as in the tile readers
+	 */
+	private static final int minimumParticleSize = 5;
+
+
+	/**
+	 * Reads all the tiles of the given (grayscale, 8-bit) cropped plate, given the ROI matrix of its tiles
+	 * @param croppedImage
+	 * @param ROImatrix
+	 * @return the outputs of all the tiles, [row][column], just like the ROI matrix
+	 */
+	public static BasicTileReaderOutput[][] processPlate(final ImagePlus croppedImage, final Roi[][] ROImatrix){
+		return(StageTimings.time(StageTimings.TILE_READING, new TimedStage<BasicTileReaderOutput[][]>() {
+			public BasicTileReaderOutput[][] call() {
+
+				final int numberOfRows = ROImatrix.length;
+				final int numberOfColumns = ROImatrix[0].length;
+
+				//1. threshold the whole plate, using the Otsu algorithm (colonies are the bright side)
+				ImageProcessor plateProcessor = croppedImage.getProcessor();
+				int threshold = new AutoThresholder().getThreshold(Method.Otsu, new RoiHistogram(plateProcessor).getCounts());
+
+
+				//2. find all the colonies of the plate in one go
+				List<Component> components = ComponentLabeller.label(plateProcessor, threshold+1, 255);
+
+
+				//3. give each colony to the tile its centroid falls into, keeping the biggest one of each tile
+				final Rectangle[][] tileBounds = new Rectangle[numberOfRows][numberOfColumns];
+				for(int i=0; i<numberOfRows; i++){
+					for(int j=0; j<numberOfColumns; j++){
+						tileBounds[i][j] = ROImatrix[i][j].getBounds();
+					}
+				}
+
+				final Component[][] biggestComponents = new Component[numberOfRows][numberOfColumns];
+				for(Component component : components){
+					if(component.area<minimumParticleSize)
+						continue;
+
+					Point tile = findTile(tileBounds, component.xCentroid, component.yCentroid);
+					if(tile==null)
+						continue;
+
+					//on a tie, the first particle found (in raster order) is kept, like the tile readers do
+					Component biggest = biggestComponents[tile.y][tile.x];
+					if(biggest==null || component.area>biggest.area)
+						biggestComponents[tile.y][tile.x] = component;
+				}
+
+
+				//4. measure the colony of each tile, in parallel
+				final BasicTileReaderOutput[][] outputs = new BasicTileReaderOutput[numberOfRows][numberOfColumns];
+				ParallelTileReader.readAllTiles(numberOfRows, numberOfColumns, new ParallelTileReader.TileTask() {
+					public void readTile(int i, int j) {
+						outputs[i][j] = measureColony(biggestComponents[i][j], tileBounds[i][j]);
+					}
+				});
+
+				return(outputs);
+			}
+		}));
+	}
+
+
+	/**
+	 * Traces the given colony and fills in the output of its tile, just like BasicTileReader would
+	 */
+	private static BasicTileReaderOutput measureColony(Component colony, Rectangle tileBounds){
+		BasicTileReaderOutput output = new BasicTileReaderOutput();
+
+		//no particles in this tile
+		if(colony==null){
+			output.emptyResulsTable = true;
+			output.colonySize = 0;//return a colony size of zero
+			return(output);
+		}
+
+		//trace the colony on its own mask, so that no other particle gets in the way
+		ImageProcessor mask = colony.getMask();
+		mask.setThreshold(255, 255, ImageProcessor.NO_LUT_UPDATE);
+		List<Particle> particles = new ParticleLabeller(false, 0, Integer.MAX_VALUE).analyze(new ImagePlus("colony", mask));
+		Particle particle = particles.get(0);
+
+		//check to see if the tile was empty (see Toolbox.isTileEmpty_simple2). If so, return a colony size of zero
+		if(particle.circularity<0.20){
+			output.emptyTile = true;
+			output.colonySize = 0;//return a colony size of zero
+			return(output);
+		}
+
+		output.colonySize = particle.area + (int)Math.round(particle.perimeter);
+		output.circularity = (float)particle.circularity;
+
+		Roi colonyRoi = particle.getRoi();
+		colonyRoi.setLocation(colony.bounds.x - tileBounds.x, colony.bounds.y - tileBounds.y);
+		output.colonyROI = colonyRoi;
+
+		output.colonyCenter = new Point(
+				(int)Math.round(colony.xCentroid - tileBounds.x),
+				(int)Math.round(colony.yCentroid - tileBounds.y));
+
+		return(output);
+	}
+
+
+	/**
+	 * Returns the tile (x: column, y: row) whose bounds contain the given point, or null if it's in none of them.
+	 * The rows and columns of the ROI matrix are in order, so the tile is looked up around the row and column
+	 * whose first tile starts before the point.
+	 */
+	private static Point findTile(Rectangle[][] tileBounds, double x, double y){
+		int row = findLastStartBefore(tileBounds, y, true);
+		int column = findLastStartBefore(tileBounds, x, false);
+		int pointX = (int)Math.floor(x);
+		int pointY = (int)Math.floor(y);
+
+		//the tiles may have been moved a bit by colony breathing, so look at the neighbours too
+		for(int i=Math.max(row-1, 0); i<=Math.min(row+1, tileBounds.length-1); i++){
+			for(int j=Math.max(column-1, 0); j<=Math.min(column+1, tileBounds[0].length-1); j++){
+				if(tileBounds[i][j].contains(pointX, pointY))
+					return(new Point(j, i));
+			}
+		}
+		return(null);
+	}
+
+
+	/**
+	 * Returns the last row (or column) whose first tile starts at or before the given coordinate, or 0 if there's none
+	 */
+	private static int findLastStartBefore(Rectangle[][] tileBounds, double coordinate, boolean rows){
+		int low = 0;
+		int high = (rows ? tileBounds.length : tileBounds[0].length) - 1;
+		int found = 0;
+		while(low<=high){
+			int middle = (low+high)>>>1;
+			int start = rows ? tileBounds[middle][0].y : tileBounds[0][middle].x;
+			if(start<=coordinate){
+				found = middle;
+				low = middle+1;
+			}
+			else{
+				high = middle-1;
+			}
+		}
+		return(found);
+	}
+
+}
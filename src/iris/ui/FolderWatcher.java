@@ -0,0 +1,408 @@
+/**
+ *
+ */
+package iris.ui;
+
+import iris.utils.GridImageWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps processing the pictures of a folder as they arrive, e.g. while a robot is taking them during a screen,
+ * instead of processing the folder once and stopping. It runs until Iris is stopped (Ctrl-C or kill).
+ * <p>
+ * New pictures are noticed through the file system (a WatchService), not by listing the folder again and again.
+ * A picture is only queued for processing once it's completely written: once its size and modification time
+ * have stayed the same for settleMilliseconds. A picture that was written elsewhere and then moved or renamed
+ * into the folder is already complete, so it is queued as soon as it's seen twice with the same size.
+ * Hidden files (starting with a dot) are left out, since that's how most copying tools name the files they're still writing,
+ * and so are the pictures Iris writes itself (see PicturesFilenameFilter), or each of them would be processed in turn.
+ * <p>
+ * The pictures that were already in the folder when watching started are processed first, except the ones that have
+ * an .iris file (or that the run journal lists as done, if one is kept). Pictures are processed on
+ * IrisFrontend.numberOfThreads threads, and each plate's console output is written out in one go once it's done.
+ * When stopped, the pictures being processed are finished, and the ones still waiting are left for next time.
+ * @author George Kritikos
+ *
+ */
+class FolderWatcher {
+
+	/**
+	 * How long a picture needs to stay unchanged to be taken as completely written, and how often the pictures are checked
+	 */
+	public static long settleMilliseconds = 2000;
+	public static long pollMilliseconds = 250;
+
+
+	private final File directory;
+	private final WatchService watchService;
+
+	/**
+	 * The pictures seen but not yet completely written, by name, and the ones that were already queued
+	 */
+	private final Map<String, PendingPicture> pendingPictures = new LinkedHashMap<String, PendingPicture>();
+	private final Set<String> queuedPictures = new HashSet<String>();
+
+	private final PicturesFilenameFilter filter = new PicturesFilenameFilter();
+
+	private ExecutorService workers;
+	private volatile boolean stopping = false;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private final AtomicInteger processedCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+
+
+	/**
+	 * Starts watching the given folder; nothing is processed until watch is called
+	 * @param directory_
+	 * @throws IOException if the folder can't be watched
+	 */
+	FolderWatcher(File directory_) throws IOException {
+		directory = directory_;
+		watchService = FileSystems.getDefault().newWatchService();
+		directory.toPath().register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+
+	/**
+	 * Processes the pictures of the folder as they arrive, until Iris is stopped or the folder can't be watched any more
+	 */
+	void watch(){
+
+		//claim the pictures first, so that nothing is opened if the claims folder can't be used
+		if(IrisFrontend.claimBatchSize>0){
+			IrisFrontend.openWorkClaims(directory.getAbsolutePath());
+			if(IrisFrontend.workClaims==null)
+				return;
+		}
+		//likewise the run journal, which only one run at a time can use
+		if(IrisFrontend.journalRun && IrisFrontend.claimBatchSize==0){
+			if(!IrisFrontend.openRunJournal(directory.getAbsolutePath()))
+				return;
+		}
+
+		//aggregated results files are only complete once they're closed, so each picture gets its own .iris file instead
+		if(IrisFrontend.numberOfAggregatedShards>0){
+			System.out.println("Aggregated results are not written when watching a folder, each picture gets its own .iris file\n");
+			IrisFrontend.numberOfAggregatedShards = 0;
+		}
+
+		//open the log file for writing
+		IrisFrontend.openLog(directory.getAbsolutePath());
+		IrisFrontend.writeToLog("--- Iris version " + IrisFrontend.IrisVersion + " log file\tbuild "+IrisFrontend.IrisBuild+" ---\n");
+		IrisFrontend.writeToLog("-- Started watching folder at "+ new Date() + " --\n");
+		IrisFrontend.writeToLog("-----------------------------------------\n\n\n");
+
+		if(IrisFrontend.columnarOutput){
+			IrisFrontend.openColumnarResults(directory.getAbsolutePath());
+		}
+
+		//each plate's messages are kept aside while it's processed, and written out in one go
+		final PrintStream originalOut = System.out;
+		final PrintStream originalErr = System.err;
+		final ThreadBufferedOutputStream bufferedOut = new ThreadBufferedOutputStream(originalOut);
+		final ThreadBufferedOutputStream bufferedErr = new ThreadBufferedOutputStream(originalErr);
+		System.setOut(new PrintStream(bufferedOut, true));
+		System.setErr(new PrintStream(bufferedErr, true));
+
+		int numberOfThreads = IrisFrontend.multiThreaded ? IrisFrontend.numberOfThreads : 1;
+		workers = Executors.newFixedThreadPool(numberOfThreads);
+
+		Runtime.getRuntime().addShutdownHook(new Thread("Iris folder watcher shutdown") {
+			public void run() {
+				stopWatching();
+				try {
+					stopped.await();
+				} catch (InterruptedException e) {
+					//the JVM is going down anyway
+				}
+			}
+		});
+
+		originalOut.println("Watching " + directory.getAbsolutePath() + " for new pictures, using " + numberOfThreads + " threads (stop with Ctrl-C)\n");
+
+		try {
+			//the pictures that are already there (the folder is listed after starting to watch it, so none are missed)
+			queueExistingPictures();
+
+			while(!stopping){
+				WatchKey key = watchService.poll(pollMilliseconds, TimeUnit.MILLISECONDS);
+				if(key!=null){
+					handleEvents(key);
+					if(!key.reset()){
+						originalErr.println("The folder can't be watched any more, stopping");
+						break;
+					}
+				}
+				queueSettledPictures(bufferedOut, bufferedErr, originalOut, originalErr);
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		catch(ClosedWatchServiceException e){
+			//stopped
+		}
+		finally{
+			finish(originalOut, originalErr);
+		}
+	}
+
+
+	/**
+	 * Stops watching; the pictures being processed are finished first, see finish
+	 */
+	void stopWatching(){
+		stopping = true;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			//it's being stopped anyway
+		}
+	}
+
+
+	/**
+	 * Waits for the pictures being processed, and closes everything that was opened for the run
+	 */
+	private void finish(PrintStream originalOut, PrintStream originalErr){
+		stopping = true;
+		workers.shutdown();
+		try {
+			while(!workers.awaitTermination(1, TimeUnit.MINUTES)){
+				originalOut.println("Waiting for the pictures being processed to finish");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		//the last grid images may still be drawn in the background
+		GridImageWriter.waitForPendingImages();
+
+		System.setOut(originalOut);
+		System.setErr(originalErr);
+
+		String report = "\n\n-- " + processedCount.get() + " pictures processed, " + failedCount.get() + " of them failed --\n";
+		System.out.println(report);
+		IrisFrontend.writeToLog(report);
+		IrisFrontend.writeStageTimings();
+
+		IrisFrontend.closeColumnarResults();
+		IrisFrontend.closeRunJournal();
+		IrisFrontend.closeWorkClaims();
+
+		IrisFrontend.writeToLog("\n\n-----------------------------------------\n");
+		IrisFrontend.writeToLog("-- Stopped watching folder at "+ new Date() + " --\n");
+		IrisFrontend.closeLog();
+
+		stopped.countDown();
+	}
+
+
+	/**
+	 * Adds the pictures already in the folder to the pending ones, leaving out the ones that were processed before
+	 */
+	private void queueExistingPictures(){
+		File[] filesInDirectory = directory.listFiles(filter);
+		if(filesInDirectory==null)
+			return;
+
+		for(File file : filesInDirectory){
+			String pictureName = file.getName();
+			if(IrisFrontend.runJournal!=null ? IrisFrontend.runJournal.isCompleted(pictureName) : new File(file.getAbsolutePath() + ".iris").exists()){
+				queuedPictures.add(pictureName);
+				continue;
+			}
+			notice(pictureName);
+		}
+	}
+
+
+	/**
+	 * Goes through the events of the folder: new and changed pictures are (re)checked, deleted ones are forgotten
+	 */
+	private void handleEvents(WatchKey key){
+		for(WatchEvent<?> event : key.pollEvents()){
+
+			//too many events at once, some were lost: look at the whole folder again
+			if(event.kind()==StandardWatchEventKinds.OVERFLOW){
+				String[] filenames = directory.list(filter);
+				if(filenames!=null){
+					for(String filename : filenames){
+						notice(filename);
+					}
+				}
+				continue;
+			}
+
+			String filename = ((Path) event.context()).getFileName().toString();
+			if(event.kind()==StandardWatchEventKinds.ENTRY_DELETE){
+				pendingPictures.remove(filename);
+			}
+			else if(filter.accept(directory, filename)){
+				notice(filename);
+			}
+		}
+	}
+
+
+	/**
+	 * Starts (or restarts) waiting for the given picture to be completely written, unless it was already queued
+	 */
+	private void notice(String pictureName){
+		if(pictureName.startsWith(".") || queuedPictures.contains(pictureName))
+			return;
+
+		if(!pendingPictures.containsKey(pictureName)){
+			pendingPictures.put(pictureName, new PendingPicture(new File(directory, pictureName)));
+		}
+	}
+
+
+	/**
+	 * Queues the pictures that haven't changed for settleMilliseconds
+	 */
+	private void queueSettledPictures(ThreadBufferedOutputStream bufferedOut, ThreadBufferedOutputStream bufferedErr,
+			PrintStream out, PrintStream err){
+		long now = System.currentTimeMillis();
+
+		Iterator<PendingPicture> iterator = pendingPictures.values().iterator();
+		while(iterator.hasNext()){
+			PendingPicture pending = iterator.next();
+			if(!pending.file.exists()){
+				iterator.remove();
+				continue;
+			}
+			if(!pending.hasSettled(now))
+				continue;
+
+			iterator.remove();
+
+			String pictureName = pending.file.getName();
+			if(IrisFrontend.workClaims!=null && !claim(pending.file, err))
+				continue;
+
+			queuedPictures.add(pictureName);
+			process(pending.file, bufferedOut, bufferedErr, out, err);
+		}
+	}
+
+
+	/**
+	 * Claims the given picture, if it's to be shared with other instances; returns false if another instance has it
+	 */
+	private boolean claim(File file, PrintStream err){
+		try {
+			if(IrisFrontend.workClaims.claimBatch(new File[]{file}, 1).length==0){
+				//it's been processed or claimed by another instance
+				queuedPictures.add(file.getName());
+				return(false);
+			}
+			return(true);
+		} catch (IOException e) {
+			//it'll be tried again when it changes, or when watching is started again
+			err.println("Could not claim " + file.getName() + ": " + e.toString());
+			return(false);
+		}
+	}
+
+
+	/**
+	 * Hands the given picture to the workers
+	 */
+	private void process(final File file, final ThreadBufferedOutputStream bufferedOut, final ThreadBufferedOutputStream bufferedErr,
+			final PrintStream out, final PrintStream err){
+		workers.execute(new Runnable() {
+			public void run() {
+				//left for next time if Iris is being stopped (its claim is given up when the claims are closed)
+				if(stopping)
+					return;
+
+				bufferedOut.startBuffering();
+				bufferedErr.startBuffering();
+
+				String failure = ProcessFolderWorker.processAndRecordFile(file);
+
+				String output = bufferedOut.stopBuffering();
+				String errors = bufferedErr.stopBuffering();
+
+				int processed = processedCount.incrementAndGet();
+				String report = file.getName() + (failure==null ? " done" : " failed: " + failure) + "\t(" + processed + " pictures processed so far)\n";
+				if(failure!=null){
+					failedCount.incrementAndGet();
+					IrisFrontend.writeToLog(file.getName() + "\tcould not be processed\t" + failure + "\n");
+				}
+
+				//one plate at a time, so that their messages don't get mixed up
+				synchronized(FolderWatcher.this){
+					out.print(output);
+					err.print(errors);
+					out.println(report);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * A picture that was seen, and is being waited on until its size and modification time don't change any more
+	 */
+	private static class PendingPicture {
+		final File file;
+		long size;
+		long modified;
+		long lastChange;
+
+		/**
+		 * Whether the picture was looked at once already: it's never taken as settled on the first look
+		 */
+		boolean seen = false;
+
+		PendingPicture(File file_){
+			file = file_;
+		}
+
+		/**
+		 * Looks at the picture again, and returns true if it hasn't changed for settleMilliseconds.
+		 * A picture last modified long enough ago (moved in, or written before it was seen) only needs to be seen twice the same.
+		 */
+		boolean hasSettled(long now){
+			long currentSize = file.length();
+			long currentModified = file.lastModified();
+
+			if(!seen || currentSize!=size || currentModified!=modified){
+				size = currentSize;
+				modified = currentModified;
+				//a modification time in the future (another computer's clock) counts as now
+				lastChange = seen ? now : Math.min(now, currentModified);
+				seen = true;
+				return(false);
+			}
+
+			return(size>0 && now-lastChange>=settleMilliseconds);
+		}
+	}
+
+}
@@ -3,6 +3,11 @@
  */
 package iris.ui;
 
+import iris.utils.EmptyTileClassifier;
+import iris.utils.GridImageWriter;
+import iris.utils.ResultsWriter;
+import iris.utils.StageTimings;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -51,6 +56,19 @@ class IrisConsole {
 		System.out.println("\tSingle colony mode:\t"+IrisFrontend.singleColonyRun);
 		System.out.println("\tnumber of rows:\t"+IrisFrontend.settings.numberOfRowsOfColonies);
 		System.out.println("\tnumber of columns:\t"+IrisFrontend.settings.numberOfColumnsOfColonies);
+		System.out.println("\tnumber of threads:\t"+(IrisFrontend.multiThreaded ? IrisFrontend.numberOfThreads : 1));
+		System.out.println("\tnumber of tile threads:\t"+IrisFrontend.numberOfTileThreads);
+		System.out.println("\tcolumnar results file:\t"+IrisFrontend.columnarOutput);
+		System.out.println("\taggregated results files:\t"+IrisFrontend.numberOfAggregatedShards);
+		System.out.println("\tgrid images:\t"+GridImageWriter.MODE_NAMES[IrisFrontend.gridImageMode]);
+		System.out.println("\tpictures decoded ahead:\t"+IrisFrontend.prefetchDepth);
+		System.out.println("\tplate preview scale:\t"+(IrisFrontend.platePreviewSubsampling>0 ? "1/"+IrisFrontend.platePreviewSubsampling : "off"));
+		System.out.println("\trun journal:\t"+IrisFrontend.journalRun);
+		System.out.println("\tpictures claimed at a time:\t"+(IrisFrontend.claimBatchSize>0 ? IrisFrontend.claimBatchSize : "off"));
+		System.out.println("\tplate-wide labelling:\t"+IrisFrontend.plateLabelling);
+		System.out.println("\twatch folder:\t"+IrisFrontend.watchFolder);
+		System.out.println("\tstage timings:\t"+StageTimings.keepTimings);
+		System.out.println("\tempty tile precheck:\t"+(EmptyTileClassifier.isEnabled() ? "standard deviation up to "+EmptyTileClassifier.maxStandardDeviation : "off"));
 		
 		
 		
@@ -58,7 +76,14 @@ class IrisConsole {
 
 		//distinguish between whole-folder input and single-file input
 		File fileOrFolder = new File(folderLocation);
-		if(fileOrFolder.isDirectory()){
+		if(fileOrFolder.isDirectory() && IrisFrontend.watchFolder){
+			try {
+				new FolderWatcher(fileOrFolder).watch();
+			} catch (IOException e) {
+				System.err.println("Could not watch folder " + folderLocation + ": " + e.toString());
+			}
+		}
+		else if(fileOrFolder.isDirectory()){
 			ProcessFolderWorker processFolderWorker = new ProcessFolderWorker();
 			processFolderWorker.directory = new File(folderLocation);
 
@@ -75,18 +100,47 @@ class IrisConsole {
 			if(filter.accept(null, folderLocation)){
 				try {
 					ProcessFolderWorker.processSingleFile(fileOrFolder);
+					GridImageWriter.waitForPendingImages();
 				} catch (Exception e) {
 					e.printStackTrace();
+				} finally {
+					ResultsWriter.abortUnpublished();
 				}
 			}
 
 		}
 
+		if(EmptyTileClassifier.isEnabled()){
+			System.out.println("Empty tile precheck: "+EmptyTileClassifier.getEmptyTileCount()+" of "+EmptyTileClassifier.getCheckedTileCount()
+					+" tiles taken as empty without thresholding");
+		}
+
 	}
 
 
 	private static void printUsage(){
-		System.out.println("Usage: Iris ProfileName FolderLocation\n");
+		System.out.println("Usage: Iris ProfileName FolderLocation [--threads N] [--tile-threads N] [--aggregate N] [--columnar] [--grid MODE] [--prefetch N] [--plate-preview N] [--journal] [--claim N] [--watch] [--stage-timings] [--plate-labelling] [--empty-tile-precheck SD]\n");
+		System.out.println("  --threads N\t\tprocess N pictures at the same time");
+		System.out.println("  --tile-threads N\tread the tiles of the pictures on N threads (default: number of cores)");
+		System.out.println("  --aggregate N\t\twrite the results of the whole folder in N tab-separated files, instead of an .iris file per picture");
+		System.out.println("  --columnar\t\talso collect the results of the whole folder in one binary .irisc file");
+		System.out.println("  --grid MODE\t\twhich grid images to save: off, full (default), thumbnail or errors (only for pictures that failed)");
+		System.out.println("  --prefetch N\t\tdecode up to N pictures ahead of the ones being analysed (default: 2, 0 to switch off)");
+		System.out.println("  --plate-preview N\tfind the plate on a preview scaled down N times, and only decode the plate at full resolution");
+		System.out.println("\t\t\t(the plate is cropped from that part of the picture only, so the measurements can change slightly)");
+		System.out.println("\t\t\t(not for profiles set to crop at fixed coordinates)");
+		System.out.println("  --journal\t\tkeep a journal of the pictures processed (iris.journal), and skip the ones it lists as done");
+		System.out.println("\t\t\twith the same settings, so that a stopped run can be resumed");
+		System.out.println("  --claim N\t\tclaim the pictures N at a time (in the .iris-claims folder), so that several Iris instances");
+		System.out.println("\t\t\tcan share one folder; pictures claimed by an instance that stopped are taken over after 5 minutes");
+		System.out.println("  --watch\t\tkeep watching the folder, and process each new picture as soon as it's completely written");
+		System.out.println("\t\t\t(pictures with an .iris file are left out; stop with Ctrl-C)");
+		System.out.println("  --stage-timings\tsum up the time the pictures spent in each stage (decoding, rotation, cropping, etc.)");
+		System.out.println("\t\t\tin a file next to the log file: count, total, median, 95th and 99th percentiles");
+		System.out.println("  --plate-labelling\tfind the colonies of the whole plate in one go, then give each one to the tile its center is in");
+		System.out.println("\t\t\t(Colony growth and Basic profiles; the plate is thresholded as a whole, so sizes differ slightly)");
+		System.out.println("  --empty-tile-precheck SD\ttake tiles with a standard deviation up to SD and no bimodal histogram as empty, without thresholding them");
+		System.out.println("\t\t\t(4 is a safe value; flat tiles are reported as empty even if a noise particle would pass as a colony)\n");
 		System.out.println("Tip: call without any arguments to invoke GUI\n");
 	}
 
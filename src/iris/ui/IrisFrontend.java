@@ -5,17 +5,31 @@ package iris.ui;
 
 import iris.settings.BasicSettings;
 import iris.settings.UserSettings;
+import iris.utils.AggregatedResultsWriter;
+import iris.utils.ColumnarResultsWriter;
+import iris.utils.EmptyTileClassifier;
+import iris.utils.GridImageWriter;
+import iris.utils.ImagePrefetcher;
+import iris.utils.RunJournal;
+import iris.utils.StageTimings;
+import iris.utils.WorkClaims;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+
+import com.google.gson.Gson;
 
 /**
  * This class acts as the decision point between console and GUI versions
@@ -42,12 +56,101 @@ public class IrisFrontend {
 
 	/**
 	 * these are added specially for the multithreading case
+	 * multithreading is switched on from the console, using the --threads option
 	 */
 	public static boolean multiThreaded = false;
 	static ExecutorService executorService;
 	public static List<Callable<Object>> todoThread;
 	public static int numberOfThreads = 4;
 
+	/**
+	 * the number of threads that read the tiles of the plates, shared by all plates being processed
+	 * this is set from the console, using the --tile-threads option
+	 */
+	public static int numberOfTileThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * whether the results of all the pictures of a folder are also collected in one columnar (binary) file
+	 * this is switched on from the console, using the --columnar option
+	 */
+	static boolean columnarOutput = false;
+
+	/**
+	 * the columnar results file of the folder being processed, or null if there is none
+	 */
+	public static ColumnarResultsWriter columnarResults = null;
+
+	/**
+	 * the number of files the results of a folder are aggregated in, instead of an .iris file per picture (0: don't aggregate)
+	 * this is set from the console, using the --aggregate option
+	 */
+	static int numberOfAggregatedShards = 0;
+
+	/**
+	 * the aggregated results of the folder being processed, or null if each picture gets its own .iris file
+	 */
+	public static AggregatedResultsWriter aggregatedResults = null;
+
+	/**
+	 * which grid images are saved, and how (one of the GridImageWriter modes)
+	 * this is set from the console, using the --grid option
+	 */
+	public static int gridImageMode = GridImageWriter.FULL;
+
+	/**
+	 * the number of pictures of a folder that are decoded ahead of the ones being analysed (0: each profile opens its own picture)
+	 * this is set from the console, using the --prefetch option
+	 */
+	static int prefetchDepth = 2;
+
+	/**
+	 * the prefetcher of the folder being processed, or null if pictures aren't decoded ahead
+	 */
+	public static ImagePrefetcher imagePrefetcher = null;
+
+	/**
+	 * if not 0, only the plate of each picture is decoded at full resolution, after finding it on a preview
+	 * that keeps every n-th pixel (see ImageRegionDecoder); the crop, and so the measurements, can differ slightly
+	 * this is set from the console, using the --plate-preview option
+	 */
+	public static int platePreviewSubsampling = 0;
+
+	/**
+	 * if true, the colonies of each plate are found in one go over the whole plate, and then given to their tiles
+	 * (see PlateTileReader), instead of thresholding and labelling every tile on its own
+	 * this is switched on from the console, using the --plate-labelling option
+	 */
+	public static boolean plateLabelling = false;
+
+	/**
+	 * whether a journal of the pictures processed is kept in the folder, so that a stopped run can be resumed
+	 * this is switched on from the console, using the --journal option
+	 */
+	static boolean journalRun = false;
+
+	/**
+	 * the journal of the folder being processed, or null if none is kept
+	 */
+	public static RunJournal runJournal = null;
+
+	/**
+	 * if not 0, the pictures of the folder are claimed this many at a time, so that several Iris instances
+	 * (e.g. on different cluster nodes) can share the folder (see WorkClaims)
+	 * this is set from the console, using the --claim option
+	 */
+	static int claimBatchSize = 0;
+
+	/**
+	 * the claims of the folder being processed, or null if pictures aren't claimed
+	 */
+	public static WorkClaims workClaims = null;
+
+	/**
+	 * if true, the folder is not processed once, but watched for new pictures, which are processed as they arrive (see FolderWatcher)
+	 * this is switched on from the console, using the --watch option
+	 */
+	static boolean watchFolder = false;
+
 
 	/**
 	 * This string array holds the names of all the profiles
@@ -73,6 +176,11 @@ public class IrisFrontend {
 	 */
 	private static BufferedWriter logFile = null;
 
+	/**
+	 * the path of the log file, so that the other files of the run can be named after it
+	 */
+	private static String logFilePath = null;
+
 	/**
 	 * This string holds the software version that is defined here once to be used whenever it needs to be displayed.
 	 */
@@ -101,7 +209,7 @@ public class IrisFrontend {
 
 	/**
 	 * 
-	 * @param args	IrisJarFilename Profile Path [384/96] [DEBUG] 
+	 * @param args	IrisJarFilename Profile Path [384/96] [DEBUG] [--threads N]
 	 */
 	public static void main(String[] args) {
 
@@ -110,6 +218,12 @@ public class IrisFrontend {
 		//apply user settings
 		UserSettings.applyUserSettings(userSettings);
 
+		//take out any --option arguments, the rest are positional
+		args = parseConsoleOptions(args);
+		if(args==null){
+			return;
+		}
+
 		int argumentOffset = 0;
 		//first check if we need to turn on debug mode
 		if(args.length>0 && args[args.length-1].equalsIgnoreCase("DEBUG")){
@@ -146,11 +260,160 @@ public class IrisFrontend {
 	}
 
 
+	/**
+	 * This function will apply any "--option value" arguments found in the given command line arguments.
+	 * It returns the remaining arguments, in the order they were given, or null if an option was not valid. 
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseConsoleOptions(String[] args){
+
+		List<String> remainingArguments = new ArrayList<String>();
+
+		for(int i=0; i<args.length; i++){
+
+			if(args[i].equalsIgnoreCase("--threads")){
+				try{
+					numberOfThreads = Integer.parseInt(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--threads needs to be followed by the number of threads to use");
+					return(null);
+				}
+				if(numberOfThreads<1){
+					System.err.println("--threads needs at least one thread");
+					return(null);
+				}
+				multiThreaded = numberOfThreads>1;
+			}
+
+			else if(args[i].equalsIgnoreCase("--tile-threads")){
+				try{
+					numberOfTileThreads = Integer.parseInt(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--tile-threads needs to be followed by the number of threads to use");
+					return(null);
+				}
+				if(numberOfTileThreads<1){
+					System.err.println("--tile-threads needs at least one thread");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--aggregate")){
+				try{
+					numberOfAggregatedShards = Integer.parseInt(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--aggregate needs to be followed by the number of results files to write");
+					return(null);
+				}
+				if(numberOfAggregatedShards<1){
+					System.err.println("--aggregate needs at least one results file");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--prefetch")){
+				try{
+					prefetchDepth = Integer.parseInt(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--prefetch needs to be followed by the number of pictures to decode ahead");
+					return(null);
+				}
+				if(prefetchDepth<0){
+					System.err.println("--prefetch can't be negative");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--plate-preview")){
+				try{
+					platePreviewSubsampling = Integer.parseInt(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--plate-preview needs to be followed by how much to scale the preview down by");
+					return(null);
+				}
+				if(platePreviewSubsampling<0){
+					System.err.println("--plate-preview can't be negative");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--empty-tile-precheck")){
+				try{
+					EmptyTileClassifier.maxStandardDeviation = Double.parseDouble(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--empty-tile-precheck needs to be followed by the largest standard deviation of an empty tile");
+					return(null);
+				}
+				if(EmptyTileClassifier.maxStandardDeviation<0){
+					System.err.println("--empty-tile-precheck can't be negative");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--grid")){
+				gridImageMode = i+1<args.length ? Arrays.asList(GridImageWriter.MODE_NAMES).indexOf(args[++i].toLowerCase()) : -1;
+				if(gridImageMode<0){
+					System.err.println("--grid needs to be followed by one of: off, full, thumbnail, errors");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--stage-timings")){
+				StageTimings.keepTimings = true;
+			}
+
+			else if(args[i].equalsIgnoreCase("--plate-labelling")){
+				plateLabelling = true;
+			}
+
+			else if(args[i].equalsIgnoreCase("--claim")){
+				try{
+					claimBatchSize = Integer.parseInt(args[++i]);
+				}
+				catch(Exception e){
+					System.err.println("--claim needs to be followed by the number of pictures to claim at a time");
+					return(null);
+				}
+				if(claimBatchSize<0){
+					System.err.println("--claim can't be negative");
+					return(null);
+				}
+			}
+
+			else if(args[i].equalsIgnoreCase("--watch")){
+				watchFolder = true;
+			}
+
+			else if(args[i].equalsIgnoreCase("--journal")){
+				journalRun = true;
+			}
+
+			else if(args[i].equalsIgnoreCase("--columnar")){
+				columnarOutput = true;
+			}
+
+			else{
+				remainingArguments.add(args[i]);
+			}
+		}
+
+		return(remainingArguments.toArray(new String[remainingArguments.size()]));
+	}
+
+
 	/**
 	 * This function will create a unique log filename and open it for writing
 	 */
 	static void openLog(String path){		
 		String uniqueLogFilename = path + File.separator + getUniqueLogFilename();
+		logFilePath = uniqueLogFilename;
 		try {
 			logFile = new BufferedWriter(new FileWriter(uniqueLogFilename));
 		} catch (IOException e) {
@@ -159,6 +422,19 @@ public class IrisFrontend {
 		}
 	}
 
+	/**
+	 * This function will write the summary of the stage timings of the run next to the log file, if they were kept
+	 */
+	static void writeStageTimings(){
+		if(!StageTimings.keepTimings || logFilePath==null)
+			return;
+
+		String timingsFilename = logFilePath.substring(0, logFilePath.length()-".log".length()) + "_timings.tsv";
+		if(!StageTimings.writeSummary(new File(timingsFilename))){
+			System.err.println("Could not write stage timings file");
+		}
+	}
+
 	/**
 	 * Does what it says in the box
 	 */
@@ -197,6 +473,152 @@ public class IrisFrontend {
 		return("iris_v"+IrisFrontend.IrisVersion+"_"+getDateTime()+".log");
 	}
 
+
+	/**
+	 * This function will open a new columnar results file in the given folder, named like the log file.
+	 * If the file can't be created, the run goes on with the .iris files only.
+	 * @param path
+	 */
+	static void openColumnarResults(String path){
+		String uniqueFilename = path + File.separator + "iris_v"+IrisFrontend.IrisVersion+"_"+getDateTime()+".irisc";
+		try {
+			columnarResults = new ColumnarResultsWriter(new File(uniqueFilename));
+		} catch (IOException e) {
+			System.err.println("Could not open columnar results file");
+			columnarResults = null;
+		}
+	}
+
+	/**
+	 * This function will prepare the aggregated results files of the given folder, named like the log file
+	 * @param path
+	 */
+	static void openAggregatedResults(String path){
+		aggregatedResults = new AggregatedResultsWriter(new File(path), "iris_v"+IrisFrontend.IrisVersion+"_"+getDateTime()+"_results", numberOfAggregatedShards);
+	}
+
+	/**
+	 * Does what it says in the box. Returns false if the aggregated results could not be written.
+	 */
+	static boolean closeAggregatedResults(){
+		boolean closed = true;
+		if(aggregatedResults!=null && !aggregatedResults.close()){
+			System.err.println("Error writing aggregated results file");
+			closed = false;
+		}
+		aggregatedResults = null;
+		return(closed);
+	}
+
+	/**
+	 * This function will open the run journal of the given folder, cleaning up after any pictures an earlier run didn't finish.
+	 * If the journal can't be opened, the run goes on without it. If another run is using it, returns false:
+	 * no pictures should be processed then, so as not to process (or clean up) the pictures of the other run.
+	 * @param path
+	 * @return
+	 */
+	static boolean openRunJournal(String path){
+		try {
+			runJournal = new RunJournal(new File(path), getSettingsHash());
+		} catch (RunJournal.JournalInUseException e) {
+			System.err.println("Another run is processing this folder, no pictures will be processed: " + e.getMessage());
+			runJournal = null;
+			return(false);
+		} catch (IOException e) {
+			System.err.println("Could not open run journal, all pictures will be processed");
+			runJournal = null;
+		}
+		return(true);
+	}
+
+	/**
+	 * Does what it says in the box
+	 */
+	static void closeRunJournal(){
+		if(runJournal!=null && !runJournal.close()){
+			System.err.println("Error writing run journal");
+		}
+		runJournal = null;
+	}
+
+	/**
+	 * This function will start claiming the pictures of the given folder.
+	 * If the claims folder can't be used, no pictures are processed, so as not to duplicate the work of other instances.
+	 * @param path
+	 */
+	static void openWorkClaims(String path){
+		try {
+			workClaims = new WorkClaims(new File(path));
+		} catch (IOException e) {
+			System.err.println("Could not open the claims folder, no pictures will be processed: " + e.toString());
+			workClaims = null;
+		}
+	}
+
+	/**
+	 * Does what it says in the box
+	 */
+	static void closeWorkClaims(){
+		if(workClaims!=null){
+			workClaims.close();
+		}
+		workClaims = null;
+	}
+
+
+	/**
+	 * Returns a short hash of everything that changes the results of a picture (the profile and its user settings,
+	 * the plate format, the Iris version, the options that change the measurements and the files they are written in),
+	 * so that the run journal only skips pictures that were processed the same way
+	 * @return
+	 */
+	static String getSettingsHash(){
+		String profileSettings = "";
+		if(userSettings!=null){
+			profileSettings = new Gson().toJson(userSettings.getProfileSettings(selectedProfile));
+		}
+
+		String runSettings = IrisVersion + "\t" + selectedProfile + "\t" + profileSettings
+				+ "\t" + settings.numberOfRowsOfColonies + "x" + settings.numberOfColumnsOfColonies
+				+ "\t" + singleColonyRun + "\t" + plateLabelling + "\t" + EmptyTileClassifier.maxStandardDeviation
+				+ "\t" + platePreviewSubsampling + "\t" + numberOfAggregatedShards;
+
+		CRC32 crc = new CRC32();
+		crc.update(runSettings.getBytes(Charset.forName("UTF-8")));
+		return(Long.toHexString(crc.getValue()));
+	}
+
+
+	/**
+	 * This function will start decoding the given pictures ahead of the profiles, if asked for
+	 * @param files
+	 */
+	static void openImagePrefetcher(File[] files){
+		if(prefetchDepth>0){
+			imagePrefetcher = new ImagePrefetcher(files, prefetchDepth);
+		}
+	}
+
+	/**
+	 * Does what it says in the box
+	 */
+	static void closeImagePrefetcher(){
+		if(imagePrefetcher!=null){
+			imagePrefetcher.close();
+		}
+		imagePrefetcher = null;
+	}
+
+	/**
+	 * Does what it says in the box
+	 */
+	static void closeColumnarResults(){
+		if(columnarResults!=null && !columnarResults.close()){
+			System.err.println("Error writing columnar results file");
+		}
+		columnarResults = null;
+	}
+
 	/**
 	 * This function will return the date and time in a format that can be used to create a unique filename.
 	 * @return
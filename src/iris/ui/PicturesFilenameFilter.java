@@ -14,7 +14,8 @@ class PicturesFilenameFilter implements FilenameFilter {
 
 	/**
 	 * This function is designed to accept every JPEG file in the given directory
-	 * Except dat filenames and the ones that that their filename contains the word "grid"
+	 * Except dat filenames and the pictures Iris writes itself: the grid images (.grid.jpg),
+	 * the inverted pictures of the inverted profiles (.inverted.jpg) and the tile pictures (tile_*)
 	 */
 	@Override
 	public boolean accept(File dir, String filename) {
@@ -30,6 +31,9 @@ class PicturesFilenameFilter implements FilenameFilter {
 		if(filename.contains(".grid.")){
 			return(false);
 		}
+		if(filename.contains(".inverted.")){
+			return(false);
+		}
 		if(filename.contains("dat_grid_ovr")){
 			return(false);
 		}
@@ -26,14 +26,21 @@ import iris.profiles.MorphologyProfileStm96;
 import iris.profiles.OpacityProfile;
 import iris.profiles.OpacityProfile2;
 import iris.profiles.XgalProfile;
+import iris.utils.GridImageWriter;
+import iris.utils.ResultsWriter;
+import iris.utils.RunJournal;
+import iris.utils.StageTimings;
 
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import javax.swing.SwingWorker;
@@ -63,33 +70,153 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 	@Override
 	protected String doInBackground() throws Exception {
 
+		//open the run journal first, if one is kept, so that nothing is touched if another run is using this folder
+		//(when pictures are claimed, the claims keep track of what's done instead, for all the instances sharing the folder)
+		if(IrisFrontend.journalRun && IrisFrontend.claimBatchSize==0){
+			if(!IrisFrontend.openRunJournal(directory.getAbsolutePath()))
+				return(null);
+		}
+
 		//open the log file for writing
 		IrisFrontend.openLog(directory.getAbsolutePath());
 		IrisFrontend.writeToLog("--- Iris version " + IrisFrontend.IrisVersion + " log file\tbuild "+IrisFrontend.IrisBuild+" ---\n");
 		IrisFrontend.writeToLog("-- Started processing files at "+ new Date() + " --\n");
 		IrisFrontend.writeToLog("-----------------------------------------\n\n\n");
 
+		//open the columnar results file, if asked for
+		if(IrisFrontend.columnarOutput){
+			IrisFrontend.openColumnarResults(directory.getAbsolutePath());
+		}
+
+		//collect the results in a few aggregated files instead of one per picture, if asked for
+		if(IrisFrontend.numberOfAggregatedShards>0){
+			IrisFrontend.openAggregatedResults(directory.getAbsolutePath());
+		}
+
 
 		//get a list of the files in the directory, keeping only image files
 		File[] filesInDirectory = directory.listFiles(new PicturesFilenameFilter());
 
+		//resume from the run journal, if one is kept
+		filesInDirectory = skipCompletedFiles(filesInDirectory);
+
+		//this will hold the files that could not be processed, along with the reason
+		List<String> failedFiles = null;
+		int numberOfFiles = filesInDirectory.length;
+
+		if(IrisFrontend.claimBatchSize>0){
+			failedFiles = new ArrayList<String>();
+			numberOfFiles = processClaimedFiles(filesInDirectory, failedFiles);
+		}
+		else{
+			//start decoding the first pictures in the background
+			IrisFrontend.openImagePrefetcher(filesInDirectory);
+			failedFiles = processFiles(filesInDirectory);
+			IrisFrontend.closeImagePrefetcher();
+		}
+
+		//the last grid images may still be drawn in the background
+		GridImageWriter.waitForPendingImages();
+
+		reportFailedFiles(failedFiles, numberOfFiles);
+		IrisFrontend.writeStageTimings();
+
+		IrisFrontend.closeColumnarResults();
+		boolean aggregatedResultsWritten = IrisFrontend.closeAggregatedResults();
+
+		//pictures in aggregated results only count as done once their files are complete
+		if(IrisFrontend.runJournal!=null && aggregatedResultsWritten){
+			IrisFrontend.runJournal.commitDeferred();
+		}
+		IrisFrontend.closeRunJournal();
+
+		//IrisFrontend.closeLog();
+		//close the log file
+		IrisFrontend.writeToLog("\n\n-----------------------------------------\n");
+		IrisFrontend.writeToLog("-- Done processing all files at "+ new Date() + " --\n");
+		IrisFrontend.closeLog();
+
+		return(null);
+	}
+
+
+	/**
+	 * This function processes the given files, on as many threads as asked for
+	 * @param files
+	 * @return the list of files that failed
+	 */
+	private List<String> processFiles(File[] files){
+		if(IrisFrontend.multiThreaded && IrisFrontend.numberOfThreads>1){
+			return(processFilesInParallel(files));
+		}
+		return(processFilesSerially(files));
+	}
+
+
+	/**
+	 * This function processes the pictures of the folder a batch at a time, claiming each batch first
+	 * so that other Iris instances sharing the folder (see WorkClaims) work on other pictures.
+	 * Pictures are decoded ahead within each batch only.
+	 * @param filesInDirectory
+	 * @param failedFiles:	the files that failed are added here
+	 * @return the number of files this instance processed
+	 */
+	private int processClaimedFiles(File[] filesInDirectory, List<String> failedFiles){
+		IrisFrontend.openWorkClaims(directory.getAbsolutePath());
+		if(IrisFrontend.workClaims==null)
+			return(0);
+
+		System.out.println("Claiming pictures " + IrisFrontend.claimBatchSize + " at a time, as " + IrisFrontend.workClaims.getOwner() + "\n");
+
+		int numberOfFiles = 0;
+		try{
+			while(true){
+				File[] batch = IrisFrontend.workClaims.claimBatch(filesInDirectory, IrisFrontend.claimBatchSize);
+				if(batch.length==0)
+					break;
+
+				IrisFrontend.openImagePrefetcher(batch);
+				failedFiles.addAll(processFiles(batch));
+				IrisFrontend.closeImagePrefetcher();
+
+				numberOfFiles += batch.length;
+			}
+		}
+		catch(IOException e){
+			System.err.println("Could not claim any more pictures: " + e.toString());
+		}
+		finally{
+			IrisFrontend.closeImagePrefetcher();
+			IrisFrontend.closeWorkClaims();
+		}
+
+		return(numberOfFiles);
+	}
+
+
+	/**
+	 * This function processes the given files one after the other, on the calling thread
+	 * @param filesInDirectory
+	 * @return the list of files that failed
+	 */
+	private List<String> processFilesSerially(File[] filesInDirectory){
+
+		List<String> failedFiles = new ArrayList<String>();
+
 		int i=0;
 		int max = filesInDirectory.length;
 
 		for (File file : filesInDirectory) {
-			
+
 			if(!file.exists())
 				continue;
-			
+
 			if(file.isDirectory())
 				continue;
 
-			try{
-				processSingleFile(file);
-			}
-			catch(Exception e){
-				System.out.println("Error processing file!\n");
-				e.printStackTrace(System.err);
+			String failure = processAndRecordFile(file);
+			if(failure!=null){
+				failedFiles.add(file.getName() + "\t" + failure);
 			}
 
 			i++;
@@ -100,16 +227,189 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 			publish("...done! " + "\n\n\n");
 		}
 
-		//IrisFrontend.closeLog();
-		//close the log file
-		IrisFrontend.writeToLog("\n\n-----------------------------------------\n");
-		IrisFrontend.writeToLog("-- Done processing all files at "+ new Date() + " --\n");
-		IrisFrontend.closeLog();
+		return(failedFiles);
+	}
+
+
+	/**
+	 * This function processes the given files concurrently, on a pool of IrisFrontend.numberOfThreads threads.
+	 * Each plate's console output is kept aside while it is being processed, and written out
+	 * in the order the files were listed, so the log reads the same as that of a serial run.
+	 * @param filesInDirectory
+	 * @return the list of files that failed
+	 */
+	private List<String> processFilesInParallel(File[] filesInDirectory){
+
+		//route each worker thread's messages to its own buffer
+		PrintStream originalOut = System.out;
+		PrintStream originalErr = System.err;
+		final ThreadBufferedOutputStream bufferedOut = new ThreadBufferedOutputStream(originalOut);
+		final ThreadBufferedOutputStream bufferedErr = new ThreadBufferedOutputStream(originalErr);
+		System.setOut(new PrintStream(bufferedOut, true));
+		System.setErr(new PrintStream(bufferedErr, true));
+
+		System.out.println("Processing " + filesInDirectory.length + " files using " + IrisFrontend.numberOfThreads + " threads\n");
+
+		IrisFrontend.executorService = Executors.newFixedThreadPool(IrisFrontend.numberOfThreads);
+		IrisFrontend.todoThread = new ArrayList<Callable<Object>>();
+
+		for (final File file : filesInDirectory) {
+
+			if(!file.exists() || file.isDirectory())
+				continue;
 
+			IrisFrontend.todoThread.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					bufferedOut.startBuffering();
+					bufferedErr.startBuffering();
+
+					String failure = processAndRecordFile(file);
+
+					return(new PlateResult(file, failure, bufferedOut.stopBuffering(), bufferedErr.stopBuffering()));
+				}
+			});
+		}
+
+		List<String> failedFiles = null;
+		try{
+			failedFiles = waitForThreads(IrisFrontend.todoThread, originalOut, originalErr);
+		}
+		finally{
+			System.setOut(originalOut);
+			System.setErr(originalErr);
+		}
+
+		return(failedFiles);
+	}
+
+
+	/**
+	 * Leaves out the pictures the run journal lists as done with the same settings,
+	 * and reports what is being resumed to the console and the log file
+	 * @param filesInDirectory
+	 * @return the pictures that still need to be processed
+	 */
+	private static File[] skipCompletedFiles(File[] filesInDirectory){
+		RunJournal journal = IrisFrontend.runJournal;
+		if(journal==null)
+			return(filesInDirectory);
+
+		List<File> remainingFiles = new ArrayList<File>();
+		for (File file : filesInDirectory) {
+			if(!journal.isCompleted(file.getName()))
+				remainingFiles.add(file);
+		}
+
+		int interruptedPictures = journal.getInterruptedPictures().size();
+		if(remainingFiles.size()<filesInDirectory.length || interruptedPictures>0){
+			String report = "Resuming from the run journal: " + (filesInDirectory.length-remainingFiles.size()) + " pictures already done, "
+					+ interruptedPictures + " interrupted ones will be processed again\n";
+			System.out.println(report);
+			IrisFrontend.writeToLog(report);
+		}
+
+		return(remainingFiles.toArray(new File[remainingFiles.size()]));
+	}
+
+
+	/**
+	 * This function will process the given file (see processAndCheckFile), recording it in the run journal if one is kept,
+	 * and giving up its claim if pictures are claimed.
+	 * Pictures written to aggregated results are only recorded as done once the results files are closed.
+	 * @param file
+	 * @return null if the file was processed, otherwise the reason it failed
+	 */
+	static String processAndRecordFile(File file){
+		RunJournal journal = IrisFrontend.runJournal;
+		String pictureName = file.getName();
+
+		if(journal!=null)
+			journal.started(pictureName);
+
+		String failure = processAndCheckFile(file);
+
+		if(journal!=null){
+			if(failure!=null)
+				journal.failed(pictureName, failure);
+			else if(IrisFrontend.aggregatedResults!=null)
+				journal.completedOnClose(pictureName, IrisFrontend.aggregatedResults.getShardFile(pictureName).getName());
+			else if(ResultsWriter.getPublishedResults()!=null)
+				journal.completed(pictureName, ResultsWriter.getPublishedResults());
+			else
+				journal.completed(pictureName, pictureName + ".iris");
+		}
+
+		if(IrisFrontend.workClaims!=null)
+			IrisFrontend.workClaims.finish(pictureName, failure==null);
+
+		return(failure);
+	}
+
+
+	/**
+	 * This function will process the given file, catching anything that goes wrong.
+	 * Profiles that are unable to process a picture explain why on the standard error and don't publish any results,
+	 * so a picture whose profile didn't publish results on this thread is also reported as a failure,
+	 * whatever results files are already in the folder.
+	 * In nice mode, a picture whose iris file was already there is left out, and counts as processed.
+	 * @param file
+	 * @return null if the file was processed, otherwise the reason it failed
+	 */
+	private static String processAndCheckFile(File file){
+		boolean alreadyProcessed = IrisFrontend.nice && new File(file.getAbsolutePath() + ".iris").exists();
+
+		ResultsWriter.startPicture();
+		StageTimings.startPicture(file.getName());
+		try{
+			processSingleFile(file);
+		}
+		catch(Throwable e){
+			System.out.println("Error processing file!\n");
+			e.printStackTrace(System.err);
+			return(e.toString());
+		}
+		finally{
+			StageTimings.endPicture();
+
+			//a profile that gave up on the picture, or threw, may have left its results half-written
+			ResultsWriter.abortUnpublished();
+
+			//make room for the next picture, in case this one was decoded ahead but never opened
+			if(IrisFrontend.imagePrefetcher!=null){
+				IrisFrontend.imagePrefetcher.discard(file.getAbsolutePath());
+			}
+		}
+
+		if(ResultsWriter.getPublishedResults()==null && !alreadyProcessed){
+			return("no results were written");
+		}
 		return(null);
 	}
 
 
+	/**
+	 * Writes a summary of the files that could not be processed to the console and the log file
+	 * @param failedFiles
+	 * @param numberOfFiles
+	 */
+	private static void reportFailedFiles(List<String> failedFiles, int numberOfFiles){
+
+		StringBuilder report = new StringBuilder();
+		report.append("\n\n-- " + (numberOfFiles-failedFiles.size()) + " / " + numberOfFiles + " files processed successfully --\n");
+
+		if(!failedFiles.isEmpty()){
+			report.append("-- the following files could not be processed: --\n");
+			for (String failedFile : failedFiles) {
+				report.append("\t" + failedFile + "\n");
+			}
+		}
+
+		System.out.println(report.toString());
+		IrisFrontend.writeToLog(report.toString());
+	}
+
+
 	public static void processSingleFile(File file){
 
 
@@ -321,25 +621,72 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 
 
 	/**
-	 * This method will wait for all threads to finish execution before carrying on
+	 * This method will wait for all threads to finish execution before carrying on.
+	 * Results are collected in the order the tasks were given, writing each plate's console output
+	 * to the given streams as soon as that plate and all the ones before it are done.
+	 * @return the list of files that failed
 	 */
-	private static void waitForThreads(List<Callable<Object>> todoIndex_) {
-		List<Future<Object>> listOfFutures = null;
-		try {
-			listOfFutures = IrisFrontend.executorService.invokeAll(todoIndex_);
+	private List<String> waitForThreads(List<Callable<Object>> todoIndex_, PrintStream out, PrintStream err) {
+
+		List<String> failedFiles = new ArrayList<String>();
+		List<Future<Object>> listOfFutures = new ArrayList<Future<Object>>(todoIndex_.size());
 
+		for (Callable<Object> todo : todoIndex_) {
+			listOfFutures.add(IrisFrontend.executorService.submit(todo));
+		}
+
+		int i=0;
+		int max = listOfFutures.size();
+
+		try {
 			for (Future<Object> future : listOfFutures) {
-				future.get();
+				PlateResult result = (PlateResult) future.get();
+
+				out.print(result.output);
+				err.print(result.errors);
+
+				if(result.failure!=null){
+					failedFiles.add(result.file.getName() + "\t" + result.failure);
+				}
+
+				i++;
+				int progress = Math.min(i*100/max, 100);
+				setProgress(progress);
+				out.println(i + " / " + max + "\t(" + progress +"% done)" +  "\n\n");
+
+				publish("...done! " + "\n\n\n");
 			}
 
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace(err);
+		} catch (ExecutionException e) {
+			//processAndCheckFile catches everything, so this shouldn't happen
+			e.printStackTrace(err);
+		} finally {
+			//wait for all futures to finish executing
+			IrisFrontend.executorService.shutdownNow();
 		}
 
-		//wait for all futures to finish executing
-		IrisFrontend.executorService.shutdown();
+		return(failedFiles);
+	}
+
 
+	/**
+	 * This holds what happened while processing a single file on a worker thread
+	 */
+	private static class PlateResult {
+		final File file;
+		final String failure;
+		final String output;
+		final String errors;
+
+		PlateResult(File file_, String failure_, String output_, String errors_){
+			file = file_;
+			failure = failure_;
+			output = output_;
+			errors = errors_;
+		}
 	}
 
 
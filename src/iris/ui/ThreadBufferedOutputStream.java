@@ -0,0 +1,143 @@
+/**
+ *
+ */
+package iris.ui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This stream is installed in place of the standard output/error when plates are processed in parallel.
+ * Whatever a worker thread prints goes to that thread's own buffer, so that the messages of each plate
+ * can be written out in one piece, and in the order the files were submitted.
+ * Threads that have not started buffering write straight through to the original stream.
+ * <p>
+ * Work a plate hands to other threads (its tiles, see ParallelTileReader) prints to the plate's buffers too:
+ * the handing thread passes its buffers on with getThreadBuffers, and the threads doing the work take them up
+ * with setThreadBuffers for as long as they work for that plate.
+ * @author George Kritikos
+ *
+ */
+public class ThreadBufferedOutputStream extends OutputStream {
+
+	/**
+	 * The stream that unbuffered threads (and flushed buffers) write to
+	 */
+	private final PrintStream target;
+
+	/**
+	 * Holds the buffers of every thread that is currently processing a plate, one per stream (output and error)
+	 */
+	private static final ThreadLocal<Map<ThreadBufferedOutputStream, ByteArrayOutputStream>> threadBuffers =
+			new ThreadLocal<Map<ThreadBufferedOutputStream, ByteArrayOutputStream>>();
+
+
+	public ThreadBufferedOutputStream(PrintStream target_){
+		target = target_;
+	}
+
+
+	/**
+	 * Everything the calling thread prints from now on will be kept in memory
+	 */
+	public void startBuffering(){
+		Map<ThreadBufferedOutputStream, ByteArrayOutputStream> buffers = threadBuffers.get();
+		if(buffers==null){
+			buffers = new HashMap<ThreadBufferedOutputStream, ByteArrayOutputStream>();
+			threadBuffers.set(buffers);
+		}
+		buffers.put(this, new ByteArrayOutputStream());
+	}
+
+
+	/**
+	 * Stops buffering for the calling thread and returns what it printed in the meantime
+	 * @return
+	 */
+	public String stopBuffering(){
+		Map<ThreadBufferedOutputStream, ByteArrayOutputStream> buffers = threadBuffers.get();
+		if(buffers==null)
+			return("");
+
+		ByteArrayOutputStream buffer = buffers.remove(this);
+		if(buffers.isEmpty())
+			threadBuffers.remove();
+
+		if(buffer==null)
+			return("");
+		return(buffer.toString());
+	}
+
+
+	/**
+	 * Returns the buffers of the calling thread (null if it isn't buffering), to be handed to the threads working for it
+	 * @return
+	 */
+	public static Object getThreadBuffers(){
+		return(threadBuffers.get());
+	}
+
+
+	/**
+	 * Makes the calling thread print to the given buffers (as returned by getThreadBuffers), or straight through if null.
+	 * The buffers must not be stopped while other threads still print to them.
+	 * @param buffers
+	 */
+	@SuppressWarnings("unchecked")
+	public static void setThreadBuffers(Object buffers){
+		if(buffers==null)
+			threadBuffers.remove();
+		else
+			threadBuffers.set((Map<ThreadBufferedOutputStream, ByteArrayOutputStream>) buffers);
+	}
+
+
+	/**
+	 * Returns the buffer of the calling thread for this stream, or null if it isn't buffering
+	 */
+	private ByteArrayOutputStream currentBuffer(){
+		Map<ThreadBufferedOutputStream, ByteArrayOutputStream> buffers = threadBuffers.get();
+		if(buffers==null)
+			return(null);
+		return(buffers.get(this));
+	}
+
+
+	/**
+	 * Returns the stream this one was wrapping
+	 * @return
+	 */
+	public PrintStream getTarget(){
+		return(target);
+	}
+
+
+	@Override
+	public void write(int b) throws IOException {
+		ByteArrayOutputStream buffer = currentBuffer();
+		if(buffer!=null)
+			buffer.write(b);
+		else
+			target.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteArrayOutputStream buffer = currentBuffer();
+		if(buffer!=null)
+			buffer.write(b, off, len);
+		else
+			target.write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(currentBuffer()==null)
+			target.flush();
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class collects the results of all the pictures of a folder in one results table,
+ * or in a small number of shards of it, instead of writing an .iris file per picture.
+ * <p>
+ * Each shard is a tab-separated file with one line of column names (the picture filename, then the columns of
+ * the profile) and one line per colony, starting with the filename of its picture. The comment lines of each
+ * picture come right before its colonies, as # followed by the picture filename, a tab and the comment.
+ * A picture always goes to the same shard (chosen from its filename), and its lines are written together,
+ * so pictures processed in parallel never mix. Pictures are in the order they finished.
+ * <p>
+ * Shards are written through large buffers, so the files are only complete once close() has been called.
+ * @author George Kritikos
+ *
+ */
+public class AggregatedResultsWriter {
+
+	/**
+	 * The size of the write buffer of each shard
+	 */
+	private static final int BUFFER_SIZE = 1<<20;
+
+
+	/**
+	 * A single results file, along with the columns it was started with
+	 */
+	private static class Shard {
+		final File file;
+		OutputStream stream = null;
+		String[] columnNames = null;
+
+		Shard(File file_){
+			file = file_;
+		}
+	}
+
+
+	private final Shard[] shards;
+
+	/**
+	 * The pictures whose results have been added
+	 */
+	private final Set<String> pictureNames = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * The first I/O error that happened, if any
+	 */
+	private volatile IOException error = null;
+
+
+	/**
+	 * Prepares the given number of shards in the given folder, named after the given prefix
+	 * (prefix.tsv for a single shard, prefix_shard1of4.tsv etc. otherwise).
+	 * The files are created when their first picture is added.
+	 * @param folder
+	 * @param prefix
+	 * @param numberOfShards
+	 */
+	public AggregatedResultsWriter(File folder, String prefix, int numberOfShards){
+		if(numberOfShards<1)
+			throw new IllegalArgumentException("there has to be at least one shard");
+
+		shards = new Shard[numberOfShards];
+		for(int i=0; i<numberOfShards; i++){
+			String filename = numberOfShards==1 ? prefix + ".tsv" : prefix + "_shard" + (i+1) + "of" + numberOfShards + ".tsv";
+			shards[i] = new Shard(new File(folder, filename));
+		}
+	}
+
+
+	/**
+	 * Adds the lines of one picture to its shard. The lines are the remaining bytes of the given buffer,
+	 * already formatted by ResultsWriter. The first picture of a shard sets its columns; pictures with different
+	 * columns are refused. Returns false if the results could not be added.
+	 * @param pictureName
+	 * @param columnNames
+	 * @param lines
+	 * @return
+	 */
+	public boolean appendPlate(String pictureName, String[] columnNames, ByteBuffer lines){
+		Shard shard = getShard(pictureName);
+
+		synchronized(shard){
+			if(error!=null)
+				return(false);
+
+			try {
+				if(shard.stream==null){
+					shard.stream = new BufferedOutputStream(new FileOutputStream(shard.file), BUFFER_SIZE);
+					shard.columnNames = columnNames.clone();
+
+					StringBuilder header = new StringBuilder("filename");
+					for(String columnName : columnNames){
+						header.append('\t').append(columnName);
+					}
+					header.append('\n');
+					shard.stream.write(header.toString().getBytes());
+				}
+				else if(!Arrays.equals(shard.columnNames, columnNames)){
+					System.err.println("Results of " + pictureName + " have different columns than the rest of " + shard.file.getName());
+					return(false);
+				}
+
+				shard.stream.write(lines.array(), lines.arrayOffset()+lines.position(), lines.remaining());
+			} catch (IOException e) {
+				error = e;
+				return(false);
+			}
+		}
+
+		pictureNames.add(pictureName);
+		return(true);
+	}
+
+
+	/**
+	 * Returns the shard the given picture goes to, chosen from its filename
+	 */
+	private Shard getShard(String pictureName){
+		return(shards[(pictureName.hashCode() & Integer.MAX_VALUE) % shards.length]);
+	}
+
+
+	/**
+	 * Returns the results file the given picture goes to
+	 * @param pictureName
+	 * @return
+	 */
+	public File getShardFile(String pictureName){
+		return(getShard(pictureName).file);
+	}
+
+
+	/**
+	 * Returns true if the results of the given picture were added
+	 * @param pictureName
+	 * @return
+	 */
+	public boolean hasResults(String pictureName){
+		return(pictureNames.contains(pictureName));
+	}
+
+
+	/**
+	 * Writes out what is left in the buffers and closes all shards. Returns false if anything could not be written.
+	 * @return
+	 */
+	public boolean close(){
+		for(Shard shard : shards){
+			synchronized(shard){
+				if(shard.stream==null)
+					continue;
+				try {
+					shard.stream.close();
+				} catch (IOException e) {
+					if(error==null)
+						error = e;
+				}
+				shard.stream = null;
+			}
+		}
+		return(error==null);
+	}
+
+}
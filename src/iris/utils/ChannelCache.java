@@ -0,0 +1,281 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * This class holds the colour channels of a colour picture (a plate or a tile) as plain arrays, one per channel,
+ * each of them calculated the first time it's asked for and then kept. This way the red, green, blue, hue, saturation,
+ * brightness or gray value of every pixel is worked out once per picture, instead of once per measurement.
+ * <p>
+ * The byte channels hold exactly what ImageJ's ColorProcessor.getChannel() and getHSB() would give, and the
+ * float ones exactly what java.awt.Color.RGBtoHSB() would give, only without calling either of them for every pixel:
+ * brightness and saturation are worked out with integer arithmetic, as is the hue (except for the few pixels whose hue
+ * falls exactly on a byte value, where the float calculation decides which way it's rounded).
+ * <p>
+ * The channels are taken from the pixels of the picture at the time they're asked for, so the cache should be made
+ * once the picture won't be changed anymore (e.g. after filling outside the colony).
+ * The arrays returned are the cached ones, and should not be modified.
+ * @author George Kritikos
+ *
+ */
+public class ChannelCache {
+
+	private final int width;
+	private final int height;
+	private final int[] pixels;
+
+	private byte[] red = null;
+	private byte[] green = null;
+	private byte[] blue = null;
+	private byte[] hue = null;
+	private byte[] saturation = null;
+	private byte[] brightness = null;
+	private float[] gray = null;
+	private float[] exactHue = null;
+	private float[] exactSaturation = null;
+
+
+	/**
+	 * Creates the cache of the given picture, converting it to RGB first if it's not a colour picture
+	 * @param image
+	 */
+	public ChannelCache(ImagePlus image){
+		this(image.getProcessor());
+	}
+
+
+	/**
+	 * Creates the cache of the given picture, converting it to RGB first if it's not a colour picture
+	 * @param imageProcessor
+	 */
+	public ChannelCache(ImageProcessor imageProcessor){
+		ColorProcessor colorProcessor;
+		if(imageProcessor instanceof ColorProcessor)
+			colorProcessor = (ColorProcessor) imageProcessor;
+		else
+			colorProcessor = (ColorProcessor) imageProcessor.convertToRGB();
+
+		width = colorProcessor.getWidth();
+		height = colorProcessor.getHeight();
+		pixels = (int[]) colorProcessor.getPixels();
+	}
+
+
+	public int getWidth(){
+		return(width);
+	}
+
+	public int getHeight(){
+		return(height);
+	}
+
+
+	/**
+	 * The red channel, 0...255
+	 */
+	public synchronized byte[] getRed(){
+		if(red==null)
+			red = getColorChannel(16);
+		return(red);
+	}
+
+	/**
+	 * The green channel, 0...255
+	 */
+	public synchronized byte[] getGreen(){
+		if(green==null)
+			green = getColorChannel(8);
+		return(green);
+	}
+
+	/**
+	 * The blue channel, 0...255
+	 */
+	public synchronized byte[] getBlue(){
+		if(blue==null)
+			blue = getColorChannel(0);
+		return(blue);
+	}
+
+
+	/**
+	 * The HSB hue, 0...255, as ColorProcessor.getHSB() gives it
+	 */
+	public synchronized byte[] getHue(){
+		if(hue!=null)
+			return(hue);
+
+		hue = new byte[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			int r = (c&0xff0000)>>16;
+			int g = (c&0xff00)>>8;
+			int b = c&0xff;
+			int max = Math.max(r, Math.max(g, b));
+			int min = Math.min(r, Math.min(g, b));
+			int delta = max-min;
+			if(delta==0)
+				continue; //gray pixels have no hue
+
+			//the hue, in sixths of the colour circle, times delta
+			int sixths;
+			if(r==max)
+				sixths = g-b;
+			else if(g==max)
+				sixths = 2*delta + b-r;
+			else
+				sixths = 4*delta + r-g;
+			if(sixths<0)
+				sixths += 6*delta;
+
+			int scaledHue = 255*sixths;
+			if(scaledHue % (6*delta) == 0)
+				hue[i] = (byte)(int)(getExactHue(r, g, b)*255.0); //the float calculation may land just below this value
+			else
+				hue[i] = (byte)(scaledHue / (6*delta));
+		}
+		return(hue);
+	}
+
+
+	/**
+	 * The HSB saturation, 0...255, as ColorProcessor.getHSB() gives it
+	 */
+	public synchronized byte[] getSaturation(){
+		if(saturation!=null)
+			return(saturation);
+
+		saturation = new byte[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			int r = (c&0xff0000)>>16;
+			int g = (c&0xff00)>>8;
+			int b = c&0xff;
+			int max = Math.max(r, Math.max(g, b));
+			if(max==0)
+				continue;
+			int min = Math.min(r, Math.min(g, b));
+			saturation[i] = (byte)((255*(max-min))/max);
+		}
+		return(saturation);
+	}
+
+
+	/**
+	 * The HSB brightness, 0...255, as ColorProcessor.getHSB() gives it: the brightest of the three colours
+	 */
+	public synchronized byte[] getBrightness(){
+		if(brightness!=null)
+			return(brightness);
+
+		brightness = new byte[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			int r = (c&0xff0000)>>16;
+			int g = (c&0xff00)>>8;
+			int b = c&0xff;
+			brightness[i] = (byte)Math.max(r, Math.max(g, b));
+		}
+		return(brightness);
+	}
+
+
+	/**
+	 * The gray value of every pixel, weighted as ColorProcessor.getPixelValue() weighs the colours
+	 */
+	public synchronized float[] getGray(){
+		if(gray!=null)
+			return(gray);
+
+		double[] weights = ColorProcessor.getWeightingFactors();
+		gray = new float[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			int r = (c&0xff0000)>>16;
+			int g = (c&0xff00)>>8;
+			int b = c&0xff;
+			gray[i] = (float)(r*weights[0] + g*weights[1] + b*weights[2]);
+		}
+		return(gray);
+	}
+
+
+	/**
+	 * The HSB hue, 0...1, exactly as java.awt.Color.RGBtoHSB() gives it
+	 */
+	public synchronized float[] getExactHue(){
+		if(exactHue!=null)
+			return(exactHue);
+
+		exactHue = new float[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			exactHue[i] = getExactHue((c&0xff0000)>>16, (c&0xff00)>>8, c&0xff);
+		}
+		return(exactHue);
+	}
+
+
+	/**
+	 * The HSB saturation, 0...1, exactly as java.awt.Color.RGBtoHSB() gives it
+	 */
+	public synchronized float[] getExactSaturation(){
+		if(exactSaturation!=null)
+			return(exactSaturation);
+
+		exactSaturation = new float[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			int r = (c&0xff0000)>>16;
+			int g = (c&0xff00)>>8;
+			int b = c&0xff;
+			int max = Math.max(r, Math.max(g, b));
+			if(max==0)
+				continue;
+			int min = Math.min(r, Math.min(g, b));
+			exactSaturation[i] = ((float)(max-min)) / ((float)max);
+		}
+		return(exactSaturation);
+	}
+
+
+	private byte[] getColorChannel(int shift){
+		byte[] channel = new byte[pixels.length];
+		for(int i=0; i<pixels.length; i++){
+			channel[i] = (byte)(pixels[i]>>shift);
+		}
+		return(channel);
+	}
+
+
+	/**
+	 * The hue of the given colour, calculated just like java.awt.Color.RGBtoHSB() does
+	 */
+	private static float getExactHue(int r, int g, int b){
+		int max = Math.max(r, Math.max(g, b));
+		int min = Math.min(r, Math.min(g, b));
+		if(max==0 || max==min)
+			return(0);
+
+		float redc = ((float)(max - r)) / ((float)(max - min));
+		float greenc = ((float)(max - g)) / ((float)(max - min));
+		float bluec = ((float)(max - b)) / ((float)(max - min));
+		float hue;
+		if(r==max)
+			hue = bluec - greenc;
+		else if(g==max)
+			hue = 2.0f + redc - bluec;
+		else
+			hue = 4.0f + greenc - redc;
+		hue = hue / 6.0f;
+		if(hue<0)
+			hue = hue + 1.0f;
+		return(hue);
+	}
+
+}
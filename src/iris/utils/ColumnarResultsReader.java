@@ -0,0 +1,268 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class reads the binary run files written by ColumnarResultsWriter.
+ * Each picture block of the file is memory-mapped, and its numeric columns are handed out as
+ * LongBuffer/DoubleBuffer views of the mapping, so loading a screen reads nothing more than the headers
+ * until the columns are actually used.
+ * <p>
+ * A block at the end of the file that was cut short is skipped, as if the picture was never written.
+ * @author George Kritikos
+ *
+ */
+public class ColumnarResultsReader {
+
+	/**
+	 * The results of a single picture
+	 */
+	public static class Plate {
+
+		private final String pictureName;
+		private final List<String> comments;
+		private final List<String> columnNames;
+		private final byte[] columnTypes;
+		private final int numberOfRows;
+
+		/**
+		 * The mapped block, positioned at the start of each column (-1 for text columns, which are read up front)
+		 */
+		private final ByteBuffer block;
+		private final int[] columnOffsets;
+		private final String[][] texts;
+
+
+		private Plate(ByteBuffer block_, long blockPosition){
+			block = block_;
+
+			pictureName = getString(block);
+			int numberOfComments = block.getInt();
+			List<String> readComments = new ArrayList<String>(numberOfComments);
+			for(int i=0; i<numberOfComments; i++){
+				readComments.add(getString(block));
+			}
+			comments = Collections.unmodifiableList(readComments);
+
+			int numberOfColumns = block.getInt();
+			columnTypes = new byte[numberOfColumns];
+			String[] names = new String[numberOfColumns];
+			for(int i=0; i<numberOfColumns; i++){
+				columnTypes[i] = block.get();
+				names[i] = getString(block);
+			}
+			columnNames = Collections.unmodifiableList(Arrays.asList(names));
+
+			numberOfRows = block.getInt();
+			columnOffsets = new int[numberOfColumns];
+			texts = new String[numberOfColumns][];
+
+			//for all columns
+			for(int i=0; i<numberOfColumns; i++){
+				if(columnTypes[i]==ColumnarResultsWriter.TEXT){
+					columnOffsets[i] = -1;
+					texts[i] = new String[numberOfRows];
+					for(int row=0; row<numberOfRows; row++){
+						texts[i][row] = getString(block);
+					}
+					continue;
+				}
+
+				while((blockPosition+block.position())%8!=0)
+					block.get();
+				columnOffsets[i] = block.position();
+				block.position(block.position() + 8*numberOfRows);
+			}
+		}
+
+
+		/**
+		 * Returns the filename of the picture these results are for
+		 * @return
+		 */
+		public String getPictureName(){
+			return(pictureName);
+		}
+
+		/**
+		 * Returns the comment lines of the .iris file (without the #), e.g. the profile and the position of the grid
+		 * @return
+		 */
+		public List<String> getComments(){
+			return(comments);
+		}
+
+		public List<String> getColumnNames(){
+			return(columnNames);
+		}
+
+		public int getNumberOfRows(){
+			return(numberOfRows);
+		}
+
+
+		/**
+		 * Returns a view of the given column of whole numbers (e.g. "size"), straight from the mapped file
+		 * @param columnName
+		 * @return
+		 */
+		public LongBuffer getWholeNumberColumn(String columnName){
+			return(getColumnBytes(columnName, ColumnarResultsWriter.WHOLE_NUMBER).asLongBuffer());
+		}
+
+
+		/**
+		 * Returns a view of the given column of decimals (e.g. "circularity"), straight from the mapped file
+		 * @param columnName
+		 * @return
+		 */
+		public DoubleBuffer getDecimalColumn(String columnName){
+			return(getColumnBytes(columnName, ColumnarResultsWriter.DECIMAL).asDoubleBuffer());
+		}
+
+
+		/**
+		 * Returns the values of the given text column
+		 * @param columnName
+		 * @return
+		 */
+		public String[] getTextColumn(String columnName){
+			int column = getColumnIndex(columnName, ColumnarResultsWriter.TEXT);
+			return(texts[column].clone());
+		}
+
+
+		/**
+		 * Returns the bytes of the given numeric column, checking it has the given type
+		 */
+		private ByteBuffer getColumnBytes(String columnName, byte type){
+			int column = getColumnIndex(columnName, type);
+
+			ByteBuffer columnBytes = block.duplicate();
+			columnBytes.position(columnOffsets[column]);
+			columnBytes.limit(columnOffsets[column] + 8*numberOfRows);
+			return(columnBytes.slice());
+		}
+
+
+		private int getColumnIndex(String columnName, byte type){
+			int column = columnNames.indexOf(columnName);
+			if(column<0)
+				throw new IllegalArgumentException(pictureName + " has no column " + columnName);
+			if(columnTypes[column]!=type)
+				throw new IllegalArgumentException("column " + columnName + " of " + pictureName + " is not of type " + (char)type);
+			return(column);
+		}
+	}
+
+
+	private final List<Plate> plates;
+
+
+	/**
+	 * Maps the given run file and reads the headers of all its pictures
+	 * @param file
+	 * @throws IOException if the file could not be read, or is not a run file
+	 */
+	public ColumnarResultsReader(File file) throws IOException {
+		List<Plate> readPlates = new ArrayList<Plate>();
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			long fileSize = channel.size();
+
+			ByteBuffer header = readFully(channel, 0, ColumnarResultsWriter.FILE_MAGIC.length + 4);
+			byte[] magic = new byte[ColumnarResultsWriter.FILE_MAGIC.length];
+			if(header!=null)
+				header.get(magic);
+			if(header==null || !Arrays.equals(magic, ColumnarResultsWriter.FILE_MAGIC))
+				throw new IOException(file + " is not an Iris columnar results file");
+			int version = header.getInt();
+			if(version!=ColumnarResultsWriter.FORMAT_VERSION)
+				throw new IOException(file + " has unsupported format version " + version);
+
+			long position = header.capacity();
+
+			//for all picture blocks
+			while(position<fileSize){
+				ByteBuffer blockHeader = readFully(channel, position, 12);
+				if(blockHeader==null || blockHeader.getInt()!=ColumnarResultsWriter.PLATE_MARKER)
+					break; //cut short, or not a block
+
+				long blockLength = blockHeader.getLong();
+				long blockStart = position + 12;
+				if(blockLength<0 || blockStart+blockLength>fileSize || blockLength>Integer.MAX_VALUE)
+					break; //cut short
+
+				MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, blockStart, blockLength);
+				readPlates.add(new Plate(block, blockStart));
+
+				position = blockStart + blockLength;
+			}
+		}
+		finally{
+			channel.close(); //the mappings stay valid
+		}
+
+		plates = Collections.unmodifiableList(readPlates);
+	}
+
+
+	/**
+	 * Returns the results of all the pictures in the file, in the order they were written
+	 * @return
+	 */
+	public List<Plate> getPlates(){
+		return(plates);
+	}
+
+
+	/**
+	 * Returns the results of the given picture, or null if it is not in the file
+	 * @param pictureName
+	 * @return
+	 */
+	public Plate getPlate(String pictureName){
+		for(Plate plate : plates){
+			if(plate.getPictureName().equals(pictureName))
+				return(plate);
+		}
+		return(null);
+	}
+
+
+	/**
+	 * Reads the given number of bytes at the given position, or returns null if the file ends before that
+	 */
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, position+buffer.position())<0)
+				return(null);
+		}
+		buffer.flip();
+		return(buffer);
+	}
+
+
+	private static String getString(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return(new String(bytes, ColumnarResultsWriter.UTF8));
+	}
+
+}
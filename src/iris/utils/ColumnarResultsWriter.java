@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class collects the results of all the pictures of a run in a single binary file,
+ * next to the usual .iris files, so that a whole screen can be loaded without parsing any text
+ * (see ColumnarResultsReader). The results of each picture are appended as one block, as soon as its .iris file
+ * is published, so blocks are in the order the pictures finished.
+ * <p>
+ * All numbers are big-endian. The file starts with the 8 bytes "IRISCOLS" and an int with the format version (1).
+ * Each picture block then holds:
+ * <ul>
+ * <li>an int "PLAT" marker, and a long with the number of bytes in the rest of the block</li>
+ * <li>the picture filename, then an int with the number of comment (#) lines and the lines themselves</li>
+ * <li>an int with the number of columns, and for each column its type (a byte: 'L' for whole numbers,
+ * 'D' for decimals, 'T' for text) and its name</li>
+ * <li>an int with the number of rows, then every column one after the other: whole numbers as longs
+ * and decimals as doubles (each column starting at a multiple of 8 bytes from the start of the file),
+ * text as one string per row</li>
+ * </ul>
+ * Strings are an int with the number of bytes, followed by the bytes in UTF-8.
+ * Decimals are stored at full precision, not rounded to 3 digits like in the .iris files.
+ * A block that was cut short (e.g. if Iris was killed while writing it) is ignored by the reader.
+ * @author George Kritikos
+ *
+ */
+public class ColumnarResultsWriter {
+
+	static final byte[] FILE_MAGIC = "IRISCOLS".getBytes(Charset.forName("US-ASCII"));
+	static final int FORMAT_VERSION = 1;
+	static final int PLATE_MARKER = 0x504C4154; //"PLAT"
+
+	static final byte WHOLE_NUMBER = 'L';
+	static final byte DECIMAL = 'D';
+	static final byte TEXT = 'T';
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Room for a 384 plate, the columns grow if there are more rows
+	 */
+	private static final int INITIAL_ROWS = 384;
+
+
+	/**
+	 * The results of a single picture, in columns of primitives
+	 */
+	public static class PlateResults {
+
+		private final String pictureName;
+		private final List<String> comments = new ArrayList<String>();
+
+		private String[] columnNames = null;
+		private byte[] columnTypes;
+		private long[][] wholeNumbers;
+		private double[][] decimals;
+		private List<List<String>> texts;
+
+		private int numberOfRows = 0;
+		private int currentColumn = 0;
+
+
+		public PlateResults(String pictureName_){
+			pictureName = pictureName_;
+		}
+
+		public void addComment(String comment){
+			comments.add(comment);
+		}
+
+		public void setColumns(String[] columnNames_){
+			columnNames = columnNames_.clone();
+			columnTypes = new byte[columnNames.length];
+			wholeNumbers = new long[columnNames.length][];
+			decimals = new double[columnNames.length][];
+			texts = new ArrayList<List<String>>();
+			for(int i=0; i<columnNames.length; i++){
+				texts.add(null);
+			}
+		}
+
+		public void addWholeNumber(long value){
+			int column = nextCell(WHOLE_NUMBER);
+			if(numberOfRows>=wholeNumbers[column].length)
+				wholeNumbers[column] = Arrays.copyOf(wholeNumbers[column], 2*numberOfRows);
+			wholeNumbers[column][numberOfRows] = value;
+		}
+
+		public void addDecimal(double value){
+			int column = nextCell(DECIMAL);
+			if(numberOfRows>=decimals[column].length)
+				decimals[column] = Arrays.copyOf(decimals[column], 2*numberOfRows);
+			decimals[column][numberOfRows] = value;
+		}
+
+		public void addText(String value){
+			int column = nextCell(TEXT);
+			texts.get(column).add(value);
+		}
+
+		public void endRow(){
+			numberOfRows++;
+			currentColumn = 0;
+		}
+
+
+		/**
+		 * Returns the column of the next cell, checking it holds values of the given type.
+		 * The type of each column is set by its cell in the first row.
+		 */
+		private int nextCell(byte type){
+			int column = currentColumn++;
+
+			if(numberOfRows==0){
+				columnTypes[column] = type;
+				if(type==WHOLE_NUMBER)
+					wholeNumbers[column] = new long[INITIAL_ROWS];
+				else if(type==DECIMAL)
+					decimals[column] = new double[INITIAL_ROWS];
+				else
+					texts.set(column, new ArrayList<String>());
+			}
+			else if(columnTypes[column]!=type){
+				throw new IllegalStateException("column " + columnNames[column] + " cannot hold values of different types");
+			}
+
+			return(column);
+		}
+
+
+		/**
+		 * Returns the block for this picture, ready to be written at the given position of the file
+		 */
+		private ByteBuffer toBlock(long filePosition){
+			byte[] name = pictureName.getBytes(UTF8);
+			List<byte[]> encodedComments = encode(comments);
+			String[] names = columnNames==null ? new String[0] : columnNames;
+			List<byte[]> encodedNames = encode(Arrays.asList(names));
+
+			//first work out the size of the block
+			long size = 4 + 8 + 4 + name.length + 4 + 4;
+			for(byte[] comment : encodedComments)
+				size += 4 + comment.length;
+			for(byte[] columnName : encodedNames)
+				size += 1 + 4 + columnName.length;
+			size += 4;
+
+			List<List<byte[]>> encodedTexts = new ArrayList<List<byte[]>>();
+			for(int i=0; i<names.length; i++){
+				if(columnTypes[i]==TEXT){
+					List<byte[]> values = encode(texts.get(i));
+					encodedTexts.add(values);
+					for(byte[] value : values)
+						size += 4 + value.length;
+				}
+				else{
+					encodedTexts.add(null);
+					size += 7 + 8L*numberOfRows; //room for the padding
+				}
+			}
+
+			if(size>Integer.MAX_VALUE)
+				throw new IllegalStateException("results of " + pictureName + " are too big");
+
+			ByteBuffer block = ByteBuffer.allocate((int)size);
+			block.putInt(PLATE_MARKER);
+			block.putLong(0); //the length of the rest of the block, filled in once known
+			putString(block, name);
+			block.putInt(encodedComments.size());
+			for(byte[] comment : encodedComments)
+				putString(block, comment);
+
+			block.putInt(names.length);
+			for(int i=0; i<names.length; i++){
+				block.put(columnTypes[i]==0 ? WHOLE_NUMBER : columnTypes[i]); //a plate with no rows has no types
+				putString(block, encodedNames.get(i));
+			}
+			block.putInt(numberOfRows);
+
+			//for all columns
+			for(int i=0; i<names.length; i++){
+				if(columnTypes[i]==TEXT){
+					for(byte[] value : encodedTexts.get(i))
+						putString(block, value);
+					continue;
+				}
+
+				//start numeric columns on a multiple of 8, so the reader can view them in place
+				while((filePosition+block.position())%8!=0)
+					block.put((byte)0);
+
+				for(int row=0; row<numberOfRows; row++){
+					if(columnTypes[i]==DECIMAL)
+						block.putDouble(decimals[i][row]);
+					else
+						block.putLong(wholeNumbers[i][row]);
+				}
+			}
+
+			block.putLong(4, block.position()-12);
+			block.flip();
+			return(block);
+		}
+	}
+
+
+	/**
+	 * The run file, opened for appending
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The first I/O error that happened, if any
+	 */
+	private IOException error = null;
+
+
+	/**
+	 * Creates the given run file, overwriting any previous one, and writes its header
+	 * @param file
+	 * @throws IOException
+	 */
+	public ColumnarResultsWriter(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+		ByteBuffer header = ByteBuffer.allocate(FILE_MAGIC.length + 4);
+		header.put(FILE_MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.flip();
+		writeFully(header);
+	}
+
+
+	/**
+	 * Appends the results of one picture to the run file. Pictures processed in parallel can call this at any time.
+	 * Returns false if the results could not be written.
+	 * @param plateResults
+	 * @return
+	 */
+	public synchronized boolean appendPlate(PlateResults plateResults){
+		if(error!=null)
+			return(false);
+
+		try {
+			writeFully(plateResults.toBlock(channel.position()));
+		} catch (IOException e) {
+			error = e;
+			return(false);
+		}
+		return(true);
+	}
+
+
+	/**
+	 * Closes the run file. Returns false if anything could not be written.
+	 * @return
+	 */
+	public synchronized boolean close(){
+		try {
+			channel.close();
+		} catch (IOException e) {
+			if(error==null)
+				error = e;
+		}
+		return(error==null);
+	}
+
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+
+
+	private static List<byte[]> encode(List<String> strings){
+		List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+		for(String string : strings)
+			encoded.add(string.getBytes(UTF8));
+		return(encoded);
+	}
+
+
+	private static void putString(ByteBuffer buffer, byte[] string){
+		buffer.putInt(string.length);
+		buffer.put(string);
+	}
+
+}
@@ -0,0 +1,331 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import iris.ui.IrisFrontend;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class finds all the connected components (8-connected) of a whole thresholded plate in a single pass,
+ * without tracing or flood-filling them one by one. The foreground of each row is turned into runs
+ * (stretches of consecutive foreground pixels), and runs that touch a run of the row above are joined with a union-find.
+ * <p>
+ * The plate is cut into horizontal strips that are labelled in parallel (on the tile threads, see ParallelTileReader),
+ * and then only the runs on either side of the cuts between strips need to be joined.
+ * For every component, its area, bounding rectangle and centroid are summed up from its runs;
+ * its pixels can be had as a mask, e.g. to trace its outline with the ParticleLabeller.
+ * Components are returned in raster order of their first pixel, the same order the ParticleLabeller finds particles in.
+ * @author George Kritikos
+ *
+ */
+public class ComponentLabeller {
+
+	/**
+	 * A connected component of the plate. All coordinates are in the coordinates of the plate.
+	 */
+	public static class Component {
+
+		/**
+		 * The number of pixels of the component
+		 */
+		public int area;
+
+		/**
+		 * The bounding rectangle of the component
+		 */
+		public Rectangle bounds;
+
+		/**
+		 * The centroid (unweighted center of mass) of the component
+		 */
+		public double xCentroid;
+		public double yCentroid;
+
+		/**
+		 * The runs of the component, in raster order
+		 */
+		private int[] rows;
+		private int[] starts;
+		private int[] ends;
+
+
+		/**
+		 * Returns the pixels of this component as a mask of the size of its bounding rectangle, 255 inside.
+		 * Other components that happen to be within the bounding rectangle are not in the mask.
+		 * @return
+		 */
+		public ImageProcessor getMask(){
+			ByteProcessor maskProcessor = new ByteProcessor(bounds.width, bounds.height);
+			byte[] maskPixels = (byte[]) maskProcessor.getPixels();
+			for(int run=0; run<rows.length; run++){
+				int offset = (rows[run]-bounds.y)*bounds.width - bounds.x;
+				Arrays.fill(maskPixels, offset+starts[run], offset+ends[run], (byte) 255);
+			}
+			return(maskProcessor);
+		}
+	}
+
+
+	/**
+	 * Finds the connected components of the pixels of the given 8-bit picture that are within the given levels (inclusive)
+	 * @param imageProcessor
+	 * @param lowerLevel
+	 * @param upperLevel
+	 * @return
+	 */
+	public static List<Component> label(ImageProcessor imageProcessor, int lowerLevel, int upperLevel){
+		final byte[] pixels = (byte[]) imageProcessor.getPixels();
+		final int width = imageProcessor.getWidth();
+		final int height = imageProcessor.getHeight();
+		final int lower = lowerLevel;
+		final int upper = upperLevel;
+
+		//1. find the runs of each strip, and join the ones within the strip, one strip per tile thread
+		int numberOfStrips = Math.max(1, Math.min(IrisFrontend.numberOfTileThreads, height));
+		final Strip[] strips = new Strip[numberOfStrips];
+		for(int strip=0; strip<numberOfStrips; strip++){
+			strips[strip] = new Strip(strip*height/numberOfStrips, (strip+1)*height/numberOfStrips);
+		}
+
+		ParallelTileReader.readAllTiles(numberOfStrips, 1, new ParallelTileReader.TileTask() {
+			public void readTile(int row, int column) {
+				strips[row].label(pixels, width, lower, upper);
+			}
+		});
+
+
+		//2. put all the runs together, and join the runs on either side of each cut between strips
+		int runCount = 0;
+		for(int strip=0; strip<numberOfStrips; strip++){
+			strips[strip].offset = runCount;
+			runCount += strips[strip].runCount;
+		}
+
+		int[] rows = new int[runCount];
+		int[] starts = new int[runCount];
+		int[] ends = new int[runCount];
+		int[] parents = new int[runCount];
+		for(Strip strip : strips){
+			System.arraycopy(strip.rows, 0, rows, strip.offset, strip.runCount);
+			System.arraycopy(strip.starts, 0, starts, strip.offset, strip.runCount);
+			System.arraycopy(strip.ends, 0, ends, strip.offset, strip.runCount);
+			for(int run=0; run<strip.runCount; run++){
+				parents[strip.offset+run] = strip.parents[run] + strip.offset;
+			}
+		}
+
+		for(int strip=1; strip<numberOfStrips; strip++){
+			Strip above = strips[strip-1];
+			Strip below = strips[strip];
+			joinRows(starts, ends, parents,
+					above.offset+above.lastRowFirstRun, above.offset+above.runCount,
+					below.offset, below.offset+below.firstRowRunCount);
+		}
+
+
+		//3. number the components; roots are the first run of their component, so they come out in raster order
+		int[] componentOfRun = new int[runCount];
+		int componentCount = 0;
+		for(int run=0; run<runCount; run++){
+			int root = find(parents, run);
+			componentOfRun[run] = root==run ? componentCount++ : componentOfRun[root];
+		}
+
+
+		//4. sum up the runs of each component
+		int[] areas = new int[componentCount];
+		int[] runCounts = new int[componentCount];
+		long[] xSums = new long[componentCount];
+		long[] ySums = new long[componentCount];
+		int[] minX = new int[componentCount];
+		int[] minY = new int[componentCount];
+		int[] maxX = new int[componentCount];
+		int[] maxY = new int[componentCount];
+		Arrays.fill(minX, Integer.MAX_VALUE);
+		Arrays.fill(minY, Integer.MAX_VALUE);
+
+		for(int run=0; run<runCount; run++){
+			int index = componentOfRun[run];
+			int length = ends[run]-starts[run];
+			areas[index] += length;
+			runCounts[index]++;
+			//the sum of start...end-1, which is always a whole number
+			xSums[index] += (long)length*(starts[run]+ends[run]-1)/2;
+			ySums[index] += (long)length*rows[run];
+			minX[index] = Math.min(minX[index], starts[run]);
+			maxX[index] = Math.max(maxX[index], ends[run]);
+			minY[index] = Math.min(minY[index], rows[run]);
+			maxY[index] = Math.max(maxY[index], rows[run]+1);
+		}
+
+		List<Component> components = new ArrayList<Component>(componentCount);
+		for(int index=0; index<componentCount; index++){
+			Component component = new Component();
+			component.area = areas[index];
+			component.bounds = new Rectangle(minX[index], minY[index], maxX[index]-minX[index], maxY[index]-minY[index]);
+			//pixel centers, as in the ImageJ measurements
+			component.xCentroid = (double)xSums[index]/areas[index] + 0.5;
+			component.yCentroid = (double)ySums[index]/areas[index] + 0.5;
+			component.rows = new int[runCounts[index]];
+			component.starts = new int[runCounts[index]];
+			component.ends = new int[runCounts[index]];
+			components.add(component);
+		}
+
+
+		//5. hand each component its runs
+		int[] positions = new int[componentCount];
+		for(int run=0; run<runCount; run++){
+			int index = componentOfRun[run];
+			Component component = components.get(index);
+			int position = positions[index]++;
+			component.rows[position] = rows[run];
+			component.starts[position] = starts[run];
+			component.ends[position] = ends[run];
+		}
+
+		return(components);
+	}
+
+
+	/**
+	 * Joins the runs of two consecutive rows (given as run index ranges) that touch each other, 8-connected
+	 */
+	private static void joinRows(int[] starts, int[] ends, int[] parents, int aboveFrom, int aboveTo, int belowFrom, int belowTo){
+		int above = aboveFrom;
+		int below = belowFrom;
+		while(above<aboveTo && below<belowTo){
+			//runs touch if they overlap, or meet at a corner
+			if(starts[above]<=ends[below] && starts[below]<=ends[above])
+				union(parents, above, below);
+
+			//move on from the run that ends first
+			if(ends[above]<ends[below])
+				above++;
+			else
+				below++;
+		}
+	}
+
+
+	/**
+	 * Returns the root of the given run, halving the path to it on the way
+	 */
+	private static int find(int[] parents, int run){
+		while(parents[run]!=run){
+			parents[run] = parents[parents[run]];
+			run = parents[run];
+		}
+		return(run);
+	}
+
+
+	/**
+	 * Joins the components of the two given runs, keeping the earliest run as the root
+	 */
+	private static void union(int[] parents, int run1, int run2){
+		int root1 = find(parents, run1);
+		int root2 = find(parents, run2);
+		if(root1<root2)
+			parents[root2] = root1;
+		else if(root2<root1)
+			parents[root1] = root2;
+	}
+
+
+	/**
+	 * The runs of the rows firstRow...lastRow-1 of the plate, joined within the strip
+	 */
+	private static class Strip {
+
+		private final int firstRow;
+		private final int lastRow;
+
+		private int[] rows = new int[64];
+		private int[] starts = new int[64];
+		private int[] ends = new int[64];
+		private int[] parents = new int[64];
+		private int runCount = 0;
+
+		/**
+		 * The number of runs on the first row, and the index of the first run on the last row
+		 */
+		private int firstRowRunCount = 0;
+		private int lastRowFirstRun = 0;
+
+		/**
+		 * The index of the first run of this strip, among the runs of the whole plate
+		 */
+		private int offset = 0;
+
+
+		Strip(int firstRow_, int lastRow_){
+			firstRow = firstRow_;
+			lastRow = lastRow_;
+		}
+
+
+		void label(byte[] pixels, int width, int lowerLevel, int upperLevel){
+			int previousRowFirstRun = 0;
+			int previousRowEnd = 0;
+
+			//for all rows
+			for(int y=firstRow; y<lastRow; y++){
+				int rowFirstRun = runCount;
+				int offset = y*width;
+
+				int runStart = -1;
+				//for all columns, and one past the end to close the last run
+				for(int x=0; x<=width; x++){
+					boolean foreground = false;
+					if(x<width){
+						int value = pixels[offset+x]&0xff;
+						foreground = value>=lowerLevel && value<=upperLevel;
+					}
+
+					if(foreground && runStart<0){
+						runStart = x;
+					}
+					else if(!foreground && runStart>=0){
+						addRun(y, runStart, x);
+						runStart = -1;
+					}
+				}
+
+				if(y>firstRow)
+					joinRows(starts, ends, parents, previousRowFirstRun, previousRowEnd, rowFirstRun, runCount);
+				else
+					firstRowRunCount = runCount;
+
+				previousRowFirstRun = rowFirstRun;
+				previousRowEnd = runCount;
+			}
+
+			lastRowFirstRun = previousRowFirstRun;
+		}
+
+
+		private void addRun(int row, int start, int end){
+			if(runCount==rows.length){
+				int newSize = rows.length*2;
+				rows = Arrays.copyOf(rows, newSize);
+				starts = Arrays.copyOf(starts, newSize);
+				ends = Arrays.copyOf(ends, newSize);
+				parents = Arrays.copyOf(parents, newSize);
+			}
+			rows[runCount] = row;
+			starts[runCount] = start;
+			ends[runCount] = end;
+			parents[runCount] = runCount;
+			runCount++;
+		}
+	}
+
+}
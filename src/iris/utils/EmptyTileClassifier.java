@@ -0,0 +1,151 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class decides, from the histogram of a tile alone, whether the tile is so clearly empty that thresholding it
+ * and analysing its particles can be skipped. A tile is taken as empty only if both:
+ * <ul>
+ * <li>its pixels hardly vary: their standard deviation is at most maxStandardDeviation</li>
+ * <li>its histogram is not bimodal: Otsu's best split explains at most maxSeparability of the variance
+ * (the between-class variance over the total variance, which is close to 1 for a colony on its background)</li>
+ * </ul>
+ * Everything else (and every tile that isn't 8-bit) goes through the full thresholding and particle analysis, as before.
+ * <p>
+ * An empty tile is plain agar, whose pixels only vary by the noise of the camera and a slow shading, a few gray levels,
+ * while a colony differs from the agar around it by tens of gray levels. That's why 4 is suggested as the
+ * standard deviation limit: above the noise, and well below the contrast of a colony. The separability
+ * limit keeps faint colonies, whose tiles vary little but still split cleanly in two, from being taken as empty.
+ * The one difference to the full path is on flat tiles where the full path finds a noise particle round enough
+ * to pass as a colony: those are reported here as empty.
+ * That's why the check is off unless asked for (see the --empty-tile-precheck console option).
+ * @author George Kritikos
+ *
+ */
+public class EmptyTileClassifier {
+
+	/**
+	 * tiles whose pixels have a standard deviation up to this are candidates for being empty (0: the check is off)
+	 * this is set from the console, using the --empty-tile-precheck option
+	 */
+	public static double maxStandardDeviation = 0;
+
+	/**
+	 * tiles whose Otsu split explains more than this fraction of the variance are bimodal, so they're not taken as empty
+	 */
+	public static double maxSeparability = 0.8;
+
+	/**
+	 * how many tiles were checked, and how many of them were taken as empty without thresholding
+	 */
+	private static final AtomicInteger checkedTiles = new AtomicInteger();
+	private static final AtomicInteger emptyTiles = new AtomicInteger();
+
+
+	/**
+	 * Returns true if the check is switched on
+	 */
+	public static boolean isEnabled(){
+		return(maxStandardDeviation>0);
+	}
+
+
+	/**
+	 * Returns true if the given (grayscale) tile is confidently empty, judging from its histogram.
+	 * Returns false if the check is off, or the tile is not 8-bit.
+	 * @param tileImage
+	 * @return
+	 */
+	public static boolean isTileEmpty(ImagePlus tileImage){
+		if(!isEnabled())
+			return(false);
+
+		ImageProcessor processor = tileImage.getProcessor();
+		if(!(processor.getPixels() instanceof byte[]))
+			return(false);
+
+		checkedTiles.incrementAndGet();
+		if(isTileEmpty(new RoiHistogram(processor))){
+			emptyTiles.incrementAndGet();
+			return(true);
+		}
+		return(false);
+	}
+
+
+	/**
+	 * Returns true if the pixels counted in the given histogram hardly vary, and are not split in two classes
+	 * @param histogram
+	 * @return
+	 */
+	public static boolean isTileEmpty(RoiHistogram histogram){
+		int[] counts = histogram.getCounts();
+		double count = histogram.getCount();
+		if(count==0)
+			return(false);
+
+		//1. the mean and the variance of the tile
+		double mean = histogram.getSum() / count;
+		double variance = 0;
+		for(int value=0; value<256; value++){
+			variance += counts[value] * (value-mean) * (value-mean);
+		}
+		variance /= count;
+
+		if(Math.sqrt(variance)>maxStandardDeviation)
+			return(false);
+
+		//a tile of a single value is as empty as it gets
+		if(variance==0)
+			return(true);
+
+		//2. the largest between-class variance of all the possible splits (the one Otsu's threshold picks)
+		double bestBetweenClassVariance = 0;
+		double darkCount = 0;
+		double darkSum = 0;
+		for(int value=0; value<255; value++){
+			darkCount += counts[value];
+			darkSum += (double)value*counts[value];
+			if(darkCount==0 || darkCount==count)
+				continue;
+
+			double darkWeight = darkCount / count;
+			double darkMean = darkSum / darkCount;
+			double brightMean = (mean*count - darkSum) / (count - darkCount);
+			double betweenClassVariance = darkWeight * (1-darkWeight) * (darkMean-brightMean) * (darkMean-brightMean);
+			bestBetweenClassVariance = Math.max(bestBetweenClassVariance, betweenClassVariance);
+		}
+
+		return(bestBetweenClassVariance/variance <= maxSeparability);
+	}
+
+
+	/**
+	 * The number of tiles checked since the start (or the last reset)
+	 */
+	public static int getCheckedTileCount(){
+		return(checkedTiles.get());
+	}
+
+	/**
+	 * The number of tiles taken as empty without thresholding since the start (or the last reset)
+	 */
+	public static int getEmptyTileCount(){
+		return(emptyTiles.get());
+	}
+
+	/**
+	 * Sets both counts back to 0
+	 */
+	public static void resetCounts(){
+		checkedTiles.set(0);
+		emptyTiles.set(0);
+	}
+
+}
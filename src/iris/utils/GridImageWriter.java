@@ -0,0 +1,215 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+import iris.ui.IrisFrontend;
+import iris.utils.StageTimings.StageTimer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class saves the grid images of the plates (the cropped plate with the grid and the colony bounds drawn on it)
+ * on a background thread, so that the thread that analysed a plate can move on to the next one
+ * while its grid image is being drawn and encoded.
+ * <p>
+ * What is saved depends on IrisFrontend.gridImageMode:
+ * <ul>
+ * <li>OFF: no grid images at all, nothing is drawn</li>
+ * <li>FULL: the grid image at the size of the cropped plate, as it has always been</li>
+ * <li>THUMBNAIL: the grid image scaled down so that its longest side is at most THUMBNAIL_SIZE pixels</li>
+ * <li>ERRORS_ONLY: full-size grid images, but only of the plates that could not be processed;
+ * profiles don't keep a colour copy of every plate in this mode, so the grid may be drawn on the grayscale plate</li>
+ * </ul>
+ * Profiles hand over a GridPainter that draws the grid image. The painter runs on the writer thread,
+ * so it must only use pictures and results the profile does not touch again. The picture it returns is flushed
+ * once saved.
+ * <p>
+ * A few grid images can be waiting to be saved at any time; if the writer falls further behind
+ * (or is being shut down by waitForPendingImages), the profile draws and saves its grid image itself,
+ * so memory use stays bounded and no grid image is dropped.
+ * @author George Kritikos
+ *
+ */
+public class GridImageWriter {
+
+	public static final int OFF = 0;
+	public static final int FULL = 1;
+	public static final int THUMBNAIL = 2;
+	public static final int ERRORS_ONLY = 3;
+
+	/**
+	 * The names of the modes above, as given to the --grid option
+	 */
+	public static final String[] MODE_NAMES = {"off", "full", "thumbnail", "errors"};
+
+	/**
+	 * The longest side of a thumbnail grid image, in pixels
+	 */
+	public static final int THUMBNAIL_SIZE = 1024;
+
+	/**
+	 * How many grid images can be waiting for the writer thread
+	 */
+	private static final int MAXIMUM_PENDING_IMAGES = 4;
+
+
+	/**
+	 * Draws the grid image of a plate
+	 */
+	public interface GridPainter {
+		public ImagePlus paintGrid();
+	}
+
+
+	/**
+	 * The writer thread, created on first use
+	 */
+	private static ThreadPoolExecutor writer = null;
+
+
+	/**
+	 * Returns true if grid images are saved for every plate, not only for the ones that could not be processed.
+	 * Profiles only keep a colour copy of each plate to draw the grid on if so (see getPlateToPaint for the others).
+	 * @return
+	 */
+	public static boolean savesAllPlates(){
+		int mode = IrisFrontend.gridImageMode;
+		return(mode==FULL || mode==THUMBNAIL);
+	}
+
+
+	/**
+	 * Returns the picture a profile should draw the grid image on: the colour copy of the plate, if it kept one,
+	 * or else (in ERRORS_ONLY mode) an RGB copy of the grayscale plate, if the grid image is going to be saved.
+	 * Returns null if there will be no grid image. This has to be called on the profile's thread, before it hands
+	 * over the grid image, since the grayscale plate is copied there and then.
+	 * @param colourPlate - the colour copy of the plate, or null if the profile didn't keep one
+	 * @param grayscalePlate
+	 * @param errorOccurred - whether the plate could not be processed
+	 * @return
+	 */
+	public static ImagePlus getPlateToPaint(ImagePlus colourPlate, ImagePlus grayscalePlate, boolean errorOccurred){
+		if(colourPlate!=null)
+			return(colourPlate);
+
+		int mode = IrisFrontend.gridImageMode;
+		if(mode==OFF || (mode==ERRORS_ONLY && !errorOccurred))
+			return(null);
+
+		ImagePlus plateToPaint = new ImagePlus(grayscalePlate.getTitle(), grayscalePlate.getProcessor().convertToRGB());
+		plateToPaint.setRoi(grayscalePlate.getRoi());
+		return(plateToPaint);
+	}
+
+
+	/**
+	 * Draws the grid image with the given painter and saves it as a JPEG at the given path, on the writer thread,
+	 * if the grid image mode asks for it. errorOccurred tells whether the plate could not be processed
+	 * (these are the only grid images saved in ERRORS_ONLY mode).
+	 * @param path
+	 * @param errorOccurred
+	 * @param painter
+	 */
+	public static void saveGridImage(final String path, boolean errorOccurred, final GridPainter painter){
+		int mode = IrisFrontend.gridImageMode;
+		if(mode==OFF || (mode==ERRORS_ONLY && !errorOccurred))
+			return;
+
+		final boolean thumbnail = mode==THUMBNAIL;
+		final String picture = StageTimings.getPicture();
+		getWriter().execute(new Runnable() {
+			public void run() {
+				StageTimer timer = StageTimings.start(StageTimings.GRID_IMAGE, picture);
+				try{
+					ImagePlus gridImage = painter.paintGrid();
+					if(thumbnail){
+						ImagePlus thumbnailImage = getThumbnail(gridImage);
+						if(thumbnailImage!=gridImage){
+							gridImage.flush();
+							gridImage = thumbnailImage;
+						}
+					}
+					Toolbox.savePicture(gridImage, path);
+					gridImage.flush();
+				}
+				catch(Throwable e){
+					System.err.println("Could not save grid image " + path + ": " + e.toString());
+				}
+				finally{
+					timer.stop();
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Returns once all the grid images handed over so far have been saved
+	 */
+	public static synchronized void waitForPendingImages(){
+		if(writer==null)
+			return;
+
+		writer.shutdown();
+		try {
+			while(!writer.awaitTermination(1, TimeUnit.MINUTES));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+
+
+	/**
+	 * Returns a copy of the given picture, scaled down to fit in a THUMBNAIL_SIZE square
+	 * (or the picture itself, if it's small enough already)
+	 * @param image
+	 * @return
+	 */
+	private static ImagePlus getThumbnail(ImagePlus image){
+		int width = image.getWidth();
+		int height = image.getHeight();
+		double scale = (double)THUMBNAIL_SIZE / Math.max(width, height);
+		if(scale>=1)
+			return(image);
+
+		ImageProcessor imageProcessor = image.getProcessor();
+		imageProcessor.resetRoi(); //resize only keeps what's in the ROI
+		imageProcessor.setInterpolationMethod(ImageProcessor.BILINEAR);
+		ImageProcessor thumbnailProcessor = imageProcessor.resize(
+				Math.max(1, (int)Math.round(width*scale)), Math.max(1, (int)Math.round(height*scale)), true);
+
+		return(new ImagePlus(image.getTitle(), thumbnailProcessor));
+	}
+
+
+	private static synchronized ThreadPoolExecutor getWriter(){
+		if(writer==null){
+			writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(MAXIMUM_PENDING_IMAGES),
+					new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "Iris grid image writer");
+							thread.setDaemon(true);
+							return(thread);
+						}
+					},
+					new RejectedExecutionHandler() {
+						public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+							//unlike CallerRunsPolicy, this also runs the task if the writer was shut down
+							//by waitForPendingImages after the profile got hold of it, so no grid image is lost
+							task.run();
+						}
+					});
+		}
+		return(writer);
+	}
+
+}
@@ -0,0 +1,249 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.IJ;
+import ij.ImagePlus;
+import iris.ui.IrisFrontend;
+import iris.utils.StageTimings.StageTimer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class reads and decodes the pictures of a folder ahead of the profiles that analyse them,
+ * so that the analysis threads don't sit idle while a big camera picture is read from disk (or the network) and decoded.
+ * <p>
+ * Pictures are decoded in the order they were given, on a few background threads, staying at most
+ * a fixed number of pictures (the depth) ahead: a new picture is only started once one of the decoded ones has been
+ * taken by a profile, so memory use stays bounded.
+ * <p>
+ * Profiles open their pictures with openImage(). If the picture was decoded ahead, it is handed over; otherwise
+ * (a picture that's not in the folder, or one the prefetcher hasn't reached yet) the profile decodes it itself,
+ * exactly like before.
+ * @author George Kritikos
+ *
+ */
+public class ImagePrefetcher {
+
+	/**
+	 * The most threads that decode pictures at the same time, whatever the depth
+	 */
+	private static final int MAXIMUM_DECODER_THREADS = 2;
+
+
+	/**
+	 * Opens the given picture, taking it from the prefetcher of the folder being processed if there is one.
+	 * Returns null if the picture could not be opened, just like IJ.openImage.
+	 * @param filename
+	 * @return
+	 */
+	public static ImagePlus openImage(String filename){
+		StageTimer timer = StageTimings.start(StageTimings.DECODE);
+		try{
+			ImagePrefetcher prefetcher = IrisFrontend.imagePrefetcher;
+			if(prefetcher==null)
+				return(decodeImage(filename));
+
+			return(prefetcher.takeImage(filename));
+		}
+		finally{
+			timer.stop();
+		}
+	}
+
+
+	/**
+	 * Decodes the given picture: only its plate if plate previews are switched on, the whole of it otherwise.
+	 * Single-colony pictures are always decoded whole. Uncompressed TIFFs are read through a memory mapping.
+	 * @param filename
+	 * @return
+	 */
+	private static ImagePlus decodeImage(String filename){
+		boolean singleColonyPicture = IrisFrontend.singleColonyRun || filename.contains("colony_") || filename.contains("tile_");
+		if(IrisFrontend.platePreviewSubsampling>0 && !singleColonyPicture)
+			return(ImageRegionDecoder.openPlate(filename, IrisFrontend.platePreviewSubsampling));
+
+		MappedTiffReader tiffReader = MappedTiffReader.open(filename);
+		if(tiffReader!=null)
+			return(tiffReader.openImage());
+
+		return(IJ.openImage(filename));
+	}
+
+
+	/**
+	 * The pictures to decode, in order
+	 */
+	private final List<String> filenames;
+
+	/**
+	 * The next picture in filenames that hasn't been started
+	 */
+	private int nextPicture = 0;
+
+	/**
+	 * The pictures being decoded or waiting to be taken (at most depth of them)
+	 */
+	private final Map<String, Future<ImagePlus>> pendingPictures = new HashMap<String, Future<ImagePlus>>();
+
+	/**
+	 * The pictures that have been taken or discarded, so they're never started
+	 */
+	private final Set<String> finishedPictures = new HashSet<String>();
+
+	private final int depth;
+	private final ExecutorService decoders;
+	private boolean closed = false;
+
+
+	/**
+	 * Starts decoding the first of the given pictures, keeping up to depth of them decoded ahead
+	 * @param files
+	 * @param depth_
+	 */
+	public ImagePrefetcher(File[] files, int depth_){
+		if(depth_<1)
+			throw new IllegalArgumentException("the prefetch depth has to be at least one");
+
+		depth = depth_;
+		filenames = new ArrayList<String>(files.length);
+		for(File file : files){
+			if(file.isFile())
+				filenames.add(file.getAbsolutePath());
+		}
+
+		decoders = Executors.newFixedThreadPool(Math.min(depth, MAXIMUM_DECODER_THREADS), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Iris picture decoder");
+				thread.setDaemon(true);
+				return(thread);
+			}
+		});
+
+		synchronized(this){
+			startNextPictures();
+		}
+	}
+
+
+	/**
+	 * Returns the given picture, waiting for it to be decoded if it was started, or decoding it on
+	 * the calling thread otherwise. Returns null if it could not be opened.
+	 * @param filename
+	 * @return
+	 */
+	public ImagePlus takeImage(String filename){
+		Future<ImagePlus> decodedPicture = claim(filename);
+		if(decodedPicture==null)
+			return(decodeImage(filename));
+
+		try {
+			return(decodedPicture.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return(null);
+		} catch (ExecutionException e) {
+			System.err.println("Could not decode image file " + filename + ": " + e.getCause());
+			return(null);
+		}
+	}
+
+
+	/**
+	 * Tells the prefetcher that the given picture is done with. If it was decoded ahead but never taken
+	 * (e.g. because another Iris instance was already working on it), it is thrown away, making room for the next one.
+	 * @param filename
+	 */
+	public void discard(String filename){
+		Future<ImagePlus> decodedPicture = claim(filename);
+		if(decodedPicture!=null)
+			flushWhenDecoded(decodedPicture);
+	}
+
+
+	/**
+	 * Stops decoding, and throws away any pictures that were never taken
+	 */
+	public void close(){
+		List<Future<ImagePlus>> leftovers;
+		synchronized(this){
+			closed = true;
+			leftovers = new ArrayList<Future<ImagePlus>>(pendingPictures.values());
+			pendingPictures.clear();
+		}
+
+		for(Future<ImagePlus> decodedPicture : leftovers){
+			flushWhenDecoded(decodedPicture);
+		}
+		decoders.shutdown();
+	}
+
+
+	/**
+	 * Marks the given picture as finished, returning it if it was started, and starts the next ones
+	 */
+	private synchronized Future<ImagePlus> claim(String filename){
+		finishedPictures.add(filename);
+		Future<ImagePlus> decodedPicture = pendingPictures.remove(filename);
+		startNextPictures();
+		return(decodedPicture);
+	}
+
+
+	/**
+	 * Starts decoding pictures, in order, until depth of them are pending
+	 */
+	private void startNextPictures(){
+		while(!closed && pendingPictures.size()<depth && nextPicture<filenames.size()){
+			final String filename = filenames.get(nextPicture++);
+			if(finishedPictures.contains(filename))
+				continue;
+
+			pendingPictures.put(filename, decoders.submit(new Callable<ImagePlus>() {
+				public ImagePlus call() {
+					return(decodeImage(filename));
+				}
+			}));
+		}
+	}
+
+
+	/**
+	 * Frees the given picture once it has been decoded, without waiting for it
+	 */
+	private void flushWhenDecoded(final Future<ImagePlus> decodedPicture){
+		if(decodedPicture.cancel(false))
+			return;
+
+		Runnable flush = new Runnable() {
+			public void run() {
+				try {
+					ImagePlus picture = decodedPicture.get();
+					if(picture!=null)
+						picture.flush();
+				} catch (Exception e) {
+					//it was never decoded, nothing to free
+				}
+			}
+		};
+
+		if(decodedPicture.isDone())
+			flush.run();
+		else
+			decoders.execute(flush); //still being decoded
+	}
+
+}
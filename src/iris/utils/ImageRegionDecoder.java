@@ -0,0 +1,358 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.io.FileInfo;
+import ij.io.Opener;
+import ij.io.TiffDecoder;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import iris.imageCroppers.GenericImageCropper;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This class decodes only part of a picture: a subsampled preview of the whole of it, or a rectangle of it at full resolution.
+ * JPEGs (and anything else ImageIO reads) are decoded with the source region and subsampling of ImageIO,
+ * uncompressed 8-bit and RGB TIFFs are read straight from a memory mapping of the file (see MappedTiffReader). Any other picture is decoded
+ * whole with ImageJ, and then cropped or scaled down.
+ * <p>
+ * openPlate() puts the two together: it finds the plate on a preview, then decodes the plate (with a margin around it)
+ * at full resolution. The decoded rectangle always has the same center as the whole picture, and always holds
+ * the central quarter of it, which the rotation is calculated on (see Toolbox.getRotationPatch): the rectangle
+ * and the size of the whole picture are kept as properties of the decoded picture (see getDecodedRegion), so the rotation
+ * found is the same as on the whole picture, and rotating the rectangle gives the same pixels around the plate.
+ * The plate is then cropped from the decoded rectangle alone, though, and the croppers look at the brightness
+ * of whole rows and columns: the crop borders can move by a few pixels, and so the measurements can change slightly.
+ * @author George Kritikos
+ *
+ */
+public class ImageRegionDecoder {
+
+	/**
+	 * The margin kept around the plate found on the preview, as a fraction of the picture size.
+	 * This leaves room for the plate's rotation, and for the background the croppers need to see around the plate.
+	 */
+	private static final double PLATE_MARGIN = 0.05;
+
+	/**
+	 * The properties openPlate sets on a picture it decoded only part of: the decoded rectangle (a Rectangle),
+	 * and the size of the whole picture (a Dimension)
+	 */
+	private static final String REGION_PROPERTY = "Iris.DecodedRegion";
+	private static final String PICTURE_SIZE_PROPERTY = "Iris.PictureSize";
+
+
+	/**
+	 * Opens the plate of the given picture: the plate's plastic borders are found on a preview subsampled by the
+	 * given factor, and only the part of the picture around them is decoded at full resolution.
+	 * If the plate can't be found on the preview, or fills the picture, the whole picture is opened.
+	 * Returns null if the picture could not be opened, just like IJ.openImage.
+	 * @param filename
+	 * @param subsampling
+	 * @return
+	 */
+	public static ImagePlus openPlate(String filename, int subsampling){
+
+		Dimension size = getImageSize(filename);
+		ImagePlus preview = size==null ? null : openPreview(filename, subsampling);
+		if(preview==null)
+			return(IJ.openImage(filename));
+
+		//1. find the plate on the preview
+		Rectangle plate;
+		try{
+			plate = GenericImageCropper.findPlatePlasticBorders(preview, subsampling).getBounds();
+		}
+		catch(RuntimeException e){
+			plate = null; //e.g. too small a preview to find the borders in
+		}
+		finally{
+			preview.flush();
+		}
+
+		if(plate==null)
+			return(decode(filename, null, 1));
+
+		//2. scale it back to the whole picture, and add the margin
+		int marginX = (int)Math.round(size.width * PLATE_MARGIN);
+		int marginY = (int)Math.round(size.height * PLATE_MARGIN);
+		int left = plate.x*subsampling - marginX;
+		int right = (plate.x + plate.width)*subsampling + marginX;
+		int top = plate.y*subsampling - marginY;
+		int bottom = (plate.y + plate.height)*subsampling + marginY;
+
+		//3. keep the center of the picture at the center of the region, the same amount off each side,
+		//and keep the part of the picture the rotation is calculated on
+		Rectangle rotationPatch = Toolbox.getCenterQuarter(size.width, size.height);
+		int regionX = Math.max(0, Math.min(Math.min(left, size.width - right),
+				Math.min(rotationPatch.x, size.width - (rotationPatch.x + rotationPatch.width))));
+		int regionY = Math.max(0, Math.min(Math.min(top, size.height - bottom),
+				Math.min(rotationPatch.y, size.height - (rotationPatch.y + rotationPatch.height))));
+		if(regionX==0 && regionY==0)
+			return(decode(filename, null, 1)); //the plate fills the picture
+
+		Rectangle region = new Rectangle(regionX, regionY, size.width - 2*regionX, size.height - 2*regionY);
+		ImagePlus image = openRegion(filename, region);
+		if(image!=null && image.getWidth()==region.width && image.getHeight()==region.height){
+			image.setProperty(REGION_PROPERTY, region);
+			image.setProperty(PICTURE_SIZE_PROPERTY, size);
+		}
+		return(image);
+	}
+
+
+	/**
+	 * Returns the rectangle of the whole picture the given picture holds, if openPlate decoded only part of it,
+	 * or null if it holds the whole picture
+	 * @param image
+	 * @return
+	 */
+	public static Rectangle getDecodedRegion(ImagePlus image){
+		Object region = image.getProperty(REGION_PROPERTY);
+		return(region instanceof Rectangle ? (Rectangle) region : null);
+	}
+
+
+	/**
+	 * Returns the size of the whole picture the given picture was decoded from (see getDecodedRegion)
+	 * @param image
+	 * @return
+	 */
+	public static Dimension getPictureSize(ImagePlus image){
+		Object size = image.getProperty(PICTURE_SIZE_PROPERTY);
+		return(size instanceof Dimension ? (Dimension) size : new Dimension(image.getWidth(), image.getHeight()));
+	}
+
+
+	/**
+	 * Returns the width and height of the given picture, reading only its header, or null if it can't be read
+	 * @param filename
+	 * @return
+	 */
+	public static Dimension getImageSize(String filename){
+		try{
+			if(isTiff(filename)){
+				FileInfo fileInfo = getTiffInfo(filename);
+				return(fileInfo==null ? null : new Dimension(fileInfo.width, fileInfo.height));
+			}
+
+			ImageInputStream stream = ImageIO.createImageInputStream(new File(filename));
+			if(stream==null)
+				return(null);
+			try{
+				ImageReader reader = getReader(stream);
+				if(reader==null)
+					return(null);
+				try{
+					return(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+				}
+				finally{
+					reader.dispose();
+				}
+			}
+			finally{
+				stream.close();
+			}
+		}
+		catch(IOException e){
+			return(null);
+		}
+	}
+
+
+	/**
+	 * Opens the given picture, keeping only every n-th pixel of every n-th row (n being the given subsampling).
+	 * Returns null if the picture could not be opened.
+	 * @param filename
+	 * @param subsampling
+	 * @return
+	 */
+	public static ImagePlus openPreview(String filename, int subsampling){
+		return(decode(filename, null, subsampling));
+	}
+
+
+	/**
+	 * Opens only the given rectangle of the given picture, at full resolution.
+	 * Returns null if the picture could not be opened.
+	 * @param filename
+	 * @param region
+	 * @return
+	 */
+	public static ImagePlus openRegion(String filename, Rectangle region){
+		return(decode(filename, region, 1));
+	}
+
+
+	/**
+	 * Decodes the given rectangle (or the whole picture, if null) of the given picture, subsampled by the given factor
+	 */
+	private static ImagePlus decode(String filename, Rectangle region, int subsampling){
+		try{
+			ImagePlus image;
+			if(isTiff(filename))
+				image = decodeTiff(filename, region, subsampling);
+			else
+				image = decodeWithImageIO(filename, region, subsampling);
+
+			if(image!=null)
+				return(image);
+		}
+		catch(IOException e){
+			//fall back to ImageJ below
+		}
+		catch(RuntimeException e){
+			//e.g. a region outside the picture, fall back to ImageJ below
+		}
+
+		return(decodeWholePicture(filename, region, subsampling));
+	}
+
+
+	private static ImagePlus decodeWithImageIO(String filename, Rectangle region, int subsampling) throws IOException {
+		ImageInputStream stream = ImageIO.createImageInputStream(new File(filename));
+		if(stream==null)
+			return(null);
+
+		try{
+			ImageReader reader = getReader(stream);
+			if(reader==null)
+				return(null);
+
+			try{
+				ImageReadParam readParam = reader.getDefaultReadParam();
+				if(region!=null)
+					readParam.setSourceRegion(region);
+				if(subsampling>1)
+					readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+				BufferedImage bufferedImage = reader.read(0, readParam);
+
+				ImagePlus image;
+				ColorProcessor colorProcessor = toColorProcessor(bufferedImage);
+				if(colorProcessor!=null)
+					image = new ImagePlus(new File(filename).getName(), colorProcessor);
+				else
+					image = new ImagePlus(new File(filename).getName(), bufferedImage);
+
+				//like ImageJ does with its JPEGs
+				if(image.getType()==ImagePlus.COLOR_RGB)
+					Opener.convertGrayJpegTo8Bits(image);
+				return(image);
+			}
+			finally{
+				reader.dispose();
+			}
+		}
+		finally{
+			stream.close();
+		}
+	}
+
+
+	/**
+	 * Copies the pixels of a colour picture as decoded by ImageIO (blue, green, red bytes) into a ColorProcessor.
+	 * This is much quicker than letting ImageJ grab them. Returns null for any other kind of picture.
+	 */
+	private static ColorProcessor toColorProcessor(BufferedImage bufferedImage){
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		if(bufferedImage.getType()!=BufferedImage.TYPE_3BYTE_BGR || !(bufferedImage.getRaster().getDataBuffer() instanceof DataBufferByte))
+			return(null);
+
+		DataBufferByte dataBuffer = (DataBufferByte) bufferedImage.getRaster().getDataBuffer();
+		byte[] bytes = dataBuffer.getData();
+		if(dataBuffer.getOffset()!=0 || bytes.length!=3*width*height)
+			return(null);
+
+		int[] pixels = new int[width*height];
+		for(int i=0, j=0; i<pixels.length; i++, j+=3){
+			pixels[i] = 0xff000000 | ((bytes[j+2]&0xff)<<16) | ((bytes[j+1]&0xff)<<8) | (bytes[j]&0xff);
+		}
+		return(new ColorProcessor(width, height, pixels));
+	}
+
+
+	/**
+	 * Reads the given rectangle of an uncompressed TIFF straight from its memory mapping (see MappedTiffReader).
+	 * Returns null for any other kind of TIFF.
+	 */
+	private static ImagePlus decodeTiff(String filename, Rectangle region, int subsampling){
+		MappedTiffReader tiffReader = MappedTiffReader.open(filename);
+		if(tiffReader==null)
+			return(null);
+
+		if(region==null)
+			region = new Rectangle(0, 0, tiffReader.getWidth(), tiffReader.getHeight());
+		return(tiffReader.openRegion(region, subsampling));
+	}
+
+
+	/**
+	 * Decodes the whole picture with ImageJ, then crops and subsamples it
+	 */
+	private static ImagePlus decodeWholePicture(String filename, Rectangle region, int subsampling){
+		ImagePlus image = IJ.openImage(filename);
+		if(image==null)
+			return(null);
+
+		if(region!=null){
+			ImagePlus croppedImage = Toolbox.cropImage(image, new Roi(region.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()))));
+			image.flush();
+			image = croppedImage;
+		}
+
+		if(subsampling>1){
+			ImageProcessor imageProcessor = image.getProcessor();
+			imageProcessor.setInterpolationMethod(ImageProcessor.NONE);
+			ImagePlus preview = new ImagePlus(image.getTitle(), imageProcessor.resize(
+					Math.max(1, image.getWidth()/subsampling), Math.max(1, image.getHeight()/subsampling)));
+			image.flush();
+			image = preview;
+		}
+
+		return(image);
+	}
+
+
+	private static boolean isTiff(String filename){
+		String lowercaseFilename = filename.toLowerCase();
+		return(lowercaseFilename.endsWith(".tif") || lowercaseFilename.endsWith(".tiff"));
+	}
+
+
+	private static FileInfo getTiffInfo(String filename) throws IOException {
+		File file = new File(filename);
+		TiffDecoder tiffDecoder = new TiffDecoder(file.getParent() + File.separator, file.getName());
+		FileInfo[] fileInfos = tiffDecoder.getTiffInfo();
+		return(fileInfos==null || fileInfos.length==0 ? null : fileInfos[0]);
+	}
+
+
+	private static ImageReader getReader(ImageInputStream stream){
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+		if(!readers.hasNext())
+			return(null);
+
+		ImageReader reader = readers.next();
+		reader.setInput(stream, true, true);
+		return(reader);
+	}
+
+}
@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads uncompressed 8-bit and RGB TIFFs (like the ones our camera rig writes) through a memory mapping of the file,
+ * instead of streaming the whole file through ImageJ's readers.
+ * The pixel data is mapped once, and the pixels of a picture, or of any rectangle of it, are copied straight
+ * from the mapping into the pixel array of an ImageProcessor. Only the pages of the file that hold the rows that are
+ * asked for are read from disk, so cropping a plate out of a picture doesn't read the rest of it.
+ * <p>
+ * TIFFs with strips are supported, as long as their pixels are stored uncompressed and interleaved.
+ * Anything else (compressed, 16-bit, planar, inverted or value-calibrated TIFFs, stacks) is left to ImageJ: open() returns null for them.
+ * @author George Kritikos
+ *
+ */
+public class MappedTiffReader {
+
+	private final String filename;
+	private final FileInfo fileInfo;
+	private final int bytesPerPixel;
+	private final long rowLength;
+
+	/**
+	 * The pixel data, from the start of the first strip to the end of the last one
+	 */
+	private final MappedByteBuffer pixelData;
+	private final long pixelDataOffset;
+
+
+	/**
+	 * Returns a reader for the given file, or null if it's not a TIFF this class can read
+	 * @param filename
+	 * @return
+	 */
+	public static MappedTiffReader open(String filename){
+		String lowercaseFilename = filename.toLowerCase();
+		if(!lowercaseFilename.endsWith(".tif") && !lowercaseFilename.endsWith(".tiff"))
+			return(null);
+
+		try{
+			File file = new File(filename);
+			FileInfo[] fileInfos = new TiffDecoder(file.getParent() + File.separator, file.getName()).getTiffInfo();
+			if(fileInfos==null || fileInfos.length!=1 || !isSupported(fileInfos[0]))
+				return(null);
+
+			return(new MappedTiffReader(filename, fileInfos[0]));
+		}
+		catch(IOException e){
+			return(null);
+		}
+		catch(RuntimeException e){
+			return(null); //e.g. a truncated file
+		}
+	}
+
+
+	/**
+	 * Returns true for the TIFFs whose pixels can be copied straight from the file,
+	 * and that ImageJ wouldn't do anything more to once read
+	 */
+	private static boolean isSupported(FileInfo fileInfo){
+		if(fileInfo.compression>FileInfo.COMPRESSION_NONE || fileInfo.whiteIsZero || fileInfo.nImages>1)
+			return(false);
+		if(fileInfo.valueUnit!=null || fileInfo.lutSize>0)
+			return(false);
+		if(fileInfo.fileType==FileInfo.RGB)
+			return(true);
+		//ImageJ would set the display range of 8-bit pictures from its own description
+		return(fileInfo.fileType==FileInfo.GRAY8 && (fileInfo.description==null || !fileInfo.description.startsWith("ImageJ")));
+	}
+
+
+	private MappedTiffReader(String filename_, FileInfo fileInfo_) throws IOException {
+		filename = filename_;
+		fileInfo = fileInfo_;
+		bytesPerPixel = fileInfo.fileType==FileInfo.RGB ? 3 : 1;
+		rowLength = (long)fileInfo.width * bytesPerPixel;
+
+		//map everything from the first strip to the end of the last one
+		long start = fileInfo.getOffset();
+		long end = start + rowLength*fileInfo.height;
+		if(hasStrips()){
+			start = Long.MAX_VALUE;
+			end = 0;
+			for(int strip=0; strip<fileInfo.stripOffsets.length; strip++){
+				long stripOffset = fileInfo.stripOffsets[strip]&0xffffffffL;
+				start = Math.min(start, stripOffset);
+				end = Math.max(end, stripOffset + rowLength*getRowsInStrip(strip));
+			}
+		}
+		if(end-start>Integer.MAX_VALUE)
+			throw new IOException(filename + " is too big to be mapped at once");
+
+		FileChannel channel = FileChannel.open(new File(filename).toPath(), StandardOpenOption.READ);
+		try{
+			if(end>channel.size())
+				throw new IOException(filename + " is shorter than its TIFF header says");
+			pixelData = channel.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+		}
+		finally{
+			channel.close(); //the mapping stays valid
+		}
+		pixelDataOffset = start;
+	}
+
+
+	public int getWidth(){
+		return(fileInfo.width);
+	}
+
+	public int getHeight(){
+		return(fileInfo.height);
+	}
+
+
+	/**
+	 * Returns the whole picture, the way ImageJ would have opened it
+	 * @return
+	 */
+	public ImagePlus openImage(){
+		return(openRegion(new Rectangle(0, 0, fileInfo.width, fileInfo.height), 1));
+	}
+
+
+	/**
+	 * Returns the given rectangle of the picture, keeping only every n-th pixel of every n-th row
+	 * (n being the given subsampling, 1 for the full resolution)
+	 * @param region
+	 * @param subsampling
+	 * @return
+	 */
+	public ImagePlus openRegion(Rectangle region, int subsampling){
+		if(!new Rectangle(0, 0, fileInfo.width, fileInfo.height).contains(region))
+			throw new IllegalArgumentException("region " + region + " is outside of " + filename);
+
+		ImageProcessor imageProcessor = readPixels(region, subsampling);
+		ImagePlus image = new ImagePlus(new File(filename).getName(), imageProcessor);
+
+		//spatial calibration, as ImageJ would have set it
+		if(fileInfo.pixelWidth>0.0 && fileInfo.unit!=null){
+			Calibration calibration = image.getCalibration();
+			calibration.pixelWidth = fileInfo.pixelWidth;
+			calibration.pixelHeight = fileInfo.pixelHeight;
+			calibration.pixelDepth = fileInfo.pixelDepth;
+			calibration.setUnit(fileInfo.unit);
+		}
+
+		return(image);
+	}
+
+
+	private ImageProcessor readPixels(Rectangle region, int subsampling){
+		int width = (region.width + subsampling - 1) / subsampling;
+		int height = (region.height + subsampling - 1) / subsampling;
+
+		//each thread reads through its own view of the mapping
+		ByteBuffer rows = pixelData.duplicate();
+		byte[] rowBytes = new byte[(width-1)*subsampling*bytesPerPixel + bytesPerPixel];
+
+		if(bytesPerPixel==1){
+			byte[] pixels = new byte[width*height];
+
+			//for all rows
+			for(int y=0; y<height; y++){
+				rows.position(getRowPosition(region.y + y*subsampling) + region.x);
+				if(subsampling==1){
+					rows.get(pixels, y*width, width);
+					continue;
+				}
+				rows.get(rowBytes);
+				//for all columns
+				for(int x=0; x<width; x++){
+					pixels[y*width + x] = rowBytes[x*subsampling];
+				}
+			}
+			return(new ByteProcessor(width, height, pixels, null));
+		}
+
+		int[] pixels = new int[width*height];
+
+		//for all rows
+		for(int y=0; y<height; y++){
+			rows.position(getRowPosition(region.y + y*subsampling) + region.x*bytesPerPixel);
+			rows.get(rowBytes);
+
+			int index = y*width;
+			//for all columns
+			for(int x=0; x<width; x++){
+				int i = x*subsampling*bytesPerPixel;
+				pixels[index++] = 0xff000000 | ((rowBytes[i]&0xff)<<16) | ((rowBytes[i+1]&0xff)<<8) | (rowBytes[i+2]&0xff);
+			}
+		}
+		return(new ColorProcessor(width, height, pixels));
+	}
+
+
+	/**
+	 * Returns where the given row of the picture starts, in the mapping
+	 */
+	private int getRowPosition(int row){
+		long rowOffset;
+		if(hasStrips()){
+			int strip = row / fileInfo.rowsPerStrip;
+			rowOffset = (fileInfo.stripOffsets[strip]&0xffffffffL) + (row % fileInfo.rowsPerStrip)*rowLength;
+		}
+		else{
+			rowOffset = fileInfo.getOffset() + row*rowLength;
+		}
+		return((int)(rowOffset - pixelDataOffset));
+	}
+
+
+	private boolean hasStrips(){
+		return(fileInfo.stripOffsets!=null && fileInfo.stripOffsets.length>1 && fileInfo.rowsPerStrip>0);
+	}
+
+
+	private int getRowsInStrip(int strip){
+		return(Math.min(fileInfo.rowsPerStrip, fileInfo.height - strip*fileInfo.rowsPerStrip));
+	}
+
+}
@@ -0,0 +1,191 @@
+/**
+ *
+ */
+package iris.utils;
+
+import iris.ui.IrisFrontend;
+import iris.ui.ThreadBufferedOutputStream;
+import iris.utils.StageTimings.StageTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class runs the tile readers of a plate on all the tiles of the ROI matrix in parallel.
+ * Tiles are split recursively over a fork-join pool that is shared by all the plates being processed,
+ * so that the total number of tile threads stays at IrisFrontend.numberOfTileThreads however many plates run at once.
+ * <p>
+ * Each task writes its results in the [row][column] cell of the arrays it was given,
+ * so the output order does not depend on the order the tiles were processed in.
+ * An exception thrown by one tile does not stop the others; once all tiles are done, the failures are
+ * reported together (in row/column order) as a TileReadingException.
+ * Whatever the tiles print goes to the console buffers of the plate's thread (see ThreadBufferedOutputStream),
+ * so it comes out with the rest of that plate's messages.
+ * @author George Kritikos
+ *
+ */
+public class ParallelTileReader {
+
+	/**
+	 * The work to be done on each tile of the plate
+	 */
+	public interface TileTask {
+		public void readTile(int row, int column) throws Exception;
+	}
+
+
+	/**
+	 * Thrown when one or more of the tiles could not be read
+	 */
+	public static class TileReadingException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The failed tiles, in row/column order, as "row i, column j"
+		 */
+		public final List<String> failedTiles;
+
+		public TileReadingException(String message, List<String> failedTiles_, Throwable firstFailure){
+			super(message, firstFailure);
+			failedTiles = failedTiles_;
+		}
+	}
+
+
+	/**
+	 * The pool shared by all plates, created on first use
+	 */
+	private static ForkJoinPool pool = null;
+
+
+	/**
+	 * Runs the given task on every tile of a plate with the given number of rows and columns.
+	 * Returns once all tiles are done.
+	 * @param numberOfRows
+	 * @param numberOfColumns
+	 * @param task
+	 * @throws TileReadingException if any of the tiles threw an exception
+	 */
+	public static void readAllTiles(int numberOfRows, int numberOfColumns, TileTask task){
+		int numberOfTiles = numberOfRows*numberOfColumns;
+		Throwable[] failures = new Throwable[numberOfTiles];
+
+		StageTimer timer = StageTimings.start(StageTimings.TILE_READING);
+		try{
+			if(IrisFrontend.numberOfTileThreads<=1 || numberOfTiles<=1){
+				readTiles(numberOfColumns, task, 0, numberOfTiles, failures);
+			}
+			else{
+				//split the tiles in a few chunks per thread, so that slow tiles don't hold up the rest
+				int tilesPerChunk = Math.max(1, numberOfTiles/(4*IrisFrontend.numberOfTileThreads));
+				Object consoleBuffers = ThreadBufferedOutputStream.getThreadBuffers();
+				getPool().invoke(new TileChunk(numberOfColumns, task, 0, numberOfTiles, tilesPerChunk, failures, consoleBuffers));
+			}
+		}
+		finally{
+			timer.stop();
+		}
+
+		reportFailures(numberOfColumns, failures);
+	}
+
+
+	/**
+	 * Reads the tiles with linear (row-major) indices from..to-1, keeping any exception thrown
+	 */
+	private static void readTiles(int numberOfColumns, TileTask task, int from, int to, Throwable[] failures){
+		for(int index=from; index<to; index++){
+			try{
+				task.readTile(index/numberOfColumns, index%numberOfColumns);
+			}
+			catch(Throwable e){
+				failures[index] = e;
+			}
+		}
+	}
+
+
+	/**
+	 * Throws a TileReadingException listing all the tiles that failed, if any
+	 */
+	private static void reportFailures(int numberOfColumns, Throwable[] failures){
+		List<String> failedTiles = new ArrayList<String>();
+		Throwable firstFailure = null;
+
+		for(int index=0; index<failures.length; index++){
+			if(failures[index]==null)
+				continue;
+
+			if(firstFailure==null)
+				firstFailure = failures[index];
+			failedTiles.add("row " + (index/numberOfColumns+1) + ", column " + (index%numberOfColumns+1));
+		}
+
+		if(firstFailure!=null){
+			throw new TileReadingException(failedTiles.size() + " tile(s) could not be read, first at " + failedTiles.get(0)
+					+ ": " + firstFailure.toString(), failedTiles, firstFailure);
+		}
+	}
+
+
+	private static synchronized ForkJoinPool getPool(){
+		if(pool==null)
+			pool = new ForkJoinPool(IrisFrontend.numberOfTileThreads);
+		return(pool);
+	}
+
+
+	/**
+	 * A contiguous range of tiles, split in half until it's small enough to be read by one thread
+	 */
+	private static class TileChunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int numberOfColumns;
+		private final TileTask task;
+		private final int from;
+		private final int to;
+		private final int tilesPerChunk;
+		private final Throwable[] failures;
+
+		/**
+		 * The console buffers of the thread that is reading the plate
+		 */
+		private final Object consoleBuffers;
+
+		TileChunk(int numberOfColumns_, TileTask task_, int from_, int to_, int tilesPerChunk_, Throwable[] failures_, Object consoleBuffers_){
+			numberOfColumns = numberOfColumns_;
+			task = task_;
+			from = from_;
+			to = to_;
+			tilesPerChunk = tilesPerChunk_;
+			failures = failures_;
+			consoleBuffers = consoleBuffers_;
+		}
+
+		@Override
+		protected void compute() {
+			if(to-from<=tilesPerChunk){
+				//a pool thread may be in the middle of another plate's chunk, whose buffers it goes back to afterwards
+				Object previousBuffers = ThreadBufferedOutputStream.getThreadBuffers();
+				ThreadBufferedOutputStream.setThreadBuffers(consoleBuffers);
+				try{
+					readTiles(numberOfColumns, task, from, to, failures);
+				}
+				finally{
+					ThreadBufferedOutputStream.setThreadBuffers(previousBuffers);
+				}
+				return;
+			}
+
+			int middle = (from+to)>>>1;
+			invokeAll(new TileChunk(numberOfColumns, task, from, middle, tilesPerChunk, failures, consoleBuffers),
+					new TileChunk(numberOfColumns, task, middle, to, tilesPerChunk, failures, consoleBuffers));
+		}
+	}
+
+}
@@ -0,0 +1,810 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.Prefs;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.measure.ResultsTable;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import ij.process.PolygonFiller;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class finds the particles (8-connected components) of a thresholded or binary tile picture,
+ * and measures them the same way the ImageJ ParticleAnalyzer does: the particles are found in raster order,
+ * their outline is traced like the ImageJ wand would, the perimeter is the traced perimeter
+ * and the aspect ratio comes from the best-fitting ellipse.
+ * <p>
+ * Unlike the ParticleAnalyzer, it doesn't need a RoiManager and keeps no static state,
+ * so tile readers can use it on many tiles at the same time. The picture analysed is never modified.
+ * A labeller holds only its settings, so a single instance can be shared by all threads.
+ * @author George Kritikos
+ *
+ */
+public class ParticleLabeller {
+
+	/**
+	 * A particle found in the picture, with its measurements.
+	 * All coordinates are in the coordinates of the picture analysed.
+	 */
+	public static class Particle {
+
+		/**
+		 * The number of pixels of the particle
+		 */
+		public int area;
+
+		/**
+		 * The length of the traced outline, with the corners cut diagonally
+		 */
+		public double perimeter;
+
+		/**
+		 * 4pi*area/perimeter^2, at most 1
+		 */
+		public double circularity;
+
+		/**
+		 * The ratio of the major to the minor axis of the best-fitting ellipse
+		 */
+		public double aspectRatio;
+
+		/**
+		 * The roundness, 4*area/(pi*major axis^2)
+		 */
+		public double roundness;
+
+		/**
+		 * The bounding rectangle of the particle
+		 */
+		public Rectangle bounds;
+
+		/**
+		 * The center of mass of the particle, weighted by the pixel values of the picture
+		 */
+		public double xCenterOfMass;
+		public double yCenterOfMass;
+
+		/**
+		 * The outline polygon, as traced by the ImageJ wand
+		 */
+		private int[] xpoints;
+		private int[] ypoints;
+		private int npoints;
+
+		/**
+		 * The pixels of the particle within its bounding rectangle (non-zero inside),
+		 * null if the particle is only 1 pixel wide or high, in which case it covers its whole bounding rectangle
+		 */
+		private byte[] mask;
+
+
+		/**
+		 * Returns the outline of this particle as a traced polygon ROI,
+		 * the same ROI the ParticleAnalyzer would have added to the RoiManager
+		 * @return
+		 */
+		public Roi getRoi(){
+			int[] x = new int[npoints];
+			int[] y = new int[npoints];
+			System.arraycopy(xpoints, 0, x, 0, npoints);
+			System.arraycopy(ypoints, 0, y, 0, npoints);
+			return(new PolygonRoi(x, y, npoints, Roi.TRACED_ROI));
+		}
+
+
+		/**
+		 * Returns the pixels of this particle as a mask of the size of its bounding rectangle, 255 inside
+		 * @return
+		 */
+		public ImageProcessor getMask(){
+			ByteProcessor maskProcessor = new ByteProcessor(bounds.width, bounds.height);
+			byte[] maskPixels = (byte[]) maskProcessor.getPixels();
+			for(int i=0; i<maskPixels.length; i++){
+				if(mask==null || mask[i]!=0)
+					maskPixels[i] = (byte) 255;
+			}
+			return(maskProcessor);
+		}
+	}
+
+
+	/**
+	 * If true, the holes of each particle are part of it (and so is anything else within its outline),
+	 * the same as the ParticleAnalyzer INCLUDE_HOLES option
+	 */
+	private final boolean includeHoles;
+
+	/**
+	 * Particles smaller or bigger than these (in pixels) are left out
+	 */
+	private final int minimumSize;
+	private final int maximumSize;
+
+
+	public ParticleLabeller(boolean includeHoles_, int minimumSize_, int maximumSize_){
+		includeHoles = includeHoles_;
+		minimumSize = minimumSize_;
+		maximumSize = maximumSize_;
+	}
+
+
+	/**
+	 * Finds all the particles of the given picture, in the order the ParticleAnalyzer would have found them.
+	 * The particles are the pixels within the threshold levels of the picture, if it has any,
+	 * otherwise the picture must be 8-bit binary (black particles on white, unless Prefs.blackBackground is set).
+	 * If the picture has a ROI, only the particles within it are found; as with the ParticleAnalyzer,
+	 * thresholded pictures are only restricted to the bounding rectangle of the ROI.
+	 * Returns an empty list if the picture is neither thresholded nor binary.
+	 * @param image
+	 * @return
+	 */
+	public List<Particle> analyze(ImagePlus image){
+		Labelling labelling = new Labelling(image.getProcessor(), image.getRoi());
+		if(!labelling.setLevels())
+			return(new ArrayList<Particle>());
+
+		return(labelling.findParticles());
+	}
+
+
+	/**
+	 * Finds all the particles of the given picture, and adds their measurements to the given results table
+	 * under the same columns the ParticleAnalyzer uses (Area, XM, YM, Perim., BX, BY, Width, Height, Circ., AR, Round).
+	 * Returns the outlines of the particles, in the same order as the rows of the results table.
+	 * @param image
+	 * @param resultsTable
+	 * @return
+	 */
+	public Roi[] analyze(ImagePlus image, ResultsTable resultsTable){
+		List<Particle> particles = analyze(image);
+		Roi[] rois = new Roi[particles.size()];
+		resultsTable.setDefaultHeadings();
+
+		for(int i=0; i<particles.size(); i++){
+			Particle particle = particles.get(i);
+
+			resultsTable.incrementCounter();
+			resultsTable.addValue(ResultsTable.AREA, particle.area);
+			resultsTable.addValue(ResultsTable.X_CENTER_OF_MASS, particle.xCenterOfMass);
+			resultsTable.addValue(ResultsTable.Y_CENTER_OF_MASS, particle.yCenterOfMass);
+			resultsTable.addValue(ResultsTable.PERIMETER, particle.perimeter);
+			resultsTable.addValue(ResultsTable.ROI_X, particle.bounds.x);
+			resultsTable.addValue(ResultsTable.ROI_Y, particle.bounds.y);
+			resultsTable.addValue(ResultsTable.ROI_WIDTH, particle.bounds.width);
+			resultsTable.addValue(ResultsTable.ROI_HEIGHT, particle.bounds.height);
+			resultsTable.addValue(ResultsTable.CIRCULARITY, particle.circularity);
+			resultsTable.addValue(ResultsTable.ASPECT_RATIO, particle.aspectRatio);
+			resultsTable.addValue(ResultsTable.ROUNDNESS, particle.roundness);
+
+			rois[i] = particle.getRoi();
+		}
+
+		return(rois);
+	}
+
+
+
+	/**
+	 * The state of a single call to analyze
+	 */
+	private class Labelling {
+
+		private final ImageProcessor ip;
+		private final int width;
+		private final int height;
+
+		/**
+		 * The part of the picture that is searched for particles
+		 */
+		private final Rectangle searchBounds;
+
+		/**
+		 * The ROI mask within the search bounds, null if the whole rectangle is searched
+		 */
+		private final byte[] roiMask;
+
+		/**
+		 * One entry per pixel of the picture: BACKGROUND, FOREGROUND or USED (already part of a particle)
+		 */
+		private byte[] state;
+		private static final byte BACKGROUND = 0;
+		private static final byte FOREGROUND = 1;
+		private static final byte USED = 2;
+
+		/**
+		 * The pixel values that make up the particles
+		 */
+		private double level1;
+		private double level2;
+
+		/**
+		 * The value the ParticleAnalyzer paints outside the ROI (it counts in the centers of mass of particles with holes)
+		 */
+		private double fillColor;
+
+		/**
+		 * The outline being traced
+		 */
+		private int[] xpoints = new int[1000];
+		private int[] ypoints = new int[1000];
+		private int npoints;
+
+		/**
+		 * The stack of the flood fill, packed x,y pairs
+		 */
+		private int[] stack = new int[1000];
+		private int stackSize;
+
+
+		Labelling(ImageProcessor ip_, Roi roi){
+			ip = ip_;
+			width = ip.getWidth();
+			height = ip.getHeight();
+
+			//the ParticleAnalyzer checks binary pictures with ImagePlus.getStatistics, which leaves the ROI mask
+			//of the picture set on its processor, while thresholded pictures only get the ROI bounding rectangle
+			if(roi!=null && roi.isArea() && ip.getMinThreshold()==ImageProcessor.NO_THRESHOLD){
+				Rectangle roiBounds = roi.getBounds();
+				searchBounds = roiBounds.intersection(new Rectangle(0, 0, width, height));
+				if(searchBounds.width<0 || searchBounds.height<0){
+					searchBounds.width = 0;
+					searchBounds.height = 0;
+				}
+				roiMask = getRoiMask(roi, roiBounds);
+			}
+			else{
+				searchBounds = ip.getRoi();
+				ImageProcessor mask = ip.getMask();
+				if(mask!=null && mask.getWidth()==searchBounds.width && mask.getHeight()==searchBounds.height)
+					roiMask = (byte[]) mask.getPixels();
+				else
+					roiMask = null;
+			}
+		}
+
+
+		/**
+		 * Returns the mask of the ROI cropped to the search bounds, null if it's a plain rectangle
+		 */
+		private byte[] getRoiMask(Roi roi, Rectangle roiBounds){
+			ImageProcessor mask = roi.getMask();
+			if(mask==null)
+				return(null);
+
+			byte[] maskPixels = (byte[]) mask.getPixels();
+			byte[] croppedMask = new byte[searchBounds.width*searchBounds.height];
+			for(int y=0; y<searchBounds.height; y++){
+				int maskOffset = (searchBounds.y-roiBounds.y+y)*roiBounds.width + searchBounds.x-roiBounds.x;
+				System.arraycopy(maskPixels, maskOffset, croppedMask, y*searchBounds.width, searchBounds.width);
+			}
+			return(croppedMask);
+		}
+
+
+		/**
+		 * Gets the particle pixel values from the threshold of the picture, or from the binary picture conventions.
+		 * Returns false if the picture is neither thresholded nor binary.
+		 */
+		private boolean setLevels(){
+			if(ip instanceof ColorProcessor)
+				return(false);
+
+			boolean byteImage = ip instanceof ByteProcessor;
+			double minThreshold = ip.getMinThreshold();
+
+			if(minThreshold==ImageProcessor.NO_THRESHOLD){
+				if(!byteImage || !isBinary())
+					return(false);
+
+				boolean threshold255 = ip.isInvertedLut();
+				if(Prefs.blackBackground)
+					threshold255 = !threshold255;
+
+				if(threshold255){
+					level1 = 255;
+					level2 = 255;
+					fillColor = 64;
+				}
+				else{
+					level1 = 0;
+					level2 = 0;
+					fillColor = 192;
+				}
+			}
+			else{
+				level1 = minThreshold;
+				level2 = ip.getMaxThreshold();
+				double maximumValue = byteImage ? 255 : 65535;
+
+				if(ip.getPixels() instanceof float[])
+					fillColor = -Float.MAX_VALUE;
+				else if(level1>0)
+					fillColor = 0;
+				else if(level2<maximumValue)
+					fillColor = maximumValue;
+			}
+			return(true);
+		}
+
+
+		/**
+		 * Returns true if all the pixels searched are either 0 or 255
+		 */
+		private boolean isBinary(){
+			byte[] pixels = (byte[]) ip.getPixels();
+			for(int y=0; y<searchBounds.height; y++){
+				for(int x=0; x<searchBounds.width; x++){
+					if(roiMask!=null && roiMask[y*searchBounds.width+x]==0)
+						continue;
+					int value = pixels[(searchBounds.y+y)*width + searchBounds.x+x]&0xff;
+					if(value!=0 && value!=255)
+						return(false);
+				}
+			}
+			return(true);
+		}
+
+
+		/**
+		 * Returns true if the given pixel of the picture is searched for particles
+		 */
+		private boolean isSearched(int x, int y){
+			if(!searchBounds.contains(x, y))
+				return(false);
+			return(roiMask==null || roiMask[(y-searchBounds.y)*searchBounds.width + x-searchBounds.x]!=0);
+		}
+
+
+		/**
+		 * Marks the foreground pixels, then labels the particles one after the other in raster order
+		 */
+		private List<Particle> findParticles(){
+			List<Particle> particles = new ArrayList<Particle>();
+			state = new byte[width*height];
+
+			for(int y=searchBounds.y; y<searchBounds.y+searchBounds.height; y++){
+				for(int x=searchBounds.x; x<searchBounds.x+searchBounds.width; x++){
+					if(!isSearched(x, y))
+						continue;
+					double value = ip.getPixelValue(x, y);
+					if(value>=level1 && value<=level2)
+						state[y*width+x] = FOREGROUND;
+				}
+			}
+
+			//for all searched pixels, in raster order
+			for(int y=searchBounds.y; y<searchBounds.y+searchBounds.height; y++){
+				for(int x=searchBounds.x; x<searchBounds.x+searchBounds.width; x++){
+					if(state[y*width+x]==FOREGROUND){
+						Particle particle = labelParticle(x, y);
+						if(particle!=null)
+							particles.add(particle);
+					}
+				}
+			}
+
+			return(particles);
+		}
+
+
+		/**
+		 * Traces, fills and measures the particle that starts at the given pixel.
+		 * Its pixels are marked as used even if it's too small or too big, in which case null is returned.
+		 */
+		private Particle labelParticle(int startX, int startY){
+			//move to the right end of the run, where the outline tracing starts
+			int x = startX;
+			do {x++;} while(inside(x, startY));
+			traceEdge(x, startY);
+
+			Particle particle = new Particle();
+			particle.bounds = getOutlineBounds();
+			Rectangle bounds = particle.bounds;
+
+			if(bounds.width>1 && bounds.height>1){
+				if(includeHoles)
+					particle.mask = fillOutline(bounds);
+				else
+					particle.mask = floodFill(startX, startY, bounds);
+			}
+			else{
+				markUsed(bounds);
+			}
+
+			particle.area = countPixels(particle.mask, bounds);
+			if(particle.area<minimumSize || particle.area>maximumSize)
+				return(null);
+
+			particle.xpoints = new int[npoints];
+			particle.ypoints = new int[npoints];
+			particle.npoints = npoints;
+			System.arraycopy(xpoints, 0, particle.xpoints, 0, npoints);
+			System.arraycopy(ypoints, 0, particle.ypoints, 0, npoints);
+
+			particle.perimeter = getTracedPerimeter();
+			particle.circularity = particle.perimeter==0.0 ? 0.0 : 4.0*Math.PI*(particle.area/(particle.perimeter*particle.perimeter));
+			if(particle.circularity>1.0)
+				particle.circularity = 1.0;
+
+			setCenterOfMass(particle);
+			setEllipseShape(particle);
+
+			return(particle);
+		}
+
+
+		/**
+		 * Returns true if the given pixel is a particle pixel that is not yet used
+		 */
+		private boolean inside(int x, int y){
+			if(x<0 || x>=width || y<0 || y>=height)
+				return(false);
+			return(state[y*width+x]==FOREGROUND);
+		}
+
+
+		/**
+		 * Checks the pixel in the given direction from the vertex x,y
+		 */
+		private boolean inside(int x, int y, int direction){
+			switch(direction & 3){
+				case 0: return(inside(x, y));
+				case 1: return(inside(x, y-1));
+				case 2: return(inside(x-1, y-1));
+				case 3: return(inside(x-1, y));
+			}
+			return(false);
+		}
+
+
+		/**
+		 * Traces the 8-connected outline that has the pixel startX-1,startY inside and startX,startY outside,
+		 * keeping only the corners, exactly as ij.gui.Wand does it
+		 */
+		private void traceEdge(int startX, int startY){
+			npoints = 0;
+			final int startDirection;
+			if(inside(startX, startY))
+				startDirection = 1;
+			else{
+				startDirection = 3;
+				startY++;
+			}
+
+			int x = startX;
+			int y = startY;
+			int direction = startDirection;
+			do {
+				//always turn left as much as possible, so that diagonal neighbours are included
+				int newDirection = direction + 1;
+				do {
+					if(inside(x, y, newDirection))
+						break;
+					newDirection--;
+				} while(newDirection>=direction);
+
+				if(newDirection!=direction)
+					addPoint(x, y);
+
+				switch(newDirection & 3){
+					case 0: x++; break;
+					case 1: y--; break;
+					case 2: x--; break;
+					case 3: y++; break;
+				}
+				direction = newDirection;
+			} while(x!=startX || y!=startY || (direction&3)!=startDirection);
+
+			if(xpoints[0]!=x)
+				addPoint(x, y);
+		}
+
+
+		private void addPoint(int x, int y){
+			if(npoints==xpoints.length){
+				int[] xtemp = new int[npoints*2];
+				int[] ytemp = new int[npoints*2];
+				System.arraycopy(xpoints, 0, xtemp, 0, npoints);
+				System.arraycopy(ypoints, 0, ytemp, 0, npoints);
+				xpoints = xtemp;
+				ypoints = ytemp;
+			}
+			xpoints[npoints] = x;
+			ypoints[npoints] = y;
+			npoints++;
+		}
+
+
+		private Rectangle getOutlineBounds(){
+			int xmin = Integer.MAX_VALUE, ymin = Integer.MAX_VALUE;
+			int xmax = Integer.MIN_VALUE, ymax = Integer.MIN_VALUE;
+			for(int i=0; i<npoints; i++){
+				xmin = Math.min(xmin, xpoints[i]);
+				xmax = Math.max(xmax, xpoints[i]);
+				ymin = Math.min(ymin, ypoints[i]);
+				ymax = Math.max(ymax, ypoints[i]);
+			}
+			return(new Rectangle(xmin, ymin, xmax-xmin, ymax-ymin));
+		}
+
+
+		/**
+		 * Fills the traced outline (holes and anything in them included) and marks it as used
+		 */
+		private byte[] fillOutline(Rectangle bounds){
+			int[] x = new int[npoints];
+			int[] y = new int[npoints];
+			for(int i=0; i<npoints; i++){
+				x[i] = xpoints[i]-bounds.x;
+				y[i] = ypoints[i]-bounds.y;
+			}
+
+			PolygonFiller polygonFiller = new PolygonFiller();
+			polygonFiller.setPolygon(x, y, npoints);
+			byte[] mask = (byte[]) polygonFiller.getMask(bounds.width, bounds.height).getPixels();
+
+			for(int j=0; j<bounds.height; j++){
+				for(int i=0; i<bounds.width; i++){
+					if(mask[j*bounds.width+i]!=0)
+						markUsed(bounds.x+i, bounds.y+j);
+				}
+			}
+			return(mask);
+		}
+
+
+		/**
+		 * Fills the 8-connected component of the given pixel one scan-line at a time,
+		 * marking its pixels as used and returning them as a mask of the given bounds
+		 */
+		private byte[] floodFill(int startX, int startY, Rectangle bounds){
+			byte[] mask = new byte[bounds.width*bounds.height];
+			stackSize = 0;
+			push(startX, startY);
+
+			while(stackSize>0){
+				stackSize -= 2;
+				int x = stack[stackSize];
+				int y = stack[stackSize+1];
+				if(!inside(x, y))
+					continue;
+
+				//find the scan-line this pixel is on
+				int x1 = x;
+				int x2 = x;
+				while(inside(x1-1, y)) x1--;
+				while(inside(x2+1, y)) x2++;
+
+				int offset = y*width;
+				int maskOffset = (y-bounds.y)*bounds.width - bounds.x;
+				for(int i=x1; i<=x2; i++){
+					state[offset+i] = USED;
+					mask[maskOffset+i] = (byte) 255;
+				}
+
+				//find the scan-lines above and below it, diagonals included
+				pushScanLines(Math.max(x1-1, 0), Math.min(x2+1, width-1), y-1);
+				pushScanLines(Math.max(x1-1, 0), Math.min(x2+1, width-1), y+1);
+			}
+			return(mask);
+		}
+
+
+		private void pushScanLines(int x1, int x2, int y){
+			if(y<0 || y>=height)
+				return;
+			boolean inScanLine = false;
+			for(int i=x1; i<=x2; i++){
+				if(!inScanLine && inside(i, y)){
+					push(i, y);
+					inScanLine = true;
+				}
+				else if(inScanLine && !inside(i, y))
+					inScanLine = false;
+			}
+		}
+
+
+		private void push(int x, int y){
+			if(stackSize+2>stack.length){
+				int[] newStack = new int[stack.length*2];
+				System.arraycopy(stack, 0, newStack, 0, stackSize);
+				stack = newStack;
+			}
+			stack[stackSize] = x;
+			stack[stackSize+1] = y;
+			stackSize += 2;
+		}
+
+
+		private void markUsed(int x, int y){
+			if(x>=0 && x<width && y>=0 && y<height && state[y*width+x]==FOREGROUND)
+				state[y*width+x] = USED;
+		}
+
+
+		private void markUsed(Rectangle bounds){
+			for(int y=bounds.y; y<bounds.y+bounds.height; y++){
+				for(int x=bounds.x; x<bounds.x+bounds.width; x++){
+					markUsed(x, y);
+				}
+			}
+		}
+
+
+		private int countPixels(byte[] mask, Rectangle bounds){
+			if(mask==null)
+				return(bounds.width*bounds.height);
+			int count = 0;
+			for(int i=0; i<mask.length; i++){
+				if(mask[i]!=0)
+					count++;
+			}
+			return(count);
+		}
+
+
+		/**
+		 * The perimeter of the traced outline, the same as PolygonRoi.getLength for traced ROIs
+		 */
+		private double getTracedPerimeter(){
+			int sumdx = 0;
+			int sumdy = 0;
+			int nCorners = 0;
+			int dx1 = xpoints[0] - xpoints[npoints-1];
+			int dy1 = ypoints[0] - ypoints[npoints-1];
+			int side1 = Math.abs(dx1) + Math.abs(dy1);
+			boolean corner = false;
+
+			for(int i=0; i<npoints; i++){
+				int nexti = i+1;
+				if(nexti==npoints)
+					nexti = 0;
+				int dx2 = xpoints[nexti] - xpoints[i];
+				int dy2 = ypoints[nexti] - ypoints[i];
+				sumdx += Math.abs(dx1);
+				sumdy += Math.abs(dy1);
+				int side2 = Math.abs(dx2) + Math.abs(dy2);
+				if(side1>1 || !corner){
+					corner = true;
+					nCorners++;
+				}
+				else
+					corner = false;
+				dx1 = dx2;
+				dy1 = dy2;
+				side1 = side2;
+			}
+			return(sumdx+sumdy-(nCorners*(2.0-Math.sqrt(2.0))));
+		}
+
+
+		/**
+		 * The center of mass of the particle pixels, weighted by their value in the picture
+		 */
+		private void setCenterOfMass(Particle particle){
+			Rectangle bounds = particle.bounds;
+			double sum = 0.0, xsum = 0.0, ysum = 0.0;
+
+			for(int y=bounds.y, j=0; y<bounds.y+bounds.height; y++, j++){
+				for(int x=bounds.x, i=0; x<bounds.x+bounds.width; x++, i++){
+					if(particle.mask!=null && particle.mask[j*bounds.width+i]==0)
+						continue;
+					double value = isSearched(x, y) ? ip.getPixelValue(x, y) : fillColor;
+					value += Double.MIN_VALUE;
+					sum += value;
+					xsum += x*value;
+					ysum += y*value;
+				}
+			}
+
+			particle.xCenterOfMass = xsum/sum+0.5;
+			particle.yCenterOfMass = ysum/sum+0.5;
+		}
+
+
+		/**
+		 * The aspect ratio and roundness of the ellipse with the same area and second moments as the particle,
+		 * the same as ij.process.EllipseFitter
+		 */
+		private void setEllipseShape(Particle particle){
+			int boundsWidth = particle.bounds.width;
+			int boundsHeight = particle.bounds.height;
+			double halfPi = 1.5707963267949;
+			double major, minor;
+
+			if(particle.mask==null){
+				double sqrtPi = 1.772453851;
+				major = (boundsWidth*2) / sqrtPi;
+				minor = (boundsHeight*2) / sqrtPi;
+			}
+			else{
+				double xsum = 0.0, ysum = 0.0, x2sum = 0.0, y2sum = 0.0, xysum = 0.0;
+				int bitCount = 0;
+
+				for(int y=0; y<boundsHeight; y++){
+					int bitcountOfLine = 0;
+					int xSumOfLine = 0;
+					int offset = y*boundsWidth;
+					for(int x=0; x<boundsWidth; x++){
+						if(particle.mask[offset+x]!=0){
+							bitcountOfLine++;
+							xSumOfLine += x;
+							x2sum += x * x;
+						}
+					}
+					xsum += xSumOfLine;
+					ysum += bitcountOfLine * y;
+					double ye = y;
+					double xe = xSumOfLine;
+					xysum += xe*ye;
+					y2sum += ye*ye*bitcountOfLine;
+					bitCount += bitcountOfLine;
+				}
+
+				x2sum += 0.08333333 * bitCount;
+				y2sum += 0.08333333 * bitCount;
+				double n = bitCount;
+				double x1 = xsum/n;
+				double y1 = ysum/n;
+				double u20 = x2sum/n - (x1 * x1);
+				double u02 = y2sum/n - (y1 * y1);
+				double u11 = xysum/n - x1 * y1;
+
+				double m4 = 4.0 * Math.abs(u02 * u20 - u11 * u11);
+				if(m4<0.000001)
+					m4 = 0.000001;
+				double a11 = u02 / m4;
+				double a12 = u11 / m4;
+				double a22 = u20 / m4;
+
+				double tmp = a11 - a22;
+				if(tmp==0.0)
+					tmp = 0.000001;
+				double theta = 0.5 * Math.atan(2.0 * a12 / tmp);
+				if(theta<0.0)
+					theta += halfPi;
+				if(a12>0.0)
+					theta += halfPi;
+				else if(a12==0.0){
+					if(a22>a11){
+						theta = 0.0;
+						tmp = a22;
+						a22 = a11;
+						a11 = tmp;
+					}
+					else if(a11!=a22)
+						theta = halfPi;
+				}
+				tmp = Math.sin(theta);
+				if(tmp==0.0)
+					tmp = 0.000001;
+				double z = a12 * Math.cos(theta) / tmp;
+				major = Math.sqrt(1.0 / Math.abs(a22 + z));
+				minor = Math.sqrt(1.0 / Math.abs(a11 - z));
+				double scale = Math.sqrt(bitCount / (Math.PI * major * minor)); //equalize areas
+				major = major*scale*2.0;
+				minor = minor*scale*2.0;
+			}
+
+			if(major<minor){
+				double tmp = major;
+				major = minor;
+				minor = tmp;
+			}
+
+			particle.aspectRatio = major/minor;
+			particle.roundness = 4.0*particle.area/(Math.PI*major*major);
+		}
+	}
+
+}
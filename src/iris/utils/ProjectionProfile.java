@@ -0,0 +1,226 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * This class holds the sums of the pixel values of every row and every column of a picture,
+ * or of a rectangle of it. These are used to find the grid, to crop the plate and to estimate its rotation.
+ * <p>
+ * Both sums are calculated in a single pass over the pixel array of the picture.
+ * The values summed are the ones ImagePlus.getPixel(x,y)[0] returns: the gray value for 8 and 16-bit pictures
+ * and the red channel for colour pictures. Pixels outside the picture count as zero,
+ * so the rectangle may extend beyond the picture bounds.
+ * @author George Kritikos
+ *
+ */
+public class ProjectionProfile {
+
+	/**
+	 * The sum of each row of the rectangle, from top to bottom
+	 */
+	public final long[] rowSums;
+
+	/**
+	 * The sum of each column of the rectangle, from left to right
+	 */
+	public final long[] columnSums;
+
+
+	/**
+	 * Calculates the sums of all the rows and columns of the given picture
+	 * @param imageProcessor
+	 */
+	public ProjectionProfile(ImageProcessor imageProcessor){
+		this(imageProcessor, new Rectangle(0, 0, imageProcessor.getWidth(), imageProcessor.getHeight()));
+	}
+
+
+	/**
+	 * Calculates the sums of the rows and columns of the given rectangle of the picture.
+	 * rowSums[0] is the sum of the top row of the rectangle, columnSums[0] the sum of its leftmost column.
+	 * @param imageProcessor
+	 * @param bounds
+	 */
+	public ProjectionProfile(ImageProcessor imageProcessor, Rectangle bounds){
+		rowSums = new long[Math.max(bounds.height, 0)];
+		columnSums = new long[Math.max(bounds.width, 0)];
+
+		int width = imageProcessor.getWidth();
+		Rectangle inside = bounds.intersection(new Rectangle(0, 0, width, imageProcessor.getHeight()));
+		if(inside.width<=0 || inside.height<=0)
+			return;
+
+		Object pixels = imageProcessor.getPixels();
+
+		//for all rows in the picture
+		for(int y=inside.y; y<inside.y+inside.height; y++){
+			int offset = y*width;
+			int columnIndex = inside.x - bounds.x;
+			long rowSum = 0;
+
+			//for all columns in the picture
+			if(pixels instanceof byte[]){
+				byte[] bytePixels = (byte[]) pixels;
+				for(int x=inside.x; x<inside.x+inside.width; x++, columnIndex++){
+					int value = bytePixels[offset+x]&0xff;
+					rowSum += value;
+					columnSums[columnIndex] += value;
+				}
+			}
+			else if(pixels instanceof short[]){
+				short[] shortPixels = (short[]) pixels;
+				for(int x=inside.x; x<inside.x+inside.width; x++, columnIndex++){
+					int value = shortPixels[offset+x]&0xffff;
+					rowSum += value;
+					columnSums[columnIndex] += value;
+				}
+			}
+			else if(pixels instanceof int[]){
+				int[] rgbPixels = (int[]) pixels;
+				for(int x=inside.x; x<inside.x+inside.width; x++, columnIndex++){
+					int value = (rgbPixels[offset+x]&0xff0000)>>16;
+					rowSum += value;
+					columnSums[columnIndex] += value;
+				}
+			}
+			else{
+				float[] floatPixels = (float[]) pixels;
+				for(int x=inside.x; x<inside.x+inside.width; x++, columnIndex++){
+					int value = (int) floatPixels[offset+x];
+					rowSum += value;
+					columnSums[columnIndex] += value;
+				}
+			}
+
+			rowSums[y-bounds.y] = rowSum;
+		}
+	}
+
+
+	/**
+	 * Calculates the sums of all the rows and columns the given picture would have if it were rotated
+	 * by the given angle (in degrees, clockwise) around its center, without making the rotated picture.
+	 * The sums are the same as those of a copy rotated with ImageProcessor.rotate, using no interpolation
+	 * and a background value of 0 (as Toolbox.rotateImage does): each pixel of the rotated picture
+	 * takes the value of the nearest pixel of the original one, or 0 if that falls outside of it.
+	 * @param imageProcessor
+	 * @param angle
+	 */
+	public ProjectionProfile(ImageProcessor imageProcessor, double angle){
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
+		rowSums = new long[height];
+		columnSums = new long[width];
+
+		Object pixels = imageProcessor.getPixels();
+
+		//the same mapping ImageProcessor.rotate uses, from each pixel of the rotated picture to the original
+		double centerX = (width-1)/2.0;
+		double centerY = (height-1)/2.0;
+		double angleRadians = -angle/(180.0/Math.PI);
+		double ca = Math.cos(angleRadians);
+		double sa = Math.sin(angleRadians);
+		double tmp1 = centerY*sa-centerX*ca;
+		double tmp2 = -centerX*sa-centerY*ca;
+
+		//for all rows in the rotated picture
+		for(int y=0; y<height; y++){
+			double tmp3 = tmp1 - y*sa + centerX;
+			double tmp4 = tmp2 + y*ca + centerY;
+			long rowSum = 0;
+
+			//for all columns in the rotated picture
+			for(int x=0; x<width; x++){
+				double xs = x*ca + tmp3;
+				double ys = x*sa + tmp4;
+				if(xs<-0.01 || xs>=width || ys<-0.01 || ys>=height)
+					continue; //background
+
+				int ixs = (int)(xs+0.5);
+				int iys = (int)(ys+0.5);
+				if(ixs>=width) ixs = width-1;
+				if(iys>=height) iys = height-1;
+
+				int value = getValue(pixels, iys*width+ixs);
+				rowSum += value;
+				columnSums[x] += value;
+			}
+
+			rowSums[y] = rowSum;
+		}
+	}
+
+
+	/**
+	 * Returns the value of the given pixel, the same way ImagePlus.getPixel(x,y)[0] would
+	 * @param pixels
+	 * @param index
+	 * @return
+	 */
+	private static int getValue(Object pixels, int index){
+		if(pixels instanceof byte[])
+			return(((byte[])pixels)[index]&0xff);
+		if(pixels instanceof short[])
+			return(((short[])pixels)[index]&0xffff);
+		if(pixels instanceof int[])
+			return((((int[])pixels)[index]&0xff0000)>>16);
+		return((int)((float[])pixels)[index]);
+	}
+
+
+	/**
+	 * Returns the given sums as a list, for the code that searches them as such
+	 * @param sums
+	 * @return
+	 */
+	public static ArrayList<Integer> toList(long[] sums){
+		ArrayList<Integer> list = new ArrayList<Integer>(sums.length);
+		for(int i=0; i<sums.length; i++){
+			list.add((int) sums[i]);
+		}
+		return(list);
+	}
+
+
+	/**
+	 * Returns the given sums as doubles, for use with StdStats
+	 * @param sums
+	 * @return
+	 */
+	public static double[] toDoubles(long[] sums){
+		double[] doubles = new double[sums.length];
+		for(int i=0; i<sums.length; i++){
+			doubles[i] = sums[i];
+		}
+		return(doubles);
+	}
+
+
+	/**
+	 * Returns the sample variance of the given sums, the measure used to find the rotation of a plate.
+	 * The mean is rounded down to a whole number first, as it always has been when finding rotations.
+	 * @param sums
+	 * @return
+	 */
+	public static double getVariance(long[] sums){
+		long total = 0;
+		for(int i=0; i<sums.length; i++){
+			total += sums[i];
+		}
+		double mean = total/sums.length;
+
+		double sum = 0;
+		for(int i=0; i<sums.length; i++){
+			sum += Math.pow(sums[i]-mean, 2);
+		}
+
+		return(sum/(sums.length-1));
+	}
+
+}
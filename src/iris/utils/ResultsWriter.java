@@ -0,0 +1,611 @@
+/**
+ *
+ */
+package iris.utils;
+
+import iris.ui.IrisFrontend;
+import iris.utils.StageTimings.TimedStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class writes the results file (.iris) of a picture.
+ * The file starts with any number of comment lines (starting with #), followed by a line with the column names
+ * and one line per colony. The columns are fixed when their names are written: every row must have exactly
+ * that many cells, otherwise an IllegalStateException is thrown.
+ * <p>
+ * Rows are formatted straight into a byte buffer, without making any Strings for the numbers, and the buffer
+ * is written to a temporary file next to the results file whenever it fills up. publish() then renames the
+ * temporary file to the results file in one step, so a results file is never seen half-written.
+ * Nothing is written to disk until the buffer first fills up or publish() is called,
+ * so a profile that gives up on a picture half-way simply never publishes its writer;
+ * abort() deletes the temporary file of such a writer, and abortUnpublished() does so for all the writers
+ * a thread left unpublished, once it's done with its picture.
+ * <p>
+ * Like the writeOutputFile functions it replaces, this class hides the exception catching from the profile code:
+ * the first I/O error is kept, everything after it is ignored, and publish() returns false.
+ * Writers are not thread-safe; each picture should use its own.
+ * <p>
+ * If the run collects its results in a columnar file too (IrisFrontend.columnarResults), the cells are also kept
+ * as primitives, and added to that file once the .iris file is published.
+ * If the run aggregates the results of the folder (IrisFrontend.aggregatedResults), no .iris file is written:
+ * the lines are kept in memory, each one starting with the picture filename, and publish() adds them
+ * to the aggregated results instead.
+ * @author George Kritikos
+ *
+ */
+public class ResultsWriter {
+
+	/**
+	 * The size of the buffer rows are formatted into, before they are written to the file
+	 */
+	private static final int BUFFER_SIZE = 1<<16;
+
+	/**
+	 * Decimal numbers are written with this many digits after the point, as with String.format("%.3f", x)
+	 */
+	private static final int DECIMALS = 3;
+	private static final long DECIMALS_SCALE = 1000;
+
+	/**
+	 * Decimals above this are formatted by String.format, so the fast path can do all its work in a long
+	 */
+	private static final double FAST_DECIMAL_LIMIT = 1e12;
+
+
+	/**
+	 * The file the results will be published to
+	 */
+	private final Path outputPath;
+
+	/**
+	 * The file the results are written to until they are published, created when first needed
+	 */
+	private Path temporaryPath = null;
+	private FileChannel channel = null;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * The number of columns, or -1 while the column names have not been written yet
+	 */
+	private int numberOfColumns = -1;
+
+	/**
+	 * The number of cells written in the current row so far
+	 */
+	private int cellsInRow = 0;
+
+	/**
+	 * The first I/O error that happened, if any
+	 */
+	private IOException error = null;
+
+	private boolean published = false;
+	private boolean aborted = false;
+
+	/**
+	 * The columnar file of the run and the cells kept for it, or null if the run doesn't have one
+	 */
+	private final ColumnarResultsWriter columnarResults;
+	private final ColumnarResultsWriter.PlateResults plateResults;
+
+	/**
+	 * The aggregated results of the run, or null if each picture gets its own .iris file
+	 */
+	private final AggregatedResultsWriter aggregatedResults;
+	private String[] columnNames = null;
+
+	/**
+	 * The filename of the picture, which is the results filename without the .iris ending
+	 */
+	private final String pictureName;
+	private final byte[] pictureNameBytes;
+
+	/**
+	 * The results published on each thread since its current picture started (see startPicture):
+	 * the name of the results file, the picture name for aggregated results, or null if nothing was published
+	 */
+	private static final ThreadLocal<String> publishedResults = new ThreadLocal<String>();
+
+	/**
+	 * The writers of each thread that have a temporary file, but haven't published it yet (see abortUnpublished)
+	 */
+	private static final ThreadLocal<List<ResultsWriter>> unpublishedWriters = new ThreadLocal<List<ResultsWriter>>();
+
+
+	/**
+	 * Creates a writer for the given results file. The file is not touched until publish() is called.
+	 * @param outputFilename
+	 */
+	public ResultsWriter(String outputFilename){
+		outputPath = new File(outputFilename).getAbsoluteFile().toPath();
+
+		pictureName = outputPath.getFileName().toString().replaceFirst("\\.iris$", "");
+		pictureNameBytes = pictureName.getBytes();
+
+		columnarResults = IrisFrontend.columnarResults;
+		if(columnarResults!=null){
+			plateResults = new ColumnarResultsWriter.PlateResults(pictureName);
+		}
+		else{
+			plateResults = null;
+		}
+
+		aggregatedResults = IrisFrontend.aggregatedResults;
+	}
+
+
+	/**
+	 * Adds a comment line (# followed by the given text) to the top of the file.
+	 * Comments can only be added before the column names.
+	 * @param comment
+	 */
+	public void appendComment(String comment){
+		if(numberOfColumns>=0)
+			throw new IllegalStateException("comments have to come before the column names");
+
+		putByte('#');
+		if(aggregatedResults!=null){
+			putBytes(pictureNameBytes);
+			putByte('\t');
+		}
+		putString(comment);
+		putByte('\n');
+
+		if(plateResults!=null)
+			plateResults.addComment(comment);
+	}
+
+
+	/**
+	 * Writes the line with the column names, and fixes the number of cells every row must have from now on
+	 * @param columnNames
+	 */
+	public void setColumns(String... columnNames){
+		if(numberOfColumns>=0)
+			throw new IllegalStateException("the columns have already been set");
+		if(columnNames.length==0)
+			throw new IllegalArgumentException("there has to be at least one column");
+
+		numberOfColumns = columnNames.length;
+		if(plateResults!=null)
+			plateResults.setColumns(columnNames);
+
+		//the aggregated results have a single line of column names
+		if(aggregatedResults!=null){
+			this.columnNames = columnNames.clone();
+			return;
+		}
+
+		//for all columns
+		for(int i=0; i<columnNames.length; i++){
+			if(i>0)
+				putByte('\t');
+			putString(columnNames[i]);
+		}
+		putByte('\n');
+	}
+
+
+	/**
+	 * Adds a whole number as the next cell of the current row
+	 * @param value
+	 * @return this writer, so that the cells of a row can be chained
+	 */
+	public ResultsWriter addInteger(long value){
+		startCell();
+		putLong(value);
+
+		if(plateResults!=null)
+			plateResults.addWholeNumber(value);
+		return(this);
+	}
+
+
+	/**
+	 * Adds a decimal number as the next cell of the current row, with 3 digits after the point.
+	 * The result is the same as String.format("%.3f", value), except that the decimal separator
+	 * is always a point, whatever the locale of the computer.
+	 * @param value
+	 * @return this writer, so that the cells of a row can be chained
+	 */
+	public ResultsWriter addDecimal(double value){
+		startCell();
+
+		if(plateResults!=null)
+			plateResults.addDecimal(value);
+
+		if(Double.isNaN(value) || Double.isInfinite(value)){
+			putString(Double.toString(value));
+			return(this);
+		}
+
+		boolean negative = Double.doubleToRawLongBits(value)<0; //so that -0.0 is written as -0.000, like String.format
+		double absoluteValue = Math.abs(value);
+		double scaled = absoluteValue*DECIMALS_SCALE;
+		double fraction = scaled - Math.floor(scaled);
+
+		//String.format rounds half-up the shortest decimal form of the number, which multiplying may miss
+		//when the number is (nearly) a tie, so these rare numbers and the very big ones are left to it
+		if(absoluteValue>=FAST_DECIMAL_LIMIT || Math.abs(fraction-0.5)<1e-6){
+			putString(String.format(Locale.ROOT, "%." + DECIMALS + "f", value));
+			return(this);
+		}
+
+		long rounded = (long) Math.floor(scaled + 0.5);
+
+		if(negative)
+			putByte('-');
+		putLong(rounded/DECIMALS_SCALE);
+		putByte('.');
+
+		//the digits after the point, with leading zeros
+		long decimals = rounded%DECIMALS_SCALE;
+		ensureSpace(DECIMALS);
+		for(long divisor=DECIMALS_SCALE/10; divisor>0; divisor/=10){
+			buffer.put((byte)('0' + (decimals/divisor)%10));
+		}
+
+		return(this);
+	}
+
+
+	/**
+	 * Adds some text as the next cell of the current row
+	 * @param value
+	 * @return this writer, so that the cells of a row can be chained
+	 */
+	public ResultsWriter addText(String value){
+		startCell();
+		putString(value);
+
+		if(plateResults!=null)
+			plateResults.addText(value);
+		return(this);
+	}
+
+
+	/**
+	 * Ends the current row. It must have exactly as many cells as there are columns.
+	 */
+	public void endRow(){
+		if(cellsInRow!=numberOfColumns)
+			throw new IllegalStateException("row has " + cellsInRow + " cells, but there are " + numberOfColumns + " columns");
+
+		putByte('\n');
+		cellsInRow = 0;
+
+		if(plateResults!=null)
+			plateResults.endRow();
+	}
+
+
+	/**
+	 * Writes out everything that is still in the buffer, and renames the temporary file to the results file,
+	 * replacing any previous results file. Returns false if the results could not be written.
+	 * @return
+	 */
+	public boolean publish(){
+		return(StageTimings.time(StageTimings.OUTPUT, new TimedStage<Boolean>() {
+			public Boolean call() {
+				if(published)
+					throw new IllegalStateException("results were already published");
+				if(aborted)
+					throw new IllegalStateException("the writer was aborted");
+				if(cellsInRow!=0)
+					throw new IllegalStateException("the last row was not ended");
+				published = true;
+				forgetUnpublished();
+
+				if(aggregatedResults!=null){
+					buffer.flip();
+					if(!aggregatedResults.appendPlate(pictureName, columnNames==null ? new String[0] : columnNames, buffer))
+						return(false);
+
+					appendColumnarResults();
+					publishedResults.set(pictureName);
+					return(true);
+				}
+
+				//an empty file is still a file
+				if(channel==null && error==null){
+					try {
+						openTemporaryFile();
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				flushBuffer();
+
+				if(channel!=null){
+					try {
+						channel.close();
+					} catch (IOException e) {
+						if(error==null)
+							error = e;
+					}
+				}
+
+				if(error==null){
+					try {
+						try {
+							Files.move(temporaryPath, outputPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+						} catch (AtomicMoveNotSupportedException e) {
+							Files.move(temporaryPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+						}
+
+						appendColumnarResults();
+						publishedResults.set(outputPath.getFileName().toString());
+						return(true); //operation succeeded
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+
+				//operation failed, don't leave the partial file behind
+				if(temporaryPath!=null){
+					try {
+						Files.deleteIfExists(temporaryPath);
+					} catch (IOException e) {
+						//do nothing
+					}
+				}
+				return(false);
+			}
+		}));
+	}
+
+
+	/**
+	 * Gives up on the results: closes and deletes the temporary file, if one was made, leaving any previous
+	 * results file as it was. Nothing is written after this. Does nothing if the results were already published.
+	 */
+	public void abort(){
+		if(published || aborted)
+			return;
+		aborted = true;
+		forgetUnpublished();
+
+		if(channel!=null){
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//do nothing
+			}
+		}
+		if(temporaryPath!=null){
+			try {
+				Files.deleteIfExists(temporaryPath);
+			} catch (IOException e) {
+				//do nothing
+			}
+		}
+	}
+
+
+	/**
+	 * Aborts all the writers this thread made a temporary file for, but didn't publish.
+	 * This is called once a picture is done (or failed), so that profiles giving up on a picture,
+	 * or throwing, don't leave hidden temporary files and open channels behind.
+	 */
+	public static void abortUnpublished(){
+		List<ResultsWriter> writers = unpublishedWriters.get();
+		if(writers==null)
+			return;
+
+		for(ResultsWriter writer : new ArrayList<ResultsWriter>(writers)){
+			writer.abort();
+		}
+		writers.clear();
+	}
+
+
+	/**
+	 * Takes this writer off the list of unpublished writers of this thread
+	 */
+	private void forgetUnpublished(){
+		List<ResultsWriter> writers = unpublishedWriters.get();
+		if(writers!=null)
+			writers.remove(this);
+	}
+
+
+	/**
+	 * Adds the results to the columnar file of the run, if there is one
+	 */
+	private void appendColumnarResults(){
+		if(plateResults!=null && !columnarResults.appendPlate(plateResults)){
+			System.err.println("Could not add the results of " + pictureName + " to the columnar results file");
+		}
+	}
+
+
+	/**
+	 * Forgets the results published on this thread, before it starts analysing a new picture
+	 */
+	public static void startPicture(){
+		publishedResults.remove();
+	}
+
+
+	/**
+	 * Returns the name of the results file published on this thread since startPicture was called
+	 * (the picture name, if the results are aggregated), or null if no results were published.
+	 * Profiles publish their results on the thread that analyses the picture, so this tells whether
+	 * the picture was analysed, rather than whether some results file happens to be in the folder.
+	 * @return
+	 */
+	public static String getPublishedResults(){
+		return(publishedResults.get());
+	}
+
+
+	/**
+	 * Returns the first I/O error that happened while writing, or null if there was none
+	 * @return
+	 */
+	public IOException getError(){
+		return(error);
+	}
+
+
+
+	/**
+	 * Checks the current row has room for another cell, and writes the separator before it
+	 */
+	private void startCell(){
+		if(numberOfColumns<0)
+			throw new IllegalStateException("the columns have to be set before any row");
+		if(cellsInRow>=numberOfColumns)
+			throw new IllegalStateException("row has more cells than the " + numberOfColumns + " columns");
+
+		if(cellsInRow>0)
+			putByte('\t');
+		else if(aggregatedResults!=null){
+			//aggregated lines start with the picture they are for
+			putBytes(pictureNameBytes);
+			putByte('\t');
+		}
+		cellsInRow++;
+	}
+
+
+	/**
+	 * Writes the digits of the given number into the buffer
+	 * @param value
+	 */
+	private void putLong(long value){
+		if(value==Long.MIN_VALUE){
+			putString(Long.toString(value));
+			return;
+		}
+
+		ensureSpace(20);
+		if(value<0){
+			buffer.put((byte)'-');
+			value = -value;
+		}
+
+		//find the biggest power of 10 not above the number, then write the digits from it down
+		long divisor = 1;
+		while(value/divisor>=10){
+			divisor *= 10;
+		}
+		for(; divisor>0; divisor/=10){
+			buffer.put((byte)('0' + (value/divisor)%10));
+		}
+	}
+
+
+	private void putByte(char c){
+		ensureSpace(1);
+		buffer.put((byte)c);
+	}
+
+
+	/**
+	 * Writes the given text into the buffer, in the default encoding of the computer (as FileWriter did)
+	 * @param text
+	 */
+	private void putString(String text){
+		putBytes(text.getBytes());
+	}
+
+
+	private void putBytes(byte[] bytes){
+		int offset = 0;
+
+		while(offset<bytes.length){
+			ensureSpace(1);
+			int length = Math.min(buffer.remaining(), bytes.length-offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+
+	/**
+	 * Makes sure there are at least this many bytes free in the buffer, writing it out if needed.
+	 * Aggregated results are kept in memory until they are published, so the buffer grows instead.
+	 * @param length
+	 */
+	private void ensureSpace(int length){
+		if(buffer.remaining()>=length)
+			return;
+
+		if(aggregatedResults!=null){
+			ByteBuffer biggerBuffer = ByteBuffer.allocate(Math.max(2*buffer.capacity(), buffer.position()+length));
+			buffer.flip();
+			biggerBuffer.put(buffer);
+			buffer = biggerBuffer;
+		}
+		else{
+			flushBuffer();
+		}
+	}
+
+
+	/**
+	 * Writes the contents of the buffer to the temporary file, creating it first if needed
+	 */
+	private void flushBuffer(){
+		buffer.flip();
+
+		try {
+			if(error==null && !aborted && buffer.hasRemaining()){
+				if(channel==null)
+					openTemporaryFile();
+
+				while(buffer.hasRemaining()){
+					channel.write(buffer);
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+
+		buffer.clear();
+	}
+
+
+	/**
+	 * Creates the temporary file, hidden in the same folder as the results file so that it can be renamed to it.
+	 * The name is made unique so that two writers of the same results file don't share it.
+	 * @throws IOException
+	 */
+	private void openTemporaryFile() throws IOException {
+		Path folder = outputPath.getParent();
+		String name = "." + outputPath.getFileName() + ".";
+
+		for(int attempt=0; channel==null; attempt++){
+			temporaryPath = folder.resolve(name + Long.toHexString(System.nanoTime()) + ".tmp");
+			try {
+				channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException e) {
+				if(attempt>=100)
+					throw e;
+			}
+		}
+
+		List<ResultsWriter> writers = unpublishedWriters.get();
+		if(writers==null){
+			writers = new ArrayList<ResultsWriter>();
+			unpublishedWriters.set(writers);
+		}
+		writers.add(this);
+	}
+
+}
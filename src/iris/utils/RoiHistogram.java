@@ -0,0 +1,242 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.process.ImageProcessor;
+
+/**
+ * This class holds the 256-bin histogram of the pixels of an 8-bit picture, either all of them or only the ones under a ROI.
+ * The pixels are counted in a single pass (over the runs of the ROI, if there's one), and then every statistic
+ * the tile readers need (count, sum, minimum, maximum, median, percentiles, the sum of the brightest pixels,
+ * the sum over a background level) is read off the 256 bins, without sorting or boxing any pixel values.
+ * <p>
+ * Histograms can be subtracted from each other (e.g. the whole tile minus the colony gives the background around the colony),
+ * and single values can be left out (e.g. the black pixels outside a filled colony).
+ * @author George Kritikos
+ *
+ */
+public class RoiHistogram {
+
+	private final int[] counts;
+
+
+	/**
+	 * Counts all the pixels of the given 8-bit picture
+	 * @param imageProcessor
+	 */
+	public RoiHistogram(ImageProcessor imageProcessor){
+		counts = new int[256];
+		byte[] pixels = (byte[]) imageProcessor.getPixels();
+		for(int i=0; i<pixels.length; i++){
+			counts[pixels[i]&0xff]++;
+		}
+	}
+
+
+	/**
+	 * Counts the pixels of the given 8-bit picture that are under the given runs.
+	 * Pixels of the runs that are outside the picture are not counted.
+	 * @param imageProcessor
+	 * @param runs
+	 */
+	public RoiHistogram(ImageProcessor imageProcessor, RoiRuns runs){
+		counts = new int[256];
+		byte[] pixels = (byte[]) imageProcessor.getPixels();
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
+
+		//for all runs
+		for(int run=0; run<runs.getRunCount(); run++){
+			int y = runs.getRow(run);
+			if(y<0 || y>=height)
+				continue;
+			int start = Math.max(runs.getStart(run), 0);
+			int end = Math.min(runs.getStart(run) + runs.getLength(run), width);
+			for(int x=start; x<end; x++){
+				counts[pixels[y*width + x]&0xff]++;
+			}
+		}
+	}
+
+
+	private RoiHistogram(int[] counts_){
+		counts = counts_;
+	}
+
+
+	/**
+	 * Returns the histogram of the pixels counted here but not in the given histogram,
+	 * which should count a part of the same pixels (e.g. the background around a colony, from the tile and the colony)
+	 * @param part
+	 * @return
+	 */
+	public RoiHistogram minus(RoiHistogram part){
+		int[] difference = new int[256];
+		for(int value=0; value<256; value++){
+			difference[value] = counts[value] - part.counts[value];
+		}
+		return(new RoiHistogram(difference));
+	}
+
+
+	/**
+	 * Returns the histogram of the pixels counted here, leaving out the ones with the given value
+	 * @param value
+	 * @return
+	 */
+	public RoiHistogram without(int value){
+		int[] remaining = counts.clone();
+		remaining[value] = 0;
+		return(new RoiHistogram(remaining));
+	}
+
+
+	/**
+	 * Returns the histogram of the pixels counted here, plus the given number of pixels with the given value
+	 * (e.g. the black pixels a picture would have after being filled outside a ROI)
+	 * @param value
+	 * @param pixelCount
+	 * @return
+	 */
+	public RoiHistogram with(int value, int pixelCount){
+		int[] more = counts.clone();
+		more[value] += pixelCount;
+		return(new RoiHistogram(more));
+	}
+
+
+	/**
+	 * Returns a copy of the 256 bins, just like ImageJ's histograms
+	 */
+	public int[] getCounts(){
+		return(counts.clone());
+	}
+
+
+	/**
+	 * The number of pixels counted
+	 */
+	public int getCount(){
+		int count = 0;
+		for(int value=0; value<256; value++){
+			count += counts[value];
+		}
+		return(count);
+	}
+
+
+	/**
+	 * The sum of the values of the pixels counted
+	 */
+	public long getSum(){
+		long sum = 0;
+		for(int value=0; value<256; value++){
+			sum += (long)value*counts[value];
+		}
+		return(sum);
+	}
+
+
+	/**
+	 * The smallest value counted, or -1 if no pixels were counted
+	 */
+	public int getMin(){
+		for(int value=0; value<256; value++){
+			if(counts[value]>0)
+				return(value);
+		}
+		return(-1);
+	}
+
+
+	/**
+	 * The largest value counted, or -1 if no pixels were counted
+	 */
+	public int getMax(){
+		for(int value=255; value>=0; value--){
+			if(counts[value]>0)
+				return(value);
+		}
+		return(-1);
+	}
+
+
+	/**
+	 * Returns the median of the pixels counted: the middle value, or the mean of the two middle values if their number is even.
+	 * Returns NaN if no pixels were counted.
+	 */
+	public double getMedian(){
+		int count = getCount();
+		if(count==0)
+			return(Double.NaN);
+
+		if(count%2==1)
+			return(getValueAtRank(count/2));
+		return((getValueAtRank(count/2 - 1) + getValueAtRank(count/2)) / 2.0);
+	}
+
+
+	/**
+	 * Returns the given percentile (0 to 100) of the pixels counted, as the value of the nearest rank.
+	 * Returns -1 if no pixels were counted.
+	 * @param percentile
+	 * @return
+	 */
+	public int getPercentile(double percentile){
+		int count = getCount();
+		if(count==0)
+			return(-1);
+
+		int rank = (int)Math.ceil(percentile/100.0 * count) - 1;
+		return(getValueAtRank(Math.max(0, Math.min(rank, count-1))));
+	}
+
+
+	/**
+	 * Returns the value the pixel of the given rank (0 being the darkest) would have, if the pixels were sorted
+	 */
+	private int getValueAtRank(int rank){
+		int seen = 0;
+		for(int value=0; value<256; value++){
+			seen += counts[value];
+			if(seen>rank)
+				return(value);
+		}
+		return(-1);
+	}
+
+
+	/**
+	 * Returns the sum of the pixel values over the given background level: pixels darker than the background add nothing
+	 * @param background
+	 * @return
+	 */
+	public long getSumOverBackground(int background){
+		long sum = 0;
+		for(int value=Math.max(background+1, 0); value<256; value++){
+			sum += (long)(value-background)*counts[value];
+		}
+		return(sum);
+	}
+
+
+	/**
+	 * Returns the sum of the given number of brightest pixels, over the given background level
+	 * (pixels darker than the background add nothing)
+	 * @param pixelCount
+	 * @param background
+	 * @return
+	 */
+	public long getSumOfBrightestOverBackground(int pixelCount, int background){
+		long sum = 0;
+		int left = pixelCount;
+		for(int value=255; value>=0 && left>0; value--){
+			int taken = Math.min(counts[value], left);
+			sum += (long)Math.max(0, value-background)*taken;
+			left -= taken;
+		}
+		return(sum);
+	}
+
+}
@@ -0,0 +1,211 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.gui.Roi;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * This class describes the pixels of a ROI as runs: stretches of consecutive pixels on the same row of the picture.
+ * The runs are in the same order as the pixels are read row by row, left to right, so going through the runs
+ * visits the pixels in the order ImageJ's masks list them, without looking at the mask again for every pixel.
+ * <p>
+ * A null ROI, or one without an area (e.g. a line), covers the whole picture.
+ * Runs may reach outside the picture, if the ROI does; isInside() tells which pixels of a run actually exist.
+ * @author George Kritikos
+ *
+ */
+public class RoiRuns {
+
+	private final int width;
+	private final int height;
+
+	private int[] rows;
+	private int[] starts;
+	private int[] lengths;
+	private int runCount = 0;
+	private int pixelCount = 0;
+
+
+	/**
+	 * Works out the runs of the given ROI, on a picture of the given size
+	 * @param roi
+	 * @param width_
+	 * @param height_
+	 */
+	public RoiRuns(Roi roi, int width_, int height_){
+		width = width_;
+		height = height_;
+
+		if(roi!=null && !roi.isArea())
+			roi = null;
+		Rectangle bounds = roi!=null ? roi.getBounds() : new Rectangle(0, 0, width, height);
+		ImageProcessor mask = roi!=null ? roi.getMask() : null;
+
+		//a rectangle has one run per row
+		int expectedRuns = Math.max(bounds.height, 1);
+		rows = new int[expectedRuns];
+		starts = new int[expectedRuns];
+		lengths = new int[expectedRuns];
+
+		if(mask==null){
+			//for all rows
+			for(int y=0; y<bounds.height; y++){
+				addRun(bounds.y+y, bounds.x, bounds.width);
+			}
+			return;
+		}
+
+		byte[] maskPixels = (byte[]) mask.getPixels();
+		int maskWidth = mask.getWidth();
+
+		//for all rows
+		for(int y=0; y<bounds.height; y++){
+			int runStart = -1;
+			//for all columns, and one past the end to close the last run
+			for(int x=0; x<=bounds.width; x++){
+				boolean inMask = x<bounds.width && maskPixels[y*maskWidth + x]!=0;
+				if(inMask && runStart<0){
+					runStart = x;
+				}
+				else if(!inMask && runStart>=0){
+					addRun(bounds.y+y, bounds.x+runStart, x-runStart);
+					runStart = -1;
+				}
+			}
+		}
+	}
+
+
+	private void addRun(int row, int start, int length){
+		if(length<=0)
+			return;
+
+		if(runCount==rows.length){
+			int newSize = rows.length*2;
+			rows = Arrays.copyOf(rows, newSize);
+			starts = Arrays.copyOf(starts, newSize);
+			lengths = Arrays.copyOf(lengths, newSize);
+		}
+		rows[runCount] = row;
+		starts[runCount] = start;
+		lengths[runCount] = length;
+		runCount++;
+		pixelCount += length;
+	}
+
+
+	/**
+	 * The number of runs
+	 */
+	public int getRunCount(){
+		return(runCount);
+	}
+
+	/**
+	 * The number of pixels in all the runs, which is the number of pixels in the ROI
+	 */
+	public int getPixelCount(){
+		return(pixelCount);
+	}
+
+	/**
+	 * The row (y) of the given run
+	 */
+	public int getRow(int run){
+		return(rows[run]);
+	}
+
+	/**
+	 * The column (x) of the first pixel of the given run
+	 */
+	public int getStart(int run){
+		return(starts[run]);
+	}
+
+	/**
+	 * The number of pixels in the given run
+	 */
+	public int getLength(int run){
+		return(lengths[run]);
+	}
+
+
+	/**
+	 * Returns true if the given pixel is inside the picture
+	 */
+	public boolean isInside(int x, int y){
+		return(x>=0 && x<width && y>=0 && y<height);
+	}
+
+
+	/**
+	 * Copies the values of the given picture-sized plane under the ROI into a new array, in run order.
+	 * Pixels outside the picture are 0.
+	 * @param plane
+	 * @return
+	 */
+	public float[] getValues(float[] plane){
+		float[] values = new float[pixelCount];
+		int index = 0;
+		for(int run=0; run<runCount; run++){
+			int y = rows[run];
+			int start = starts[run];
+			int end = start + lengths[run];
+			for(int x=start; x<end; x++, index++){
+				if(isInside(x, y))
+					values[index] = plane[y*width + x];
+			}
+		}
+		return(values);
+	}
+
+
+	/**
+	 * Copies the values (0...255) of the given picture-sized byte plane under the ROI into a new array, in run order.
+	 * Pixels outside the picture are 0.
+	 * @param plane
+	 * @return
+	 */
+	public float[] getValues(byte[] plane){
+		float[] values = new float[pixelCount];
+		int index = 0;
+		for(int run=0; run<runCount; run++){
+			int y = rows[run];
+			int start = starts[run];
+			int end = start + lengths[run];
+			for(int x=start; x<end; x++, index++){
+				if(isInside(x, y))
+					values[index] = plane[y*width + x]&0xff;
+			}
+		}
+		return(values);
+	}
+
+
+	/**
+	 * Sums the values (0...255) of the given picture-sized byte plane under the ROI.
+	 * Pixels outside the picture count as 0.
+	 * @param plane
+	 * @return
+	 */
+	public long getSum(byte[] plane){
+		long sum = 0;
+		for(int run=0; run<runCount; run++){
+			int y = rows[run];
+			if(y<0 || y>=height)
+				continue;
+			int start = Math.max(starts[run], 0);
+			int end = Math.min(starts[run] + lengths[run], width);
+			for(int x=start; x<end; x++){
+				sum += plane[y*width + x]&0xff;
+			}
+		}
+		return(sum);
+	}
+
+}
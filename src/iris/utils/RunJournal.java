@@ -0,0 +1,350 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class keeps an append-only journal of the pictures of a folder that were processed (iris.journal, in the folder),
+ * so that a run that was stopped or crashed can be resumed without looking at the results of every picture again:
+ * the journal is read once, from start to end, and the pictures it lists as done with the same settings are skipped.
+ * <p>
+ * Each line of the journal is an entry, with tab-separated fields:
+ * <ul>
+ * <li>STARTED, the picture filename and the settings hash: the picture is being processed</li>
+ * <li>DONE, the picture filename, the settings hash and where its results are (an .iris file or an aggregated results file)</li>
+ * <li>FAILED, the picture filename, the settings hash and the reason it failed</li>
+ * <li>RECOVERED, the picture filename and the settings hash: the picture was found started but not finished
+ * when the journal was opened, and its leftovers were cleaned up</li>
+ * </ul>
+ * DONE entries are forced to the disk before they count, so a picture is never taken as done unless its entry survived.
+ * A last line that was cut short by a crash is ignored. Pictures whose results are only written out when the run ends
+ * (aggregated results) are only marked as done once their results files have been closed (see commitDeferred).
+ * <p>
+ * The journal is locked while it's open, so only one run at a time can use a folder's journal:
+ * a second run would otherwise take the pictures the first one is working on as interrupted, and delete their leftovers
+ * while they are still being written.
+ * @author George Kritikos
+ *
+ */
+public class RunJournal {
+
+	/**
+	 * The name of the journal file, in the folder being processed
+	 */
+	public static final String JOURNAL_FILENAME = "iris.journal";
+
+	private static final String STARTED = "STARTED";
+	private static final String DONE = "DONE";
+	private static final String FAILED = "FAILED";
+	private static final String RECOVERED = "RECOVERED";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	private final File folder;
+	private final String settingsHash;
+	private final FileChannel channel;
+
+	/**
+	 * The pictures the journal lists as done with the current settings
+	 */
+	private final Set<String> completedPictures = new HashSet<String>();
+
+	/**
+	 * The pictures that were started but never finished, in the order they were started
+	 */
+	private final List<String> interruptedPictures = new ArrayList<String>();
+
+	/**
+	 * DONE entries waiting for their results files to be closed
+	 */
+	private final List<String> deferredEntries = new ArrayList<String>();
+
+	/**
+	 * The first I/O error that happened while appending, if any
+	 */
+	private IOException error = null;
+
+
+	/**
+	 * This exception is thrown when the journal of the folder is locked by another run
+	 */
+	public static class JournalInUseException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public JournalInUseException(File journalFile) {
+			super(journalFile.getAbsolutePath() + " is in use by another run");
+		}
+	}
+
+
+	/**
+	 * Opens (or starts) the journal of the given folder, for a run with the given settings hash, and locks it until it's closed.
+	 * Pictures that were interrupted by an earlier run are cleaned up (their .iris.dummy and temporary results files
+	 * are deleted) and recorded as recovered, so that they are processed again.
+	 * @param folder_
+	 * @param settingsHash_
+	 * @throws JournalInUseException if another run holds the lock of the journal
+	 * @throws IOException
+	 */
+	public RunJournal(File folder_, String settingsHash_) throws IOException {
+		folder = folder_;
+		settingsHash = settingsHash_;
+		File journalFile = new File(folder, JOURNAL_FILENAME);
+
+		//nothing is read or cleaned up before the journal is ours
+		channel = new RandomAccessFile(journalFile, "rw").getChannel();
+		//(the lock goes with the channel, when it's closed)
+		FileLock lock = null;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			//held by another run in this same process
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		if(lock==null){
+			channel.close();
+			throw new JournalInUseException(journalFile);
+		}
+
+		try {
+			boolean endsWithNewline = readJournal();
+			channel.position(channel.size());
+
+			//a line cut short by a crash is closed, so that the next entry starts on a line of its own
+			if(!endsWithNewline){
+				append("\n", false);
+			}
+
+			for(String pictureName : interruptedPictures){
+				cleanUpInterruptedPicture(pictureName);
+				append(entry(RECOVERED, pictureName, ""), false);
+			}
+			channel.force(false);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Reads the whole journal once, keeping the last entry of each picture.
+	 * Returns false if the last line of the journal was cut short.
+	 */
+	private boolean readJournal() throws IOException {
+		Map<String, String[]> lastEntries = new HashMap<String, String[]>();
+		List<String> startOrder = new ArrayList<String>();
+
+		//read through the locked channel, which is left open: closing the reader would close it too
+		channel.position(0);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), UTF8), 1<<16);
+		StringBuilder line = new StringBuilder();
+		int character;
+		while((character = reader.read())!=-1){
+			if(character!='\n'){
+				line.append((char) character);
+				continue;
+			}
+
+			String[] fields = line.toString().split("\t", -1);
+			line.setLength(0);
+			if(fields.length!=4)
+				continue;
+
+			lastEntries.put(fields[1], fields);
+			if(fields[0].equals(STARTED))
+				startOrder.add(fields[1]);
+		}
+		//whatever is left had no newline, so it was cut short
+		boolean endsWithNewline = line.length()==0;
+
+		for(Map.Entry<String, String[]> lastEntry : lastEntries.entrySet()){
+			String[] fields = lastEntry.getValue();
+			if(fields[0].equals(DONE) && fields[2].equals(settingsHash))
+				completedPictures.add(lastEntry.getKey());
+		}
+
+		Set<String> listed = new HashSet<String>();
+		for(String pictureName : startOrder){
+			if(lastEntries.get(pictureName)[0].equals(STARTED) && listed.add(pictureName))
+				interruptedPictures.add(pictureName);
+		}
+
+		return(endsWithNewline);
+	}
+
+
+	/**
+	 * Deletes what an interrupted run may have left behind for the given picture
+	 */
+	private void cleanUpInterruptedPicture(String pictureName) throws IOException {
+		new File(folder, pictureName + ".iris.dummy").delete();
+
+		//the hidden temporary files of ResultsWriter
+		final String temporaryPrefix = "." + pictureName + ".iris.";
+		DirectoryStream<Path> temporaryFiles = Files.newDirectoryStream(folder.toPath(), new DirectoryStream.Filter<Path>() {
+			public boolean accept(Path path) {
+				String name = path.getFileName().toString();
+				return(name.startsWith(temporaryPrefix) && name.endsWith(".tmp"));
+			}
+		});
+		try {
+			for(Path temporaryFile : temporaryFiles){
+				Files.deleteIfExists(temporaryFile);
+			}
+		} finally {
+			temporaryFiles.close();
+		}
+	}
+
+
+	/**
+	 * Returns true if the journal lists the given picture as done, with the settings of this run
+	 * @param pictureName
+	 * @return
+	 */
+	public boolean isCompleted(String pictureName){
+		return(completedPictures.contains(pictureName));
+	}
+
+	/**
+	 * The number of pictures the journal lists as done, with the settings of this run
+	 */
+	public int getCompletedCount(){
+		return(completedPictures.size());
+	}
+
+	/**
+	 * The pictures an earlier run started but never finished, which were cleaned up when the journal was opened
+	 */
+	public List<String> getInterruptedPictures(){
+		return(new ArrayList<String>(interruptedPictures));
+	}
+
+
+	/**
+	 * Records that the given picture is being processed
+	 * @param pictureName
+	 */
+	public synchronized void started(String pictureName){
+		append(entry(STARTED, pictureName, ""), false);
+	}
+
+	/**
+	 * Records that the results of the given picture were written to the given location, forcing the entry to the disk
+	 * @param pictureName
+	 * @param resultLocation
+	 */
+	public synchronized void completed(String pictureName, String resultLocation){
+		append(entry(DONE, pictureName, resultLocation), true);
+	}
+
+	/**
+	 * Records that the given picture could not be processed
+	 * @param pictureName
+	 * @param reason
+	 */
+	public synchronized void failed(String pictureName, String reason){
+		append(entry(FAILED, pictureName, reason), false);
+	}
+
+
+	/**
+	 * Keeps the DONE entry of the given picture aside, until commitDeferred is called:
+	 * for results that are only complete once their file is closed
+	 * @param pictureName
+	 * @param resultLocation
+	 */
+	public synchronized void completedOnClose(String pictureName, String resultLocation){
+		deferredEntries.add(entry(DONE, pictureName, resultLocation));
+	}
+
+	/**
+	 * Records all the DONE entries kept aside, once their results files have been closed
+	 */
+	public synchronized void commitDeferred(){
+		if(deferredEntries.isEmpty())
+			return;
+
+		StringBuilder entries = new StringBuilder();
+		for(String deferredEntry : deferredEntries){
+			entries.append(deferredEntry);
+		}
+		deferredEntries.clear();
+		append(entries.toString(), true);
+	}
+
+
+	/**
+	 * Closes the journal, releasing its lock. Returns false if any entry could not be written.
+	 * DONE entries that were kept aside and never committed are dropped, so those pictures are processed again next time.
+	 * @return
+	 */
+	public synchronized boolean close(){
+		deferredEntries.clear();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			if(error==null)
+				error = e;
+		}
+		return(error==null);
+	}
+
+
+	/**
+	 * Makes a journal line. Tabs and line breaks in the fields are replaced by spaces.
+	 */
+	private String entry(String state, String pictureName, String detail){
+		return(state + "\t" + clean(pictureName) + "\t" + settingsHash + "\t" + clean(detail) + "\n");
+	}
+
+	private static String clean(String field){
+		return(field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+	}
+
+
+	/**
+	 * Appends the given text at the end of the journal, forcing it to the disk if asked to
+	 */
+	private void append(String text, boolean force){
+		if(error!=null)
+			return;
+
+		try {
+			ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(UTF8));
+			while(bytes.hasRemaining()){
+				channel.write(bytes);
+			}
+			if(force)
+				channel.force(false);
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+}
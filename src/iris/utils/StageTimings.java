@@ -0,0 +1,395 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class times the stages every picture goes through, whichever the profile: decoding, rotation, cropping,
+ * segmentation, tile reading, writing the results and saving the grid image. The shared functions of each stage
+ * (ImagePrefetcher.openImage, Toolbox.calculateImageRotation and rotateImage, the croppers, the segmenters,
+ * ParallelTileReader.readAllTiles, ResultsWriter.publish and GridImageWriter) do their work through time,
+ * or start a timer when they're called and stop it when they return. A stage called while another one is being timed on the same thread
+ * (e.g. a ParallelTileReader inside the PlateTileReader) counts as part of the one that was already being timed.
+ * <p>
+ * Every stage timed is reported to the Java Flight Recorder as an iris.Stage event, with the stage and the picture,
+ * and every picture as an iris.Picture event. The events are made at run time (through jdk.jfr.EventFactory),
+ * so they're there when Iris runs on Java 12 or later with a recording on, and cost nothing otherwise.
+ * <p>
+ * If asked for (see the --stage-timings console option), the time each picture spent in each stage is also kept,
+ * and summed up at the end of the run, per stage: the number of pictures, the total, the median, the 95th and 99th percentiles
+ * and the maximum. Decoding is the time the picture was waited for: with prefetching, most of it is hidden.
+ * Grid images are drawn in the background, so their time is not part of the time of the whole picture.
+ * @author George Kritikos
+ *
+ */
+public class StageTimings {
+
+	/**
+	 * The stages, in the order they're summed up in
+	 */
+	public static final int DECODE = 0;
+	public static final int ROTATION = 1;
+	public static final int CROP = 2;
+	public static final int SEGMENTATION = 3;
+	public static final int TILE_READING = 4;
+	public static final int OUTPUT = 5;
+	public static final int GRID_IMAGE = 6;
+	public static final int WHOLE_PICTURE = 7;
+
+	public static final String[] STAGE_NAMES = {"decode", "rotation", "crop", "segmentation", "tile reading", "output", "grid image", "whole picture"};
+
+	/**
+	 * whether the time of each picture in each stage is kept, to sum it up at the end of the run
+	 * this is switched on from the console, using the --stage-timings option
+	 */
+	public static boolean keepTimings = false;
+
+
+	/**
+	 * The time (in nanoseconds) of each picture in each stage, and how many there are of each
+	 */
+	private static long[][] samples = new long[STAGE_NAMES.length][64];
+	private static int[] sampleCounts = new int[STAGE_NAMES.length];
+
+	/**
+	 * The picture being processed on each thread, if any
+	 */
+	private static final ThreadLocal<PictureTimes> currentPicture = new ThreadLocal<PictureTimes>();
+
+	/**
+	 * The stage being timed on each thread, if any
+	 */
+	private static final ThreadLocal<StageTimer> currentStage = new ThreadLocal<StageTimer>();
+
+	/**
+	 * A timer that doesn't time anything, for the stages called within other stages
+	 */
+	private static final StageTimer NESTED = new StageTimer(-1, null, null);
+
+
+	/**
+	 * A stage being timed, see start
+	 */
+	public static class StageTimer {
+		private final int stage;
+		private final String picture;
+		private final long startTime;
+		private final Object event;
+
+		private StageTimer(int stage_, String picture_, Object event_){
+			stage = stage_;
+			picture = picture_;
+			event = event_;
+			startTime = System.nanoTime();
+		}
+
+		/**
+		 * Stops timing the stage, and records it
+		 */
+		public void stop(){
+			if(stage<0)
+				return;
+
+			long duration = System.nanoTime() - startTime;
+			currentStage.remove();
+			FlightRecorderEvents.commit(event, STAGE_NAMES[stage], picture);
+
+			PictureTimes pictureTimes = currentPicture.get();
+			if(pictureTimes!=null){
+				pictureTimes.stageTimes[stage] += duration;
+				pictureTimes.stageUsed[stage] = true;
+			}
+			else
+				addSample(stage, duration);
+		}
+	}
+
+
+	/**
+	 * The time a picture spent in each stage so far
+	 */
+	private static class PictureTimes {
+		final String picture;
+		final long startTime = System.nanoTime();
+		final long[] stageTimes = new long[STAGE_NAMES.length];
+		final boolean[] stageUsed = new boolean[STAGE_NAMES.length];
+		final Object event;
+
+		PictureTimes(String picture_){
+			picture = picture_;
+			event = FlightRecorderEvents.begin(true);
+		}
+	}
+
+
+	/**
+	 * The work of a stage, see time
+	 */
+	public interface TimedStage<T> {
+		public T call();
+	}
+
+
+	/**
+	 * Does the given work, timing it as the given stage of the picture being processed on this thread
+	 * @param stage
+	 * @param work
+	 * @return what the work returned
+	 */
+	public static <T> T time(int stage, TimedStage<T> work){
+		StageTimer timer = start(stage);
+		try{
+			return(work.call());
+		}
+		finally{
+			timer.stop();
+		}
+	}
+
+
+	/**
+	 * Starts timing the given stage of the picture being processed on this thread
+	 * @param stage
+	 * @return the timer to stop once the stage is over
+	 */
+	public static StageTimer start(int stage){
+		return(start(stage, getPicture()));
+	}
+
+	/**
+	 * Starts timing the given stage of the given picture (e.g. on a thread that's not the one processing the picture)
+	 * @param stage
+	 * @param picture
+	 * @return the timer to stop once the stage is over
+	 */
+	public static StageTimer start(int stage, String picture){
+		if(currentStage.get()!=null)
+			return(NESTED);
+
+		StageTimer timer = new StageTimer(stage, picture, FlightRecorderEvents.begin(false));
+		currentStage.set(timer);
+		return(timer);
+	}
+
+
+	/**
+	 * Returns the picture being processed on this thread, or null if there's none
+	 */
+	public static String getPicture(){
+		PictureTimes pictureTimes = currentPicture.get();
+		return(pictureTimes==null ? null : pictureTimes.picture);
+	}
+
+
+	/**
+	 * Starts timing the given picture, which is processed on this thread
+	 * @param picture
+	 */
+	public static void startPicture(String picture){
+		currentPicture.set(new PictureTimes(picture));
+	}
+
+	/**
+	 * Stops timing the picture processed on this thread, and records the time it spent in each stage
+	 */
+	public static void endPicture(){
+		PictureTimes pictureTimes = currentPicture.get();
+		if(pictureTimes==null)
+			return;
+		currentPicture.remove();
+		currentStage.remove();
+
+		FlightRecorderEvents.commit(pictureTimes.event, null, pictureTimes.picture);
+
+		//only the stages this picture went through
+		for(int stage=0; stage<STAGE_NAMES.length; stage++){
+			if(pictureTimes.stageUsed[stage])
+				addSample(stage, pictureTimes.stageTimes[stage]);
+		}
+		addSample(WHOLE_PICTURE, System.nanoTime() - pictureTimes.startTime);
+	}
+
+
+	private static synchronized void addSample(int stage, long duration){
+		if(!keepTimings)
+			return;
+
+		if(sampleCounts[stage]==samples[stage].length){
+			samples[stage] = Arrays.copyOf(samples[stage], samples[stage].length*2);
+		}
+		samples[stage][sampleCounts[stage]++] = duration;
+	}
+
+
+	/**
+	 * Forgets all the times kept so far
+	 */
+	public static synchronized void reset(){
+		samples = new long[STAGE_NAMES.length][64];
+		sampleCounts = new int[STAGE_NAMES.length];
+	}
+
+
+	/**
+	 * Writes the summary of the times kept so far to the given file, as a tab-separated table with a row per stage.
+	 * Stages no picture went through are left out. Returns false if the file could not be written.
+	 * @param file
+	 * @return
+	 */
+	public static synchronized boolean writeSummary(File file){
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+			try {
+				writer.write("#Iris stage timings, times in milliseconds\n");
+				writer.write("stage\tcount\ttotal\tmedian\t95th percentile\t99th percentile\tmaximum\n");
+
+				for(int stage=0; stage<STAGE_NAMES.length; stage++){
+					int count = sampleCounts[stage];
+					if(count==0)
+						continue;
+
+					long[] sorted = Arrays.copyOf(samples[stage], count);
+					Arrays.sort(sorted);
+					long total = 0;
+					for(long sample : sorted){
+						total += sample;
+					}
+
+					writer.write(STAGE_NAMES[stage] + "\t" + count + "\t" + milliseconds(total)
+							+ "\t" + milliseconds(percentile(sorted, 50)) + "\t" + milliseconds(percentile(sorted, 95))
+							+ "\t" + milliseconds(percentile(sorted, 99)) + "\t" + milliseconds(sorted[count-1]) + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			return(false);
+		}
+		return(true);
+	}
+
+
+	/**
+	 * Returns the given percentile of the given sorted times (nearest rank: the smallest time with at least that percent of them up to it)
+	 */
+	private static long percentile(long[] sorted, int percent){
+		int rank = (int) Math.ceil(percent/100.0 * sorted.length);
+		return(sorted[Math.max(rank, 1) - 1]);
+	}
+
+	private static String milliseconds(long nanoseconds){
+		return(String.format(Locale.ROOT, "%.3f", nanoseconds/1e6));
+	}
+
+
+	/**
+	 * The flight recorder events. Iris is built for Java versions that don't have a flight recorder,
+	 * so the event types are made when first needed, through reflection, if this Java has jdk.jfr.EventFactory.
+	 */
+	private static class FlightRecorderEvents {
+
+		private static Object stageFactory = null;
+		private static Object pictureFactory = null;
+		private static Method newEvent, begin, end, commit, set, isEnabled;
+
+		static {
+			try {
+				Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+				Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+				Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+				Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+				Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+				Class<?> nameAnnotation = Class.forName("jdk.jfr.Name");
+				Class<?> labelAnnotation = Class.forName("jdk.jfr.Label");
+				Class<?> categoryAnnotation = Class.forName("jdk.jfr.Category");
+				//the stack traces would only show the reflection calls of this class
+				Class<?> stackTraceAnnotation = Class.forName("jdk.jfr.StackTrace");
+				Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+
+				List<Object> stageFields = new ArrayList<Object>();
+				stageFields.add(valueDescriptor.newInstance(String.class, "stage",
+						Arrays.asList(annotationElement.newInstance(labelAnnotation, "Stage"))));
+				stageFields.add(valueDescriptor.newInstance(String.class, "picture",
+						Arrays.asList(annotationElement.newInstance(labelAnnotation, "Picture"))));
+				stageFactory = create.invoke(null, Arrays.asList(
+						annotationElement.newInstance(nameAnnotation, "iris.Stage"),
+						annotationElement.newInstance(labelAnnotation, "Iris Stage"),
+						annotationElement.newInstance(categoryAnnotation, new String[]{"Iris"}),
+						annotationElement.newInstance(stackTraceAnnotation, false)), stageFields);
+
+				List<Object> pictureFields = new ArrayList<Object>();
+				pictureFields.add(valueDescriptor.newInstance(String.class, "picture",
+						Arrays.asList(annotationElement.newInstance(labelAnnotation, "Picture"))));
+				pictureFactory = create.invoke(null, Arrays.asList(
+						annotationElement.newInstance(nameAnnotation, "iris.Picture"),
+						annotationElement.newInstance(labelAnnotation, "Iris Picture"),
+						annotationElement.newInstance(categoryAnnotation, new String[]{"Iris"}),
+						annotationElement.newInstance(stackTraceAnnotation, false)), pictureFields);
+
+				newEvent = eventFactoryClass.getMethod("newEvent");
+				begin = eventClass.getMethod("begin");
+				end = eventClass.getMethod("end");
+				commit = eventClass.getMethod("commit");
+				set = eventClass.getMethod("set", int.class, Object.class);
+				isEnabled = eventClass.getMethod("isEnabled");
+			} catch (Throwable e) {
+				//no flight recorder on this Java
+				stageFactory = null;
+				pictureFactory = null;
+			}
+		}
+
+
+		/**
+		 * Starts a stage (or picture) event, returning null if there's no flight recorder or it isn't recording them
+		 */
+		static Object begin(boolean picture){
+			Object factory = picture ? pictureFactory : stageFactory;
+			if(factory==null)
+				return(null);
+
+			try {
+				Object event = newEvent.invoke(factory);
+				if(!(Boolean) isEnabled.invoke(event))
+					return(null);
+				begin.invoke(event);
+				return(event);
+			} catch (Throwable e) {
+				return(null);
+			}
+		}
+
+
+		/**
+		 * Ends the given event and hands it to the flight recorder, with the given stage (null for picture events) and picture
+		 */
+		static void commit(Object event, String stage, String picture){
+			if(event==null)
+				return;
+
+			try {
+				end.invoke(event);
+				int field = 0;
+				if(stage!=null)
+					set.invoke(event, field++, stage);
+				set.invoke(event, field, picture);
+				commit.invoke(event);
+			} catch (Throwable e) {
+				//the event is lost, the timing isn't
+			}
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.awt.Rectangle;
+
+/**
+ * This class copies a rectangular part of an image (usually a single tile of the plate) into a picture of its own,
+ * a row at a time straight from the array of the plate's ImageProcessor, rather than through the ImageJ clipboard.
+ * The rows are only copied when toProcessor or toImagePlus is called,
+ * so the view should not outlive any change made to the plate picture.
+ * @author George Kritikos
+ *
+ */
+public class TileView {
+
+	/**
+	 * The processor of the whole picture
+	 */
+	private final ImageProcessor source;
+
+	/**
+	 * The pixel array of the whole picture, one of byte[], short[], int[] or float[]
+	 */
+	private final Object pixels;
+
+	/**
+	 * The width of the whole picture, used to index into the pixel array
+	 */
+	private final int sourceWidth;
+
+	/**
+	 * The part of the picture this view covers, always within the picture bounds
+	 */
+	private final Rectangle bounds;
+
+
+	/**
+	 * Creates a view of the given rectangle of the picture.
+	 * The rectangle is clipped to the picture bounds, so the view may be smaller than asked, or even empty.
+	 * @param source_
+	 * @param rectangle
+	 */
+	public TileView(ImageProcessor source_, Rectangle rectangle){
+		source = source_;
+		pixels = source.getPixels();
+		sourceWidth = source.getWidth();
+		bounds = rectangle.intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+		if(bounds.width<0 || bounds.height<0){
+			bounds.width = 0;
+			bounds.height = 0;
+		}
+	}
+
+
+	/**
+	 * Creates a view of the bounding rectangle of the given ROI
+	 * @param source_
+	 * @param roi
+	 */
+	public TileView(ImageProcessor source_, Roi roi){
+		this(source_, roi==null ? new Rectangle(0, 0, source_.getWidth(), source_.getHeight()) : roi.getBounds());
+	}
+
+
+	/**
+	 * Returns the area of the picture this view covers, in picture coordinates
+	 * @return
+	 */
+	public Rectangle getBounds(){
+		return(new Rectangle(bounds));
+	}
+
+
+	/**
+	 * Copies the pixels of this view into a new ImageProcessor of the same type as the picture.
+	 * Each row is copied with a single arraycopy.
+	 * @return
+	 */
+	public ImageProcessor toProcessor(){
+		int width = bounds.width;
+		int height = bounds.height;
+		ImageProcessor copy;
+
+		if(pixels instanceof byte[]){
+			byte[] copiedPixels = new byte[width*height];
+			copyRows(copiedPixels);
+			copy = new ByteProcessor(width, height, copiedPixels, source.getColorModel());
+		}
+		else if(pixels instanceof short[]){
+			short[] copiedPixels = new short[width*height];
+			copyRows(copiedPixels);
+			copy = new ShortProcessor(width, height, copiedPixels, source.getColorModel());
+		}
+		else if(pixels instanceof int[]){
+			int[] copiedPixels = new int[width*height];
+			copyRows(copiedPixels);
+			copy = new ColorProcessor(width, height, copiedPixels);
+		}
+		else{
+			float[] copiedPixels = new float[width*height];
+			copyRows(copiedPixels);
+			copy = new FloatProcessor(width, height, copiedPixels, source.getColorModel());
+		}
+
+		return(copy);
+	}
+
+
+	/**
+	 * Copies the pixels of this view into a new ImagePlus with the given title
+	 * @param title
+	 * @return
+	 */
+	public ImagePlus toImagePlus(String title){
+		return(new ImagePlus(title, toProcessor()));
+	}
+
+
+	/**
+	 * Copies the rows of this view to the given array, which must be of the same type as the picture pixels
+	 * @param destination
+	 */
+	private void copyRows(Object destination){
+		for(int y=0; y<bounds.height; y++){
+			System.arraycopy(pixels, (bounds.y+y)*sourceWidth + bounds.x, destination, y*bounds.width, bounds.width);
+		}
+	}
+
+}
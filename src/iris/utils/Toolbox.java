@@ -10,8 +10,6 @@ import ij.io.FileSaver;
 import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
@@ -27,8 +25,10 @@ import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.tileReaders.BasicTileReader_Bsu;
 import iris.ui.IrisFrontend;
+import iris.utils.StageTimings.TimedStage;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Polygon;
 import java.awt.Rectangle;
@@ -50,7 +50,6 @@ import com.opencsv.CSVReader;
  */
 public class Toolbox {
 
-
 	/**
 	 * Returns the center of mass of the biggest particle in the results table
 	 */
@@ -97,61 +96,64 @@ public class Toolbox {
 	 * @param channelToGet
 	 * @return
 	 */
-	public static Float[] getRoiPixels(ImagePlus imp, Roi roi, char channelToGet){
-
-		if (roi!=null && !roi.isArea()) roi = null;
-		ImageProcessor ip = imp.getProcessor();
-		ImageProcessor mask = roi!=null?roi.getMask():null;
-		Rectangle r = roi!=null?roi.getBounds():new Rectangle(0,0,ip.getWidth(),ip.getHeight());
-
-
-		ArrayList<Float> pixelList = new ArrayList<Float>();
-
-		for (int y=0; y<r.height; y++) {
-			for (int x=0; x<r.width; x++) {
-				if (mask==null||mask.getPixel(x,y)!=0) {
-
-
-					//get the rgb values
-					int[] rgb = new int[3];
-					ip.getPixel(x+r.x, y+r.y,rgb);
-
-					//get the corresponding HSB values
-					float[] HSB = java.awt.Color.RGBtoHSB(rgb[0], rgb[1], rgb[2], null); 
-
-
-					switch(channelToGet){
-					case('l'): //luminence/brightness
-						pixelList.add(ip.getPixelValue(x+r.x, y+r.y));
-					break;
-					case('r'): //red
-						pixelList.add((float)rgb[0]); ///RGB values are in the range of 0...255
-					break;
-					case('g'): //green
-						pixelList.add((float)rgb[1]);
-					break;
-					case('b'): //blue
-						pixelList.add((float)rgb[2]);
-					break;
-					case('H'): //Hue
-						pixelList.add((float)HSB[0]*(float)255); //HSB values are from 0...1, convert that to 0...255
-					break;
-					case('S'): //Saturation
-						pixelList.add((float)HSB[1]*(float)255);
-					break;
-					case('B'): //Brightness
-						pixelList.add((float)HSB[2]*(float)255);
-					break;
-					}
-				}
-			}
+	public static float[] getRoiPixels(ImagePlus imp, Roi roi, char channelToGet){
+		return(getRoiPixels(new ChannelCache(imp), roi, channelToGet));
+	}
+
+
+	/**
+	 * This function will give you the pixel values (rgb, HSB, or l for luma) for the specific ROI,
+	 * taking them from the given channel cache of the picture, so that the colour conversions are done only once per picture.
+	 * The values are in the order of the ROI's pixels, row by row. Pixels of the ROI that are outside the picture are 0.
+	 * @param channels
+	 * @param roi
+	 * @param channelToGet
+	 * @return
+	 */
+	public static float[] getRoiPixels(ChannelCache channels, Roi roi, char channelToGet){
+		return(getRoiPixels(channels, new RoiRuns(roi, channels.getWidth(), channels.getHeight()), channelToGet));
+	}
+
+
+	/**
+	 * This function will give you the pixel values (rgb, HSB, or l for luma) for the given runs of a ROI,
+	 * so that several channels can be read from the same ROI without going through its mask again
+	 * @param channels
+	 * @param roiRuns
+	 * @param channelToGet
+	 * @return
+	 */
+	public static float[] getRoiPixels(ChannelCache channels, RoiRuns roiRuns, char channelToGet){
+
+		switch(channelToGet){
+		case('l'): //luminence/brightness
+			return(roiRuns.getValues(channels.getGray()));
+		case('r'): //red
+			return(roiRuns.getValues(channels.getRed())); ///RGB values are in the range of 0...255
+		case('g'): //green
+			return(roiRuns.getValues(channels.getGreen()));
+		case('b'): //blue
+			return(roiRuns.getValues(channels.getBlue()));
+		case('H'): //Hue
+			return(multiply(roiRuns.getValues(channels.getExactHue()), (float)255)); //HSB values are from 0...1, convert that to 0...255
+		case('S'): //Saturation
+			return(multiply(roiRuns.getValues(channels.getExactSaturation()), (float)255));
+		case('B'): //Brightness, which is a whole number anyway
+			return(roiRuns.getValues(channels.getBrightness()));
 		}
-		//convert to array
-		Float[] pixelarray = new Float[pixelList.size()];
-		pixelarray = pixelList.toArray(pixelarray);
 
-		return(pixelarray);
+		return(new float[0]);
+	}
+
 
+	/**
+	 * Multiplies every value of the given array by the given factor, in place, and returns the array
+	 */
+	private static float[] multiply(float[] values, float factor){
+		for(int i=0; i<values.length; i++){
+			values[i] *= factor;
+		}
+		return(values);
 	}
 
 
@@ -227,34 +229,22 @@ public class Toolbox {
 	 */
 	public static ImagePlus getHSBgrayscaleImageBrightness(ImagePlus originalImage){
 
-		ImagePlus originalImageCopy = originalImage.duplicate();
-		ImageProcessor ip =  originalImageCopy.getProcessor();
+		//duplicating crops the picture to its ROI, otherwise there's no need for a copy
+		ImagePlus originalImageCopy = originalImage.getRoi()==null ? originalImage : originalImage.duplicate();
 
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the picture
-		//ip.snapshot(); // override ColorProcessor bug in 1.32c
-		int width = originalImageCopy.getWidth();
-		int height = originalImageCopy.getHeight();
-		int numPixels = width*height;
-
-		//we need those arrays to save the different channels into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
-
-		//saves the HSB channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//the brightness channel is the only one needed, so that's the only one calculated
+		ChannelCache channels = new ChannelCache(originalImageCopy);
 
 		//create a new image with the original title and the brightness HSB channel of the input image
-		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
+		ByteProcessor bpBri = new ByteProcessor(channels.getWidth(), channels.getHeight(), channels.getBrightness());
 		ImagePlus grayscaleImage = new ImagePlus(originalImage.getTitle(), bpBri);
 		
 		
 		if(IrisFrontend.settings.userDefinedRoi){
 			grayscaleImage.setRoi(originalImage.getRoi());
 		}
-		originalImageCopy.flush();
+		if(originalImageCopy!=originalImage)
+			originalImageCopy.flush();
 
 		return(grayscaleImage);
 	}
@@ -288,26 +278,30 @@ public class Toolbox {
 	 * @param angle
 	 * @return
 	 */
-	public static ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		if(IrisFrontend.singleColonyRun==true){
-			ImagePlus rotatedImage = originalImage.duplicate();
-			rotatedImage.setRoi(originalImage.getRoi());
-			return(rotatedImage); // otherwise I'd have to delete the ROI
-		}
+	public static ImagePlus rotateImage(final ImagePlus originalImage, final double angle){
+		return(StageTimings.time(StageTimings.ROTATION, new TimedStage<ImagePlus>() {
+			public ImagePlus call() {
+
+				if(IrisFrontend.singleColonyRun==true){
+					ImagePlus rotatedImage = originalImage.duplicate();
+					rotatedImage.setRoi(originalImage.getRoi());
+					return(rotatedImage); // otherwise I'd have to delete the ROI
+				}
 
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because we don't want to tamper with the original image
+				originalImage.deleteRoi();
+				ImagePlus aDuplicate = originalImage.duplicate();//because we don't want to tamper with the original image
 
-		aDuplicate.getProcessor().setBackgroundValue(0);
+				aDuplicate.getProcessor().setBackgroundValue(0);
 
-		aDuplicate.getProcessor().rotate(angle);
+				aDuplicate.getProcessor().rotate(angle);
 
-		aDuplicate.updateImage();
+				aDuplicate.updateImage();
 
-		aDuplicate.setTitle(originalImage.getTitle());
+				aDuplicate.setTitle(originalImage.getTitle());
 
-		return(aDuplicate);
+				return(aDuplicate);
+			}
+		}));
 	}
 
 
@@ -381,9 +375,7 @@ public class Toolbox {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -532,87 +524,169 @@ public class Toolbox {
 	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
 	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
 	 * in a scanned document, as part of the OCR procedure.
+	 * The angles are searched coarse to fine: every degree first, then every quarter degree around the best one.
+	 * The sums for each angle are projected from the picture, without making a rotated copy of it.
 	 * @param originalImage
 	 * @return the angle of this picture's rotation 
 	 */
-	public static double calculateImageRotation(ImagePlus originalImage) {
+	public static double calculateImageRotation(final ImagePlus originalImage){
+		return(StageTimings.time(StageTimings.ROTATION, new TimedStage<Double>() {
+			public Double call() {
 
-		//0. if user has cropped the colony, no need to rotate
-		if(IrisFrontend.singleColonyRun==true){
-			return(0.0);
-		}
+				//0. if user has cropped the colony, no need to rotate
+				if(IrisFrontend.singleColonyRun==true){
+					return(0.0);
+				}
 
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
+				//1. get a subset of that picture
+				ImagePlus imageSubset = cropImage(originalImage, getRotationPatch(originalImage));
 
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
 
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
+				//2. make grayscale, then auto-threshold to get black/white picture
+				ImageConverter imageConverter = new ImageConverter(imageSubset);
+				imageConverter.convertToGray8();
 
+				//convert to b/w
+				turnImageBW_Otsu_auto(imageSubset);
 
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
 
-		//convert to b/w
-		turnImageBW_Otsu_auto(imageSubset);
+				//3. search the angles, coarse to fine
+				double initialAngle = -2;
+				double finalAngle = 2;
+				double angleIncrements = 0.25;
+				int coarseSteps = 4; //the first pass tries every 4th angle (1 degree apart)
 
+				int numberOfAngles = (int)Math.round((finalAngle-initialAngle)/angleIncrements) + 1;
+				double[] varianceSums = new double[numberOfAngles];
+				Arrays.fill(varianceSums, Double.NaN);
 
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
+				//3.1 score every coarse angle
+				int bestCoarse = 0;
+				for(int i=0; i<numberOfAngles; i+=coarseSteps){
+					varianceSums[i] = getRotationVariance(imageSubset, initialAngle + i*angleIncrements);
+					if(varianceSums[i] > varianceSums[bestCoarse])
+						bestCoarse = i;
+				}
 
+				//3.2 score the angles in between, around the best coarse one
+				for(int i=Math.max(0, bestCoarse-coarseSteps+1); i<=Math.min(numberOfAngles-1, bestCoarse+coarseSteps-1); i++){
+					if(Double.isNaN(varianceSums[i]))
+						varianceSums[i] = getRotationVariance(imageSubset, initialAngle + i*angleIncrements);
+				}
 
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
+				//3.3 pick the best (biggest) variance, store it's angle
+				double bestAngle = 0;
+				double bestVariance = -Double.MAX_VALUE;
 
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
+				for(int i=0; i<numberOfAngles; i++){
+					if(varianceSums[i] > bestVariance){
+						bestAngle = initialAngle + i*angleIncrements;
+						bestVariance = varianceSums[i];
+					}
+				}
 
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
+				return(bestAngle);			
+			}
+		}));
+	}
 
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
 
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
 
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
+	/**
+	 * Returns the part of the given picture the rotation is calculated on: the central quarter of the picture
+	 * (a quarter of its width and of its height). If only part of the picture was decoded (see ImageRegionDecoder.openPlate),
+	 * this is the central quarter of the whole picture, in the coordinates of the decoded part,
+	 * so that the rotation found doesn't depend on how much of the picture was decoded.
+	 * @param originalImage
+	 * @return
+	 */
+	public static Roi getRotationPatch(ImagePlus originalImage){
+		Dimension pictureSize = ImageRegionDecoder.getPictureSize(originalImage);
+		Rectangle centerQuarter = getCenterQuarter(pictureSize.width, pictureSize.height);
+
+		Rectangle decodedRegion = ImageRegionDecoder.getDecodedRegion(originalImage);
+		if(decodedRegion!=null)
+			centerQuarter.translate(-decodedRegion.x, -decodedRegion.y);
+
+		return(new Roi(centerQuarter));
+	}
+
+
+	/**
+	 * Returns the central quarter of a picture of the given size (see getRotationPatch)
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	static Rectangle getCenterQuarter(int width, int height){
+		int roiX = (int)Math.round(3.0*width/8.0);
+		int roiY = (int)Math.round(3.0*height/8.0);
+		int roiWidth = (int)Math.round(1.0*width/4.0);
+		int roiHeight = (int)Math.round(1.0*height/4.0);
+
+		return(new Rectangle(roiX, roiY, roiWidth, roiHeight));
+	}
+
+
+
+	/**
+	 * Returns the sum of the variances of the row and column sums of the given picture, as if it was rotated
+	 * by the given angle. The sums are projected straight from the picture (see ProjectionProfile),
+	 * so no rotated copy of it is made.
+	 * @param image
+	 * @param angle
+	 * @return
+	 */
+	private static double getRotationVariance(ImagePlus image, double angle){
+		ProjectionProfile projectionProfile = new ProjectionProfile(image.getProcessor(), angle);
 
-		return(bestAngle);			
+		double varianceColumns = ProjectionProfile.getVariance(projectionProfile.columnSums);
+		double varianceRows = ProjectionProfile.getVariance(projectionProfile.rowSums);
+		return(varianceColumns + varianceRows);
 	}
 
 
 
 	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
+	 * This method will copy the given area of interest of the picture to a new ImagePlus object.
+	 * The pixels are copied row by row straight from the picture's pixel array (see TileView),
+	 * so neither the ImageJ clipboard nor the ROI of the original picture are touched,
+	 * and plates (or tiles) can be cropped from any number of threads at the same time.
+	 * A null ROI copies the whole picture. Non-rectangular ROIs are set on the copy, relative to its origin.
+	 * @param originalImage
+	 * @param roi
 	 * @return
 	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+	public static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
+		TileView tileView = new TileView(originalImage.getProcessor(), roi);
+		ImagePlus croppedImage = tileView.toImagePlus(originalImage.getTitle());
+
+		if(roi!=null && roi.getType()!=Roi.RECTANGLE){
+			Rectangle bounds = tileView.getBounds();
+			Roi relocatedRoi = (Roi) roi.clone();
+			Rectangle roiBounds = roi.getBounds();
+			relocatedRoi.setLocation(roiBounds.x-bounds.x, roiBounds.y-bounds.y);
+			croppedImage.setRoi(relocatedRoi);
+		}
+
 		return(croppedImage);
+	}
+
 
+	/**
+	 * This function finds the particles of the given image with the given labeller,
+	 * adding their measurements to the given results table and returning their ROIs, in the same order.
+	 * As the ImageJ ParticleAnalyzer did, it leaves the image without a ROI once done.
+	 * @param particleLabeller
+	 * @param resultsTable
+	 * @param inputImage
+	 * @return
+	 */
+	public static Roi[] analyzeParticles(ParticleLabeller particleLabeller, ResultsTable resultsTable, ImagePlus inputImage){
+		Roi[] rois = particleLabeller.analyze(inputImage, resultsTable);
+		inputImage.deleteRoi();
+		inputImage.getProcessor().resetRoi();
+		return(rois);
 	}
 
 
@@ -1198,7 +1272,7 @@ public class Toolbox {
 		}
 
 		//sum up the pixel values (brightness) on the x axis
-		double[] sumOfBrightnessXaxis = Toolbox.sumOfRows_double(tile);
+		double[] sumOfBrightnessXaxis = ProjectionProfile.toDoubles(new ProjectionProfile(tile.getProcessor()).rowSums);
 		double variance = StdStats.varp(sumOfBrightnessXaxis);
 
 		//System.out.println(variance);
@@ -1210,110 +1284,15 @@ public class Toolbox {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static double[] sumOfRows_double(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
 
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
 
-		int sum = 0;
 
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
 
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
-			}
 
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
 
-		return(sumOfColumns);
-	}
 
 
 
@@ -1323,26 +1302,21 @@ public class Toolbox {
 	 * @param resultsTable
 	 * @return
 	 */
-	public static RoiManager particleAnalysis_fillHoles(ImagePlus inputImage, ResultsTable resultsTable){
+	public static Roi[] particleAnalysis_fillHoles(ImagePlus inputImage, ResultsTable resultsTable){
 		//create the results table, where the results of the particle analysis will be shown
 		//ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
-
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
 
-		ParticleAnalyzer.setRoiManager(roiManager);
+		//arguments: whether the holes are part of the particles, what is the minimum particle size, maximum particle size
+		ParticleLabeller particleLabeller = new ParticleLabeller(true, 5, Integer.MAX_VALUE);
 
-		particleAnalyzer.analyze(inputImage);
+		Roi[] rois = Toolbox.analyzeParticles(particleLabeller, resultsTable, inputImage);
 
 		//3.1 check if the returned results table is empty
 		if(resultsTable.getCounter()==0){
 			return(null);
 		}
 
-		return(roiManager);
+		return(rois);
 	}
 
 	/**
@@ -1398,7 +1372,7 @@ public class Toolbox {
 			BW_tile.getProcessor().erode();
 
 			ResultsTable my_ResultsTable = new ResultsTable();
-			RoiManager my_RoiManager = Toolbox.particleAnalysis_fillHoles(BW_tile, my_ResultsTable);
+			Toolbox.particleAnalysis_fillHoles(BW_tile, my_ResultsTable);
 
 			int indexOfBiggestParticle = getIndexOfBiggestParticle(my_ResultsTable);
 			pointToReturn = getBiggestParticleCenterOfMass(my_ResultsTable, indexOfBiggestParticle);
@@ -1424,49 +1398,32 @@ public class Toolbox {
 	 * 
 	 * 
 	 */
-	@SuppressWarnings("empty-statement")
 	public static double median(Double[] values, Double valueToIgnore, boolean ignoreValue) {
 		if (values == null) {
 			return Double.NaN;
 		}
 
-		List<Double> nonNaNValues = org.jaitools.CollectionFactory.list();
-		nonNaNValues.addAll(Arrays.asList(values));
-		if (ignoreValue) {
-			while (nonNaNValues.remove(valueToIgnore)) /* deliberately empty */ ;
+		//copy the values to keep into a primitive array, so that they can be sorted without boxing
+		double[] keptValues = new double[values.length];
+		int count = 0;
+		for (Double value : values) {
+			if (ignoreValue && value.equals(valueToIgnore)) {
+				continue;
+			}
+			keptValues[count++] = value;
 		}
 
-		if (nonNaNValues.isEmpty()) {
+		if (count == 0) {
 			return Double.NaN;
-		} else if (nonNaNValues.size() == 1) {
-			return nonNaNValues.get(0);
-		} else if (nonNaNValues.size() == 2) {
-			return (nonNaNValues.get(0) + nonNaNValues.get(1)) / 2;
 		}
 
-		Collections.sort(nonNaNValues);
-
-		int midHi = nonNaNValues.size() / 2;
-		int midLo = midHi - 1;
-		boolean even = nonNaNValues.size() % 2 == 0;
-
-		Double result = 0.0d;
-		int k = 0;
-		for (Double val : nonNaNValues) {
-			if (k == midHi) {
-				if (!even) {
-					return val;
-				} else {
-					result += val;
-					return result / 2;
-				}
-			} else if (even && k == midLo) {
-				result += val;
-			}
-			k++ ;
-		}
+		Arrays.sort(keptValues, 0, count);
 
-		return 0;  // to suppress compiler warning
+		int midHi = count / 2;
+		if (count % 2 == 1) {
+			return keptValues[midHi];
+		}
+		return (keptValues[midHi - 1] + keptValues[midHi]) / 2;
 	}
 
 
@@ -1478,26 +1435,12 @@ public class Toolbox {
 	 * @return
 	 */
 	private static ImagePlus makeImageGrayscaleHSB(ImagePlus inputImage){
-		ImagePlus grayscaleImage = inputImage.duplicate();
-
-		ImageProcessor ip =  grayscaleImage.getProcessor();
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the tile
-		int width = grayscaleImage.getWidth();
-		int height = grayscaleImage.getHeight();
-		int numPixels = width*height;
-
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
-
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//duplicating crops the picture to its ROI, otherwise there's no need for a copy
+		ImagePlus inputImageCopy = inputImage.getRoi()==null ? inputImage : inputImage.duplicate();
+		ChannelCache channels = new ChannelCache(inputImageCopy);
 
-		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
-		grayscaleImage = new ImagePlus("", bpBri);
+		ByteProcessor bpBri = new ByteProcessor(channels.getWidth(), channels.getHeight(), channels.getBrightness());
+		ImagePlus grayscaleImage = new ImagePlus("", bpBri);
 
 		return(grayscaleImage);
 	}
@@ -1643,9 +1586,7 @@ public class Toolbox {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -0,0 +1,344 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class lets several Iris instances (e.g. on different nodes of a cluster) share the pictures of one folder
+ * on a shared filesystem, without processing any picture twice and without pictures getting stuck if a node dies.
+ * <p>
+ * The claims are files in the .iris-claims folder, next to the pictures:
+ * <ul>
+ * <li>picture.claim: the picture is being processed. The file is created atomically (it fails if it already exists),
+ * holds the ID of its owner, and its modification time is its heartbeat: the owner touches it every
+ * heartbeat interval, for as long as it holds it. A claim that hasn't been touched for a whole lease is stale,
+ * and can be stolen by another instance (the stale file is renamed away atomically, so only one instance gets it).</li>
+ * <li>picture.done and picture.failed: the picture was processed, or could not be. Either way it isn't claimed again;
+ * delete the marker (or the whole .iris-claims folder) to have it processed again.</li>
+ * </ul>
+ * Pictures are claimed a batch at a time, from a single listing of the claims folder, so the shared filesystem
+ * is asked about the claims folder once per batch rather than about every picture.
+ * <p>
+ * Claims can only be taken over (and finished) on filesystems that rename files atomically: on others,
+ * the claims folder is refused when it's opened, rather than leaving the claims of dead nodes stuck forever.
+ * <p>
+ * Leases rely on the clocks of the nodes being roughly in sync (well within a lease). A node that stalls for longer
+ * than a lease loses its claims to the others; it is told so when its heartbeat finds the claim gone,
+ * but the picture it was working on may then be processed twice.
+ * @author George Kritikos
+ *
+ */
+public class WorkClaims {
+
+	/**
+	 * The name of the folder the claims are kept in, next to the pictures
+	 */
+	public static final String CLAIMS_FOLDER = ".iris-claims";
+
+	/**
+	 * How long a claim lasts without a heartbeat, and how often the heartbeat is
+	 */
+	public static long leaseMilliseconds = 5*60*1000;
+	public static long heartbeatMilliseconds = 60*1000;
+
+	private static final String CLAIM = ".claim";
+	private static final String DONE = ".done";
+	private static final String FAILED = ".failed";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	private final Path claimsFolder;
+
+	/**
+	 * The ID of this instance, written in its claims
+	 */
+	private final String owner;
+
+	/**
+	 * The pictures this instance holds the claim of
+	 */
+	private final Set<String> heldClaims = Collections.synchronizedSet(new HashSet<String>());
+
+	private final ScheduledExecutorService heartbeat;
+
+
+	/**
+	 * Starts claiming the pictures of the given folder, creating the claims folder if needed
+	 * @param folder
+	 * @throws IOException if the claims folder can't be used, or can't rename files atomically
+	 */
+	public WorkClaims(File folder) throws IOException {
+		claimsFolder = folder.toPath().resolve(CLAIMS_FOLDER);
+		Files.createDirectories(claimsFolder);
+
+		//process and host (pid@host), plus a random part in case two JVMs end up with the same one
+		owner = ManagementFactory.getRuntimeMXBean().getName() + "#" + Integer.toHexString(new Random().nextInt());
+
+		checkAtomicMove();
+
+		heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Iris claims heartbeat");
+				thread.setDaemon(true);
+				return(thread);
+			}
+		});
+		heartbeat.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				renewClaims();
+			}
+		}, heartbeatMilliseconds, heartbeatMilliseconds, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Renames a file in the claims folder atomically, once, so that a filesystem that can't do it is found out
+	 * before anything is claimed: stale claims could never be taken over on it
+	 */
+	private void checkAtomicMove() throws IOException {
+		Path probe = claimsFolder.resolve(Integer.toHexString(owner.hashCode()) + "." + Long.toHexString(System.nanoTime()) + ".probe");
+		Path moved = probe.resolveSibling(probe.getFileName() + ".moved");
+		Files.write(probe, owner.getBytes(UTF8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		try {
+			Files.move(probe, moved, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			throw new IOException("the filesystem of " + claimsFolder + " can't rename files atomically, so stale claims could not be taken over", e);
+		} finally {
+			Files.deleteIfExists(probe);
+			Files.deleteIfExists(moved);
+		}
+	}
+
+
+	/**
+	 * The ID of this instance
+	 */
+	public String getOwner(){
+		return(owner);
+	}
+
+
+	/**
+	 * Claims up to the given number of the given pictures, in the order given, leaving out the ones that are
+	 * done, failed or claimed by a live instance. Stale claims are stolen.
+	 * Returns the pictures claimed; an empty array means there is nothing left to claim.
+	 * @param pictures
+	 * @param batchSize
+	 * @return
+	 * @throws IOException if the claims folder can't be read
+	 */
+	public File[] claimBatch(File[] pictures, int batchSize) throws IOException {
+		//one listing of the claims folder: which pictures are finished, and which are claimed (and since when)
+		Set<String> finished = new HashSet<String>();
+		Map<String, Path> claims = new HashMap<String, Path>();
+		DirectoryStream<Path> markers = Files.newDirectoryStream(claimsFolder);
+		try {
+			for(Path marker : markers){
+				String name = marker.getFileName().toString();
+				if(name.endsWith(DONE) || name.endsWith(FAILED))
+					finished.add(name.substring(0, name.lastIndexOf('.')));
+				else if(name.endsWith(CLAIM))
+					claims.put(name.substring(0, name.length()-CLAIM.length()), marker);
+			}
+		} finally {
+			markers.close();
+		}
+
+		List<File> batch = new ArrayList<File>();
+		for(File picture : pictures){
+			if(batch.size()>=batchSize)
+				break;
+
+			String pictureName = picture.getName();
+			if(finished.contains(pictureName) || heldClaims.contains(pictureName))
+				continue;
+
+			Path claim = claims.get(pictureName);
+			if(claim!=null && !stealIfStale(claim))
+				continue;
+
+			if(createClaim(pictureName))
+				batch.add(picture);
+		}
+
+		return(batch.toArray(new File[batch.size()]));
+	}
+
+
+	/**
+	 * Creates the claim of the given picture, atomically. Returns false if someone else claimed it first.
+	 */
+	private boolean createClaim(String pictureName) throws IOException {
+		Path claim = claimsFolder.resolve(pictureName + CLAIM);
+		try {
+			Files.write(claim, (owner + "\n").getBytes(UTF8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		} catch (FileAlreadyExistsException e) {
+			return(false);
+		}
+
+		//it may have been finished since the claims folder was listed: its claim is only moved away once it's done
+		if(Files.exists(claimsFolder.resolve(pictureName + DONE)) || Files.exists(claimsFolder.resolve(pictureName + FAILED))){
+			Files.deleteIfExists(claim);
+			return(false);
+		}
+
+		heldClaims.add(pictureName);
+		return(true);
+	}
+
+
+	/**
+	 * If the given claim is stale, moves it out of the way so that it can be claimed again, and returns true.
+	 * Only one instance can move a claim away, so only one of the instances trying to steal it gets to.
+	 * @throws IOException if the claim can't be moved away (atomic moves were checked when the claims folder was opened)
+	 */
+	private boolean stealIfStale(Path claim) throws IOException {
+		if(!isStale(claim))
+			return(false);
+
+		Path stolen = claim.resolveSibling(claim.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".stolen");
+		try {
+			Files.move(claim, stolen, StandardCopyOption.ATOMIC_MOVE);
+		} catch (NoSuchFileException e) {
+			//someone else got to it first, or it was finished in the meantime
+			return(false);
+		}
+
+		//the owner may have renewed it just before it was moved
+		if(!isStale(stolen)){
+			try {
+				Files.move(stolen, claim);
+			} catch (FileAlreadyExistsException e) {
+				Files.deleteIfExists(stolen);
+			}
+			return(false);
+		}
+
+		System.err.println("Taking over the stale claim of " + claim.getFileName() + " (" + readOwner(stolen) + ")");
+		Files.deleteIfExists(stolen);
+		return(true);
+	}
+
+
+	/**
+	 * Returns true if the given claim hasn't been renewed for a whole lease
+	 */
+	private static boolean isStale(Path claim) throws IOException {
+		try {
+			long lastHeartbeat = Files.getLastModifiedTime(claim).toMillis();
+			return(System.currentTimeMillis() - lastHeartbeat > leaseMilliseconds);
+		} catch (NoSuchFileException e) {
+			return(false);
+		}
+	}
+
+
+	private static String readOwner(Path claim){
+		try {
+			return(new String(Files.readAllBytes(claim), UTF8).trim());
+		} catch (IOException e) {
+			return("unknown owner");
+		}
+	}
+
+
+	/**
+	 * Marks the given picture as done (or failed), and gives up its claim.
+	 * If the claim was taken over by another instance in the meantime, it is left to that instance.
+	 * @param pictureName
+	 * @param succeeded
+	 */
+	public void finish(String pictureName, boolean succeeded){
+		if(!heldClaims.remove(pictureName))
+			return;
+
+		Path claim = claimsFolder.resolve(pictureName + CLAIM);
+		if(!owner.equals(readOwner(claim))){
+			System.err.println("The claim of " + pictureName + " was taken over by another instance");
+			return;
+		}
+
+		try {
+			Files.move(claim, claimsFolder.resolve(pictureName + (succeeded ? DONE : FAILED)), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Could not mark " + pictureName + " as " + (succeeded ? "done" : "failed") + ": " + e.toString());
+		}
+	}
+
+
+	/**
+	 * Touches all the claims held, so that they don't go stale
+	 */
+	private void renewClaims(){
+		FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+		List<String> pictureNames;
+		synchronized(heldClaims){
+			pictureNames = new ArrayList<String>(heldClaims);
+		}
+
+		for(String pictureName : pictureNames){
+			Path claim = claimsFolder.resolve(pictureName + CLAIM);
+			try {
+				//gone, or someone else's: it was stolen while this instance wasn't renewing it
+				if(!owner.equals(readOwner(claim)))
+					throw new IOException("claimed by " + readOwner(claim));
+				Files.setLastModifiedTime(claim, now);
+			} catch (IOException e) {
+				if(heldClaims.remove(pictureName))
+					System.err.println("Lost the claim of " + pictureName + ": " + e.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Stops renewing the claims, and gives up the ones still held (so that other instances can take them right away)
+	 */
+	public void close(){
+		heartbeat.shutdownNow();
+
+		List<String> pictureNames;
+		synchronized(heldClaims){
+			pictureNames = new ArrayList<String>(heldClaims);
+			heldClaims.clear();
+		}
+		for(String pictureName : pictureNames){
+			Path claim = claimsFolder.resolve(pictureName + CLAIM);
+			if(owner.equals(readOwner(claim))){
+				try {
+					Files.deleteIfExists(claim);
+				} catch (IOException e) {
+					//it will go stale
+				}
+			}
+		}
+	}
+
+}